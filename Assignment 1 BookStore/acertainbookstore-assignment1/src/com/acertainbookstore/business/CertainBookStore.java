@@ -2,6 +2,7 @@ package com.acertainbookstore.business;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -10,6 +11,7 @@ import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.IntObjectMap;
 
 /**
  * {@link CertainBookStore} implements the {@link BookStore} and
@@ -21,7 +23,16 @@ import com.acertainbookstore.utils.BookStoreUtility;
 public class CertainBookStore implements BookStore, StockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private IntObjectMap<BookStoreBook> bookMap = null;
+
+	/** The books ordered by average rating. */
+	private final TopRatedIndex topRatedIndex = new TopRatedIndex();
+
+	/** The ISBNs of the books with sale misses. */
+	private final Set<Integer> inDemandIsbns = ConcurrentHashMap.newKeySet();
+
+	/** The editor picked books. */
+	private final EditorPickIndex editorPickIndex = new EditorPickIndex();
 
 	/**
 	 * Instantiates a new {@link CertainBookStore}.
@@ -29,7 +40,22 @@ public class CertainBookStore implements BookStore, StockManager {
 	public CertainBookStore() {
 
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntObjectMap<>();
+	}
+
+	/**
+	 * Adds the book to the in-demand index if it has sale misses, and removes
+	 * it otherwise.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	private void updateInDemand(BookStoreBook book) {
+		if (book.hadSaleMiss()) {
+			inDemandIsbns.add(book.getISBN());
+		} else {
+			inDemandIsbns.remove(book.getISBN());
+		}
 	}
 
 	private synchronized void validate(StockBook book) throws BookStoreException {
@@ -116,7 +142,14 @@ public class CertainBookStore implements BookStore, StockManager {
 		// Then add these books to the store.
 		for (StockBook book : bookSet) {
 			int isbn = book.getISBN();
-			bookMap.put(isbn, new BookStoreBook(book));
+			BookStoreBook bookStoreBook = new BookStoreBook(book);
+			bookMap.put(isbn, bookStoreBook);
+			topRatedIndex.add(bookStoreBook);
+			updateInDemand(bookStoreBook);
+
+			if (bookStoreBook.isEditorPick()) {
+				editorPickIndex.add(bookStoreBook);
+			}
 		}
 
 	}
@@ -147,6 +180,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			numCopies = bookCopy.getNumCopies();
 			book = bookMap.get(isbn);
 			book.addCopies(numCopies);
+			updateInDemand(book);
 		}
 
 	}
@@ -182,7 +216,14 @@ public class CertainBookStore implements BookStore, StockManager {
 
 		// Then set the editor pick.
 		for (BookEditorPick editorPickArg : editorPicks) {
-			bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+			BookStoreBook book = bookMap.get(editorPickArg.getISBN());
+			book.setEditorPick(editorPickArg.isEditorPick());
+
+			if (book.isEditorPick()) {
+				editorPickIndex.add(book);
+			} else {
+				editorPickIndex.remove(book.getISBN());
+			}
 		}
 	}
 
@@ -222,6 +263,7 @@ public class CertainBookStore implements BookStore, StockManager {
 			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
 				book = bookMap.get(saleMissEntry.getKey());
 				book.addSaleMiss(saleMissEntry.getValue());
+				updateInDemand(book);
 			}
 			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 		}
@@ -280,34 +322,9 @@ public class CertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		// Get all books that are editor picks.
-		List<BookStoreBook> listAllEditorPicks = bookMap.entrySet().stream().map(pair -> pair.getValue())
-				.filter(book -> book.isEditorPick()).collect(Collectors.toList());
-
-		// Find numBooks random indices of books that will be picked.
-		Random rand = new Random();
-		Set<Integer> tobePicked = new HashSet<>();
-		int rangePicks = listAllEditorPicks.size();
-
-		if (rangePicks <= numBooks) {
-
-			// We need to add all books.
-			for (int i = 0; i < listAllEditorPicks.size(); i++) {
-				tobePicked.add(i);
-			}
-		} else {
-
-			// We need to pick randomly the books that need to be returned.
-			int randNum;
-
-			while (tobePicked.size() < numBooks) {
-				randNum = rand.nextInt(rangePicks);
-				tobePicked.add(randNum);
-			}
-		}
-
-		// Return all the books by the randomly chosen indices.
-		return tobePicked.stream().map(index -> listAllEditorPicks.get(index).immutableBook())
+		// Draw the picks from the index instead of scanning the catalogue.
+		return editorPickIndex.sample(numBooks).stream()
+				.map(BookStoreBook::immutableBook)
 				.collect(Collectors.toList());
 	}
 
@@ -317,17 +334,14 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
 	 */
 	@Override
-	public synchronized List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
 
 		if (numBooks < 0) {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		return bookMap.values().stream()
-				.sorted(Comparator.comparing(BookStoreBook::getAverageRating).reversed())
-				.map(BookStoreBook::immutableBook)
-				.limit(numBooks).collect(Collectors.toList());
-
+		// The index is concurrent, so there is no need to hold the store lock.
+		return topRatedIndex.getTopRated(numBooks);
 	}
 
 	/*
@@ -337,11 +351,9 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<StockBook> getBooksInDemand() throws BookStoreException {
-		//throw new BookStoreException(); no exception needed
-		Collection<BookStoreBook> bookMapValues = bookMap.values();
-
-		return bookMapValues.stream().filter(BookStoreBook::hadSaleMiss)
-				.map(BookStoreBook::immutableStockBook).collect(Collectors.toList());
+		// Only the books with sale misses are visited, not the whole catalogue.
+		return inDemandIsbns.stream().map(isbn -> bookMap.get(isbn).immutableStockBook())
+				.collect(Collectors.toList());
 	}
 
 	/*
@@ -360,7 +372,10 @@ public class CertainBookStore implements BookStore, StockManager {
 		}
 		for (BookRating bookRate : bookRating) {
 			// Rate book by updating total ranking and number of timed ranked
-			bookMap.get(bookRate.getISBN()).addRating(bookRate.getRating());
+			BookStoreBook book = bookMap.get(bookRate.getISBN());
+			float previousAverageRating = book.getAverageRating();
+			book.addRating(bookRate.getRating());
+			topRatedIndex.update(previousAverageRating, book);
 		}
 	}
 
@@ -371,6 +386,9 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	public synchronized void removeAllBooks() throws BookStoreException {
 		bookMap.clear();
+		topRatedIndex.clear();
+		inDemandIsbns.clear();
+		editorPickIndex.clear();
 	}
 
 	/*
@@ -394,7 +412,9 @@ public class CertainBookStore implements BookStore, StockManager {
 		}
 
 		for (int isbn : isbnSet) {
-			bookMap.remove(isbn);
+			topRatedIndex.remove(bookMap.remove(isbn));
+			inDemandIsbns.remove(isbn);
+			editorPickIndex.remove(isbn);
 		}
 	}
 }
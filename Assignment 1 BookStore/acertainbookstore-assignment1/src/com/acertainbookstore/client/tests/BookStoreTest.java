@@ -484,14 +484,43 @@ public class BookStoreTest {
 		Book book = topRatedBooks.get(0);
 		assertTrue(book.getISBN()==TEST_ISBN +4);
 		book = topRatedBooks.get(1);
-		assertTrue(book.getISBN()==TEST_ISBN +2);
+		assertTrue(book.getISBN()==TEST_ISBN +3);
 		book = topRatedBooks.get(2);
-		assertTrue(book.getISBN()==TEST_ISBN + 3);
+		assertTrue(book.getISBN()==TEST_ISBN + 2);
 		book = topRatedBooks.get(3);
-		assertTrue(book.getISBN()==TEST_ISBN );
-		book = topRatedBooks.get(4);
 		assertTrue(book.getISBN()==TEST_ISBN + 1);
+		book = topRatedBooks.get(4);
+		assertTrue(book.getISBN()==TEST_ISBN );
+	}
+	@Test
+	public void testGetTopRatedAfterRating() throws BookStoreException {
+		addBooks(TEST_ISBN1, NUM_COPIES);
+		addBooks(TEST_ISBN2, NUM_COPIES);
+
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN1, 2));
+		booksToRate.add(new BookRating(TEST_ISBN2, 4));
+		client.rateBooks(booksToRate);
+
+		List<Book> topRatedBooks = client.getTopRatedBooks(2);
+		assertEquals(2, topRatedBooks.size());
+		assertEquals(TEST_ISBN2, topRatedBooks.get(0).getISBN());
+		assertEquals(TEST_ISBN1, topRatedBooks.get(1).getISBN());
+
+		// Three more top ratings lift the first book above the second one.
+		booksToRate.clear();
+		booksToRate.add(new BookRating(TEST_ISBN1, 5));
+		client.rateBooks(booksToRate);
+		client.rateBooks(booksToRate);
+		client.rateBooks(booksToRate);
+
+		topRatedBooks = client.getTopRatedBooks(3);
+		assertEquals(3, topRatedBooks.size());
+		assertEquals(TEST_ISBN1, topRatedBooks.get(0).getISBN());
+		assertEquals(TEST_ISBN2, topRatedBooks.get(1).getISBN());
+		assertEquals(TEST_ISBN, topRatedBooks.get(2).getISBN());
 	}
+
 	@Test
 	public void testgetTopRatedEmpty() throws BookStoreException {
 		List<Book> topRatedBooks = client.getTopRatedBooks(0);
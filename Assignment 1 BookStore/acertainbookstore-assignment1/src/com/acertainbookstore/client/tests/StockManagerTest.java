@@ -384,6 +384,49 @@ public class StockManagerTest {
 		assertTrue(editorPick.equals(defaultBookAdded));
 	}
 
+	/**
+	 * Tests that editor picks are drawn without repetition and follow updates
+	 * and removals.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testEditorPicksSampling() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 3; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "The Art of Computer Programming", "Donald Knuth",
+					(float) 300, NUM_COPIES, 0, 0, 0, false));
+		}
+
+		storeManager.addBooks(booksToAdd);
+
+		for (int i = 0; i <= 3; i++) {
+			addEditorPick(TEST_ISBN + i, true);
+		}
+
+		addEditorPick(TEST_ISBN + 3, false);
+
+		Set<Integer> pickedIsbns = new HashSet<Integer>();
+
+		for (Book book : client.getEditorPicks(2)) {
+			pickedIsbns.add(book.getISBN());
+		}
+
+		assertTrue(pickedIsbns.size() == 2);
+		assertFalse(pickedIsbns.contains(TEST_ISBN + 3));
+
+		// Asking for more picks than there are returns all of them.
+		assertTrue(client.getEditorPicks(10).size() == 3);
+
+		Set<Integer> isbnsToRemove = new HashSet<Integer>();
+		isbnsToRemove.add(TEST_ISBN + 1);
+		storeManager.removeBooks(isbnsToRemove);
+
+		assertTrue(client.getEditorPicks(10).size() == 2);
+	}
+
 	/**
 	 * Checks that a book can be removed.
 	 *
@@ -505,6 +548,43 @@ public class StockManagerTest {
 		assertTrue(booksInDemand.get(0).getISBN()==TEST_ISBN+1);
 
 	}
+	/**
+	 * Tests that books with sale misses are in demand until copies are added.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBooksInDemandUntilRestocked() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "The Art of Computer Programming", "Donald Knuth",
+				(float) 300, NUM_COPIES, 0, 0, 0, false));
+		storeManager.addBooks(booksToAdd);
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+
+		// Try to buy more copies than there are in store.
+		HashSet<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 1, NUM_COPIES + 1));
+
+		try {
+			client.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInDemand = storeManager.getBooksInDemand();
+		assertTrue(booksInDemand.size() == 1);
+		assertTrue(booksInDemand.get(0).getISBN() == TEST_ISBN + 1);
+		assertTrue(booksInDemand.get(0).getNumSaleMisses() == 1);
+
+		// Restocking clears the sale misses.
+		HashSet<BookCopy> booksToAddCopies = new HashSet<BookCopy>();
+		booksToAddCopies.add(new BookCopy(TEST_ISBN + 1, 1));
+		storeManager.addCopies(booksToAddCopies);
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+	}
+
 	/**
 	 * Tear down after class.
 	 *
@@ -0,0 +1,122 @@
+package com.acertainbookstore.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acertainbookstore.utils.ConcurrentIntObjectMap;
+import com.acertainbookstore.utils.IntObjectMap;
+
+/**
+ * {@link BookMapBenchmark} compares the lookups of the maps backing the book
+ * maps of the stores with those of a <code>HashMap&lt;Integer, V&gt;</code>,
+ * at random keys of a map of {@link #size} entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+@State(Scope.Benchmark)
+public class BookMapBenchmark {
+
+	/** The number of precomputed keys, a power of two. */
+	private static final int NUM_KEYS = 1 << 16;
+
+	/** The number of entries. */
+	@Param({ "1000", "100000", "10000000" })
+	public int size;
+
+	/** The hash map. */
+	private Map<Integer, Object> hashMap;
+
+	/** The int map. */
+	private IntObjectMap<Object> intObjectMap;
+
+	/** The concurrent int map. */
+	private ConcurrentIntObjectMap<Object> concurrentIntObjectMap;
+
+	/** The keys looked up. */
+	private int[] keys;
+
+	/** The position of the next key. */
+	private int position = 0;
+
+	/**
+	 * Fills the maps and draws the keys.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		hashMap = new HashMap<>();
+		intObjectMap = new IntObjectMap<>();
+		concurrentIntObjectMap = new ConcurrentIntObjectMap<>();
+
+		for (int key = 1; key <= size; key++) {
+			Object value = new Object();
+			hashMap.put(key, value);
+			intObjectMap.put(key, value);
+			concurrentIntObjectMap.put(key, value);
+		}
+
+		Random random = new Random(42);
+		keys = new int[NUM_KEYS];
+
+		for (int i = 0; i < NUM_KEYS; i++) {
+			keys[i] = 1 + random.nextInt(size);
+		}
+	}
+
+	/**
+	 * Moves to the next key.
+	 *
+	 * @return the key
+	 */
+	private int nextKey() {
+		position = (position + 1) & (NUM_KEYS - 1);
+		return keys[position];
+	}
+
+	/**
+	 * Benchmarks a lookup in the hash map.
+	 *
+	 * @return the value
+	 */
+	@Benchmark
+	public Object hashMap() {
+		return hashMap.get(nextKey());
+	}
+
+	/**
+	 * Benchmarks a lookup in the int map.
+	 *
+	 * @return the value
+	 */
+	@Benchmark
+	public Object intObjectMap() {
+		return intObjectMap.get(nextKey());
+	}
+
+	/**
+	 * Benchmarks a lookup in the concurrent int map.
+	 *
+	 * @return the value
+	 */
+	@Benchmark
+	public Object concurrentIntObjectMap() {
+		return concurrentIntObjectMap.get(nextKey());
+	}
+}
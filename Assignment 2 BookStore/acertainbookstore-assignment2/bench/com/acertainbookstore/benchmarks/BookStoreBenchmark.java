@@ -0,0 +1,404 @@
+package com.acertainbookstore.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.OptimisticConcurrentCertainBookStore;
+import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.business.StripedLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link BookStoreBenchmark} drives the bookstores in-process with JMH. Each
+ * benchmark method is one interaction, and {@link #mixed(Catalogue, Cursor)}
+ * interleaves them according to {@link Catalogue#mix}. The store, the
+ * catalogue size, the ISBN skew and the mix are JMH parameters; the number of
+ * threads is set with <code>-t</code>. Run it with <code>ant benchmark</code>,
+ * which also records the allocation rate with the GC profiler.
+ *
+ * The ISBNs and the argument sets of the interactions are drawn before the
+ * measurement, so the measured code is the store and not the harness.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookStoreBenchmark {
+
+	/** The number of precomputed interactions, a power of two. */
+	private static final int SEQUENCE_LENGTH = 1 << 16;
+
+	/** The number of copies of each book, high enough never to run out. */
+	private static final int NUM_COPIES = Integer.MAX_VALUE / 4;
+
+	/** The share of the books which are editor picks. */
+	private static final double EDITOR_PICK_SHARE = 0.1;
+
+	/** The number of books asked for by getEditorPicks. */
+	private static final int NUM_BOOKS_ASKED = 10;
+
+	/** The seed of the catalogue and the ISBN sequence. */
+	private static final long SEED = 42;
+
+	/**
+	 * {@link Operation} is an interaction of the mix.
+	 */
+	enum Operation {
+		GET_BOOKS("getBooks"), BUY_BOOKS("buyBooks"), GET_EDITOR_PICKS("getEditorPicks"), ADD_COPIES("addCopies");
+
+		/** The name of the interaction in the mix parameter. */
+		final String name;
+
+		/**
+		 * Instantiates a new {@link Operation}.
+		 *
+		 * @param name
+		 *            the name of the interaction
+		 */
+		Operation(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Gets the interaction with the given name.
+		 *
+		 * @param name
+		 *            the name
+		 * @return the interaction
+		 */
+		static Operation of(String name) {
+			for (Operation operation : values()) {
+				if (operation.name.equals(name)) {
+					return operation;
+				}
+			}
+
+			throw new IllegalArgumentException("Unknown operation " + name);
+		}
+	}
+
+	/**
+	 * {@link Catalogue} is the store under test and the precomputed arguments
+	 * of the interactions, shared by all threads.
+	 */
+	@State(Scope.Benchmark)
+	public static class Catalogue {
+
+		/** The store. */
+		@Param({ "twolevel", "singlelock", "stripedlock", "optimistic" })
+		public String store;
+
+		/** The number of books. */
+		@Param({ "1000", "100000" })
+		public int numBooks;
+
+		/**
+		 * The Zipf exponent of the ISBN popularity; 0 is uniform and values
+		 * around 1 send most requests to a few books.
+		 */
+		@Param({ "0", "0.99" })
+		public double skew;
+
+		/**
+		 * The weights of the interactions of the mixed benchmark. Ratings are
+		 * left out, as only the optimistic store implements them.
+		 */
+		@Param({ "getBooks=60,buyBooks=20,getEditorPicks=10,addCopies=5" })
+		public String mix;
+
+		/** The client interface of the store. */
+		BookStore bookStore;
+
+		/** The stock manager interface of the store. */
+		StockManager stockManager;
+
+		/** The ISBN sets of getBooks. */
+		final List<Set<Integer>> isbnSets = new ArrayList<>(SEQUENCE_LENGTH);
+
+		/** The copy sets of buyBooks and addCopies. */
+		final List<Set<BookCopy>> copySets = new ArrayList<>(SEQUENCE_LENGTH);
+
+		/** The interactions of the mixed benchmark. */
+		final Operation[] operations = new Operation[SEQUENCE_LENGTH];
+
+		/**
+		 * Creates the store, fills it and draws the interactions.
+		 *
+		 * @throws BookStoreException
+		 *             the book store exception
+		 */
+		@Setup(Level.Trial)
+		public void setUp() throws BookStoreException {
+			createStore();
+
+			Random random = new Random(SEED);
+			Set<StockBook> books = new HashSet<>();
+
+			for (int isbn = 1; isbn <= numBooks; isbn++) {
+				books.add(new ImmutableStockBook(isbn, "Title " + isbn, "Author " + isbn, 10 + random.nextInt(90),
+						NUM_COPIES, 0, 1, 1 + random.nextInt(5), random.nextDouble() < EDITOR_PICK_SHARE));
+			}
+
+			stockManager.addBooks(books);
+
+			int[] isbns = drawIsbns(random);
+
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				isbnSets.add(Collections.singleton(isbns[i]));
+				copySets.add(Collections.singleton(new BookCopy(isbns[i], 1)));
+			}
+
+			drawOperations(random);
+		}
+
+		/**
+		 * Creates the store named by {@link #store}.
+		 */
+		private void createStore() {
+			switch (store) {
+			case "twolevel":
+				TwoLevelLockingConcurrentCertainBookStore twoLevelStore = new TwoLevelLockingConcurrentCertainBookStore();
+				bookStore = twoLevelStore;
+				stockManager = twoLevelStore;
+				break;
+
+			case "singlelock":
+				SingleLockConcurrentCertainBookStore singleLockStore = new SingleLockConcurrentCertainBookStore();
+				bookStore = singleLockStore;
+				stockManager = singleLockStore;
+				break;
+
+			case "stripedlock":
+				StripedLockConcurrentCertainBookStore stripedLockStore = new StripedLockConcurrentCertainBookStore();
+				bookStore = stripedLockStore;
+				stockManager = stripedLockStore;
+				break;
+
+			case "optimistic":
+				OptimisticConcurrentCertainBookStore optimisticStore = new OptimisticConcurrentCertainBookStore();
+				bookStore = optimisticStore;
+				stockManager = optimisticStore;
+				break;
+
+			default:
+				throw new IllegalArgumentException("Unknown store " + store);
+			}
+		}
+
+		/**
+		 * Draws the ISBN sequence. Popularity ranks follow a Zipf distribution
+		 * with exponent {@link #skew}, and ranks are assigned to ISBNs at
+		 * random so that the popular books are not neighbours.
+		 *
+		 * @param random
+		 *            the random generator
+		 * @return the ISBNs
+		 */
+		private int[] drawIsbns(Random random) {
+			double[] cumulativeWeights = new double[numBooks];
+			double totalWeight = 0;
+
+			for (int rank = 0; rank < numBooks; rank++) {
+				totalWeight += 1 / Math.pow(rank + 1, skew);
+				cumulativeWeights[rank] = totalWeight;
+			}
+
+			List<Integer> isbnOfRank = new ArrayList<>(numBooks);
+
+			for (int isbn = 1; isbn <= numBooks; isbn++) {
+				isbnOfRank.add(isbn);
+			}
+
+			Collections.shuffle(isbnOfRank, random);
+
+			int[] isbns = new int[SEQUENCE_LENGTH];
+
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				int rank = Arrays.binarySearch(cumulativeWeights, random.nextDouble() * totalWeight);
+				isbns[i] = isbnOfRank.get(rank >= 0 ? rank : Math.min(-rank - 1, numBooks - 1));
+			}
+
+			return isbns;
+		}
+
+		/**
+		 * Draws the interactions of the mixed benchmark from {@link #mix}.
+		 *
+		 * @param random
+		 *            the random generator
+		 */
+		private void drawOperations(Random random) {
+			List<Operation> weightedOperations = new ArrayList<>();
+			List<Integer> weights = new ArrayList<>();
+			int totalWeight = 0;
+
+			for (String entry : mix.split(",")) {
+				String[] nameAndWeight = entry.split("=");
+				weightedOperations.add(Operation.of(nameAndWeight[0].trim()));
+				weights.add(Integer.parseInt(nameAndWeight[1].trim()));
+				totalWeight += weights.get(weights.size() - 1);
+			}
+
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				int draw = random.nextInt(totalWeight);
+				int j = 0;
+
+				while (draw >= weights.get(j)) {
+					draw -= weights.get(j++);
+				}
+
+				operations[i] = weightedOperations.get(j);
+			}
+		}
+	}
+
+	/**
+	 * {@link Cursor} is the position of a thread in the precomputed
+	 * interactions. Threads start at random positions so that they do not walk
+	 * the sequence in lockstep.
+	 */
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		/** The next position. */
+		private int position;
+
+		/**
+		 * Picks the starting position.
+		 */
+		@Setup(Level.Trial)
+		public void setUp() {
+			position = ThreadLocalRandom.current().nextInt(SEQUENCE_LENGTH);
+		}
+
+		/**
+		 * Moves to the next interaction.
+		 *
+		 * @return the position of the interaction
+		 */
+		int next() {
+			position = (position + 1) & (SEQUENCE_LENGTH - 1);
+			return position;
+		}
+	}
+
+	/**
+	 * Benchmarks buyBooks.
+	 *
+	 * @param catalogue
+	 *            the catalogue
+	 * @param cursor
+	 *            the cursor
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Benchmark
+	public void buyBooks(Catalogue catalogue, Cursor cursor) throws BookStoreException {
+		catalogue.bookStore.buyBooks(catalogue.copySets.get(cursor.next()));
+	}
+
+	/**
+	 * Benchmarks getBooks.
+	 *
+	 * @param catalogue
+	 *            the catalogue
+	 * @param cursor
+	 *            the cursor
+	 * @return the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Benchmark
+	public List<Book> getBooks(Catalogue catalogue, Cursor cursor) throws BookStoreException {
+		return catalogue.bookStore.getBooks(catalogue.isbnSets.get(cursor.next()));
+	}
+
+	/**
+	 * Benchmarks getEditorPicks.
+	 *
+	 * @param catalogue
+	 *            the catalogue
+	 * @return the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Benchmark
+	public List<Book> getEditorPicks(Catalogue catalogue) throws BookStoreException {
+		return catalogue.bookStore.getEditorPicks(NUM_BOOKS_ASKED);
+	}
+
+	/**
+	 * Benchmarks addCopies.
+	 *
+	 * @param catalogue
+	 *            the catalogue
+	 * @param cursor
+	 *            the cursor
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Benchmark
+	public void addCopies(Catalogue catalogue, Cursor cursor) throws BookStoreException {
+		catalogue.stockManager.addCopies(catalogue.copySets.get(cursor.next()));
+	}
+
+	/**
+	 * Benchmarks the interactions of the mix, interleaved.
+	 *
+	 * @param catalogue
+	 *            the catalogue
+	 * @param cursor
+	 *            the cursor
+	 * @return the books read, if any
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Benchmark
+	public Object mixed(Catalogue catalogue, Cursor cursor) throws BookStoreException {
+		int position = cursor.next();
+
+		switch (catalogue.operations[position]) {
+		case GET_BOOKS:
+			return catalogue.bookStore.getBooks(catalogue.isbnSets.get(position));
+
+		case BUY_BOOKS:
+			catalogue.bookStore.buyBooks(catalogue.copySets.get(position));
+			return null;
+
+		case GET_EDITOR_PICKS:
+			return catalogue.bookStore.getEditorPicks(NUM_BOOKS_ASKED);
+
+		default:
+			catalogue.stockManager.addCopies(catalogue.copySets.get(position));
+			return null;
+		}
+	}
+}
@@ -0,0 +1,771 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Collectors;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.ConcurrentIntObjectMap;
+
+/** {@link OptimisticConcurrentCertainBookStore} implements the {@link BookStore} and
+ * {@link StockManager} functionalities using optimistic concurrency control.
+ *
+ * Every book is held as an immutable {@link BookStoreBook} snapshot behind an
+ * {@link AtomicReference}; a snapshot is never modified once it is published.
+ * Writers read the snapshots they need without any lock, compute the new
+ * snapshots on private copies and then commit: the commit claims the books it
+ * read one by one, in ISBN order, by swapping the snapshot read for a
+ * {@link ClaimedBook} with a compare-and-set, and installs the new snapshots
+ * once it holds all the claims. If a snapshot has been replaced meanwhile, the
+ * claims taken so far are released and the operation is retried on the fresh
+ * state. Commits on disjoint books thus never wait for each other, and taking
+ * the claims in ISBN order keeps overlapping commits from deadlocking. Only
+ * adding and removing books, which change the catalogue, take a lock.
+ *
+ * getBooks(Set) and getEditorPicks never block. The stock manager views, which
+ * must be consistent across books, read the snapshots twice and retry until
+ * they saw no claim and no change in between; after repeated conflicts they
+ * hold off the changes to the catalogue, but never the commits.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class OptimisticConcurrentCertainBookStore implements BookStore, StockManager {
+
+	/** The number of optimistic attempts of a consistent read before it holds off the changes to the catalogue. */
+	private static final int MAX_OPTIMISTIC_READS = 8;
+
+	/** The mapping of books from ISBN to the current {@link BookStoreBook} snapshot. */
+	private final ConcurrentIntObjectMap<AtomicReference<BookStoreBook>> bookMap = new ConcurrentIntObjectMap<>();
+
+	/** The editor picked books, by ISBN, so that picks are drawn without scanning the catalogue. */
+	private final Map<Integer, AtomicReference<BookStoreBook>> editorPicks = new ConcurrentHashMap<>();
+
+	/** The lock serializing the additions and removals of books. */
+	private final StampedLock catalogueLock = new StampedLock();
+
+	/**
+	 * {@link ClaimedBook} stands in for the snapshot of a book while a commit
+	 * holds a claim on it. It is a copy of that snapshot, so readers which do
+	 * not need a consistent view can still read the book from it. The claims of
+	 * removed books are never released.
+	 */
+	private static final class ClaimedBook extends BookStoreBook {
+
+		private ClaimedBook(BookStoreBook snapshot) {
+			super(snapshot);
+		}
+	}
+
+	/**
+	 * {@link PendingUpdate} records the snapshot of a book read by a
+	 * transaction and the new snapshot the transaction wants to install.
+	 */
+	private static final class PendingUpdate {
+
+		/** The reference holding the snapshots of the book. */
+		private final AtomicReference<BookStoreBook> reference;
+
+		/** The snapshot read. */
+		private final BookStoreBook expected;
+
+		/** The snapshot to install, the same as the one read if the book is only read. */
+		private BookStoreBook updated;
+
+		private PendingUpdate(AtomicReference<BookStoreBook> reference) {
+			this.reference = reference;
+			this.expected = reference.get();
+			this.updated = expected;
+		}
+
+		/**
+		 * Gets the private copy of the book that the transaction can modify.
+		 *
+		 * @return the copy of the book
+		 */
+		private BookStoreBook forWrite() {
+			if (updated == expected) {
+				updated = new BookStoreBook(expected);
+			}
+
+			return updated;
+		}
+	}
+
+	/**
+	 * {@link ReferenceRead} gets the references of the books read by a view
+	 * which must observe the state of the store between two commits.
+	 */
+	private interface ReferenceRead {
+		Collection<AtomicReference<BookStoreBook>> read() throws BookStoreException;
+	}
+
+	/**
+	 * Instantiates a new {@link OptimisticConcurrentCertainBookStore}.
+	 */
+	public OptimisticConcurrentCertainBookStore() {
+		// Constructors are not synchronized
+	}
+
+	private void validate(StockBook book) throws BookStoreException {
+		int isbn = book.getISBN();
+		String bookTitle = book.getTitle();
+		String bookAuthor = book.getAuthor();
+		int noCopies = book.getNumCopies();
+		float bookPrice = book.getPrice();
+
+		if (BookStoreUtility.isInvalidISBN(isbn)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookTitle)) { // Check if the book has valid title
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookAuthor)) { // Check if the book has valid author
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isInvalidNoCopies(noCopies)) { // Check if the book has at least one copy
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (bookPrice < 0.0) { // Check if the price of the book is valid
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (bookMap.containsKey(isbn)) {// Check if the book is not in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+		}
+	}
+
+	private void validate(BookCopy bookCopy) throws BookStoreException {
+		int isbn = bookCopy.getISBN();
+		int numCopies = bookCopy.getNumCopies();
+
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidNoCopies(numCopies)) { // Check if the number of the book copy is larger than zero
+			throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
+		}
+	}
+
+	private void validate(BookRating bookRating) throws BookStoreException {
+		int isbn = bookRating.getISBN();
+		int rating = bookRating.getRating();
+
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidRating(rating)) { // Check if the rating is between zero and five
+			throw new BookStoreException(BookStoreConstants.RATING + rating + BookStoreConstants.INVALID);
+		}
+	}
+
+	private void validate(BookEditorPick editorPickArg) throws BookStoreException {
+		int isbn = editorPickArg.getISBN();
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+	}
+
+	private void validateISBNInStock(Integer ISBN) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(ISBN)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+		}
+		if (!bookMap.containsKey(ISBN)) {// Check if the book is in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	/**
+	 * Gets the reference holding the snapshots of a book that has already been
+	 * validated. The book can still be removed concurrently, in which case it
+	 * is reported as not available.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the reference of the book
+	 * @throws BookStoreException
+	 *             if the book is no longer in stock
+	 */
+	private AtomicReference<BookStoreBook> getReference(int isbn) throws BookStoreException {
+		AtomicReference<BookStoreBook> reference = bookMap.get(isbn);
+
+		if (reference == null) {
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		return reference;
+	}
+
+	/**
+	 * Reads the current snapshot of a book into the transaction, unless the
+	 * transaction has already read it.
+	 *
+	 * @param updates
+	 *            the pending updates of the transaction
+	 * @param isbn
+	 *            the ISBN
+	 * @return the pending update of the book
+	 * @throws BookStoreException
+	 *             if the book is no longer in stock
+	 */
+	private PendingUpdate stage(Map<Integer, PendingUpdate> updates, int isbn) throws BookStoreException {
+		PendingUpdate update = updates.get(isbn);
+
+		if (update == null) {
+			update = new PendingUpdate(getReference(isbn));
+			updates.put(isbn, update);
+		}
+
+		return update;
+	}
+
+	/**
+	 * Claims the books read by a transaction in ISBN order and, once it holds
+	 * all of them, installs the new snapshots. A book claimed by another commit
+	 * is waited for, which cannot deadlock since every commit claims its books
+	 * in the same order. If a snapshot read has been replaced or the book
+	 * removed, the claims taken so far are released.
+	 *
+	 * @param updates
+	 *            the pending updates of the transaction, ordered by ISBN
+	 * @return true, if the transaction committed; false, if it must be retried
+	 */
+	private boolean commit(TreeMap<Integer, PendingUpdate> updates) {
+		List<PendingUpdate> claimed = new ArrayList<>(updates.size());
+
+		for (Map.Entry<Integer, PendingUpdate> entry : updates.entrySet()) {
+			if (!claim(entry.getKey(), entry.getValue())) {
+				for (PendingUpdate update : claimed) {
+					update.reference.set(update.expected);
+				}
+
+				Thread.yield();
+				return false;
+			}
+
+			claimed.add(entry.getValue());
+		}
+
+		// The index of the editor picks is updated under the claims, so that
+		// the updates of a book reach it in the order they are installed.
+		for (Map.Entry<Integer, PendingUpdate> entry : updates.entrySet()) {
+			PendingUpdate update = entry.getValue();
+
+			if (update.updated.isEditorPick() != update.expected.isEditorPick()) {
+				if (update.updated.isEditorPick()) {
+					editorPicks.put(entry.getKey(), update.reference);
+				} else {
+					editorPicks.remove(entry.getKey());
+				}
+			}
+		}
+
+		for (PendingUpdate update : claimed) {
+			update.reference.set(update.updated);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Claims a book for a commit, provided that its snapshot is still the one
+	 * read by the transaction.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param update
+	 *            the pending update of the book
+	 * @return true, if the book is claimed; false, if the snapshot was replaced
+	 *         or the book removed
+	 */
+	private boolean claim(int isbn, PendingUpdate update) {
+		if (update.expected instanceof ClaimedBook) {
+			return false;
+		}
+
+		ClaimedBook claim = new ClaimedBook(update.expected);
+
+		while (!update.reference.compareAndSet(update.expected, claim)) {
+			if (!(update.reference.get() instanceof ClaimedBook) || bookMap.get(isbn) != update.reference) {
+				return false;
+			}
+
+			Thread.yield();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Claims books for good before they are removed, in ISBN order, waiting for
+	 * the commits holding them. The caller holds the catalogue lock.
+	 *
+	 * @param references
+	 *            the references of the books, ordered by ISBN
+	 */
+	private static void claimForRemoval(List<AtomicReference<BookStoreBook>> references) {
+		for (AtomicReference<BookStoreBook> reference : references) {
+			BookStoreBook snapshot = reference.get();
+
+			while (snapshot instanceof ClaimedBook || !reference.compareAndSet(snapshot, new ClaimedBook(snapshot))) {
+				Thread.yield();
+				snapshot = reference.get();
+			}
+		}
+	}
+
+	/**
+	 * Reads books as they are between two commits. The snapshots are read
+	 * twice, and the read is repeated until neither a claim nor a change was
+	 * seen: every snapshot was then current at the end of the first pass.
+	 * Changes to the catalogue are validated optimistically; after
+	 * {@link #MAX_OPTIMISTIC_READS} attempts they are held off instead.
+	 *
+	 * @param referenceRead
+	 *            the read of the references of the books
+	 * @return the snapshots of the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private List<BookStoreBook> readConsistently(ReferenceRead referenceRead) throws BookStoreException {
+		for (int attempt = 0;; attempt++) {
+			boolean optimistic = attempt < MAX_OPTIMISTIC_READS;
+			long stamp = optimistic ? catalogueLock.tryOptimisticRead() : catalogueLock.readLock();
+
+			try {
+				if (stamp != 0L) {
+					Collection<AtomicReference<BookStoreBook>> references = referenceRead.read();
+					List<BookStoreBook> snapshots = readSnapshots(references);
+
+					if (snapshots != null && isUnchanged(references, snapshots) && catalogueLock.validate(stamp)) {
+						return snapshots;
+					}
+				}
+			} finally {
+				if (!optimistic) {
+					catalogueLock.unlockRead(stamp);
+				}
+			}
+
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Reads the current snapshots of books.
+	 *
+	 * @param references
+	 *            the references of the books
+	 * @return the snapshots, or null if a book is claimed
+	 */
+	private static List<BookStoreBook> readSnapshots(Collection<AtomicReference<BookStoreBook>> references) {
+		List<BookStoreBook> snapshots = new ArrayList<>(references.size());
+
+		for (AtomicReference<BookStoreBook> reference : references) {
+			BookStoreBook snapshot = reference.get();
+
+			if (snapshot instanceof ClaimedBook) {
+				return null;
+			}
+
+			snapshots.add(snapshot);
+		}
+
+		return snapshots;
+	}
+
+	/**
+	 * Checks that books still have the snapshots read. A snapshot is only put
+	 * back by a commit which released its claim without changing the book, so
+	 * comparing the snapshots by identity is enough.
+	 *
+	 * @param references
+	 *            the references of the books
+	 * @param snapshots
+	 *            the snapshots read
+	 * @return true, if no book has been replaced or claimed since
+	 */
+	private static boolean isUnchanged(Collection<AtomicReference<BookStoreBook>> references,
+			List<BookStoreBook> snapshots) {
+		int i = 0;
+
+		for (AtomicReference<BookStoreBook> reference : references) {
+			if (reference.get() != snapshots.get(i++)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		long stamp = catalogueLock.writeLock();
+
+		try {
+			// Check if all are there
+			for (StockBook book : bookSet) {
+				validate(book);
+			}
+
+			for (StockBook book : bookSet) {
+				int isbn = book.getISBN();
+				AtomicReference<BookStoreBook> reference = new AtomicReference<>(new BookStoreBook(book));
+				bookMap.put(isbn, reference);
+
+				if (book.isEditorPick()) {
+					editorPicks.put(isbn, reference);
+				}
+			}
+		} finally {
+			catalogueLock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookCopy bookCopy : bookCopiesSet) {
+			validate(bookCopy);
+		}
+
+		TreeMap<Integer, PendingUpdate> updates;
+
+		do {
+			updates = new TreeMap<>();
+
+			// Update the number of copies
+			for (BookCopy bookCopy : bookCopiesSet) {
+				stage(updates, bookCopy.getISBN()).forWrite().addCopies(bookCopy.getNumCopies());
+			}
+		} while (!commit(updates));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() throws BookStoreException {
+		return readConsistently(bookMap::values).stream()
+				.map(BookStoreBook::immutableStockBook)
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		// Check that all ISBNs that we add/remove are there first.
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookEditorPick editorPickArg : editorPicks) {
+			validate(editorPickArg);
+		}
+
+		TreeMap<Integer, PendingUpdate> updates;
+
+		do {
+			updates = new TreeMap<>();
+
+			for (BookEditorPick editorPickArg : editorPicks) {
+				stage(updates, editorPickArg.getISBN()).forWrite().setEditorPick(editorPickArg.isEditorPick());
+			}
+		} while (!commit(updates));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		// Check that all ISBNs that we buy are there first.
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			validate(bookCopyToBuy);
+		}
+
+		TreeMap<Integer, PendingUpdate> updates;
+		boolean saleMiss;
+
+		do {
+			updates = new TreeMap<>();
+			saleMiss = false;
+
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				PendingUpdate update = stage(updates, bookCopyToBuy.getISBN());
+
+				if (!update.expected.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+					// If we cannot sell the copies of the book, it is a miss.
+					update.forWrite().addSaleMiss(bookCopyToBuy.getNumCopies() - update.expected.getNumCopies());
+					saleMiss = true;
+				}
+			}
+
+			// Then make the purchase, unless some book incurred a miss. The
+			// books that could be sold are kept in the transaction, so that the
+			// misses are only recorded if the whole order still fails.
+			if (!saleMiss) {
+				for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+					updates.get(bookCopyToBuy.getISBN()).forWrite().buyCopies(bookCopyToBuy.getNumCopies());
+				}
+			}
+		} while (!commit(updates));
+
+		// We throw exception now since we want to see how many books in the
+		// order incurred misses which is used by books in demand
+		if (saleMiss) {
+			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(ISBN);
+		}
+
+		return readConsistently(() -> {
+			List<AtomicReference<BookStoreBook>> references = new ArrayList<>(isbnSet.size());
+
+			for (Integer ISBN : isbnSet) {
+				references.add(getReference(ISBN));
+			}
+
+			return references;
+		}).stream()
+				.map(BookStoreBook::immutableStockBook)
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		// Check that all ISBNs that we rate are there to start with.
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(ISBN);
+		}
+
+		// Title, author and price never change, so any snapshot will do.
+		List<Book> books = new ArrayList<>(isbnSet.size());
+
+		for (Integer ISBN : isbnSet) {
+			// A claimed book is a copy of its snapshot, so it can be read too.
+			books.add(getReference(ISBN).get().immutableBook());
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		// The index is read without locks; a book whose pick is being changed
+		// is judged by its snapshot.
+		List<BookStoreBook> listAllEditorPicks = new ArrayList<>(editorPicks.size());
+
+		for (AtomicReference<BookStoreBook> reference : editorPicks.values()) {
+			BookStoreBook book = reference.get();
+
+			if (book.isEditorPick()) {
+				listAllEditorPicks.add(book);
+			}
+		}
+
+		int numPicks = Math.min(numBooks, listAllEditorPicks.size());
+		List<Book> books = new ArrayList<>(numPicks);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		// Partial Fisher-Yates: the first numPicks books end up a uniform
+		// random sample, drawn without repetition.
+		for (int i = 0; i < numPicks; i++) {
+			Collections.swap(listAllEditorPicks, i, random.nextInt(i, listAllEditorPicks.size()));
+			books.add(listAllEditorPicks.get(i).immutableBook());
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		return readConsistently(bookMap::values).stream()
+				.sorted(Comparator.comparing(BookStoreBook::getAverageRating).reversed())
+				.limit(numBooks)
+				.map(BookStoreBook::immutableBook)
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		return readConsistently(bookMap::values).stream()
+				.filter(BookStoreBook::hadSaleMiss)
+				.map(BookStoreBook::immutableStockBook)
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookRating bookRate : bookRating) {
+			validate(bookRate);
+		}
+
+		TreeMap<Integer, PendingUpdate> updates;
+
+		do {
+			updates = new TreeMap<>();
+
+			for (BookRating bookRate : bookRating) {
+				stage(updates, bookRate.getISBN()).forWrite().addRating(bookRate.getRating());
+			}
+		} while (!commit(updates));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public void removeAllBooks() throws BookStoreException {
+		long stamp = catalogueLock.writeLock();
+
+		try {
+			List<AtomicReference<BookStoreBook>> references = new ArrayList<>(bookMap.values());
+			references.sort(Comparator.comparingInt(reference -> reference.get().getISBN()));
+			claimForRemoval(references);
+			editorPicks.clear();
+			bookMap.clear();
+		} finally {
+			catalogueLock.unlockWrite(stamp);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		long stamp = catalogueLock.writeLock();
+
+		try {
+			for (Integer ISBN : isbnSet) {
+				if (BookStoreUtility.isInvalidISBN(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			List<AtomicReference<BookStoreBook>> references = new ArrayList<>(isbnSet.size());
+
+			for (int isbn : new TreeSet<>(isbnSet)) {
+				references.add(bookMap.get(isbn));
+			}
+
+			claimForRemoval(references);
+
+			for (int isbn : isbnSet) {
+				editorPicks.remove(isbn);
+				bookMap.remove(isbn);
+			}
+		} finally {
+			catalogueLock.unlockWrite(stamp);
+		}
+	}
+}
@@ -15,6 +15,7 @@ import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.IntObjectMap;
 
 /** {@link SingleLockConcurrentCertainBookStore} implements the {@link BookStore} and
  * {@link StockManager} functionalities.
@@ -25,7 +26,7 @@ import com.acertainbookstore.utils.BookStoreUtility;
 public class SingleLockConcurrentCertainBookStore implements BookStore, StockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private IntObjectMap<BookStoreBook> bookMap = null;
 	private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
 
 	/**
@@ -33,7 +34,7 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 	 */
 	public SingleLockConcurrentCertainBookStore() {
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntObjectMap<>();
 	}
 
 	private void validate(StockBook book) throws BookStoreException {
@@ -327,8 +328,7 @@ public class SingleLockConcurrentCertainBookStore implements BookStore, StockMan
 		}
 		lock.readLock().lock();
 		try{
-		List<BookStoreBook> listAllEditorPicks = bookMap.entrySet().stream()
-                .map(pair -> pair.getValue())
+		List<BookStoreBook> listAllEditorPicks = bookMap.values().stream()
 				.filter(book -> book.isEditorPick())
                 .collect(Collectors.toList());
 
@@ -0,0 +1,590 @@
+package com.acertainbookstore.business;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.IntObjectMap;
+
+/** {@link StripedLockConcurrentCertainBookStore} implements the {@link BookStore} and
+ * {@link StockManager} functionalities.
+ *
+ * The store uses a global lock that protects the structure of the book map and
+ * a fixed array of lock stripes that protect the state of the books. The global
+ * lock is only taken in write mode by addBooks, removeBooks and removeAllBooks;
+ * every other operation takes it in read mode and then locks the stripes of the
+ * ISBNs it touches, always in ascending stripe order so that two operations on
+ * overlapping sets of books cannot deadlock.
+ *
+ * getBooks() and getEditorPicks read-lock every stripe, so that they see the
+ * books as they are between two writes; while they scan, they hold off every
+ * writer, as a single lock would. This keeps a single copy of the books, at
+ * the price of making these scans as costly for the writers as in the single
+ * lock store.
+ *
+ * @see BookStore
+ * @see StockManager
+ */
+public class StripedLockConcurrentCertainBookStore implements BookStore, StockManager {
+
+	/** The default number of lock stripes. */
+	public static final int DEFAULT_NUM_STRIPES = 256;
+
+	/** The mapping of books from ISBN to {@link BookStoreBook}. */
+	private IntObjectMap<BookStoreBook> bookMap = null;
+
+	/** The lock protecting the structure of the book map. */
+	private final ReentrantReadWriteLock globalLock = new ReentrantReadWriteLock();
+
+	/** The locks protecting the state of the books, hashed by ISBN. */
+	private final ReentrantReadWriteLock[] stripes;
+
+	/**
+	 * Instantiates a new {@link StripedLockConcurrentCertainBookStore} with
+	 * {@link #DEFAULT_NUM_STRIPES} lock stripes.
+	 */
+	public StripedLockConcurrentCertainBookStore() {
+		this(DEFAULT_NUM_STRIPES);
+	}
+
+	/**
+	 * Instantiates a new {@link StripedLockConcurrentCertainBookStore}.
+	 *
+	 * @param numStripes
+	 *            the number of lock stripes, rounded up to a power of two
+	 */
+	public StripedLockConcurrentCertainBookStore(int numStripes) {
+		// Constructors are not synchronized
+		if (numStripes < 1) {
+			throw new IllegalArgumentException("numStripes = " + numStripes + ", but it must be positive");
+		}
+
+		int numLocks = 1;
+		while (numLocks < numStripes) {
+			numLocks <<= 1;
+		}
+
+		bookMap = new IntObjectMap<>();
+		stripes = new ReentrantReadWriteLock[numLocks];
+
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = new ReentrantReadWriteLock();
+		}
+	}
+
+	/**
+	 * Gets the index of the stripe protecting the book with the given ISBN.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the stripe index
+	 */
+	private int stripeFor(int isbn) {
+		// Spread the bits, since ISBNs are often allocated in sequence.
+		int hash = isbn * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+	}
+
+	/**
+	 * Gets the sorted, distinct indices of the stripes protecting the given
+	 * ISBNs. Locking stripes in this canonical order prevents deadlocks between
+	 * operations on overlapping sets of books.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the stripe indices in ascending order
+	 */
+	private int[] stripesFor(Collection<Integer> isbns) {
+		boolean[] needed = new boolean[stripes.length];
+		int count = 0;
+
+		for (int isbn : isbns) {
+			int stripe = stripeFor(isbn);
+
+			if (!needed[stripe]) {
+				needed[stripe] = true;
+				count++;
+			}
+		}
+
+		int[] result = new int[count];
+		int pos = 0;
+
+		for (int i = 0; i < needed.length && pos < count; i++) {
+			if (needed[i]) {
+				result[pos++] = i;
+			}
+		}
+
+		return result;
+	}
+
+	private void lockStripes(int[] stripeIndices, boolean exclusive) {
+		for (int stripe : stripeIndices) {
+			if (exclusive) {
+				stripes[stripe].writeLock().lock();
+			} else {
+				stripes[stripe].readLock().lock();
+			}
+		}
+	}
+
+	private void unlockStripes(int[] stripeIndices, boolean exclusive) {
+		for (int i = stripeIndices.length - 1; i >= 0; i--) {
+			if (exclusive) {
+				stripes[stripeIndices[i]].writeLock().unlock();
+			} else {
+				stripes[stripeIndices[i]].readLock().unlock();
+			}
+		}
+	}
+
+	private int[] allStripes() {
+		int[] result = new int[stripes.length];
+
+		for (int i = 0; i < result.length; i++) {
+			result[i] = i;
+		}
+
+		return result;
+	}
+
+	private void validate(StockBook book) throws BookStoreException {
+		int isbn = book.getISBN();
+		String bookTitle = book.getTitle();
+		String bookAuthor = book.getAuthor();
+		int noCopies = book.getNumCopies();
+		float bookPrice = book.getPrice();
+
+		if (BookStoreUtility.isInvalidISBN(isbn)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookTitle)) { // Check if the book has valid title
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookAuthor)) { // Check if the book has valid author
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isInvalidNoCopies(noCopies)) { // Check if the book has at least one copy
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (bookPrice < 0.0) { // Check if the price of the book is valid
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (bookMap.containsKey(isbn)) {// Check if the book is not in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+		}
+	}
+
+	private void validate(BookCopy bookCopy) throws BookStoreException {
+		int isbn = bookCopy.getISBN();
+		int numCopies = bookCopy.getNumCopies();
+
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidNoCopies(numCopies)) { // Check if the number of the book copy is larger than zero
+			throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
+		}
+	}
+
+	private void validate(BookEditorPick editorPickArg) throws BookStoreException {
+		int isbn = editorPickArg.getISBN();
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+	}
+
+	private void validateISBNInStock(Integer ISBN) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(ISBN)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+		}
+		if (!bookMap.containsKey(ISBN)) {// Check if the book is in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		globalLock.writeLock().lock();
+		try {
+			// Check if all are there
+			for (StockBook book : bookSet) {
+				validate(book);
+			}
+
+			for (StockBook book : bookSet) {
+				int isbn = book.getISBN();
+				bookMap.put(isbn, new BookStoreBook(book));
+			}
+		}
+		finally {
+			globalLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		globalLock.readLock().lock();
+		try {
+			for (BookCopy bookCopy : bookCopiesSet) {
+				validate(bookCopy);
+			}
+
+			int[] lockedStripes = stripesFor(bookCopiesSet.stream().map(BookCopy::getISBN).collect(Collectors.toList()));
+			lockStripes(lockedStripes, true);
+			try {
+				// Update the number of copies
+				for (BookCopy bookCopy : bookCopiesSet) {
+					bookMap.get(bookCopy.getISBN()).addCopies(bookCopy.getNumCopies());
+				}
+			}
+			finally {
+				unlockStripes(lockedStripes, true);
+			}
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() {
+		globalLock.readLock().lock();
+		try {
+			int[] lockedStripes = allStripes();
+			lockStripes(lockedStripes, false);
+			try {
+				return bookMap.values().stream()
+						.map(book -> book.immutableStockBook())
+						.collect(Collectors.toList());
+			}
+			finally {
+				unlockStripes(lockedStripes, false);
+			}
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		// Check that all ISBNs that we add/remove are there first.
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		globalLock.readLock().lock();
+		try {
+			for (BookEditorPick editorPickArg : editorPicks) {
+				validate(editorPickArg);
+			}
+
+			int[] lockedStripes = stripesFor(editorPicks.stream().map(BookEditorPick::getISBN).collect(Collectors.toList()));
+			lockStripes(lockedStripes, true);
+			try {
+				for (BookEditorPick editorPickArg : editorPicks) {
+					bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+				}
+			}
+			finally {
+				unlockStripes(lockedStripes, true);
+			}
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		BookStoreBook book;
+		boolean saleMiss = false;
+
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+
+		globalLock.readLock().lock();
+		try {
+			// Check that all ISBNs that we buy are there first.
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				validate(bookCopyToBuy);
+			}
+
+			int[] lockedStripes = stripesFor(bookCopiesToBuy.stream().map(BookCopy::getISBN).collect(Collectors.toList()));
+			lockStripes(lockedStripes, true);
+			try {
+				for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+					book = bookMap.get(bookCopyToBuy.getISBN());
+
+					if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+						// If we cannot sell the copies of the book, it is a miss.
+						salesMisses.put(bookCopyToBuy.getISBN(), bookCopyToBuy.getNumCopies() - book.getNumCopies());
+						saleMiss = true;
+					}
+				}
+
+				// We throw exception now since we want to see how many books in the
+				// order incurred misses which is used by books in demand
+				if (saleMiss) {
+					for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+						book = bookMap.get(saleMissEntry.getKey());
+						book.addSaleMiss(saleMissEntry.getValue());
+					}
+					throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+				}
+
+				// Then make the purchase.
+				for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+					book = bookMap.get(bookCopyToBuy.getISBN());
+					book.buyCopies(bookCopyToBuy.getNumCopies());
+				}
+			}
+			finally {
+				unlockStripes(lockedStripes, true);
+			}
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		globalLock.readLock().lock();
+		try {
+			for (Integer ISBN : isbnSet) {
+				validateISBNInStock(ISBN);
+			}
+
+			int[] lockedStripes = stripesFor(isbnSet);
+			lockStripes(lockedStripes, false);
+			try {
+				return isbnSet.stream()
+						.map(isbn -> bookMap.get(isbn).immutableStockBook())
+						.collect(Collectors.toList());
+			}
+			finally {
+				unlockStripes(lockedStripes, false);
+			}
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		globalLock.readLock().lock();
+		try {
+			// Check that all ISBNs that we rate are there to start with.
+			for (Integer ISBN : isbnSet) {
+				validateISBNInStock(ISBN);
+			}
+
+			// Title, author and price never change, so no stripe needs to be locked.
+			return isbnSet.stream()
+					.map(isbn -> bookMap.get(isbn).immutableBook())
+					.collect(Collectors.toList());
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		List<BookStoreBook> listAllEditorPicks;
+
+		globalLock.readLock().lock();
+		try {
+			int[] lockedStripes = allStripes();
+			lockStripes(lockedStripes, false);
+			try {
+				listAllEditorPicks = bookMap.values().stream()
+						.filter(book -> book.isEditorPick())
+						.collect(Collectors.toList());
+			}
+			finally {
+				unlockStripes(lockedStripes, false);
+			}
+		}
+		finally {
+			globalLock.readLock().unlock();
+		}
+
+		// Find numBooks random indices of books that will be picked.
+		Random rand = new Random();
+		Set<Integer> tobePicked = new HashSet<>();
+		int rangePicks = listAllEditorPicks.size();
+
+		if (rangePicks <= numBooks) {
+
+			// We need to add all books.
+			for (int i = 0; i < listAllEditorPicks.size(); i++) {
+				tobePicked.add(i);
+			}
+		} else {
+
+			// We need to pick randomly the books that need to be returned.
+			int randNum;
+
+			while (tobePicked.size() < numBooks) {
+				randNum = rand.nextInt(rangePicks);
+				tobePicked.add(randNum);
+			}
+		}
+
+		// Return all the books by the randomly chosen indices; the immutable
+		// part of a book can be copied without holding any lock.
+		return tobePicked.stream()
+				.map(index -> listAllEditorPicks.get(index).immutableBook())
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		throw new BookStoreException();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		throw new BookStoreException();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		throw new BookStoreException();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public void removeAllBooks() throws BookStoreException {
+		globalLock.writeLock().lock();
+		try {
+			bookMap.clear();
+		}
+		finally {
+			globalLock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+		globalLock.writeLock().lock();
+		try {
+			for (Integer ISBN : isbnSet) {
+				if (BookStoreUtility.isInvalidISBN(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+				}
+
+				if (!bookMap.containsKey(ISBN)) {
+					throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+				}
+			}
+
+			for (int isbn : isbnSet) {
+				bookMap.remove(isbn);
+			}
+		}
+		finally {
+			globalLock.writeLock().unlock();
+		}
+	}
+}
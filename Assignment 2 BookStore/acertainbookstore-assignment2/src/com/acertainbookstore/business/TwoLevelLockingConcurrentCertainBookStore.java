@@ -18,6 +18,7 @@ import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.IntObjectMap;
 
 /** {@link TwoLevelLockingConcurrentCertainBookStore} implements the {@link BookStore} and
  * {@link StockManager} functionalities.
@@ -28,7 +29,7 @@ import com.acertainbookstore.utils.BookStoreUtility;
 public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, StockManager {
 
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private IntObjectMap<BookStoreBook> bookMap = null;
 	private Map<Integer, ReentrantReadWriteLock> intentionLock = null;
 	private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
 
@@ -37,7 +38,7 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 	 */
 	public TwoLevelLockingConcurrentCertainBookStore() {
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntObjectMap<>();
 		intentionLock = new HashMap<>();
 	}
 
@@ -378,8 +379,7 @@ public class TwoLevelLockingConcurrentCertainBookStore implements BookStore, Sto
 				intentionLock.put(entry.getKey(), new ReentrantReadWriteLock(true));
 				intentionLock.get(entry.getKey()).readLock().lock();
 			}
-			List<BookStoreBook> listAllEditorPicks = bookMap.entrySet().stream()
-				.map(pair -> pair.getValue())
+			List<BookStoreBook> listAllEditorPicks = bookMap.values().stream()
 				.filter(book -> book.isEditorPick())
 				.collect(Collectors.toList());
 
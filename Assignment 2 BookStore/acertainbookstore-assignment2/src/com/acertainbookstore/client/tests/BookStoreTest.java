@@ -37,6 +37,12 @@ public class BookStoreTest {
 	/** Single lock test */
 	private static boolean singleLock = false;
 
+	/** Striped lock test */
+	private static boolean stripedLock = false;
+
+	/** Optimistic concurrency control test */
+	private static boolean optimistic = false;
+
 	/** Number of iteration of operations in concurrency threads **/
 	private static final int iterations = 1000;
 	
@@ -237,11 +243,25 @@ public class BookStoreTest {
 			String singleLockProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_SINGLE_LOCK);
 			singleLock = (singleLockProperty != null) ? Boolean.parseBoolean(singleLockProperty) : singleLock;
 
+			String stripedLockProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_STRIPED_LOCK);
+			stripedLock = (stripedLockProperty != null) ? Boolean.parseBoolean(stripedLockProperty) : stripedLock;
+
+			String optimisticProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_OPTIMISTIC);
+			optimistic = (optimisticProperty != null) ? Boolean.parseBoolean(optimisticProperty) : optimistic;
+
 			if (localTest) {
 				if (singleLock) {
 					SingleLockConcurrentCertainBookStore store = new SingleLockConcurrentCertainBookStore();
 					storeManager = store;
 					client = store;
+				} else if (stripedLock) {
+					StripedLockConcurrentCertainBookStore store = new StripedLockConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
+				} else if (optimistic) {
+					OptimisticConcurrentCertainBookStore store = new OptimisticConcurrentCertainBookStore();
+					storeManager = store;
+					client = store;
 				} else {
 					TwoLevelLockingConcurrentCertainBookStore store = new TwoLevelLockingConcurrentCertainBookStore();
 					storeManager = store;
@@ -1,6 +1,8 @@
 package com.acertainbookstore.server;
 
+import com.acertainbookstore.business.OptimisticConcurrentCertainBookStore;
 import com.acertainbookstore.business.SingleLockConcurrentCertainBookStore;
+import com.acertainbookstore.business.StripedLockConcurrentCertainBookStore;
 import com.acertainbookstore.business.TwoLevelLockingConcurrentCertainBookStore;
 
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -22,6 +24,14 @@ public class BookStoreHTTPServer {
 	 *  false - two-level locking */
 	private static final boolean SINGLE_LOCK = true;
 
+	/** The constant, defining whether the striped locking scheme is used;
+	 *  it takes priority over SINGLE_LOCK */
+	private static final boolean STRIPED_LOCK = false;
+
+	/** The constant, defining whether optimistic concurrency control is used;
+	 *  it takes priority over SINGLE_LOCK */
+	private static final boolean OPTIMISTIC = false;
+
 	/**
 	 * Prevents the instantiation of a new {@link BookStoreHTTPServer}.
 	 */
@@ -39,12 +49,42 @@ public class BookStoreHTTPServer {
 		int listenOnPort = DEFAULT_PORT;
 		
 		BookStoreHTTPMessageHandler handler = null;
-		
-		if (SINGLE_LOCK) {
-			SingleLockConcurrentCertainBookStore bookStore = new SingleLockConcurrentCertainBookStore();
+
+		String singleLockString = System.getProperty(BookStoreConstants.PROPERTY_KEY_SINGLE_LOCK);
+		String stripedLockString = System.getProperty(BookStoreConstants.PROPERTY_KEY_STRIPED_LOCK);
+		boolean stripedLock = (stripedLockString != null) ? Boolean.parseBoolean(stripedLockString) : STRIPED_LOCK;
+
+		String optimisticString = System.getProperty(BookStoreConstants.PROPERTY_KEY_OPTIMISTIC);
+		boolean optimistic = (optimisticString != null) ? Boolean.parseBoolean(optimisticString) : OPTIMISTIC;
+
+		// The striped and optimistic stores take priority over the default
+		// single lock, but asking for two stores at once is an error.
+		boolean singleLock;
+
+		if (stripedLock || optimistic) {
+			if ((stripedLock && optimistic) || Boolean.parseBoolean(singleLockString)) {
+				throw new IllegalArgumentException("Conflicting store properties: "
+						+ BookStoreConstants.PROPERTY_KEY_SINGLE_LOCK + "=" + singleLockString + ", "
+						+ BookStoreConstants.PROPERTY_KEY_STRIPED_LOCK + "=" + stripedLock + ", "
+						+ BookStoreConstants.PROPERTY_KEY_OPTIMISTIC + "=" + optimistic);
+			}
+
+			singleLock = false;
+		} else {
+			singleLock = (singleLockString != null) ? Boolean.parseBoolean(singleLockString) : SINGLE_LOCK;
+		}
+
+		if (stripedLock) {
+			StripedLockConcurrentCertainBookStore bookStore = new StripedLockConcurrentCertainBookStore();
 			/* we pass bookStore to BookStoreHTTPMessageHandler constructor twice, 
 			 * since it implements both interfaces: BookStore and StockManager */
 			handler = new BookStoreHTTPMessageHandler(bookStore, bookStore);
+		} else if (optimistic) {
+			OptimisticConcurrentCertainBookStore bookStore = new OptimisticConcurrentCertainBookStore();
+			handler = new BookStoreHTTPMessageHandler(bookStore, bookStore);
+		} else if (singleLock) {
+			SingleLockConcurrentCertainBookStore bookStore = new SingleLockConcurrentCertainBookStore();
+			handler = new BookStoreHTTPMessageHandler(bookStore, bookStore);
 		} else {
 			TwoLevelLockingConcurrentCertainBookStore bookStore = new TwoLevelLockingConcurrentCertainBookStore();
 			handler = new BookStoreHTTPMessageHandler(bookStore, bookStore);
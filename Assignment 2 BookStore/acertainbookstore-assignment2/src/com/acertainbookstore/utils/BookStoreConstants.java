@@ -60,6 +60,12 @@ public final class BookStoreConstants {
 	/** The Constant PROPERTY_KEY_SINGLE_LOCK. */
 	public static final String PROPERTY_KEY_SINGLE_LOCK = "singlelock";
 
+	/** The Constant PROPERTY_KEY_STRIPED_LOCK. */
+	public static final String PROPERTY_KEY_STRIPED_LOCK = "stripedlock";
+
+	/** The Constant PROPERTY_KEY_OPTIMISTIC. */
+	public static final String PROPERTY_KEY_OPTIMISTIC = "optimistic";
+
 	/** The Constant PROPERTY_KEY_SERVER_PORT. */
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
 
@@ -0,0 +1,218 @@
+package com.acertainbookstore.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link ConcurrentIntObjectMap} is a thread-safe map from <code>int</code>
+ * keys to values. The keys are spread over a fixed number of segments, each an
+ * {@link IntObjectMap} guarded by its own {@link StampedLock}, so that writers
+ * to different segments do not contend.
+ *
+ * Lookups first read the segment without locking and then validate the stamp;
+ * only if a writer intervened do they retry under the read lock. An
+ * uncontended lookup therefore takes no lock, boxes nothing and allocates
+ * nothing. Like a <code>ConcurrentHashMap</code>, bulk reads such as
+ * {@link #values()} are consistent per segment, not across segments.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class ConcurrentIntObjectMap<V> {
+
+	/** The number of bits selecting the segment. */
+	private static final int SEGMENT_BITS = 4;
+
+	/** The segments. */
+	private final Segment<V>[] segments;
+
+	/**
+	 * Instantiates a new {@link ConcurrentIntObjectMap}.
+	 */
+	public ConcurrentIntObjectMap() {
+		segments = newSegments(1 << SEGMENT_BITS);
+
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment<>();
+		}
+	}
+
+	/**
+	 * Creates an array of segments. Arrays of a generic type cannot be
+	 * created, so the array of the raw type is cast.
+	 *
+	 * @param <V>
+	 *            the type of the values
+	 * @param length
+	 *            the number of segments
+	 * @return the array of segments
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <V> Segment<V>[] newSegments(int length) {
+		return new Segment[length];
+	}
+
+	/**
+	 * Gets the segment of a key. It is chosen by the high bits of the mixed
+	 * key, while the segment maps use the low bits for their buckets.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the segment
+	 */
+	private Segment<V> segmentFor(int key) {
+		int hash = key * 0x9E3779B9;
+		return segments[hash >>> (Integer.SIZE - SEGMENT_BITS)];
+	}
+
+	/**
+	 * Gets the value mapped to <code>key</code>.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value, or null if the key is not in the map
+	 */
+	public V get(int key) {
+		Segment<V> segment = segmentFor(key);
+		long stamp = segment.lock.tryOptimisticRead();
+
+		if (stamp != 0) {
+			V value = segment.map.get(key);
+
+			if (segment.lock.validate(stamp)) {
+				return value;
+			}
+		}
+
+		stamp = segment.lock.readLock();
+
+		try {
+			return segment.map.get(key);
+		} finally {
+			segment.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Checks if <code>key</code> is in the map.
+	 *
+	 * @param key
+	 *            the key
+	 * @return true, if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps <code>key</code> to <code>value</code>.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value, which must not be null
+	 * @return the previous value, or null if the key was not in the map
+	 */
+	public V put(int key, V value) {
+		Segment<V> segment = segmentFor(key);
+		long stamp = segment.lock.writeLock();
+
+		try {
+			return segment.map.put(key, value);
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes <code>key</code> from the map.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the removed value, or null if the key was not in the map
+	 */
+	public V remove(int key) {
+		Segment<V> segment = segmentFor(key);
+		long stamp = segment.lock.writeLock();
+
+		try {
+			return segment.map.remove(key);
+		} finally {
+			segment.lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Gets the number of entries in the map.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		int size = 0;
+
+		for (Segment<V> segment : segments) {
+			long stamp = segment.lock.readLock();
+
+			try {
+				size += segment.map.size();
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		for (Segment<V> segment : segments) {
+			long stamp = segment.lock.writeLock();
+
+			try {
+				segment.map.clear();
+			} finally {
+				segment.lock.unlockWrite(stamp);
+			}
+		}
+	}
+
+	/**
+	 * Gets a copy of the values of the map, in no particular order.
+	 *
+	 * @return the values
+	 */
+	public Collection<V> values() {
+		List<V> values = new ArrayList<>();
+
+		for (Segment<V> segment : segments) {
+			long stamp = segment.lock.readLock();
+
+			try {
+				values.addAll(segment.map.values());
+			} finally {
+				segment.lock.unlockRead(stamp);
+			}
+		}
+
+		return values;
+	}
+
+	/**
+	 * {@link Segment} is a map guarded by its own lock.
+	 *
+	 * @param <V>
+	 *            the type of the values
+	 */
+	private static final class Segment<V> {
+
+		/** The lock. */
+		final StampedLock lock = new StampedLock();
+
+		/** The map. */
+		final IntObjectMap<V> map = new IntObjectMap<>();
+	}
+}
@@ -0,0 +1,271 @@
+package com.acertainbookstore.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.objenesis.strategy.StdInstantiatorStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+import com.acertainbookstore.utils.BookStoreCompactSerializer;
+import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.utils.BookStoreResponse;
+import com.acertainbookstore.utils.BookStoreXStreamSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * {@link SerializerBenchmark} measures the time to serialize and deserialize
+ * the payloads of the bookstore messages with each serializer. The size of
+ * each payload is printed when its state is set up, as JMH only reports
+ * times.
+ *
+ * The unregistered serializer is the Kryo serializer as it was before it
+ * registered the classes of the messages and reused its buffers, kept here as
+ * the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializerBenchmark {
+
+	/** The seed of the payloads. */
+	private static final long SEED = 42;
+
+	/** The author of the books. */
+	private static final String AUTHOR = "Donald Knuth";
+
+	/** The number of books in the sets of getBooks and buyBooks. */
+	private static final int NUM_BOOKS_ASKED = 5;
+
+	/**
+	 * {@link Payload} is a serializer and a message, serialized once so that
+	 * it can be deserialized. Serializers are not thread-safe, so each thread
+	 * has its own.
+	 */
+	@State(Scope.Thread)
+	public static class Payload {
+
+		/** The serializer. */
+		@Param({ "kryo", "kryo-unregistered", "compact", "xstream" })
+		public String serializer;
+
+		/**
+		 * The message: the reply to listBooks, the request and the reply of
+		 * getBooks, or the request of buyBooks.
+		 */
+		@Param({ "listBooks", "getBooks", "getBooksReply", "buyBooks" })
+		public String message;
+
+		/** The number of books in the reply to listBooks. */
+		@Param({ "1000" })
+		public int numBooks;
+
+		/** The serializer under test. */
+		BookStoreSerializer bookStoreSerializer;
+
+		/** The message under test. */
+		Object value;
+
+		/** The serialized message. */
+		byte[] bytes;
+
+		/**
+		 * Creates the serializer and the message.
+		 *
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		@Setup
+		public void setUp() throws IOException {
+			switch (serializer) {
+			case "kryo":
+				bookStoreSerializer = new BookStoreKryoSerializer();
+				break;
+			case "kryo-unregistered":
+				bookStoreSerializer = new UnregisteredKryoSerializer();
+				break;
+			case "compact":
+				bookStoreSerializer = new BookStoreCompactSerializer();
+				break;
+			case "xstream":
+				bookStoreSerializer = new BookStoreXStreamSerializer();
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown serializer " + serializer);
+			}
+
+			value = newMessage(message, numBooks, new Random(SEED));
+			bytes = bookStoreSerializer.serialize(value);
+			System.out.println("Payload of " + message + " with " + serializer + ": " + bytes.length + " bytes");
+		}
+	}
+
+	/**
+	 * Creates the message of a benchmark.
+	 *
+	 * @param message
+	 *            the message
+	 * @param numBooks
+	 *            the number of books in the reply to listBooks
+	 * @param random
+	 *            the random
+	 * @return the message
+	 */
+	static Object newMessage(String message, int numBooks, Random random) {
+		switch (message) {
+		case "listBooks":
+			List<StockBook> stockBooks = new ArrayList<>(numBooks);
+
+			for (int i = 1; i <= numBooks; i++) {
+				// Each book has its own strings, as the books of a store read
+				// them from the requests which added them; Kryo would
+				// otherwise write a shared string once and refer to it.
+				stockBooks.add(new ImmutableStockBook(i, "The Art of Computer Programming, Volume " + i,
+						new String(AUTHOR), 10 + random.nextInt(100), random.nextInt(50), random.nextInt(5),
+						random.nextInt(100), random.nextInt(500), random.nextBoolean()));
+			}
+
+			BookStoreResponse listBooksResponse = new BookStoreResponse();
+			listBooksResponse.setList(stockBooks);
+			return listBooksResponse;
+
+		case "getBooks":
+			Set<Integer> isbns = new HashSet<>();
+
+			while (isbns.size() < NUM_BOOKS_ASKED) {
+				isbns.add(1 + random.nextInt(numBooks));
+			}
+
+			return isbns;
+
+		case "getBooksReply":
+			List<Book> books = new ArrayList<>(NUM_BOOKS_ASKED);
+
+			for (int i = 1; i <= NUM_BOOKS_ASKED; i++) {
+				books.add(new ImmutableBook(1 + random.nextInt(numBooks),
+						"The Art of Computer Programming, Volume " + i, new String(AUTHOR), 10 + random.nextInt(100)));
+			}
+
+			BookStoreResponse getBooksResponse = new BookStoreResponse();
+			getBooksResponse.setList(books);
+			return getBooksResponse;
+
+		case "buyBooks":
+			Set<BookCopy> bookCopies = new HashSet<>();
+
+			while (bookCopies.size() < NUM_BOOKS_ASKED) {
+				bookCopies.add(new BookCopy(1 + random.nextInt(numBooks), 1));
+			}
+
+			return bookCopies;
+
+		default:
+			throw new IllegalArgumentException("Unknown message " + message);
+		}
+	}
+
+	/**
+	 * Serializes the message.
+	 *
+	 * @param payload
+	 *            the payload
+	 * @return the serialized message
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Benchmark
+	public byte[] serialize(Payload payload) throws IOException {
+		return payload.bookStoreSerializer.serialize(payload.value);
+	}
+
+	/**
+	 * Deserializes the message.
+	 *
+	 * @param payload
+	 *            the payload
+	 * @return the message
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Benchmark
+	public Object deserialize(Payload payload) throws IOException {
+		return payload.bookStoreSerializer.deserialize(payload.bytes);
+	}
+
+	/**
+	 * {@link UnregisteredKryoSerializer} is the Kryo serializer which only
+	 * registers {@link ImmutableStockBook}, and creates new streams on every
+	 * call.
+	 */
+	static final class UnregisteredKryoSerializer implements BookStoreSerializer {
+
+		/** The binary stream. */
+		private final Kryo binaryStream;
+
+		/**
+		 * Instantiates a new {@link UnregisteredKryoSerializer}.
+		 */
+		UnregisteredKryoSerializer() {
+			binaryStream = new Kryo();
+			binaryStream.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+			binaryStream.register(ImmutableStockBook.class);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * com.acertainbookstore.interfaces.BookStoreSerializer#serialize(java.
+		 * lang.Object)
+		 */
+		@Override
+		public byte[] serialize(Object object) throws IOException {
+			try (ByteArrayOutputStream outStream = new ByteArrayOutputStream(); Output out = new Output(outStream)) {
+				binaryStream.writeClassAndObject(out, object);
+				out.flush();
+				return outStream.toByteArray();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see
+		 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(byte
+		 * [])
+		 */
+		@Override
+		public Object deserialize(byte[] bytes) throws IOException {
+			try (InputStream inStream = new ByteArrayInputStream(bytes); Input in = new Input(inStream)) {
+				return binaryStream.readClassAndObject(in);
+			}
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link BookSelection} selects the first books of a catalogue in some order
+ * without sorting the catalogue: a scan keeps the books selected so far in a
+ * heap with the last of them on top, so that it costs O(n log limit) and
+ * holds at most limit books, rather than O(n log n) and n books.
+ */
+final class BookSelection {
+
+	/** The order of the number of copies, then of the ISBNs. */
+	static final Comparator<BookStoreBook> BY_COPIES = Comparator.comparingInt(BookStoreBook::getNumCopies)
+			.thenComparingInt(BookStoreBook::getISBN);
+
+	/**
+	 * Prevents the instantiation of {@link BookSelection}.
+	 */
+	private BookSelection() {
+		// Prevent instantiation.
+	}
+
+	/**
+	 * Checks the limit of a selection.
+	 *
+	 * @param limit
+	 *            the maximum number of books
+	 * @throws BookStoreException
+	 *             if the limit is negative
+	 */
+	static void validateLimit(int limit) throws BookStoreException {
+		if (limit < 0) {
+			throw new BookStoreException("limit = " + limit + ", but it must be positive");
+		}
+	}
+
+	/**
+	 * Selects the first books of a catalogue in an order.
+	 *
+	 * @param books
+	 *            the books of the catalogue
+	 * @param filter
+	 *            the filter of the books which may be selected
+	 * @param order
+	 *            the order
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the immutable copies of the books selected, in order
+	 */
+	static List<StockBook> selectFirst(Iterable<BookStoreBook> books, Predicate<BookStoreBook> filter,
+			Comparator<BookStoreBook> order, int limit) {
+		if (limit == 0) {
+			return new ArrayList<>();
+		}
+
+		PriorityQueue<BookStoreBook> firstBooks = new PriorityQueue<>(Math.min(limit, 1024), order.reversed());
+
+		for (BookStoreBook book : books) {
+			if (!filter.test(book)) {
+				continue;
+			}
+
+			if (firstBooks.size() < limit) {
+				firstBooks.add(book);
+			} else if (order.compare(book, firstBooks.peek()) < 0) {
+				firstBooks.poll();
+				firstBooks.add(book);
+			}
+		}
+
+		List<StockBook> selectedBooks = new ArrayList<>(firstBooks.size());
+
+		while (!firstBooks.isEmpty()) {
+			selectedBooks.add(firstBooks.poll().immutableStockBook());
+		}
+
+		Collections.reverse(selectedBooks);
+		return selectedBooks;
+	}
+}
@@ -69,6 +69,24 @@ public class BookStoreBook extends ImmutableBook {
 		this.setEditorPick(bookToCopy.isEditorPick());
 	}
 
+	/**
+	 * Instantiates a new {@link BookStoreBook} with the same state as another
+	 * {@link BookStoreBook}. The title and author are shared, since strings
+	 * are immutable.
+	 *
+	 * @param bookToCopy
+	 *            the book to copy
+	 */
+	public BookStoreBook(BookStoreBook bookToCopy) {
+		super(bookToCopy.getISBN(), bookToCopy.getTitle(), bookToCopy.getAuthor(), bookToCopy.getPrice());
+
+		this.setNumSaleMisses(bookToCopy.getNumSaleMisses());
+		this.setNumTimesRated(bookToCopy.getNumTimesRated());
+		this.setNumCopies(bookToCopy.getNumCopies());
+		this.setTotalRating(bookToCopy.getTotalRating());
+		this.setEditorPick(bookToCopy.isEditorPick());
+	}
+
 	/**
 	 * Gets the total rating.
 	 *
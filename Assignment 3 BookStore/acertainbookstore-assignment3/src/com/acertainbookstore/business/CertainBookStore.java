@@ -1,5 +1,10 @@
 package com.acertainbookstore.business;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -8,8 +13,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import com.acertainbookstore.interfaces.BookStore;
@@ -17,18 +24,119 @@ import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.IntObjectMap;
+import com.acertainbookstore.utils.SnapshotFile;
+import com.acertainbookstore.utils.WriteAheadLog;
 
 /**
  * {@link CertainBookStore} implements the {@link BookStore} and
  * {@link StockManager} functionalities.
+ *
+ * A store created with a data directory is durable: every mutation is
+ * validated, appended to a {@link WriteAheadLog} and then applied, all under
+ * the store lock, so the log order is the order in which the mutations were
+ * applied. The caller then waits for the log to be forced after releasing the
+ * lock, which lets concurrent callers share one force.
+ *
+ * The log is split into numbered segments. A checkpoint switches to a new
+ * segment and writes a snapshot of the catalogue as of the switch, after which
+ * the older segments are deleted. The snapshot is written without holding the
+ * store lock: books mutated while it is written are copied first, so the
+ * snapshot only reads books which no longer change. When the store is created
+ * again with the same directory, it loads the snapshot and replays the segments
+ * written after it.
  * 
  * @see BookStore
  * @see StockManager
+ * @see WriteAheadLog
+ * @see SnapshotFile
  */
 public class CertainBookStore implements BookStore, StockManager {
 
+	/** The log record type of added books. */
+	private static final byte RECORD_ADD_BOOKS = 1;
+
+	/** The log record type of added copies. */
+	private static final byte RECORD_ADD_COPIES = 2;
+
+	/** The log record type of bought copies. */
+	private static final byte RECORD_BUY_BOOKS = 3;
+
+	/** The log record type of sale misses. */
+	private static final byte RECORD_SALE_MISSES = 4;
+
+	/** The log record type of ratings. */
+	private static final byte RECORD_RATE_BOOKS = 5;
+
+	/** The log record type of editor pick updates. */
+	private static final byte RECORD_UPDATE_EDITOR_PICKS = 6;
+
+	/** The log record type of removed books. */
+	private static final byte RECORD_REMOVE_BOOKS = 7;
+
+	/** The log record type of removing all books. */
+	private static final byte RECORD_REMOVE_ALL_BOOKS = 8;
+
+	/** The name of the snapshot file in the data directory. */
+	private static final String SNAPSHOT_FILE_NAME = "snapshot";
+
+	/** The name prefix of the log segments in the data directory. */
+	private static final String LOG_FILE_PREFIX = "log.";
+
+	/**
+	 * {@link RecordWriter} writes the body of a log record.
+	 */
+	private interface RecordWriter {
+
+		/**
+		 * Writes the body of the record.
+		 *
+		 * @param out
+		 *            the output
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+
 	/** The mapping of books from ISBN to {@link BookStoreBook}. */
-	private Map<Integer, BookStoreBook> bookMap = null;
+	private IntObjectMap<BookStoreBook> bookMap = null;
+
+	/** The books ordered by average rating. */
+	private final TopRatedIndex topRatedIndex = new TopRatedIndex();
+
+	/** The books ordered by number of copies. */
+	private final LeastCopiesIndex leastCopiesIndex = new LeastCopiesIndex();
+
+	/** The ISBNs of the books in ascending order, to page through them. */
+	private final TreeSet<Integer> sortedIsbns = new TreeSet<>();
+
+	/** The ISBNs of the books with sale misses. */
+	private final Set<Integer> inDemandIsbns = ConcurrentHashMap.newKeySet();
+
+	/** The editor picked books. */
+	private final EditorPickIndex editorPickIndex = new EditorPickIndex();
+
+	/** The data directory, or null if the store is not durable. */
+	private File directory = null;
+
+	/** The current log segment, or null if the store is not durable. */
+	private volatile WriteAheadLog log = null;
+
+	/** The number of the current log segment. */
+	private int logSegment = 0;
+
+	/** The lock serializing checkpoints. */
+	private final Object checkpointLock = new Object();
+
+	/** Whether a snapshot is being written from the books of {@link #bookMap}. */
+	private boolean snapshotInProgress = false;
+
+	/**
+	 * The ISBNs of the books which are not read by the snapshot being written,
+	 * because they were copied or added since it started.
+	 */
+	private final Set<Integer> booksOutsideSnapshot = new HashSet<>();
 
 	/**
 	 * Instantiates a new {@link CertainBookStore}.
@@ -36,8 +144,448 @@ public class CertainBookStore implements BookStore, StockManager {
 	public CertainBookStore() {
 
 		// Constructors are not synchronized
-		bookMap = new HashMap<>();
+		bookMap = new IntObjectMap<>();
+	}
+
+	/**
+	 * Instantiates a new durable {@link CertainBookStore}, restoring the
+	 * catalogue from the snapshot and log segments in <code>directory</code>.
+	 *
+	 * @param directory
+	 *            the data directory, which is created if needed
+	 * @throws BookStoreException
+	 *             if the catalogue cannot be restored
+	 */
+	public CertainBookStore(File directory) throws BookStoreException {
+		this();
+		this.directory = directory;
+
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create " + directory);
+			}
+
+			int[] firstSegment = { 0 };
+
+			SnapshotFile.read(new File(directory, SNAPSHOT_FILE_NAME), in -> {
+				firstSegment[0] = in.readInt();
+				int numBooks = in.readInt();
+
+				for (int i = 0; i < numBooks; i++) {
+					putBook(new BookStoreBook(readBook(in)));
+				}
+			});
+
+			logSegment = firstSegment[0];
+
+			for (int segment : getLogSegments().keySet()) {
+				if (segment < firstSegment[0]) {
+					continue;
+				}
+
+				if (log != null) {
+					log.close();
+				}
+
+				log = new WriteAheadLog(getLogFile(segment), this::replay);
+				logSegment = segment;
+			}
+
+			if (log == null) {
+				log = new WriteAheadLog(getLogFile(logSegment), this::replay);
+			}
+		} catch (IOException ex) {
+			throw new BookStoreException("Cannot restore the store from " + directory, ex);
+		}
+	}
+
+	/**
+	 * Gets the log segments in the data directory.
+	 *
+	 * @return the log segment files, by number
+	 */
+	private TreeMap<Integer, File> getLogSegments() {
+		TreeMap<Integer, File> segments = new TreeMap<>();
+		File[] files = directory.listFiles();
+
+		for (File file : (files != null) ? files : new File[0]) {
+			String name = file.getName();
+
+			if (name.startsWith(LOG_FILE_PREFIX)) {
+				try {
+					segments.put(Integer.parseInt(name.substring(LOG_FILE_PREFIX.length())), file);
+				} catch (NumberFormatException ex) {
+					// Not a log segment.
+				}
+			}
+		}
+
+		return segments;
+	}
+
+	/**
+	 * Gets the file of a log segment.
+	 *
+	 * @param segment
+	 *            the number of the segment
+	 * @return the file
+	 */
+	private File getLogFile(int segment) {
+		return new File(directory, LOG_FILE_PREFIX + segment);
+	}
+
+	/**
+	 * Writes a snapshot of the catalogue and deletes the log segments it
+	 * covers, so that a restart only replays the mutations made after it.
+	 * Writers are only held up while the log switches to a new segment; the
+	 * snapshot itself is written while they proceed.
+	 *
+	 * @throws BookStoreException
+	 *             if the store is not durable or the snapshot cannot be
+	 *             written
+	 */
+	public void checkpoint() throws BookStoreException {
+		if (directory == null) {
+			throw new BookStoreException("The store is not durable");
+		}
+
+		synchronized (checkpointLock) {
+			BookStoreBook[] books;
+			int firstSegment;
+
+			synchronized (this) {
+				try {
+					log.close();
+					log = new WriteAheadLog(getLogFile(logSegment + 1), in -> {
+					});
+					logSegment++;
+				} catch (IOException ex) {
+					throw new BookStoreException("Cannot switch to a new log segment", ex);
+				}
+
+				books = bookMap.values().toArray(new BookStoreBook[0]);
+				firstSegment = logSegment;
+				snapshotInProgress = true;
+			}
+
+			try {
+				SnapshotFile.write(new File(directory, SNAPSHOT_FILE_NAME), out -> {
+					out.writeInt(firstSegment);
+					out.writeInt(books.length);
+
+					for (BookStoreBook book : books) {
+						writeBook(out, book.immutableStockBook());
+					}
+				});
+			} catch (IOException ex) {
+				throw new BookStoreException("Cannot write the snapshot", ex);
+			} finally {
+				synchronized (this) {
+					snapshotInProgress = false;
+					booksOutsideSnapshot.clear();
+				}
+			}
+
+			for (Map.Entry<Integer, File> segment : getLogSegments().headMap(firstSegment).entrySet()) {
+				segment.getValue().delete();
+			}
+		}
+	}
+
+	/**
+	 * Closes the log of a durable store, after making it durable.
+	 *
+	 * @throws BookStoreException
+	 *             if the log cannot be closed
+	 */
+	public synchronized void close() throws BookStoreException {
+		if (log == null) {
+			return;
+		}
+
+		try {
+			log.close();
+		} catch (IOException ex) {
+			throw new BookStoreException("Cannot close the log", ex);
+		}
+	}
+
+	/**
+	 * Appends a record to the log of a durable store. It is called under the
+	 * store lock, before the mutation is applied.
+	 *
+	 * @param type
+	 *            the record type
+	 * @param writer
+	 *            the writer of the record body
+	 * @throws BookStoreException
+	 *             if the record cannot be appended
+	 */
+	private void log(byte type, RecordWriter writer) throws BookStoreException {
+		if (log == null) {
+			return;
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(type);
+			writer.write(out);
+		} catch (IOException ex) {
+			throw new BookStoreException("Cannot encode the log record", ex);
+		}
+
+		try {
+			log.append(bytes.toByteArray());
+		} catch (IOException ex) {
+			throw new BookStoreException("Cannot append to the log", ex);
+		}
+	}
+
+	/**
+	 * Waits until the records appended so far are durable. It is called after
+	 * the store lock is released, so that concurrent callers share a force,
+	 * and only once the mutation succeeded, so that a failure to force the log
+	 * does not mask the exception of the mutation.
+	 *
+	 * @throws BookStoreException
+	 *             if the log cannot be forced
+	 */
+	private void awaitDurable() throws BookStoreException {
+		if (log == null) {
+			return;
+		}
+
+		try {
+			log.sync();
+		} catch (IOException ex) {
+			throw new BookStoreException("Cannot force the log", ex);
+		}
+	}
+
+	/**
+	 * Applies a log record to the catalogue. The record was validated when it
+	 * was logged, so it is applied without checks.
+	 *
+	 * @param in
+	 *            the record
+	 * @throws IOException
+	 *             Signals that the record cannot be decoded.
+	 */
+	private void replay(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+
+		if (type == RECORD_REMOVE_ALL_BOOKS) {
+			clearBooks();
+			return;
+		}
+
+		int count = in.readInt();
+
+		for (int i = 0; i < count; i++) {
+			switch (type) {
+			case RECORD_ADD_BOOKS:
+				putBook(new BookStoreBook(readBook(in)));
+				break;
+
+			case RECORD_ADD_COPIES:
+				restockBook(in.readInt(), in.readInt());
+				break;
+
+			case RECORD_BUY_BOOKS:
+				sellBook(in.readInt(), in.readInt());
+				break;
+
+			case RECORD_SALE_MISSES:
+				recordSaleMiss(in.readInt(), in.readInt());
+				break;
+
+			case RECORD_RATE_BOOKS:
+				rateBook(in.readInt(), in.readInt());
+				break;
+
+			case RECORD_UPDATE_EDITOR_PICKS:
+				setEditorPick(in.readInt(), in.readBoolean());
+				break;
+
+			case RECORD_REMOVE_BOOKS:
+				deleteBook(in.readInt());
+				break;
+
+			default:
+				throw new IOException("Unknown log record type " + type);
+			}
+		}
+	}
+
+	/**
+	 * Adds a book to the catalogue and its indexes.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	private void putBook(BookStoreBook book) {
+		if (snapshotInProgress) {
+			booksOutsideSnapshot.add(book.getISBN());
+		}
+
+		bookMap.put(book.getISBN(), book);
+		sortedIsbns.add(book.getISBN());
+		topRatedIndex.add(book);
+		leastCopiesIndex.add(book);
+		updateInDemand(book);
+
+		if (book.isEditorPick()) {
+			editorPickIndex.add(book);
+		}
+	}
+
+	/**
+	 * Gets a book which is about to be mutated. While a snapshot is being
+	 * written, the book is first replaced by a copy, so that the snapshot keeps
+	 * reading the version it started with.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @return the book
+	 */
+	private BookStoreBook getMutableBook(int isbn) {
+		BookStoreBook book = bookMap.get(isbn);
+
+		if (snapshotInProgress && booksOutsideSnapshot.add(isbn)) {
+			book = new BookStoreBook(book);
+			bookMap.put(isbn, book);
+
+			if (book.isEditorPick()) {
+				editorPickIndex.remove(isbn);
+				editorPickIndex.add(book);
+			}
+		}
+
+		return book;
+	}
+
+	/**
+	 * Adds copies of a book, which clears its sale misses.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param numCopies
+	 *            the number of copies
+	 */
+	private void restockBook(int isbn, int numCopies) {
+		BookStoreBook book = getMutableBook(isbn);
+		int previousNumCopies = book.getNumCopies();
+		book.addCopies(numCopies);
+		leastCopiesIndex.update(previousNumCopies, book);
+		updateInDemand(book);
+	}
+
+	/**
+	 * Removes sold copies of a book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param numCopies
+	 *            the number of copies
+	 */
+	private void sellBook(int isbn, int numCopies) {
+		BookStoreBook book = getMutableBook(isbn);
+		int previousNumCopies = book.getNumCopies();
+		book.buyCopies(numCopies);
+		leastCopiesIndex.update(previousNumCopies, book);
+	}
+
+	/**
+	 * Records copies of a book that could not be sold.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param numSaleMisses
+	 *            the number of copies missing
+	 */
+	private void recordSaleMiss(int isbn, int numSaleMisses) {
+		BookStoreBook book = getMutableBook(isbn);
+		book.addSaleMiss(numSaleMisses);
+		updateInDemand(book);
+	}
+
+	/**
+	 * Adds a rating to a book.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param rating
+	 *            the rating
+	 */
+	private void rateBook(int isbn, int rating) {
+		BookStoreBook book = getMutableBook(isbn);
+		float previousAverageRating = book.getAverageRating();
+		book.addRating(rating);
+		topRatedIndex.update(previousAverageRating, book);
+	}
+
+	/**
+	 * Sets whether a book is an editor pick.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 * @param editorPick
+	 *            whether the book is an editor pick
+	 */
+	private void setEditorPick(int isbn, boolean editorPick) {
+		BookStoreBook book = getMutableBook(isbn);
+		book.setEditorPick(editorPick);
+
+		if (editorPick) {
+			editorPickIndex.add(book);
+		} else {
+			editorPickIndex.remove(isbn);
+		}
+	}
+
+	/**
+	 * Removes a book from the catalogue and its indexes.
+	 *
+	 * @param isbn
+	 *            the ISBN
+	 */
+	private void deleteBook(int isbn) {
+		BookStoreBook book = bookMap.remove(isbn);
+		sortedIsbns.remove(isbn);
+		topRatedIndex.remove(book);
+		leastCopiesIndex.remove(book);
+		inDemandIsbns.remove(isbn);
+		editorPickIndex.remove(isbn);
 	}
+
+	/**
+	 * Removes all books from the catalogue and its indexes.
+	 */
+	private void clearBooks() {
+		bookMap.clear();
+		sortedIsbns.clear();
+		topRatedIndex.clear();
+		leastCopiesIndex.clear();
+		inDemandIsbns.clear();
+		editorPickIndex.clear();
+	}
+
+	/**
+	 * Adds the book to the in-demand index if it has sale misses, and removes
+	 * it otherwise.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	private void updateInDemand(BookStoreBook book) {
+		if (book.hadSaleMiss()) {
+			inDemandIsbns.add(book.getISBN());
+		} else {
+			inDemandIsbns.remove(book.getISBN());
+		}
+	}
+
 	private synchronized void validate(StockBook book) throws BookStoreException {
 		int isbn = book.getISBN();
 		String bookTitle = book.getTitle();
@@ -81,6 +629,17 @@ public class CertainBookStore implements BookStore, StockManager {
 		}
 	}
 
+	private synchronized void validate(BookRating bookRating) throws BookStoreException {
+		int isbn = bookRating.getISBN();
+		int rating = bookRating.getRating();
+
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidRating(rating)) { // Check if the rating is within range
+			throw new BookStoreException(BookStoreConstants.RATING + rating + BookStoreConstants.INVALID);
+		}
+	}
+
 	private synchronized void validate(BookEditorPick editorPickArg) throws BookStoreException {
 		int isbn = editorPickArg.getISBN();
 		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
@@ -100,7 +659,12 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
 	 */
-	public synchronized void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		applyAddBooks(bookSet);
+		awaitDurable();
+	}
+
+	private synchronized void applyAddBooks(Set<StockBook> bookSet) throws BookStoreException {
 		if (bookSet == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
@@ -110,9 +674,16 @@ public class CertainBookStore implements BookStore, StockManager {
 			validate(book);
 		}
 
+		log(RECORD_ADD_BOOKS, out -> {
+			out.writeInt(bookSet.size());
+
+			for (StockBook book : bookSet) {
+				writeBook(out, book);
+			}
+		});
+
 		for (StockBook book : bookSet) {
-			int isbn = book.getISBN();
-			bookMap.put(isbn, new BookStoreBook(book));
+			putBook(new BookStoreBook(book));
 		}
 	}
 
@@ -122,10 +693,12 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
 	 */
-	public synchronized void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
-		int isbn;
-		int numCopies;
+	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		applyAddCopies(bookCopiesSet);
+		awaitDurable();
+	}
 
+	private synchronized void applyAddCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
 		if (bookCopiesSet == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
@@ -134,14 +707,67 @@ public class CertainBookStore implements BookStore, StockManager {
 			validate(bookCopy);
 		}
 
-		BookStoreBook book;
+		log(RECORD_ADD_COPIES, out -> writeBookCopies(out, bookCopiesSet));
 
 		// Update the number of copies
 		for (BookCopy bookCopy : bookCopiesSet) {
-			isbn = bookCopy.getISBN();
-			numCopies = bookCopy.getNumCopies();
-			book = bookMap.get(isbn);
-			book.addCopies(numCopies);
+			restockBook(bookCopy.getISBN(), bookCopy.getNumCopies());
+		}
+	}
+
+	/**
+	 * Writes the state of a book to a log record or snapshot.
+	 *
+	 * @param out
+	 *            the output
+	 * @param book
+	 *            the book
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writeBook(DataOutputStream out, StockBook book) throws IOException {
+		out.writeInt(book.getISBN());
+		out.writeUTF(book.getTitle());
+		out.writeUTF(book.getAuthor());
+		out.writeFloat(book.getPrice());
+		out.writeInt(book.getNumCopies());
+		out.writeLong(book.getNumSaleMisses());
+		out.writeLong(book.getNumTimesRated());
+		out.writeLong(book.getTotalRating());
+		out.writeBoolean(book.isEditorPick());
+	}
+
+	/**
+	 * Reads the state of a book written by
+	 * {@link #writeBook(DataOutputStream, StockBook)}.
+	 *
+	 * @param in
+	 *            the input
+	 * @return the book
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static StockBook readBook(DataInputStream in) throws IOException {
+		return new ImmutableStockBook(in.readInt(), in.readUTF(), in.readUTF(), in.readFloat(), in.readInt(),
+				in.readLong(), in.readLong(), in.readLong(), in.readBoolean());
+	}
+
+	/**
+	 * Writes the ISBNs and numbers of copies of a log record body.
+	 *
+	 * @param out
+	 *            the output
+	 * @param bookCopies
+	 *            the book copies
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void writeBookCopies(DataOutputStream out, Set<BookCopy> bookCopies) throws IOException {
+		out.writeInt(bookCopies.size());
+
+		for (BookCopy bookCopy : bookCopies) {
+			out.writeInt(bookCopy.getISBN());
+			out.writeInt(bookCopy.getNumCopies());
 		}
 	}
 
@@ -158,6 +784,42 @@ public class CertainBookStore implements BookStore, StockManager {
 				.collect(Collectors.toList());
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks(int, int)
+	 */
+	@Override
+	public synchronized List<StockBook> getBooks(int cursor, int limit) throws BookStoreException {
+		BookSelection.validateLimit(limit);
+		List<StockBook> books = new ArrayList<>(Math.min(limit, sortedIsbns.size()));
+		Iterator<Integer> isbns = sortedIsbns.tailSet(cursor, false).iterator();
+
+		// Only the books of the page are visited, not the whole catalogue.
+		while (books.size() < limit && isbns.hasNext()) {
+			books.add(bookMap.get(isbns.next()).immutableStockBook());
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksWithLeastCopies(int)
+	 */
+	@Override
+	public synchronized List<StockBook> getBooksWithLeastCopies(int limit) throws BookStoreException {
+		BookSelection.validateLimit(limit);
+
+		// Only the first books of the index are visited, not the whole
+		// catalogue.
+		return leastCopiesIndex.getLeastCopies(limit).stream()
+				.map(isbn -> bookMap.get(isbn).immutableStockBook())
+				.collect(Collectors.toList());
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -165,21 +827,33 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
 	 * .Set)
 	 */
-	public synchronized void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+	public void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+		applyUpdateEditorPicks(editorPicks);
+		awaitDurable();
+	}
+
+	private synchronized void applyUpdateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
 
 		// Check that all ISBNs that we add/remove are there first.
 		if (editorPicks == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
 
-		int isbnValue;
-
 		for (BookEditorPick editorPickArg : editorPicks) {
 			validate(editorPickArg);
 		}
 
+		log(RECORD_UPDATE_EDITOR_PICKS, out -> {
+			out.writeInt(editorPicks.size());
+
+			for (BookEditorPick editorPickArg : editorPicks) {
+				out.writeInt(editorPickArg.getISBN());
+				out.writeBoolean(editorPickArg.isEditorPick());
+			}
+		});
+
 		for (BookEditorPick editorPickArg : editorPicks) {
-			bookMap.get(editorPickArg.getISBN()).setEditorPick(editorPickArg.isEditorPick());
+			setEditorPick(editorPickArg.getISBN(), editorPickArg.isEditorPick());
 		}
 	}
 
@@ -188,7 +862,25 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * 
 	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
 	 */
-	public synchronized void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+	public void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		try {
+			applyBuyBooks(bookCopiesToBuy);
+		} catch (BookStoreException ex) {
+			// The sale misses are logged too, so wait even if the purchase
+			// failed, but report why it failed rather than a failed force.
+			try {
+				awaitDurable();
+			} catch (BookStoreException syncEx) {
+				ex.addSuppressed(syncEx);
+			}
+
+			throw ex;
+		}
+
+		awaitDurable();
+	}
+
+	private synchronized void applyBuyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
 		if (bookCopiesToBuy == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
@@ -217,17 +909,26 @@ public class CertainBookStore implements BookStore, StockManager {
 		// We throw exception now since we want to see how many books in the
 		// order incurred misses which is used by books in demand
 		if (saleMiss) {
+			log(RECORD_SALE_MISSES, out -> {
+				out.writeInt(salesMisses.size());
+
+				for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+					out.writeInt(saleMissEntry.getKey());
+					out.writeInt(saleMissEntry.getValue());
+				}
+			});
+
 			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
-				book = bookMap.get(saleMissEntry.getKey());
-				book.addSaleMiss(saleMissEntry.getValue());
+				recordSaleMiss(saleMissEntry.getKey(), saleMissEntry.getValue());
 			}
 			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
 		}
 
+		log(RECORD_BUY_BOOKS, out -> writeBookCopies(out, bookCopiesToBuy));
+
 		// Then make the purchase.
 		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
-			book = bookMap.get(bookCopyToBuy.getISBN());
-			book.buyCopies(bookCopyToBuy.getNumCopies());
+			sellBook(bookCopyToBuy.getISBN(), bookCopyToBuy.getNumCopies());
 		}
 	}
 
@@ -283,37 +984,9 @@ public class CertainBookStore implements BookStore, StockManager {
 			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
 		}
 
-		// Query for all books with the Editor Pick boolean set.
-		List<BookStoreBook> listAllEditorPicks = bookMap.entrySet().stream()
-				.map(pair -> pair.getValue())
-				.filter(book -> book.isEditorPick())
-				.collect(Collectors.toList());
-
-		// Find numBooks random indices of books that will be picked.
-		Random rand = new Random();
-		Set<Integer> tobePicked = new HashSet<>();
-		int rangePicks = listAllEditorPicks.size();
-
-		if (rangePicks <= numBooks) {
-
-			// We need to add all books.
-			for (int i = 0; i < listAllEditorPicks.size(); i++) {
-				tobePicked.add(i);
-			}
-		} else {
-
-			// We need to pick randomly the books that need to be returned.
-			int randNum;
-
-			while (tobePicked.size() < numBooks) {
-				randNum = rand.nextInt(rangePicks);
-				tobePicked.add(randNum);
-			}
-		}
-
-		// Return all the books by the randomly chosen indices.
-		return tobePicked.stream()
-				.map(index -> listAllEditorPicks.get(index).immutableBook())
+		// Draw the picks from the index instead of scanning the catalogue.
+		return editorPickIndex.sample(numBooks).stream()
+				.map(BookStoreBook::immutableBook)
 				.collect(Collectors.toList());
 	}
 
@@ -323,8 +996,13 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
 	 */
 	@Override
-	public synchronized List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		throw new BookStoreException();
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		// The index is concurrent, so there is no need to hold the store lock.
+		return topRatedIndex.getTopRated(numBooks);
 	}
 
 	/*
@@ -334,7 +1012,10 @@ public class CertainBookStore implements BookStore, StockManager {
 	 */
 	@Override
 	public synchronized List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException();
+		// Only the books with sale misses are visited, not the whole catalogue.
+		return inDemandIsbns.stream()
+				.map(isbn -> bookMap.get(isbn).immutableStockBook())
+				.collect(Collectors.toList());
 	}
 
 	/*
@@ -343,8 +1024,32 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
 	 */
 	@Override
-	public synchronized void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
-		throw new BookStoreException();
+	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		applyRateBooks(bookRating);
+		awaitDurable();
+	}
+
+	private synchronized void applyRateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookRating bookRate : bookRating) {
+			validate(bookRate);
+		}
+
+		log(RECORD_RATE_BOOKS, out -> {
+			out.writeInt(bookRating.size());
+
+			for (BookRating bookRate : bookRating) {
+				out.writeInt(bookRate.getISBN());
+				out.writeInt(bookRate.getRating());
+			}
+		});
+
+		for (BookRating bookRate : bookRating) {
+			rateBook(bookRate.getISBN(), bookRate.getRating());
+		}
 	}
 
 	/*
@@ -352,8 +1057,16 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * 
 	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
 	 */
-	public synchronized void removeAllBooks() throws BookStoreException {
-		bookMap.clear();
+	public void removeAllBooks() throws BookStoreException {
+		applyRemoveAllBooks();
+		awaitDurable();
+	}
+
+	private synchronized void applyRemoveAllBooks() throws BookStoreException {
+		log(RECORD_REMOVE_ALL_BOOKS, out -> {
+		});
+
+		clearBooks();
 	}
 
 	/*
@@ -362,7 +1075,12 @@ public class CertainBookStore implements BookStore, StockManager {
 	 * @see
 	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
 	 */
-	public synchronized void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		applyRemoveBooks(isbnSet);
+		awaitDurable();
+	}
+
+	private synchronized void applyRemoveBooks(Set<Integer> isbnSet) throws BookStoreException {
 		if (isbnSet == null) {
 			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
 		}
@@ -377,8 +1095,16 @@ public class CertainBookStore implements BookStore, StockManager {
 			}
 		}
 
+		log(RECORD_REMOVE_BOOKS, out -> {
+			out.writeInt(isbnSet.size());
+
+			for (int isbn : isbnSet) {
+				out.writeInt(isbn);
+			}
+		});
+
 		for (int isbn : isbnSet) {
-			bookMap.remove(isbn);
+			deleteBook(isbn);
 		}
 	}
 }
@@ -0,0 +1,1126 @@
+package com.acertainbookstore.business;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntPredicate;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.MappedFile;
+
+/**
+ * {@link ColumnarCertainBookStore} implements the {@link BookStore} and
+ * {@link StockManager} functionalities without one object per book. Each field
+ * of the books is a column in its own memory-mapped file, indexed by slot, and
+ * titles and authors are appended to a mapped string arena. An open-addressing
+ * table maps ISBNs to slots without boxing them.
+ *
+ * The catalogue therefore lives in the page cache instead of the heap, and
+ * reopening the directory maps the files again; only the ISBN table is rebuilt,
+ * by scanning the ISBN and flag columns. Scans such as the books in demand only
+ * touch the columns they need.
+ *
+ * Updates are made in place in the mapped files and reach the disk when the
+ * operating system writes the pages back, or on {@link #close()}. A crash may
+ * lose or tear the latest updates; use a {@link CertainBookStore} with a data
+ * directory if every update must be durable. Removed books leave their titles
+ * and authors in the arena until {@link #removeAllBooks()}.
+ *
+ * @see BookStore
+ * @see StockManager
+ * @see MappedFile
+ */
+public class ColumnarCertainBookStore implements BookStore, StockManager {
+
+	/** The base two logarithm of the chunk size of the columns and the arena. */
+	private static final int CHUNK_SHIFT = 24;
+
+	/** The base two logarithm of the chunk size of the header. */
+	private static final int HEADER_CHUNK_SHIFT = 12;
+
+	/** The magic number of the header. */
+	private static final int MAGIC = 0x424B434C;
+
+	/** The header position of the magic number. */
+	private static final long HEADER_MAGIC = 0;
+
+	/** The header position of the number of slots. */
+	private static final long HEADER_NUM_SLOTS = 8;
+
+	/** The header position of the end of the string arena. */
+	private static final long HEADER_ARENA_END = 16;
+
+	/** The size of the header. */
+	private static final long HEADER_SIZE = 24;
+
+	/** The flag of the slots holding a book. */
+	private static final int FLAG_IN_USE = 1;
+
+	/** The flag of the slots holding an editor pick. */
+	private static final int FLAG_EDITOR_PICK = 2;
+
+	/** The header. */
+	private final MappedFile header;
+
+	/** The ISBN column. */
+	private final MappedFile isbns;
+
+	/** The flag column. */
+	private final MappedFile flags;
+
+	/** The number of copies column. */
+	private final MappedFile numCopies;
+
+	/** The price column. */
+	private final MappedFile prices;
+
+	/** The number of sale misses column. */
+	private final MappedFile numSaleMisses;
+
+	/** The total rating column. */
+	private final MappedFile totalRatings;
+
+	/** The number of times rated column. */
+	private final MappedFile numTimesRated;
+
+	/** The title column, holding arena positions. */
+	private final MappedFile titles;
+
+	/** The author column, holding arena positions. */
+	private final MappedFile authors;
+
+	/** The string arena. */
+	private final MappedFile strings;
+
+	/** All mapped files. */
+	private final List<MappedFile> files = new ArrayList<>();
+
+	/** The number of slots ever used, including free ones. */
+	private int numSlots;
+
+	/** The position after the last string of the arena. */
+	private long arenaEnd;
+
+	/** The slots of the books, by ISBN. */
+	private final SlotTable slotTable = new SlotTable();
+
+	/** The ISBNs of the books in ascending order, to page through them. */
+	private final TreeSet<Integer> sortedIsbns = new TreeSet<>();
+
+	/** The free slots below {@link #numSlots}. */
+	private int[] freeSlots = new int[16];
+
+	/** The number of free slots. */
+	private int numFreeSlots = 0;
+
+	/**
+	 * Instantiates a new {@link ColumnarCertainBookStore}, mapping the
+	 * catalogue in <code>directory</code> if there is one.
+	 *
+	 * @param directory
+	 *            the data directory, which is created if needed
+	 * @throws BookStoreException
+	 *             if the files cannot be mapped
+	 */
+	public ColumnarCertainBookStore(File directory) throws BookStoreException {
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Cannot create " + directory);
+			}
+
+			header = open(new File(directory, "header"), HEADER_CHUNK_SHIFT);
+			header.ensureCapacity(HEADER_SIZE);
+
+			if (header.getInt(HEADER_MAGIC) == 0) {
+				header.putInt(HEADER_MAGIC, MAGIC);
+			} else if (header.getInt(HEADER_MAGIC) != MAGIC) {
+				throw new IOException(directory + " does not hold a columnar store");
+			}
+
+			numSlots = (int) header.getLong(HEADER_NUM_SLOTS);
+			arenaEnd = header.getLong(HEADER_ARENA_END);
+
+			isbns = open(new File(directory, "isbn"), CHUNK_SHIFT);
+			flags = open(new File(directory, "flags"), CHUNK_SHIFT);
+			numCopies = open(new File(directory, "numCopies"), CHUNK_SHIFT);
+			prices = open(new File(directory, "price"), CHUNK_SHIFT);
+			numSaleMisses = open(new File(directory, "numSaleMisses"), CHUNK_SHIFT);
+			totalRatings = open(new File(directory, "totalRating"), CHUNK_SHIFT);
+			numTimesRated = open(new File(directory, "numTimesRated"), CHUNK_SHIFT);
+			titles = open(new File(directory, "title"), CHUNK_SHIFT);
+			authors = open(new File(directory, "author"), CHUNK_SHIFT);
+			strings = open(new File(directory, "strings"), CHUNK_SHIFT);
+		} catch (IOException ex) {
+			closeFiles();
+			throw new BookStoreException("Cannot map the store in " + directory, ex);
+		}
+
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (isInUse(slot)) {
+				slotTable.put(isbns.getInt(intPosition(slot)), slot);
+				sortedIsbns.add(isbns.getInt(intPosition(slot)));
+			} else {
+				pushFreeSlot(slot);
+			}
+		}
+	}
+
+	/**
+	 * Opens a mapped file of the store.
+	 *
+	 * @param file
+	 *            the file
+	 * @param chunkShift
+	 *            the base two logarithm of the chunk size
+	 * @return the mapped file
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private MappedFile open(File file, int chunkShift) throws IOException {
+		MappedFile mappedFile = new MappedFile(file, chunkShift);
+		files.add(mappedFile);
+		return mappedFile;
+	}
+
+	/**
+	 * Writes the catalogue back to its files and closes them.
+	 *
+	 * @throws BookStoreException
+	 *             if the files cannot be closed
+	 */
+	public synchronized void close() throws BookStoreException {
+		try {
+			for (MappedFile file : files) {
+				file.close();
+			}
+		} catch (IOException ex) {
+			throw new BookStoreException("Cannot close the store", ex);
+		} finally {
+			files.clear();
+		}
+	}
+
+	/**
+	 * Closes the files opened so far, after a failure to open the store.
+	 */
+	private void closeFiles() {
+		for (MappedFile file : files) {
+			try {
+				file.close();
+			} catch (IOException ex) {
+				// The store is unusable anyway.
+			}
+		}
+
+		files.clear();
+	}
+
+	/**
+	 * Gets the position of a slot in a column of ints or floats.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the position
+	 */
+	private static long intPosition(int slot) {
+		return (long) slot << 2;
+	}
+
+	/**
+	 * Gets the position of a slot in a column of longs.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the position
+	 */
+	private static long longPosition(int slot) {
+		return (long) slot << 3;
+	}
+
+	/**
+	 * Checks if a slot holds a book.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return true, if the slot holds a book
+	 */
+	private boolean isInUse(int slot) {
+		return (flags.getInt(intPosition(slot)) & FLAG_IN_USE) != 0;
+	}
+
+	/**
+	 * Checks if the book of a slot is an editor pick.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return true, if the book is an editor pick
+	 */
+	private boolean isEditorPick(int slot) {
+		return (flags.getInt(intPosition(slot)) & FLAG_EDITOR_PICK) != 0;
+	}
+
+	/**
+	 * Gets the average rating of the book of a slot, computed as in
+	 * {@link BookStoreBook#getAverageRating()}.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the average rating
+	 */
+	private float getAverageRating(int slot) {
+		long timesRated = numTimesRated.getLong(longPosition(slot));
+		return (timesRated == 0 ? -1.0f : (float) totalRatings.getLong(longPosition(slot)) / timesRated);
+	}
+
+	/**
+	 * Marks a slot as free.
+	 *
+	 * @param slot
+	 *            the slot
+	 */
+	private void pushFreeSlot(int slot) {
+		if (numFreeSlots == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+		}
+
+		freeSlots[numFreeSlots++] = slot;
+	}
+
+	/**
+	 * Takes a free slot, or a new one at the end of the columns.
+	 *
+	 * @return the slot
+	 * @throws IOException
+	 *             Signals that the columns cannot grow.
+	 */
+	private int allocateSlot() throws IOException {
+		if (numFreeSlots > 0) {
+			return freeSlots[--numFreeSlots];
+		}
+
+		int slot = numSlots;
+		long intCapacity = intPosition(slot + 1);
+		long longCapacity = longPosition(slot + 1);
+
+		isbns.ensureCapacity(intCapacity);
+		flags.ensureCapacity(intCapacity);
+		numCopies.ensureCapacity(intCapacity);
+		prices.ensureCapacity(intCapacity);
+		numSaleMisses.ensureCapacity(longCapacity);
+		totalRatings.ensureCapacity(longCapacity);
+		numTimesRated.ensureCapacity(longCapacity);
+		titles.ensureCapacity(longCapacity);
+		authors.ensureCapacity(longCapacity);
+
+		numSlots++;
+		return slot;
+	}
+
+	/**
+	 * Appends a string to the arena. Strings never cross a chunk boundary, and
+	 * each starts with its length aligned to four bytes.
+	 *
+	 * @param value
+	 *            the string
+	 * @return the arena position of the string
+	 * @throws IOException
+	 *             Signals that the arena cannot grow.
+	 */
+	private long appendString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		long recordSize = 4 + bytes.length;
+		long chunkSize = strings.getChunkSize();
+
+		if (recordSize > chunkSize) {
+			throw new IOException("The string is longer than " + (chunkSize - 4) + " bytes");
+		}
+
+		if ((arenaEnd & (chunkSize - 1)) + recordSize > chunkSize) {
+			arenaEnd = (arenaEnd + chunkSize) & ~(chunkSize - 1);
+		}
+
+		long position = arenaEnd;
+		strings.ensureCapacity(position + recordSize);
+		strings.putInt(position, bytes.length);
+		strings.putBytes(position + 4, bytes);
+		arenaEnd = (position + recordSize + 3) & ~3L;
+		return position;
+	}
+
+	/**
+	 * Reads a string of the arena.
+	 *
+	 * @param position
+	 *            the arena position of the string
+	 * @return the string
+	 */
+	private String readString(long position) {
+		byte[] bytes = new byte[strings.getInt(position)];
+		strings.getBytes(position + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the number of slots and the end of the arena to the header.
+	 */
+	private void updateHeader() {
+		header.putLong(HEADER_NUM_SLOTS, numSlots);
+		header.putLong(HEADER_ARENA_END, arenaEnd);
+	}
+
+	/**
+	 * Reads the book of a slot.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the book
+	 */
+	private Book readBook(int slot) {
+		return new ImmutableBook(isbns.getInt(intPosition(slot)), readString(titles.getLong(longPosition(slot))),
+				readString(authors.getLong(longPosition(slot))), prices.getFloat(intPosition(slot)));
+	}
+
+	/**
+	 * Reads the book of a slot with its stock.
+	 *
+	 * @param slot
+	 *            the slot
+	 * @return the book
+	 */
+	private StockBook readStockBook(int slot) {
+		return new ImmutableStockBook(isbns.getInt(intPosition(slot)), readString(titles.getLong(longPosition(slot))),
+				readString(authors.getLong(longPosition(slot))), prices.getFloat(intPosition(slot)),
+				numCopies.getInt(intPosition(slot)), numSaleMisses.getLong(longPosition(slot)),
+				numTimesRated.getLong(longPosition(slot)), totalRatings.getLong(longPosition(slot)),
+				isEditorPick(slot));
+	}
+
+	private void validate(StockBook book) throws BookStoreException {
+		int isbn = book.getISBN();
+		String bookTitle = book.getTitle();
+		String bookAuthor = book.getAuthor();
+		int noCopies = book.getNumCopies();
+		float bookPrice = book.getPrice();
+
+		if (BookStoreUtility.isInvalidISBN(isbn)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookTitle)) { // Check if the book has valid title
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookAuthor)) { // Check if the book has valid author
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isInvalidNoCopies(noCopies)) { // Check if the book has at least one copy
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (bookPrice < 0.0) { // Check if the price of the book is valid
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (slotTable.get(isbn) >= 0) {// Check if the book is not in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+		}
+	}
+
+	private void validate(BookCopy bookCopy) throws BookStoreException {
+		int isbn = bookCopy.getISBN();
+		int numCopiesToValidate = bookCopy.getNumCopies();
+
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidNoCopies(numCopiesToValidate)) { // Check if the number of the book copy is larger than zero
+			throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopiesToValidate + BookStoreConstants.INVALID);
+		}
+	}
+
+	private void validate(BookRating bookRating) throws BookStoreException {
+		int isbn = bookRating.getISBN();
+		int rating = bookRating.getRating();
+
+		validateISBNInStock(isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidRating(rating)) { // Check if the rating is within range
+			throw new BookStoreException(BookStoreConstants.RATING + rating + BookStoreConstants.INVALID);
+		}
+	}
+
+	private int validateISBNInStock(int isbn) throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(isbn)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		int slot = slotTable.get(isbn);
+
+		if (slot < 0) {// Check if the book is in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		return slot;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	@Override
+	public synchronized void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		Set<Integer> isbnsToAdd = new HashSet<>();
+
+		// Check if all are there
+		for (StockBook book : bookSet) {
+			validate(book);
+
+			if (!isbnsToAdd.add(book.getISBN())) {// Check if the book is not added twice
+				throw new BookStoreException(BookStoreConstants.ISBN + book.getISBN() + BookStoreConstants.DUPLICATED);
+			}
+		}
+
+		// The slots and strings of all the books are reserved before any book
+		// is written, so that a store which cannot grow adds none of them.
+		List<StockBook> books = new ArrayList<>(bookSet);
+		int[] slots = new int[books.size()];
+		long[] titlePositions = new long[books.size()];
+		long[] authorPositions = new long[books.size()];
+		int numAllocated = 0;
+		long previousArenaEnd = arenaEnd;
+
+		try {
+			for (; numAllocated < slots.length; numAllocated++) {
+				slots[numAllocated] = allocateSlot();
+			}
+
+			for (int i = 0; i < slots.length; i++) {
+				titlePositions[i] = appendString(books.get(i).getTitle());
+				authorPositions[i] = appendString(books.get(i).getAuthor());
+			}
+		} catch (IOException ex) {
+			for (int i = 0; i < numAllocated; i++) {
+				pushFreeSlot(slots[i]);
+			}
+
+			arenaEnd = previousArenaEnd;
+			updateHeader();
+			throw new BookStoreException("Cannot grow the store", ex);
+		}
+
+		for (int i = 0; i < slots.length; i++) {
+			StockBook book = books.get(i);
+			int slot = slots[i];
+			int flagsValue = FLAG_IN_USE | (book.isEditorPick() ? FLAG_EDITOR_PICK : 0);
+
+			isbns.putInt(intPosition(slot), book.getISBN());
+			numCopies.putInt(intPosition(slot), book.getNumCopies());
+			prices.putFloat(intPosition(slot), book.getPrice());
+			numSaleMisses.putLong(longPosition(slot), book.getNumSaleMisses());
+			totalRatings.putLong(longPosition(slot), book.getTotalRating());
+			numTimesRated.putLong(longPosition(slot), book.getNumTimesRated());
+			titles.putLong(longPosition(slot), titlePositions[i]);
+			authors.putLong(longPosition(slot), authorPositions[i]);
+
+			// The slot only counts as used once the book is complete.
+			flags.putInt(intPosition(slot), flagsValue);
+			slotTable.put(book.getISBN(), slot);
+			sortedIsbns.add(book.getISBN());
+		}
+
+		updateHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	@Override
+	public synchronized void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookCopy bookCopy : bookCopiesSet) {
+			validate(bookCopy);
+		}
+
+		// Update the number of copies, which clears the sale misses
+		for (BookCopy bookCopy : bookCopiesSet) {
+			int slot = slotTable.get(bookCopy.getISBN());
+			numCopies.putInt(intPosition(slot), numCopies.getInt(intPosition(slot)) + bookCopy.getNumCopies());
+			numSaleMisses.putLong(longPosition(slot), 0);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	@Override
+	public synchronized List<StockBook> getBooks() {
+		List<StockBook> books = new ArrayList<>(slotTable.size());
+
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (isInUse(slot)) {
+				books.add(readStockBook(slot));
+			}
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks(int, int)
+	 */
+	@Override
+	public synchronized List<StockBook> getBooks(int cursor, int limit) throws BookStoreException {
+		BookSelection.validateLimit(limit);
+		List<StockBook> books = new ArrayList<>(Math.min(limit, sortedIsbns.size()));
+		Iterator<Integer> isbnIterator = sortedIsbns.tailSet(cursor, false).iterator();
+
+		// Only the slots of the page are read, not the whole store.
+		while (books.size() < limit && isbnIterator.hasNext()) {
+			books.add(readStockBook(slotTable.get(isbnIterator.next())));
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksWithLeastCopies(int)
+	 */
+	@Override
+	public synchronized List<StockBook> getBooksWithLeastCopies(int limit) throws BookStoreException {
+		Comparator<Integer> byCopies = Comparator.<Integer> comparingInt(slot -> numCopies.getInt(intPosition(slot)))
+				.thenComparingInt(slot -> isbns.getInt(intPosition(slot)));
+		return selectFirstStockBooks(slot -> true, byCopies, limit);
+	}
+
+	/**
+	 * Selects the first books in an order, comparing their slots on the
+	 * columns so that only the books selected are read. The heap keeps the
+	 * last of the first books on top.
+	 *
+	 * @param filter
+	 *            the filter of the slots which may be selected
+	 * @param order
+	 *            the order of the slots
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the books selected, in order
+	 * @throws BookStoreException
+	 *             if the limit is negative
+	 */
+	private List<StockBook> selectFirstStockBooks(IntPredicate filter, Comparator<Integer> order, int limit)
+			throws BookStoreException {
+		if (limit < 0) {
+			throw new BookStoreException("limit = " + limit + ", but it must be positive");
+		}
+
+		if (limit == 0) {
+			return new ArrayList<>();
+		}
+
+		PriorityQueue<Integer> firstSlots = new PriorityQueue<>(Math.min(limit, 1024), order.reversed());
+
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (!isInUse(slot) || !filter.test(slot)) {
+				continue;
+			}
+
+			if (firstSlots.size() < limit) {
+				firstSlots.add(slot);
+			} else if (order.compare(slot, firstSlots.peek()) < 0) {
+				firstSlots.poll();
+				firstSlots.add(slot);
+			}
+		}
+
+		List<StockBook> books = new ArrayList<>(firstSlots.size());
+
+		while (!firstSlots.isEmpty()) {
+			books.add(readStockBook(firstSlots.poll()));
+		}
+
+		Collections.reverse(books);
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	@Override
+	public synchronized void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+
+		// Check that all ISBNs that we add/remove are there first.
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookEditorPick editorPickArg : editorPicks) {
+			validateISBNInStock(editorPickArg.getISBN());
+		}
+
+		for (BookEditorPick editorPickArg : editorPicks) {
+			int slot = slotTable.get(editorPickArg.getISBN());
+			flags.putInt(intPosition(slot), FLAG_IN_USE | (editorPickArg.isEditorPick() ? FLAG_EDITOR_PICK : 0));
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	@Override
+	public synchronized void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		// Check that all ISBNs that we buy are there first.
+		boolean saleMiss = false;
+
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			validate(bookCopyToBuy);
+
+			int slot = slotTable.get(bookCopyToBuy.getISBN());
+
+			if (numCopies.getInt(intPosition(slot)) < bookCopyToBuy.getNumCopies()) {
+				saleMiss = true;
+			}
+		}
+
+		// We throw exception now since we want to see how many books in the
+		// order incurred misses which is used by books in demand
+		if (saleMiss) {
+			for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+				int slot = slotTable.get(bookCopyToBuy.getISBN());
+				int missing = bookCopyToBuy.getNumCopies() - numCopies.getInt(intPosition(slot));
+
+				if (missing > 0) {
+					numSaleMisses.putLong(longPosition(slot), numSaleMisses.getLong(longPosition(slot)) + missing);
+				}
+			}
+
+			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		// Then make the purchase.
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			int slot = slotTable.get(bookCopyToBuy.getISBN());
+			numCopies.putInt(intPosition(slot), numCopies.getInt(intPosition(slot)) - bookCopyToBuy.getNumCopies());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	@Override
+	public synchronized List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(ISBN);
+		}
+
+		List<StockBook> books = new ArrayList<>(isbnSet.size());
+
+		for (Integer ISBN : isbnSet) {
+			books.add(readStockBook(slotTable.get(ISBN)));
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	@Override
+	public synchronized List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(ISBN);
+		}
+
+		List<Book> books = new ArrayList<>(isbnSet.size());
+
+		for (Integer ISBN : isbnSet) {
+			books.add(readBook(slotTable.get(ISBN)));
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	@Override
+	public synchronized List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		int[] pickSlots = new int[16];
+		int numPicks = 0;
+
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (isInUse(slot) && isEditorPick(slot)) {
+				if (numPicks == pickSlots.length) {
+					pickSlots = Arrays.copyOf(pickSlots, pickSlots.length * 2);
+				}
+
+				pickSlots[numPicks++] = slot;
+			}
+		}
+
+		// Partial Fisher-Yates over the slots of the editor picks.
+		int numSampled = Math.min(numBooks, numPicks);
+		List<Book> picks = new ArrayList<>(numSampled);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		for (int i = 0; i < numSampled; i++) {
+			int j = random.nextInt(i, numPicks);
+			int slot = pickSlots[j];
+			pickSlots[j] = pickSlots[i];
+			pickSlots[i] = slot;
+			picks.add(readBook(slot));
+		}
+
+		return picks;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public synchronized List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		if (numBooks == 0) {
+			return new ArrayList<>();
+		}
+
+		// Same order as the top rated index of CertainBookStore: average rating,
+		// then ISBN, both descending. The heap keeps the worst of the best on top.
+		Comparator<Integer> byRating = Comparator.<Integer> comparingDouble(this::getAverageRating)
+				.thenComparingInt(slot -> isbns.getInt(intPosition(slot)));
+		PriorityQueue<Integer> bestSlots = new PriorityQueue<>(numBooks, byRating);
+
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (!isInUse(slot)) {
+				continue;
+			}
+
+			if (bestSlots.size() < numBooks) {
+				bestSlots.add(slot);
+			} else if (byRating.compare(slot, bestSlots.peek()) > 0) {
+				bestSlots.poll();
+				bestSlots.add(slot);
+			}
+		}
+
+		List<Book> books = new ArrayList<>(bestSlots.size());
+
+		while (!bestSlots.isEmpty()) {
+			books.add(readBook(bestSlots.poll()));
+		}
+
+		Collections.reverse(books);
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public synchronized List<StockBook> getBooksInDemand() throws BookStoreException {
+		List<StockBook> books = new ArrayList<>();
+
+		// Only the sale miss and flag columns are scanned.
+		for (int slot = 0; slot < numSlots; slot++) {
+			if (numSaleMisses.getLong(longPosition(slot)) > 0 && isInUse(slot)) {
+				books.add(readStockBook(slot));
+			}
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public synchronized void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (BookRating bookRate : bookRating) {
+			validate(bookRate);
+		}
+
+		for (BookRating bookRate : bookRating) {
+			int slot = slotTable.get(bookRate.getISBN());
+			totalRatings.putLong(longPosition(slot), totalRatings.getLong(longPosition(slot)) + bookRate.getRating());
+			numTimesRated.putLong(longPosition(slot), numTimesRated.getLong(longPosition(slot)) + 1);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	@Override
+	public synchronized void removeAllBooks() throws BookStoreException {
+		for (int slot = 0; slot < numSlots; slot++) {
+			flags.putInt(intPosition(slot), 0);
+		}
+
+		numSlots = 0;
+		arenaEnd = 0;
+		numFreeSlots = 0;
+		slotTable.clear();
+		sortedIsbns.clear();
+		updateHeader();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	@Override
+	public synchronized void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(ISBN);
+		}
+
+		for (int isbn : isbnSet) {
+			int slot = slotTable.remove(isbn);
+			sortedIsbns.remove(isbn);
+			flags.putInt(intPosition(slot), 0);
+			pushFreeSlot(slot);
+		}
+	}
+
+	/**
+	 * {@link SlotTable} maps ISBNs to slots with open addressing and linear
+	 * probing over two int arrays, so lookups neither box the ISBN nor
+	 * allocate. ISBNs are positive, so zero marks an empty bucket.
+	 */
+	private static final class SlotTable {
+
+		/** The initial number of buckets, a power of two. */
+		private static final int INITIAL_CAPACITY = 64;
+
+		/** The ISBNs of the buckets. */
+		private int[] keys = new int[INITIAL_CAPACITY];
+
+		/** The slots of the buckets. */
+		private int[] slots = new int[INITIAL_CAPACITY];
+
+		/** The number of entries. */
+		private int size = 0;
+
+		/**
+		 * Gets the number of entries.
+		 *
+		 * @return the size
+		 */
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Gets the home bucket of an ISBN.
+		 *
+		 * @param key
+		 *            the ISBN
+		 * @param mask
+		 *            the bucket mask
+		 * @return the bucket
+		 */
+		private static int bucket(int key, int mask) {
+			int hash = key * 0x9E3779B9;
+			return (hash ^ (hash >>> 16)) & mask;
+		}
+
+		/**
+		 * Gets the slot of an ISBN.
+		 *
+		 * @param key
+		 *            the ISBN
+		 * @return the slot, or -1 if the ISBN is not in the table
+		 */
+		int get(int key) {
+			int mask = keys.length - 1;
+
+			for (int i = bucket(key, mask);; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return slots[i];
+				}
+
+				if (keys[i] == 0) {
+					return -1;
+				}
+			}
+		}
+
+		/**
+		 * Maps an ISBN to a slot.
+		 *
+		 * @param key
+		 *            the ISBN
+		 * @param slot
+		 *            the slot
+		 */
+		void put(int key, int slot) {
+			if (2 * (size + 1) > keys.length) {
+				resize(keys.length * 2);
+			}
+
+			int mask = keys.length - 1;
+			int i = bucket(key, mask);
+
+			while (keys[i] != 0 && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+
+			if (keys[i] == 0) {
+				size++;
+			}
+
+			keys[i] = key;
+			slots[i] = slot;
+		}
+
+		/**
+		 * Removes an ISBN, shifting back the entries probed past it so that no
+		 * tombstones are needed.
+		 *
+		 * @param key
+		 *            the ISBN, which must be in the table
+		 * @return the slot of the ISBN
+		 */
+		int remove(int key) {
+			int mask = keys.length - 1;
+			int i = bucket(key, mask);
+
+			while (keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+
+			int slot = slots[i];
+
+			for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+				int home = bucket(keys[j], mask);
+
+				// The entry at j may move to the hole at i unless its home lies
+				// cyclically in (i, j].
+				boolean homeBetween = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+
+				if (!homeBetween) {
+					keys[i] = keys[j];
+					slots[i] = slots[j];
+					i = j;
+				}
+			}
+
+			keys[i] = 0;
+			size--;
+			return slot;
+		}
+
+		/**
+		 * Removes all entries.
+		 */
+		void clear() {
+			keys = new int[INITIAL_CAPACITY];
+			slots = new int[INITIAL_CAPACITY];
+			size = 0;
+		}
+
+		/**
+		 * Rehashes the entries into <code>capacity</code> buckets.
+		 *
+		 * @param capacity
+		 *            the number of buckets, a power of two
+		 */
+		private void resize(int capacity) {
+			int[] oldKeys = keys;
+			int[] oldSlots = slots;
+
+			keys = new int[capacity];
+			slots = new int[capacity];
+			size = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					put(oldKeys[i], oldSlots[i]);
+				}
+			}
+		}
+	}
+}
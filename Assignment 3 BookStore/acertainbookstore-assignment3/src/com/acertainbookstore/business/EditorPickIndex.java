@@ -0,0 +1,128 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link EditorPickIndex} keeps the editor picked books of the store in a
+ * compact array, so that random picks are drawn without scanning the
+ * catalogue. Books are removed by moving the last book into their slot, and
+ * sampling is a partial Fisher-Yates shuffle of the array, so adding, removing
+ * and drawing <code>k</code> books all cost O(1) per book.
+ *
+ * The index is not thread-safe; the store calls it while holding its lock.
+ */
+public class EditorPickIndex {
+
+	/** The initial capacity of the array. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The editor picked books; only the first {@link #size} are in use. */
+	private BookStoreBook[] books = new BookStoreBook[INITIAL_CAPACITY];
+
+	/** The number of editor picked books. */
+	private int size = 0;
+
+	/** The position of each book in the array, by ISBN. */
+	private final Map<Integer, Integer> positions = new HashMap<>();
+
+	/**
+	 * Adds a book to the index, unless it is already there.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void add(BookStoreBook book) {
+		if (positions.containsKey(book.getISBN())) {
+			return;
+		}
+
+		if (size == books.length) {
+			books = Arrays.copyOf(books, books.length * 2);
+		}
+
+		books[size] = book;
+		positions.put(book.getISBN(), size);
+		size++;
+	}
+
+	/**
+	 * Removes a book from the index, if it is there.
+	 *
+	 * @param isbn
+	 *            the ISBN of the book
+	 */
+	public void remove(int isbn) {
+		Integer position = positions.remove(isbn);
+
+		if (position == null) {
+			return;
+		}
+
+		size--;
+
+		if (position != size) {
+			books[position] = books[size];
+			positions.put(books[position].getISBN(), position);
+		}
+
+		books[size] = null;
+	}
+
+	/**
+	 * Removes all books from the index.
+	 */
+	public void clear() {
+		books = new BookStoreBook[INITIAL_CAPACITY];
+		size = 0;
+		positions.clear();
+	}
+
+	/**
+	 * Draws <code>numBooks</code> distinct books at random, or all books if
+	 * there are not that many.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the books
+	 */
+	public List<BookStoreBook> sample(int numBooks) {
+		int numPicks = Math.min(numBooks, size);
+		List<BookStoreBook> picks = new ArrayList<>(numPicks);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		// Partial Fisher-Yates: the first numPicks slots end up holding a
+		// uniform random sample. The order of the array does not matter, so it
+		// is shuffled in place.
+		for (int i = 0; i < numPicks; i++) {
+			swap(i, random.nextInt(i, size));
+			picks.add(books[i]);
+		}
+
+		return picks;
+	}
+
+	/**
+	 * Swaps two books of the array.
+	 *
+	 * @param i
+	 *            the position of the first book
+	 * @param j
+	 *            the position of the second book
+	 */
+	private void swap(int i, int j) {
+		if (i == j) {
+			return;
+		}
+
+		BookStoreBook book = books[i];
+		books[i] = books[j];
+		books[j] = book;
+		positions.put(books[i].getISBN(), i);
+		positions.put(books[j].getISBN(), j);
+	}
+}
@@ -0,0 +1,123 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * {@link LeastCopiesIndex} keeps the ISBNs of the books of the store ordered
+ * by number of copies, fewest first, with ties ordered by ISBN, lowest first.
+ * The store updates it whenever a book is added or removed, or its copies are
+ * added or bought, so that the <code>k</code> books with the least copies are
+ * read off the front of the index in O(log n + k) instead of sorting the whole
+ * catalogue.
+ *
+ * The index holds the ISBNs only, since the other fields of a book change
+ * without moving it, and is not thread-safe; the store calls it while holding
+ * its lock, and reads the books from its catalogue.
+ */
+public class LeastCopiesIndex {
+
+	/** The books, ordered by number of copies. */
+	private final TreeSet<CopiesKey> index = new TreeSet<>();
+
+	/**
+	 * Adds a book to the index.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void add(BookStoreBook book) {
+		index.add(new CopiesKey(book.getNumCopies(), book.getISBN()));
+	}
+
+	/**
+	 * Moves a book to the position of its current number of copies.
+	 *
+	 * @param previousNumCopies
+	 *            the number of copies the book was indexed with
+	 * @param book
+	 *            the book
+	 */
+	public void update(int previousNumCopies, BookStoreBook book) {
+		if (previousNumCopies == book.getNumCopies()) {
+			return;
+		}
+
+		index.remove(new CopiesKey(previousNumCopies, book.getISBN()));
+		add(book);
+	}
+
+	/**
+	 * Removes a book from the index.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void remove(BookStoreBook book) {
+		index.remove(new CopiesKey(book.getNumCopies(), book.getISBN()));
+	}
+
+	/**
+	 * Removes all books from the index.
+	 */
+	public void clear() {
+		index.clear();
+	}
+
+	/**
+	 * Gets the ISBNs of the <code>numBooks</code> books with the least copies.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the ISBNs, of the book with the least copies first
+	 */
+	public List<Integer> getLeastCopies(int numBooks) {
+		List<Integer> isbns = new ArrayList<>(Math.min(numBooks, index.size()));
+		Iterator<CopiesKey> keys = index.iterator();
+
+		while (isbns.size() < numBooks && keys.hasNext()) {
+			isbns.add(keys.next().isbn);
+		}
+
+		return isbns;
+	}
+
+	/**
+	 * {@link CopiesKey} orders books by number of copies and ISBN, both
+	 * ascending.
+	 */
+	private static final class CopiesKey implements Comparable<CopiesKey> {
+
+		/** The number of copies. */
+		private final int numCopies;
+
+		/** The ISBN. */
+		private final int isbn;
+
+		/**
+		 * Instantiates a new {@link CopiesKey}.
+		 *
+		 * @param numCopies
+		 *            the number of copies
+		 * @param isbn
+		 *            the ISBN
+		 */
+		CopiesKey(int numCopies, int isbn) {
+			this.numCopies = numCopies;
+			this.isbn = isbn;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(CopiesKey other) {
+			int byCopies = Integer.compare(numCopies, other.numCopies);
+			return (byCopies != 0) ? byCopies : Integer.compare(isbn, other.isbn);
+		}
+	}
+}
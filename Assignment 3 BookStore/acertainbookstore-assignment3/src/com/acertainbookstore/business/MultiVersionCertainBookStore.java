@@ -0,0 +1,525 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreUtility;
+import com.acertainbookstore.utils.PersistentIntMap;
+
+/**
+ * {@link MultiVersionCertainBookStore} implements the {@link BookStore} and
+ * {@link StockManager} functionalities with multi-version concurrency control.
+ *
+ * The catalogue is a {@link PersistentIntMap} whose books are never modified
+ * once published. Writers are serialized on the store monitor; each one builds
+ * a new catalogue version by copying the books it changes, and commits by
+ * replacing the volatile {@link #catalogue} reference. Readers take no lock:
+ * they read the reference once and answer from that consistent snapshot, so a
+ * long {@link #getBooks()} never delays {@link #buyBooks(Set)}, and a reader
+ * never observes half of a write.
+ *
+ * Unchanged books and trie nodes are shared between versions, so a commit
+ * costs only the copied path. The trie is ordered by hash, so pages of the
+ * catalogue are read off a sorted array of the ISBNs, which is replaced only
+ * when books are added or removed. Old versions are not tracked explicitly: once
+ * the last reader holding a snapshot returns, the version becomes unreachable
+ * and is reclaimed by the garbage collector.
+ *
+ * @see BookStore
+ * @see StockManager
+ * @see PersistentIntMap
+ */
+public class MultiVersionCertainBookStore implements BookStore, StockManager {
+
+	/** The latest committed catalogue version, from ISBN to book. */
+	private volatile PersistentIntMap<BookStoreBook> catalogue = PersistentIntMap.empty();
+
+	/**
+	 * The ISBNs in ascending order, never modified once published. Writers
+	 * publish a new array before the catalogue when they add books, and after
+	 * it when they remove books, so that it holds at least the ISBNs of the
+	 * latest catalogue at any time.
+	 */
+	private volatile int[] sortedIsbns = new int[0];
+
+	/**
+	 * Instantiates a new {@link MultiVersionCertainBookStore}.
+	 */
+	public MultiVersionCertainBookStore() {
+		// The catalogue starts out empty.
+	}
+
+	private static void validate(PersistentIntMap<BookStoreBook> snapshot, StockBook book)
+			throws BookStoreException {
+		int isbn = book.getISBN();
+		String bookTitle = book.getTitle();
+		String bookAuthor = book.getAuthor();
+		int noCopies = book.getNumCopies();
+		float bookPrice = book.getPrice();
+
+		if (BookStoreUtility.isInvalidISBN(isbn)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookTitle)) { // Check if the book has valid title
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isEmpty(bookAuthor)) { // Check if the book has valid author
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (BookStoreUtility.isInvalidNoCopies(noCopies)) { // Check if the book has at least one copy
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (bookPrice < 0.0) { // Check if the price of the book is valid
+			throw new BookStoreException(BookStoreConstants.BOOK + book.toString() + BookStoreConstants.INVALID);
+		}
+
+		if (snapshot.containsKey(isbn)) {// Check if the book is not in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + isbn + BookStoreConstants.DUPLICATED);
+		}
+	}
+
+	private static void validate(PersistentIntMap<BookStoreBook> snapshot, BookCopy bookCopy)
+			throws BookStoreException {
+		int isbn = bookCopy.getISBN();
+		int numCopies = bookCopy.getNumCopies();
+
+		validateISBNInStock(snapshot, isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidNoCopies(numCopies)) { // Check if the number of the book copy is larger than zero
+			throw new BookStoreException(BookStoreConstants.NUM_COPIES + numCopies + BookStoreConstants.INVALID);
+		}
+	}
+
+	private static void validate(PersistentIntMap<BookStoreBook> snapshot, BookRating bookRating)
+			throws BookStoreException {
+		int isbn = bookRating.getISBN();
+		int rating = bookRating.getRating();
+
+		validateISBNInStock(snapshot, isbn); // Check if the book has valid ISBN and in stock
+
+		if (BookStoreUtility.isInvalidRating(rating)) { // Check if the rating is within range
+			throw new BookStoreException(BookStoreConstants.RATING + rating + BookStoreConstants.INVALID);
+		}
+	}
+
+	private static void validate(PersistentIntMap<BookStoreBook> snapshot, BookEditorPick editorPickArg)
+			throws BookStoreException {
+		int isbn = editorPickArg.getISBN();
+		validateISBNInStock(snapshot, isbn); // Check if the book has valid ISBN and in stock
+	}
+
+	private static void validateISBNInStock(PersistentIntMap<BookStoreBook> snapshot, Integer ISBN)
+			throws BookStoreException {
+		if (BookStoreUtility.isInvalidISBN(ISBN)) { // Check if the book has valid ISBN
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+		}
+		if (!snapshot.containsKey(ISBN)) {// Check if the book is in stock
+			throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
+	 */
+	public synchronized void addBooks(Set<StockBook> bookSet) throws BookStoreException {
+		if (bookSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> next = catalogue;
+
+		// Check if all are there
+		for (StockBook book : bookSet) {
+			validate(next, book);
+		}
+
+		for (StockBook book : bookSet) {
+			next = next.put(book.getISBN(), new BookStoreBook(book));
+		}
+
+		sortedIsbns = IntStream
+				.concat(Arrays.stream(sortedIsbns), bookSet.stream().mapToInt(StockBook::getISBN))
+				.sorted()
+				.distinct()
+				.toArray();
+		catalogue = next;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
+	 */
+	public synchronized void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
+		if (bookCopiesSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> next = catalogue;
+
+		for (BookCopy bookCopy : bookCopiesSet) {
+			validate(next, bookCopy);
+		}
+
+		// Update the number of copies on private copies of the books.
+		for (BookCopy bookCopy : bookCopiesSet) {
+			BookStoreBook book = new BookStoreBook(next.get(bookCopy.getISBN()));
+			book.addCopies(bookCopy.getNumCopies());
+			next = next.put(book.getISBN(), book);
+		}
+
+		catalogue = next;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks()
+	 */
+	public List<StockBook> getBooks() {
+		PersistentIntMap<BookStoreBook> snapshot = catalogue;
+		List<StockBook> books = new ArrayList<>(snapshot.size());
+
+		for (BookStoreBook book : snapshot) {
+			books.add(book.immutableStockBook());
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks(int, int)
+	 */
+	@Override
+	public List<StockBook> getBooks(int cursor, int limit) throws BookStoreException {
+		BookSelection.validateLimit(limit);
+		PersistentIntMap<BookStoreBook> snapshot;
+		int[] isbns;
+
+		// Read the ISBNs while the snapshot is the latest catalogue, so that
+		// they hold all of its ISBNs; the others are skipped.
+		do {
+			snapshot = catalogue;
+			isbns = sortedIsbns;
+		} while (snapshot != catalogue);
+
+		// The first ISBN greater than the cursor.
+		int position = Arrays.binarySearch(isbns, cursor);
+		position = (position >= 0) ? position + 1 : -position - 1;
+		List<StockBook> books = new ArrayList<>(Math.min(limit, snapshot.size()));
+
+		for (int i = position; i < isbns.length && books.size() < limit; i++) {
+			BookStoreBook book = snapshot.get(isbns[i]);
+
+			if (book != null) {
+				books.add(book.immutableStockBook());
+			}
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksWithLeastCopies(int)
+	 */
+	@Override
+	public List<StockBook> getBooksWithLeastCopies(int limit) throws BookStoreException {
+		BookSelection.validateLimit(limit);
+		return BookSelection.selectFirst(catalogue, book -> true, BookSelection.BY_COPIES, limit);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#updateEditorPicks(java.util
+	 * .Set)
+	 */
+	public synchronized void updateEditorPicks(Set<BookEditorPick> editorPicks) throws BookStoreException {
+
+		// Check that all ISBNs that we add/remove are there first.
+		if (editorPicks == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> next = catalogue;
+
+		for (BookEditorPick editorPickArg : editorPicks) {
+			validate(next, editorPickArg);
+		}
+
+		for (BookEditorPick editorPickArg : editorPicks) {
+			BookStoreBook book = new BookStoreBook(next.get(editorPickArg.getISBN()));
+			book.setEditorPick(editorPickArg.isEditorPick());
+			next = next.put(book.getISBN(), book);
+		}
+
+		catalogue = next;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
+	 */
+	public synchronized void buyBooks(Set<BookCopy> bookCopiesToBuy) throws BookStoreException {
+		if (bookCopiesToBuy == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		// Check that all ISBNs that we buy are there first.
+		PersistentIntMap<BookStoreBook> next = catalogue;
+		BookStoreBook book;
+		Boolean saleMiss = false;
+
+		Map<Integer, Integer> salesMisses = new HashMap<>();
+
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			validate(next, bookCopyToBuy);
+
+			book = next.get(bookCopyToBuy.getISBN());
+
+			if (!book.areCopiesInStore(bookCopyToBuy.getNumCopies())) {
+				// If we cannot sell the copies of the book, it is a miss.
+				salesMisses.put(book.getISBN(), bookCopyToBuy.getNumCopies() - book.getNumCopies());
+				saleMiss = true;
+			}
+		}
+
+		// We throw exception now since we want to see how many books in the
+		// order incurred misses which is used by books in demand
+		if (saleMiss) {
+			for (Map.Entry<Integer, Integer> saleMissEntry : salesMisses.entrySet()) {
+				book = new BookStoreBook(next.get(saleMissEntry.getKey()));
+				book.addSaleMiss(saleMissEntry.getValue());
+				next = next.put(book.getISBN(), book);
+			}
+
+			catalogue = next;
+			throw new BookStoreException(BookStoreConstants.BOOK + BookStoreConstants.NOT_AVAILABLE);
+		}
+
+		// Then make the purchase.
+		for (BookCopy bookCopyToBuy : bookCopiesToBuy) {
+			book = new BookStoreBook(next.get(bookCopyToBuy.getISBN()));
+			book.buyCopies(bookCopyToBuy.getNumCopies());
+			next = next.put(book.getISBN(), book);
+		}
+
+		catalogue = next;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksByISBN(java.util.
+	 * Set)
+	 */
+	public List<StockBook> getBooksByISBN(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> snapshot = catalogue;
+
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(snapshot, ISBN);
+		}
+
+		// Return the set of books matching isbns in the validated set.
+		return isbnSet.stream()
+				.map(isbn -> snapshot.get(isbn).immutableStockBook())
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getBooks(java.util.Set)
+	 */
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> snapshot = catalogue;
+
+		// Check that all ISBNs that we rate are there to start with.
+		for (Integer ISBN : isbnSet) {
+			validateISBNInStock(snapshot, ISBN);
+		}
+
+		return isbnSet.stream()
+				.map(isbn -> snapshot.get(isbn).immutableBook())
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getEditorPicks(int)
+	 */
+	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		// Query for all books with the Editor Pick boolean set.
+		List<BookStoreBook> listAllEditorPicks = new ArrayList<>();
+
+		for (BookStoreBook book : catalogue) {
+			if (book.isEditorPick()) {
+				listAllEditorPicks.add(book);
+			}
+		}
+
+		// Partial Fisher-Yates: the first numPicks books of the list end up
+		// holding a uniform random sample.
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int numPicks = Math.min(numBooks, listAllEditorPicks.size());
+
+		for (int i = 0; i < numPicks; i++) {
+			Collections.swap(listAllEditorPicks, i, random.nextInt(i, listAllEditorPicks.size()));
+		}
+
+		return listAllEditorPicks.subList(0, numPicks).stream()
+				.map(BookStoreBook::immutableBook)
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
+	 */
+	@Override
+	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
+		if (numBooks < 0) {
+			throw new BookStoreException("numBooks = " + numBooks + ", but it must be positive");
+		}
+
+		List<BookStoreBook> books = new ArrayList<>();
+
+		for (BookStoreBook book : catalogue) {
+			books.add(book);
+		}
+
+		return books.stream()
+				.sorted(Comparator.comparing(BookStoreBook::getAverageRating).reversed())
+				.limit(numBooks)
+				.map(BookStoreBook::immutableBook)
+				.collect(Collectors.toList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
+	 */
+	@Override
+	public List<StockBook> getBooksInDemand() throws BookStoreException {
+		List<StockBook> books = new ArrayList<>();
+
+		for (BookStoreBook book : catalogue) {
+			if (book.hadSaleMiss()) {
+				books.add(book.immutableStockBook());
+			}
+		}
+
+		return books;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStore#rateBooks(java.util.Set)
+	 */
+	@Override
+	public synchronized void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
+		if (bookRating == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> next = catalogue;
+
+		for (BookRating bookRate : bookRating) {
+			validate(next, bookRate);
+		}
+
+		for (BookRating bookRate : bookRating) {
+			BookStoreBook book = new BookStoreBook(next.get(bookRate.getISBN()));
+			book.addRating(bookRate.getRating());
+			next = next.put(book.getISBN(), book);
+		}
+
+		catalogue = next;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
+	 */
+	public synchronized void removeAllBooks() throws BookStoreException {
+		catalogue = PersistentIntMap.empty();
+		sortedIsbns = new int[0];
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
+	 */
+	public synchronized void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
+		if (isbnSet == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
+
+		PersistentIntMap<BookStoreBook> next = catalogue;
+
+		for (Integer ISBN : isbnSet) {
+			if (BookStoreUtility.isInvalidISBN(ISBN)) {
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.INVALID);
+			}
+
+			if (!next.containsKey(ISBN)) {
+				throw new BookStoreException(BookStoreConstants.ISBN + ISBN + BookStoreConstants.NOT_AVAILABLE);
+			}
+		}
+
+		for (int isbn : isbnSet) {
+			next = next.remove(isbn);
+		}
+
+		catalogue = next;
+		sortedIsbns = Arrays.stream(sortedIsbns).filter(isbn -> !isbnSet.contains(isbn)).toArray();
+	}
+}
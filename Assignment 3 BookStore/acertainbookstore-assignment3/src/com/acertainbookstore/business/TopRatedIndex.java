@@ -0,0 +1,183 @@
+package com.acertainbookstore.business;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * {@link TopRatedIndex} keeps the books of the store ordered by average rating,
+ * highest first, with ties ordered by ISBN, highest first. The store updates it
+ * whenever a book is added, rated or removed, so that the top rated books are
+ * read off the front of the index instead of sorting the whole catalogue.
+ *
+ * The index is a concurrent skip list holding an immutable copy of each book,
+ * so readers need no lock on the store. Moving a book takes two steps, which a
+ * reader iterating the skip list alone could interleave with and miss the book
+ * in both positions, so the index has a {@link StampedLock} of its own: writers
+ * take the write lock, and readers first read without locking and then
+ * validate the stamp, only retrying under the read lock if a writer
+ * intervened.
+ */
+public class TopRatedIndex {
+
+	/** The immutable copies of the books, ordered by rating. */
+	private final ConcurrentSkipListMap<RatingKey, ImmutableBook> index = new ConcurrentSkipListMap<>();
+
+	/** The lock, guarding the moves of the books against the readers. */
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Adds a book to the index.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void add(BookStoreBook book) {
+		long stamp = lock.writeLock();
+
+		try {
+			index.put(new RatingKey(book.getAverageRating(), book.getISBN()), book.immutableBook());
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Moves a book to the position of its current average rating.
+	 *
+	 * @param previousAverageRating
+	 *            the average rating the book was indexed with
+	 * @param book
+	 *            the book
+	 */
+	public void update(float previousAverageRating, BookStoreBook book) {
+		RatingKey previousKey = new RatingKey(previousAverageRating, book.getISBN());
+		RatingKey key = new RatingKey(book.getAverageRating(), book.getISBN());
+
+		if (key.compareTo(previousKey) == 0) {
+			return;
+		}
+
+		long stamp = lock.writeLock();
+
+		try {
+			ImmutableBook immutableBook = index.remove(previousKey);
+			index.put(key, immutableBook != null ? immutableBook : book.immutableBook());
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes a book from the index.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	public void remove(BookStoreBook book) {
+		long stamp = lock.writeLock();
+
+		try {
+			index.remove(new RatingKey(book.getAverageRating(), book.getISBN()));
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Removes all books from the index.
+	 */
+	public void clear() {
+		long stamp = lock.writeLock();
+
+		try {
+			index.clear();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Gets the <code>numBooks</code> books with the highest average rating.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the books, highest rated first
+	 */
+	public List<Book> getTopRated(int numBooks) {
+		long stamp = lock.tryOptimisticRead();
+
+		if (stamp != 0) {
+			List<Book> books = readTopRated(numBooks);
+
+			if (lock.validate(stamp)) {
+				return books;
+			}
+		}
+
+		stamp = lock.readLock();
+
+		try {
+			return readTopRated(numBooks);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Reads the first <code>numBooks</code> books off the index.
+	 *
+	 * @param numBooks
+	 *            the number of books
+	 * @return the books, highest rated first
+	 */
+	private List<Book> readTopRated(int numBooks) {
+		List<Book> books = new ArrayList<>();
+		Iterator<ImmutableBook> values = index.values().iterator();
+
+		while (books.size() < numBooks && values.hasNext()) {
+			books.add(values.next());
+		}
+
+		return books;
+	}
+
+	/**
+	 * {@link RatingKey} orders books by average rating and ISBN, both
+	 * descending.
+	 */
+	private static final class RatingKey implements Comparable<RatingKey> {
+
+		/** The average rating. */
+		private final float averageRating;
+
+		/** The ISBN. */
+		private final int isbn;
+
+		/**
+		 * Instantiates a new {@link RatingKey}.
+		 *
+		 * @param averageRating
+		 *            the average rating
+		 * @param isbn
+		 *            the ISBN
+		 */
+		RatingKey(float averageRating, int isbn) {
+			this.averageRating = averageRating;
+			this.isbn = isbn;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		@Override
+		public int compareTo(RatingKey other) {
+			int byRating = Float.compare(other.averageRating, averageRating);
+			return (byRating != 0) ? byRating : Integer.compare(other.isbn, isbn);
+		}
+	}
+}
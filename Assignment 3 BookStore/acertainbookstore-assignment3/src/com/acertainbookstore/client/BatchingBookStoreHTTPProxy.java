@@ -0,0 +1,338 @@
+package com.acertainbookstore.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ * {@link BatchingBookStoreHTTPProxy} is a {@link BookStoreHTTPProxy} which
+ * coalesces concurrent getBooks calls. The calls made within a short window
+ * of the first one, or until the batch reaches a number of ISBNs, are sent as
+ * one request for all their ISBNs, and each caller gets back the books of its
+ * own ISBNs.
+ *
+ * If the merged request fails, e.g. because one caller asked for an invalid
+ * ISBN, the calls of the batch are sent again one by one, so that each caller
+ * gets the reply it would have got without batching.
+ *
+ * Stopping the proxy sends the batch being collected and waits for its
+ * replies; the calls made afterwards fail with a {@link BookStoreException}.
+ *
+ * @see BookStoreHTTPProxy
+ */
+public class BatchingBookStoreHTTPProxy extends BookStoreHTTPProxy {
+
+	/** The time a batch waits for more calls. */
+	private final long batchWindowMicroSecs;
+
+	/** The number of ISBNs at which a batch is sent without waiting. */
+	private final int maxBatchIsbns;
+
+	/** The scheduler which sends the batches at the end of their window. */
+	private final ScheduledExecutorService scheduler;
+
+	/** The calls of the batch being collected, guarded by this. */
+	private List<PendingGetBooks> batch = new ArrayList<>();
+
+	/** The ISBNs of the batch being collected, guarded by this. */
+	private Set<Integer> batchIsbns = new HashSet<>();
+
+	/** The number of batches sent so far, guarded by this. */
+	private long numBatches = 0;
+
+	/** Whether the proxy is stopped, guarded by this. */
+	private boolean stopped = false;
+
+	/**
+	 * Initializes a new {@link BatchingBookStoreHTTPProxy} with the default
+	 * window and batch size.
+	 *
+	 * @param serverAddress
+	 *            the server address
+	 * @throws Exception
+	 *             the exception
+	 */
+	public BatchingBookStoreHTTPProxy(String serverAddress) throws Exception {
+		this(serverAddress, BookStoreClientConstants.CLIENT_BATCH_WINDOW_MICROSECS,
+				BookStoreClientConstants.CLIENT_MAX_BATCH_ISBNS);
+	}
+
+	/**
+	 * Initializes a new {@link BatchingBookStoreHTTPProxy}.
+	 *
+	 * @param serverAddress
+	 *            the server address
+	 * @param batchWindowMicroSecs
+	 *            the time a batch waits for more calls
+	 * @param maxBatchIsbns
+	 *            the number of ISBNs at which a batch is sent without waiting
+	 * @throws Exception
+	 *             the exception
+	 */
+	public BatchingBookStoreHTTPProxy(String serverAddress, long batchWindowMicroSecs, int maxBatchIsbns)
+			throws Exception {
+		super(serverAddress);
+
+		if (batchWindowMicroSecs < 0 || maxBatchIsbns < 1) {
+			stop();
+			throw new IllegalArgumentException("Invalid batch window or size.");
+		}
+
+		this.batchWindowMicroSecs = batchWindowMicroSecs;
+		this.maxBatchIsbns = maxBatchIsbns;
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "BatchingBookStoreHTTPProxy");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.client.BookStoreHTTPProxy#getBooks(java.util.Set)
+	 */
+	@Override
+	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
+		try {
+			return getBooksAsync(isbnSet).get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_SENDING, ex);
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof BookStoreException) {
+				throw (BookStoreException) ex.getCause();
+			}
+
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex.getCause());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.client.BookStoreHTTPProxy#getBooksAsync(java.util.
+	 * Set)
+	 */
+	@Override
+	public CompletableFuture<List<Book>> getBooksAsync(Set<Integer> isbnSet) {
+		if (isbnSet == null || isbnSet.isEmpty()) {
+			// Nothing to merge; the server decides what these calls return.
+			return super.getBooksAsync(isbnSet);
+		}
+
+		PendingGetBooks pending = new PendingGetBooks(isbnSet);
+		List<PendingGetBooks> fullBatch = null;
+
+		synchronized (this) {
+			if (stopped) {
+				pending.future.completeExceptionally(
+						new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_STOPPED));
+				return pending.future;
+			}
+
+			if (batch.isEmpty()) {
+				long batchNumber = numBatches;
+				scheduler.schedule(() -> sendBatch(batchNumber), batchWindowMicroSecs, TimeUnit.MICROSECONDS);
+			}
+
+			batch.add(pending);
+			batchIsbns.addAll(pending.isbnSet);
+
+			if (batchIsbns.size() >= maxBatchIsbns) {
+				fullBatch = takeBatch();
+			}
+		}
+
+		if (fullBatch != null) {
+			send(fullBatch);
+		}
+
+		return pending.future;
+	}
+
+	/**
+	 * Sends a batch at the end of its window, unless it was full and has been
+	 * sent already.
+	 *
+	 * @param batchNumber
+	 *            the number of the batch
+	 */
+	private void sendBatch(long batchNumber) {
+		List<PendingGetBooks> windowBatch = null;
+
+		synchronized (this) {
+			if (batchNumber == numBatches && !batch.isEmpty()) {
+				windowBatch = takeBatch();
+			}
+		}
+
+		if (windowBatch != null) {
+			send(windowBatch);
+		}
+	}
+
+	/**
+	 * Takes the calls of the batch being collected, and starts a new batch.
+	 *
+	 * @return the calls
+	 */
+	private List<PendingGetBooks> takeBatch() {
+		List<PendingGetBooks> calls = batch;
+		batch = new ArrayList<>();
+		batchIsbns = new HashSet<>();
+		numBatches++;
+		return calls;
+	}
+
+	/**
+	 * Sends the calls of a batch as one request, and hands each caller the
+	 * books of its ISBNs.
+	 *
+	 * @param calls
+	 *            the calls
+	 */
+	private void send(List<PendingGetBooks> calls) {
+		if (calls.size() == 1) {
+			sendAlone(calls.get(0));
+			return;
+		}
+
+		Set<Integer> isbnSet = new HashSet<>();
+
+		for (PendingGetBooks call : calls) {
+			isbnSet.addAll(call.isbnSet);
+		}
+
+		super.getBooksAsync(isbnSet).whenComplete((books, exception) -> {
+			if (exception != null) {
+				// Do not let one caller fail the others.
+				calls.forEach(this::sendAlone);
+				return;
+			}
+
+			Map<Integer, Book> booksByIsbn = new HashMap<>();
+
+			for (Book book : books) {
+				booksByIsbn.put(book.getISBN(), book);
+			}
+
+			for (PendingGetBooks call : calls) {
+				List<Book> callBooks = new ArrayList<>();
+
+				for (Integer isbn : call.isbnSet) {
+					Book book = booksByIsbn.get(isbn);
+
+					if (book == null) {
+						callBooks = null;
+						break;
+					}
+
+					callBooks.add(book);
+				}
+
+				if (callBooks != null) {
+					call.future.complete(callBooks);
+				} else {
+					sendAlone(call);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Sends a call on its own.
+	 *
+	 * @param call
+	 *            the call
+	 */
+	private void sendAlone(PendingGetBooks call) {
+		super.getBooksAsync(call.isbnSet).whenComplete((books, exception) -> {
+			if (exception != null) {
+				call.future.completeExceptionally(
+						exception instanceof CompletionException ? exception.getCause() : exception);
+			} else {
+				call.future.complete(books);
+			}
+		});
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.client.BookStoreHTTPProxy#stop()
+	 */
+	@Override
+	public void stop() {
+		List<PendingGetBooks> lastBatch = null;
+
+		synchronized (this) {
+			stopped = true;
+
+			if (!batch.isEmpty()) {
+				lastBatch = takeBatch();
+			}
+		}
+
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+
+		if (lastBatch != null) {
+			// Send the calls still waiting for their window, and let them get
+			// their replies before the client stops.
+			send(lastBatch);
+
+			for (PendingGetBooks call : lastBatch) {
+				try {
+					call.future.get();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException ex) {
+					// The caller gets the exception.
+				}
+			}
+		}
+
+		super.stop();
+	}
+
+	/**
+	 * {@link PendingGetBooks} is a getBooks call waiting for its batch to be
+	 * sent.
+	 */
+	private static final class PendingGetBooks {
+
+		/** The ISBNs of the call. */
+		private final Set<Integer> isbnSet;
+
+		/** The future books of the call. */
+		private final CompletableFuture<List<Book>> future = new CompletableFuture<>();
+
+		/**
+		 * Initializes a new {@link PendingGetBooks}.
+		 *
+		 * @param isbnSet
+		 *            the ISBNs of the call
+		 */
+		private PendingGetBooks(Set<Integer> isbnSet) {
+			// Copy the set, as the caller may change it once it is back.
+			this.isbnSet = new HashSet<>(isbnSet);
+		}
+	}
+}
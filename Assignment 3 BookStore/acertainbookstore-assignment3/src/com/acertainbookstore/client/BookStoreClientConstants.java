@@ -11,12 +11,22 @@ public final class BookStoreClientConstants {
 	/** The Constant CLIENT_MAX_CONNECTION_ADDRESS. */
 	public static final int CLIENT_MAX_CONNECTION_ADDRESS = 200;
 
+	/** The Constant CLIENT_MAX_QUEUED_REQUESTS_ADDRESS. */
+	// Asynchronous requests wait in this queue for a free connection.
+	public static final int CLIENT_MAX_QUEUED_REQUESTS_ADDRESS = 65536;
+
 	/** The Constant CLIENT_MAX_THREADSPOOL_THREADS. */
 	public static final int CLIENT_MAX_THREADSPOOL_THREADS = 250;
 
 	/** The Constant CLIENT_MAX_TIMEOUT_MILLISECS. */
 	public static final int CLIENT_MAX_TIMEOUT_MILLISECS = 30000;
 
+	/** The Constant CLIENT_BATCH_WINDOW_MICROSECS. */
+	public static final long CLIENT_BATCH_WINDOW_MICROSECS = 200;
+
+	/** The Constant CLIENT_MAX_BATCH_ISBNS. */
+	public static final int CLIENT_MAX_BATCH_ISBNS = 100;
+
 	/** The Constant strERR_CLIENT_REQUEST_SENDING. */
 	public static final String STR_ERR_CLIENT_REQUEST_SENDING = "ERR_CLIENT_REQUEST_SENDING";
 
@@ -29,12 +39,18 @@ public final class BookStoreClientConstants {
 	/** The Constant strERR_CLIENT_RESPONSE_DECODING. */
 	public static final String STR_ERR_CLIENT_RESPONSE_DECODING = "CLIENT_RESPONSE_DECODING";
 
+	/** The Constant strERR_CLIENT_SERVER_BUSY. */
+	public static final String STR_ERR_CLIENT_SERVER_BUSY = "CLIENT_SERVER_BUSY";
+
 	/** The Constant strERR_CLIENT_UNKNOWN. */
 	public static final String STR_ERR_CLIENT_UNKNOWN = "CLIENT_UNKNOWN";
 
 	/** The Constant strERR_CLIENT_ENCODING. */
 	public static final String STR_ERR_CLIENT_ENCODING = "CLIENT_ENCODING";
 
+	/** The Constant strERR_CLIENT_STOPPED. */
+	public static final String STR_ERR_CLIENT_STOPPED = "CLIENT_STOPPED";
+
 	/**
 	 * Prevents the instantiation of a new {@link BookStoreClientConstants}.
 	 */
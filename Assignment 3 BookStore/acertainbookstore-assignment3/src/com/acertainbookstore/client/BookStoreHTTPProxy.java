@@ -3,33 +3,38 @@ package com.acertainbookstore.client;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.interfaces.AsyncBookStore;
 import com.acertainbookstore.interfaces.BookStore;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreOperation;
 import com.acertainbookstore.utils.BookStoreRequest;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
  * {@link BookStoreHTTPProxy} implements the client level synchronous
- * {@link CertainBookStore} API declared in the {@link BookStore} class.
+ * {@link CertainBookStore} API declared in the {@link BookStore} class, and
+ * its asynchronous counterpart declared in the {@link AsyncBookStore} class.
  * 
  * @see BookStore
+ * @see AsyncBookStore
  * @see CertainBookStore
  */
-public class BookStoreHTTPProxy implements BookStore {
+public class BookStoreHTTPProxy implements BookStore, AsyncBookStore {
 
 	/** The client. */
 	protected HttpClient client;
@@ -38,7 +43,7 @@ public class BookStoreHTTPProxy implements BookStore {
 	protected String serverAddress;
 
 	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
+	private static final ThreadLocal<BookStoreSerializer> serializer = BookStoreUtility.SERIALIZERS;
 
 	/**
 	 * Initializes a new {@link BookStoreHTTPProxy}.
@@ -49,20 +54,15 @@ public class BookStoreHTTPProxy implements BookStore {
 	 *             the exception
 	 */
 	public BookStoreHTTPProxy(String serverAddress) throws Exception {
-
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
-
 		setServerAddress(serverAddress);
 		client = new HttpClient();
 
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
+		// Max requests waiting for a connection to every address.
+		client.setMaxRequestsQueuedPerDestination(BookStoreClientConstants.CLIENT_MAX_QUEUED_REQUESTS_ADDRESS);
+
 		// Max number of threads.
 		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
 
@@ -97,9 +97,7 @@ public class BookStoreHTTPProxy implements BookStore {
 	 * @see com.acertainbookstore.interfaces.BookStore#buyBooks(java.util.Set)
 	 */
 	public void buyBooks(Set<BookCopy> isbnSet) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.BUYBOOKS;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
-		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+		BookStoreUtility.performHttpExchange(client, newBuyBooksRequest(isbnSet), serializer.get());
 	}
 
 	/*
@@ -109,10 +107,8 @@ public class BookStoreHTTPProxy implements BookStore {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<Book> getBooks(Set<Integer> isbnSet) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.GETBOOKS;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
-		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newGetBooksRequest(isbnSet), serializer.get());
 		return (List<Book>) bookStoreResponse.getList();
 	}
 
@@ -123,16 +119,8 @@ public class BookStoreHTTPProxy implements BookStore {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<Book> getEditorPicks(int numBooks) throws BookStoreException {
-		String urlEncodedNumBooks = null;
-
-		urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks), StandardCharsets.UTF_8);
-
-		String urlString = serverAddress + "/" + BookStoreMessageTag.GETEDITORPICKS + "?"
-				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedNumBooks;
-
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
-		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newNumBooksRequest(BookStoreMessageTag.GETEDITORPICKS, numBooks), serializer.get());
 		return (List<Book>) bookStoreResponse.getList();
 	}
 
@@ -154,7 +142,7 @@ public class BookStoreHTTPProxy implements BookStore {
 	 */
 	@Override
 	public void rateBooks(Set<BookRating> bookRating) throws BookStoreException {
-		throw new BookStoreException();
+		BookStoreUtility.performHttpExchange(client, newRateBooksRequest(bookRating), serializer.get());
 	}
 
 	/*
@@ -163,7 +151,183 @@ public class BookStoreHTTPProxy implements BookStore {
 	 * @see com.acertainbookstore.interfaces.BookStore#getTopRatedBooks(int)
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public List<Book> getTopRatedBooks(int numBooks) throws BookStoreException {
-		throw new BookStoreException();
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newNumBooksRequest(BookStoreMessageTag.GETTOPRATEDBOOKS, numBooks), serializer.get());
+		return (List<Book>) bookStoreResponse.getList();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#buyBooksAsync(java.util.
+	 * Set)
+	 */
+	@Override
+	public CompletableFuture<Void> buyBooksAsync(Set<BookCopy> booksToBuy) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newBuyBooksRequest(booksToBuy), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#rateBooksAsync(java.util.
+	 * Set)
+	 */
+	@Override
+	public CompletableFuture<Void> rateBooksAsync(Set<BookRating> bookRating) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newRateBooksRequest(bookRating), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#getBooksAsync(java.util.
+	 * Set)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<Book>> getBooksAsync(Set<Integer> isbnSet) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newGetBooksRequest(isbnSet), serializer::get)
+				.thenApply(bookStoreResponse -> (List<Book>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#getTopRatedBooksAsync(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<Book>> getTopRatedBooksAsync(int numBooks) {
+		return BookStoreUtility
+				.performHttpExchangeAsync(client, newNumBooksRequest(BookStoreMessageTag.GETTOPRATEDBOOKS, numBooks),
+						serializer::get)
+				.thenApply(bookStoreResponse -> (List<Book>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncBookStore#getEditorPicksAsync(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<Book>> getEditorPicksAsync(int numBooks) {
+		return BookStoreUtility
+				.performHttpExchangeAsync(client, newNumBooksRequest(BookStoreMessageTag.GETEDITORPICKS, numBooks),
+						serializer::get)
+				.thenApply(bookStoreResponse -> (List<Book>) bookStoreResponse.getList());
+	}
+
+	/**
+	 * Performs a list of operations, such as getting the editor picks and
+	 * buying books, with one request. The server performs them in order, and
+	 * an operation which fails does not stop the ones after it.
+	 *
+	 * @param operations
+	 *            the operations
+	 * @return the book store responses of the operations, in order, each
+	 *         carrying the books read or the exception thrown by its operation
+	 * @throws BookStoreException
+	 *             the book store exception, if the batch itself fails
+	 */
+	@SuppressWarnings("unchecked")
+	public List<BookStoreResponse> batch(List<BookStoreOperation> operations) throws BookStoreException {
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newBatchRequest(operations), serializer.get());
+		return (List<BookStoreResponse>) bookStoreResponse.getList();
+	}
+
+	/**
+	 * Performs a list of operations with one request, without waiting for the
+	 * reply.
+	 *
+	 * @param operations
+	 *            the operations
+	 * @return the future book store responses of the operations
+	 * @see #batch(List)
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<BookStoreResponse>> batchAsync(List<BookStoreOperation> operations) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newBatchRequest(operations), serializer::get)
+				.thenApply(bookStoreResponse -> (List<BookStoreResponse>) bookStoreResponse.getList());
+	}
+
+	/**
+	 * Creates the request to perform a batch of operations.
+	 *
+	 * @param operations
+	 *            the operations
+	 * @return the book store request
+	 */
+	private BookStoreRequest newBatchRequest(List<BookStoreOperation> operations) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BATCH;
+
+		// Copy the operations into a list which the serializers can rebuild,
+		// as they cannot rebuild e.g. the lists of Arrays.asList.
+		return BookStoreRequest.newPostRequest(urlString,
+				operations == null ? null : new ArrayList<>(operations));
+	}
+
+	/**
+	 * Creates the request to buy books.
+	 *
+	 * @param isbnSet
+	 *            the books to buy
+	 * @return the book store request
+	 */
+	private BookStoreRequest newBuyBooksRequest(Set<BookCopy> isbnSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.BUYBOOKS;
+		return BookStoreRequest.newPostRequest(urlString, isbnSet);
+	}
+
+	/**
+	 * Creates the request to get books.
+	 *
+	 * @param isbnSet
+	 *            the ISBN set
+	 * @return the book store request
+	 */
+	private BookStoreRequest newGetBooksRequest(Set<Integer> isbnSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETBOOKS;
+		return BookStoreRequest.newPostRequest(urlString, isbnSet);
+	}
+
+	/**
+	 * Creates the request to rate books.
+	 *
+	 * @param bookRating
+	 *            the book rating
+	 * @return the book store request
+	 */
+	private BookStoreRequest newRateBooksRequest(Set<BookRating> bookRating) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.RATEBOOKS;
+		return BookStoreRequest.newPostRequest(urlString, bookRating);
+	}
+
+	/**
+	 * Creates a request for a number of books, such as the top rated books or
+	 * the editor picks.
+	 *
+	 * @param messageTag
+	 *            the message tag
+	 * @param numBooks
+	 *            the number of books
+	 * @return the book store request
+	 */
+	private BookStoreRequest newNumBooksRequest(BookStoreMessageTag messageTag, int numBooks) {
+		String urlEncodedNumBooks = URLEncoder.encode(Integer.toString(numBooks), StandardCharsets.UTF_8);
+		String urlString = serverAddress + "/" + messageTag + "?" + BookStoreConstants.BOOK_NUM_PARAM + "="
+				+ urlEncodedNumBooks;
+		return BookStoreRequest.newGetRequest(urlString);
 	}
 }
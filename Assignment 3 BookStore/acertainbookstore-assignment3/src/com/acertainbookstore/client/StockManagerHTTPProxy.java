@@ -1,7 +1,11 @@
 package com.acertainbookstore.client;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
@@ -9,9 +13,8 @@ import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
 import com.acertainbookstore.business.StockBook;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.interfaces.AsyncStockManager;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
 import com.acertainbookstore.interfaces.StockManager;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
@@ -22,13 +25,15 @@ import com.acertainbookstore.utils.BookStoreUtility;
 
 /**
  * {@link StockManagerHTTPProxy} implements the client level synchronous
- * {@link CertainBookStore} API declared in the {@link StockManager} class. Uses
- * the HTTP protocol for communication with the server.
+ * {@link CertainBookStore} API declared in the {@link StockManager} class, and
+ * its asynchronous counterpart declared in the {@link AsyncStockManager} class.
+ * Uses the HTTP protocol for communication with the server.
  * 
  * @see CertainBookStore
  * @see StockManager
+ * @see AsyncStockManager
  */
-public class StockManagerHTTPProxy implements StockManager {
+public class StockManagerHTTPProxy implements StockManager, AsyncStockManager {
 
 	/** The client. */
 	protected HttpClient client;
@@ -37,7 +42,7 @@ public class StockManagerHTTPProxy implements StockManager {
 	protected String serverAddress;
 
 	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
+	private static final ThreadLocal<BookStoreSerializer> serializer = BookStoreUtility.SERIALIZERS;
 
 	/**
 	 * Initializes a new {@link StockManagerHTTPProxy}.
@@ -48,20 +53,15 @@ public class StockManagerHTTPProxy implements StockManager {
 	 *             the exception
 	 */
 	public StockManagerHTTPProxy(String serverAddress) throws Exception {
-
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
-		}
-
 		setServerAddress(serverAddress);
 		client = new HttpClient();
 
 		// Max concurrent connections to every address.
 		client.setMaxConnectionsPerDestination(BookStoreClientConstants.CLIENT_MAX_CONNECTION_ADDRESS);
 
+		// Max requests waiting for a connection to every address.
+		client.setMaxRequestsQueuedPerDestination(BookStoreClientConstants.CLIENT_MAX_QUEUED_REQUESTS_ADDRESS);
+
 		// Max number of threads.
 		client.setExecutor(new QueuedThreadPool(BookStoreClientConstants.CLIENT_MAX_THREADSPOOL_THREADS));
 
@@ -97,9 +97,7 @@ public class StockManagerHTTPProxy implements StockManager {
 	 * com.acertainbookstore.interfaces.StockManager#addBooks(java.util.Set)
 	 */
 	public void addBooks(Set<StockBook> bookSet) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.ADDBOOKS;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookSet);
-		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+		BookStoreUtility.performHttpExchange(client, newAddBooksRequest(bookSet), serializer.get());
 	}
 
 	/*
@@ -109,9 +107,7 @@ public class StockManagerHTTPProxy implements StockManager {
 	 * com.acertainbookstore.interfaces.StockManager#addCopies(java.util.Set)
 	 */
 	public void addCopies(Set<BookCopy> bookCopiesSet) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.ADDCOPIES;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, bookCopiesSet);
-		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+		BookStoreUtility.performHttpExchange(client, newAddCopiesRequest(bookCopiesSet), serializer.get());
 	}
 
 	/*
@@ -121,13 +117,58 @@ public class StockManagerHTTPProxy implements StockManager {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<StockBook> getBooks() throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.LISTBOOKS;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newGetRequest(urlString);
-		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, newGetBooksRequest(),
 				serializer.get());
 		return (List<StockBook>) bookStoreResponse.getList();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.StockManager#getBooks(int, int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<StockBook> getBooks(int cursor, int limit) throws BookStoreException {
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newGetBooksPageRequest(cursor, limit), serializer.get());
+		return (List<StockBook>) bookStoreResponse.getList();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.StockManager#getBooksWithLeastCopies(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<StockBook> getBooksWithLeastCopies(int limit) throws BookStoreException {
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newGetBooksWithLeastCopiesRequest(limit), serializer.get());
+		return (List<StockBook>) bookStoreResponse.getList();
+	}
+
+	/**
+	 * Gets all the books, as {@link #getBooks()}, but hands them to a consumer
+	 * in ISBN order as they arrive, in chunks streamed by the server, so that
+	 * neither the server nor the client holds the serialized list of all the
+	 * books, and the client need not hold the books either. The chunks are read
+	 * one after the other, so books added or removed meanwhile may or may not
+	 * be handed over.
+	 *
+	 * @param bookConsumer
+	 *            the consumer of the books, which runs on the calling thread
+	 * @throws BookStoreException
+	 *             the book store exception, after the consumer has been handed
+	 *             the books which arrived before the failure
+	 */
+	@SuppressWarnings("unchecked")
+	public void getBooks(Consumer<? super StockBook> bookConsumer) throws BookStoreException {
+		BookStoreUtility.performHttpStreamExchange(client, newStreamBooksRequest(), serializer.get(),
+				chunk -> ((List<StockBook>) chunk).forEach(bookConsumer));
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -136,9 +177,8 @@ public class StockManagerHTTPProxy implements StockManager {
 	 * .Set)
 	 */
 	public void updateEditorPicks(Set<BookEditorPick> editorPicksValues) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.UPDATEEDITORPICKS + "?";
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, editorPicksValues);
-		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+		BookStoreUtility.performHttpExchange(client, newUpdateEditorPicksRequest(editorPicksValues),
+				serializer.get());
 	}
 
 	/*
@@ -147,8 +187,11 @@ public class StockManagerHTTPProxy implements StockManager {
 	 * @see com.acertainbookstore.interfaces.StockManager#getBooksInDemand()
 	 */
 	@Override
+	@SuppressWarnings("unchecked")
 	public List<StockBook> getBooksInDemand() throws BookStoreException {
-		throw new BookStoreException("Not implemented");
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newGetBooksInDemandRequest(), serializer.get());
+		return (List<StockBook>) bookStoreResponse.getList();
 	}
 
 	/*
@@ -157,13 +200,7 @@ public class StockManagerHTTPProxy implements StockManager {
 	 * @see com.acertainbookstore.interfaces.StockManager#removeAllBooks()
 	 */
 	public void removeAllBooks() throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.REMOVEALLBOOKS;
-
-		// Creating zero-length buffer for POST request body, because we don't
-		// need to send any data; this request is just a signal to remove all
-		// books.
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, "");
-		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+		BookStoreUtility.performHttpExchange(client, newRemoveAllBooksRequest(), serializer.get());
 	}
 
 	/*
@@ -173,9 +210,7 @@ public class StockManagerHTTPProxy implements StockManager {
 	 * com.acertainbookstore.interfaces.StockManager#removeBooks(java.util.Set)
 	 */
 	public void removeBooks(Set<Integer> isbnSet) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.REMOVEBOOKS;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbnSet);
-		BookStoreUtility.performHttpExchange(client, bookStoreRequest, serializer.get());
+		BookStoreUtility.performHttpExchange(client, newRemoveBooksRequest(isbnSet), serializer.get());
 	}
 
 	/*
@@ -187,13 +222,281 @@ public class StockManagerHTTPProxy implements StockManager {
 	 */
 	@SuppressWarnings("unchecked")
 	public List<StockBook> getBooksByISBN(Set<Integer> isbns) throws BookStoreException {
-		String urlString = serverAddress + "/" + BookStoreMessageTag.GETSTOCKBOOKSBYISBN;
-		BookStoreRequest bookStoreRequest = BookStoreRequest.newPostRequest(urlString, isbns);
-		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client, bookStoreRequest,
-				serializer.get());
+		BookStoreResponse bookStoreResponse = BookStoreUtility.performHttpExchange(client,
+				newGetBooksByISBNRequest(isbns), serializer.get());
 		return (List<StockBook>) bookStoreResponse.getList();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#addBooksAsync(java.
+	 * util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> addBooksAsync(Set<StockBook> bookSet) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newAddBooksRequest(bookSet), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#addCopiesAsync(java.
+	 * util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> addCopiesAsync(Set<BookCopy> bookCopiesSet) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newAddCopiesRequest(bookCopiesSet), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see com.acertainbookstore.interfaces.AsyncStockManager#getBooksAsync()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooksAsync() {
+		return BookStoreUtility.performHttpExchangeAsync(client, newGetBooksRequest(), serializer::get)
+				.thenApply(bookStoreResponse -> (List<StockBook>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#getBooksAsync(int,
+	 * int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooksAsync(int cursor, int limit) {
+		return BookStoreUtility
+				.performHttpExchangeAsync(client, newGetBooksPageRequest(cursor, limit), serializer::get)
+				.thenApply(bookStoreResponse -> (List<StockBook>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#
+	 * getBooksWithLeastCopiesAsync(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooksWithLeastCopiesAsync(int limit) {
+		return BookStoreUtility
+				.performHttpExchangeAsync(client, newGetBooksWithLeastCopiesRequest(limit), serializer::get)
+				.thenApply(bookStoreResponse -> (List<StockBook>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#getBooksByISBNAsync(
+	 * java.util.Set)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooksByISBNAsync(Set<Integer> isbns) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newGetBooksByISBNRequest(isbns), serializer::get)
+				.thenApply(bookStoreResponse -> (List<StockBook>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#getBooksInDemandAsync()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<List<StockBook>> getBooksInDemandAsync() {
+		return BookStoreUtility.performHttpExchangeAsync(client, newGetBooksInDemandRequest(), serializer::get)
+				.thenApply(bookStoreResponse -> (List<StockBook>) bookStoreResponse.getList());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#updateEditorPicksAsync(
+	 * java.util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> updateEditorPicksAsync(Set<BookEditorPick> editorPicks) {
+		return BookStoreUtility
+				.performHttpExchangeAsync(client, newUpdateEditorPicksRequest(editorPicks), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#removeAllBooksAsync()
+	 */
+	@Override
+	public CompletableFuture<Void> removeAllBooksAsync() {
+		return BookStoreUtility.performHttpExchangeAsync(client, newRemoveAllBooksRequest(), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.AsyncStockManager#removeBooksAsync(java.
+	 * util.Set)
+	 */
+	@Override
+	public CompletableFuture<Void> removeBooksAsync(Set<Integer> isbnSet) {
+		return BookStoreUtility.performHttpExchangeAsync(client, newRemoveBooksRequest(isbnSet), serializer::get)
+				.thenApply(bookStoreResponse -> null);
+	}
+
+	/**
+	 * Creates the request to add books.
+	 *
+	 * @param bookSet
+	 *            the book set
+	 * @return the book store request
+	 */
+	private BookStoreRequest newAddBooksRequest(Set<StockBook> bookSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.ADDBOOKS;
+		return BookStoreRequest.newPostRequest(urlString, bookSet);
+	}
+
+	/**
+	 * Creates the request to add copies.
+	 *
+	 * @param bookCopiesSet
+	 *            the book copies set
+	 * @return the book store request
+	 */
+	private BookStoreRequest newAddCopiesRequest(Set<BookCopy> bookCopiesSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.ADDCOPIES;
+		return BookStoreRequest.newPostRequest(urlString, bookCopiesSet);
+	}
+
+	/**
+	 * Creates the request to get all the books.
+	 *
+	 * @return the book store request
+	 */
+	private BookStoreRequest newGetBooksRequest() {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.LISTBOOKS;
+		return BookStoreRequest.newGetRequest(urlString);
+	}
+
+	/**
+	 * Creates the request to get a page of the books.
+	 *
+	 * @param cursor
+	 *            the ISBN the page starts after
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the book store request
+	 */
+	private BookStoreRequest newGetBooksPageRequest(int cursor, int limit) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.LISTBOOKS + "?"
+				+ BookStoreConstants.BOOK_CURSOR_PARAM + "="
+				+ URLEncoder.encode(Integer.toString(cursor), StandardCharsets.UTF_8) + "&"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "="
+				+ URLEncoder.encode(Integer.toString(limit), StandardCharsets.UTF_8);
+		return BookStoreRequest.newGetRequest(urlString);
+	}
+
+	/**
+	 * Creates the request to get the books with the least copies.
+	 *
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the book store request
+	 */
+	private BookStoreRequest newGetBooksWithLeastCopiesRequest(int limit) {
+		String urlEncodedLimit = URLEncoder.encode(Integer.toString(limit), StandardCharsets.UTF_8);
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETBOOKSWITHLEASTCOPIES + "?"
+				+ BookStoreConstants.BOOK_NUM_PARAM + "=" + urlEncodedLimit;
+		return BookStoreRequest.newGetRequest(urlString);
+	}
+
+	/**
+	 * Creates the request to stream all the books.
+	 *
+	 * @return the book store request
+	 */
+	private BookStoreRequest newStreamBooksRequest() {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.STREAMBOOKS;
+		return BookStoreRequest.newGetRequest(urlString);
+	}
+
+	/**
+	 * Creates the request to update the editor picks.
+	 *
+	 * @param editorPicksValues
+	 *            the editor picks
+	 * @return the book store request
+	 */
+	private BookStoreRequest newUpdateEditorPicksRequest(Set<BookEditorPick> editorPicksValues) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.UPDATEEDITORPICKS + "?";
+		return BookStoreRequest.newPostRequest(urlString, editorPicksValues);
+	}
+
+	/**
+	 * Creates the request to get the books in demand.
+	 *
+	 * @return the book store request
+	 */
+	private BookStoreRequest newGetBooksInDemandRequest() {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETBOOKSINDEMAND;
+		return BookStoreRequest.newGetRequest(urlString);
+	}
+
+	/**
+	 * Creates the request to remove all the books.
+	 *
+	 * @return the book store request
+	 */
+	private BookStoreRequest newRemoveAllBooksRequest() {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.REMOVEALLBOOKS;
+
+		// Creating zero-length buffer for POST request body, because we don't
+		// need to send any data; this request is just a signal to remove all
+		// books.
+		return BookStoreRequest.newPostRequest(urlString, "");
+	}
+
+	/**
+	 * Creates the request to remove books.
+	 *
+	 * @param isbnSet
+	 *            the ISBN set
+	 * @return the book store request
+	 */
+	private BookStoreRequest newRemoveBooksRequest(Set<Integer> isbnSet) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.REMOVEBOOKS;
+		return BookStoreRequest.newPostRequest(urlString, isbnSet);
+	}
+
+	/**
+	 * Creates the request to get books by ISBN.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the book store request
+	 */
+	private BookStoreRequest newGetBooksByISBNRequest(Set<Integer> isbns) {
+		String urlString = serverAddress + "/" + BookStoreMessageTag.GETSTOCKBOOKSBYISBN;
+		return BookStoreRequest.newPostRequest(urlString, isbns);
+	}
+
 	/**
 	 * Stops the proxy.
 	 */
@@ -2,10 +2,17 @@ package com.acertainbookstore.client.tests;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -14,15 +21,24 @@ import org.junit.Test;
 
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ColumnarCertainBookStore;
+import com.acertainbookstore.business.MultiVersionCertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.client.BatchingBookStoreHTTPProxy;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.server.BookStoreHTTPMessageHandler;
+import com.acertainbookstore.server.BookStoreHTTPServerUtility;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
+import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreOperation;
+import com.acertainbookstore.utils.BookStoreResponse;
 
 /**
  * {@link BookStoreTest} tests the {@link BookStore} interface.
@@ -40,6 +56,15 @@ public class BookStoreTest {
 	/** The local test. */
 	private static boolean localTest = true;
 
+	/** Multi-version store test. */
+	private static boolean multiVersion = false;
+
+	/** Columnar store test. */
+	private static boolean columnar = false;
+
+	/** The data directory of the columnar store test. */
+	private static File columnarDirectory = null;
+
 	/** The store manager. */
 	private static StockManager storeManager;
 
@@ -55,7 +80,22 @@ public class BookStoreTest {
 			String localTestProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_LOCAL_TEST);
 			localTest = (localTestProperty != null) ? Boolean.parseBoolean(localTestProperty) : localTest;
 
-			if (localTest) {
+			String multiVersionProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_MULTI_VERSION);
+			multiVersion = (multiVersionProperty != null) ? Boolean.parseBoolean(multiVersionProperty) : multiVersion;
+
+			String columnarProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR);
+			columnar = (columnarProperty != null) ? Boolean.parseBoolean(columnarProperty) : columnar;
+
+			if (localTest && multiVersion) {
+				MultiVersionCertainBookStore store = new MultiVersionCertainBookStore();
+				storeManager = store;
+				client = store;
+			} else if (localTest && columnar) {
+				columnarDirectory = Files.createTempDirectory("bookstore").toFile();
+				ColumnarCertainBookStore store = new ColumnarCertainBookStore(columnarDirectory);
+				storeManager = store;
+				client = store;
+			} else if (localTest) {
 				CertainBookStore store = new CertainBookStore();
 				storeManager = store;
 				client = store;
@@ -349,6 +389,302 @@ public class BookStoreTest {
 				&& booksInStorePreTest.size() == booksInStorePostTest.size());
 	}
 
+	/**
+	 * Tests that rating a book updates its total rating and number of ratings.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testRateBooks() throws BookStoreException {
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 3));
+		client.rateBooks(booksToRate);
+
+		booksToRate.clear();
+		booksToRate.add(new BookRating(TEST_ISBN, 5));
+		client.rateBooks(booksToRate);
+
+		List<StockBook> listBooks = storeManager.getBooks();
+		StockBook bookInList = listBooks.get(0);
+
+		assertTrue(listBooks.size() == 1 && bookInList.getISBN() == TEST_ISBN && bookInList.getTotalRating() == 8
+				&& bookInList.getNumTimesRated() == 2);
+	}
+
+	/**
+	 * Tests that no rating is applied if one of them is invalid.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testRateInvalidRating() throws BookStoreException {
+		addBooks(TEST_ISBN + 1, NUM_COPIES);
+
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN, 4));
+		booksToRate.add(new BookRating(TEST_ISBN + 1, 6));
+
+		try {
+			client.rateBooks(booksToRate);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		for (StockBook book : storeManager.getBooks()) {
+			assertEquals(0, book.getNumTimesRated());
+		}
+	}
+
+	/**
+	 * Tests that the top rated books follow the ratings as they change.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testGetTopRatedBooks() throws BookStoreException {
+		addBooks(TEST_ISBN + 1, NUM_COPIES);
+		addBooks(TEST_ISBN + 2, NUM_COPIES);
+
+		Set<BookRating> booksToRate = new HashSet<BookRating>();
+		booksToRate.add(new BookRating(TEST_ISBN + 1, 2));
+		booksToRate.add(new BookRating(TEST_ISBN + 2, 4));
+		client.rateBooks(booksToRate);
+
+		List<Book> topRatedBooks = client.getTopRatedBooks(2);
+		assertEquals(2, topRatedBooks.size());
+		assertEquals(TEST_ISBN + 2, topRatedBooks.get(0).getISBN());
+		assertEquals(TEST_ISBN + 1, topRatedBooks.get(1).getISBN());
+
+		// Three more top ratings lift the first book above the second one.
+		booksToRate.clear();
+		booksToRate.add(new BookRating(TEST_ISBN + 1, 5));
+		client.rateBooks(booksToRate);
+		client.rateBooks(booksToRate);
+		client.rateBooks(booksToRate);
+
+		topRatedBooks = client.getTopRatedBooks(3);
+		assertEquals(3, topRatedBooks.size());
+		assertEquals(TEST_ISBN + 1, topRatedBooks.get(0).getISBN());
+		assertEquals(TEST_ISBN + 2, topRatedBooks.get(1).getISBN());
+		assertEquals(TEST_ISBN, topRatedBooks.get(2).getISBN());
+	}
+
+	/**
+	 * Tests that a negative number of top rated books is rejected.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testGetTopRatedBooksNegative() throws BookStoreException {
+		try {
+			client.getTopRatedBooks(-1);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
+	/**
+	 * Tests that many asynchronous requests can be in flight at once, more
+	 * than the proxy has threads and connections, and that each gets its own
+	 * reply.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testGetBooksAsync() throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 10; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "Harry Potter and JUnit", "JK Unit", (float) 10,
+					NUM_COPIES, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+		Server server = BookStoreHTTPServerUtility.startServer(0, new BookStoreHTTPMessageHandler(store, store),
+				new QueuedThreadPool(20, 4));
+		BookStoreHTTPProxy proxy = new BookStoreHTTPProxy(
+				"http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server));
+
+		try {
+			List<CompletableFuture<List<Book>>> futures = new ArrayList<>();
+
+			for (int i = 0; i < 2000; i++) {
+				Set<Integer> isbnSet = new HashSet<Integer>();
+				isbnSet.add(TEST_ISBN + 1 + i % 10);
+				futures.add(proxy.getBooksAsync(isbnSet));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				List<Book> books = futures.get(i).get();
+				assertEquals(1, books.size());
+				assertEquals(TEST_ISBN + 1 + i % 10, books.get(0).getISBN());
+			}
+		} finally {
+			proxy.stop();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Tests that batched getBooks calls each get the books of their own ISBNs,
+	 * and that a call with an invalid ISBN fails without failing the calls
+	 * batched with it.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testGetBooksBatched() throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 10; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "Harry Potter and JUnit", "JK Unit", (float) 10,
+					NUM_COPIES, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+		Server server = BookStoreHTTPServerUtility.startServer(0, new BookStoreHTTPMessageHandler(store, store),
+				new QueuedThreadPool(20, 4));
+		BatchingBookStoreHTTPProxy proxy = new BatchingBookStoreHTTPProxy(
+				"http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server), 10000, 1000);
+
+		try {
+			List<CompletableFuture<List<Book>>> futures = new ArrayList<>();
+
+			for (int i = 0; i < 50; i++) {
+				Set<Integer> isbnSet = new HashSet<Integer>();
+				isbnSet.add(TEST_ISBN + 1 + i % 10);
+				isbnSet.add(TEST_ISBN + 1 + (i + 1) % 10);
+				futures.add(proxy.getBooksAsync(isbnSet));
+			}
+
+			Set<Integer> invalidIsbnSet = new HashSet<Integer>();
+			invalidIsbnSet.add(TEST_ISBN + 1);
+			invalidIsbnSet.add(-1);
+			CompletableFuture<List<Book>> invalidFuture = proxy.getBooksAsync(invalidIsbnSet);
+
+			for (int i = 0; i < futures.size(); i++) {
+				Set<Integer> isbnSet = new HashSet<Integer>();
+
+				for (Book book : futures.get(i).get()) {
+					isbnSet.add(book.getISBN());
+				}
+
+				assertEquals(2, isbnSet.size());
+				assertTrue(isbnSet.contains(TEST_ISBN + 1 + i % 10));
+				assertTrue(isbnSet.contains(TEST_ISBN + 1 + (i + 1) % 10));
+			}
+
+			try {
+				proxy.getBooks(invalidIsbnSet);
+				fail();
+			} catch (BookStoreException ex) {
+				;
+			}
+
+			assertTrue(invalidFuture.handle((books, exception) -> exception != null).get());
+		} finally {
+			proxy.stop();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Tests that stopping the batching proxy sends the batch being collected,
+	 * and that the calls made afterwards fail with a book store exception.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testBatchingProxyStop() throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "Harry Potter and JUnit", "JK Unit", (float) 10,
+				NUM_COPIES, 0, 0, 0, false));
+		store.addBooks(booksToAdd);
+		Server server = BookStoreHTTPServerUtility.startServer(0, new BookStoreHTTPMessageHandler(store, store),
+				new QueuedThreadPool(20, 4));
+
+		try {
+			// The window is long enough for the batch to be sent by stop only.
+			BatchingBookStoreHTTPProxy proxy = new BatchingBookStoreHTTPProxy(
+					"http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server), 60000000, 1000);
+			Set<Integer> isbnSet = new HashSet<Integer>();
+			isbnSet.add(TEST_ISBN + 1);
+			CompletableFuture<List<Book>> future = proxy.getBooksAsync(isbnSet);
+			proxy.stop();
+
+			assertTrue(future.isDone());
+			assertEquals(TEST_ISBN + 1, future.get().get(0).getISBN());
+
+			try {
+				proxy.getBooks(isbnSet);
+				fail();
+			} catch (BookStoreException ex) {
+				;
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Tests that the operations of a batch are performed in order, each with
+	 * its own response.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testBatch() throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(getDefaultBook());
+		store.addBooks(booksToAdd);
+		Server server = BookStoreHTTPServerUtility.startServer(0, new BookStoreHTTPMessageHandler(store, store),
+				new QueuedThreadPool(20, 4));
+		BookStoreHTTPProxy proxy = new BookStoreHTTPProxy(
+				"http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server));
+
+		try {
+			Set<Integer> isbnSet = new HashSet<Integer>();
+			isbnSet.add(TEST_ISBN);
+			Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+			booksToBuy.add(new BookCopy(TEST_ISBN, 2));
+
+			List<BookStoreResponse> responses = proxy.batch(Arrays.asList(
+					new BookStoreOperation(BookStoreMessageTag.GETEDITORPICKS, 0),
+					new BookStoreOperation(BookStoreMessageTag.BUYBOOKS, booksToBuy),
+					new BookStoreOperation(BookStoreMessageTag.GETBOOKS, isbnSet),
+					new BookStoreOperation(BookStoreMessageTag.BUYBOOKS, booksToBuy),
+					new BookStoreOperation(BookStoreMessageTag.GETSTOCKBOOKSBYISBN, isbnSet)));
+
+			assertEquals(5, responses.size());
+
+			for (BookStoreResponse response : responses) {
+				assertNull(response.getException());
+			}
+
+			assertTrue(responses.get(0).getList().isEmpty());
+			assertNull(responses.get(1).getList());
+			assertEquals(TEST_ISBN, ((Book) responses.get(2).getList().get(0)).getISBN());
+			assertEquals(NUM_COPIES - 4, ((StockBook) responses.get(4).getList().get(0)).getNumCopies());
+		} finally {
+			proxy.stop();
+			server.stop();
+		}
+	}
+
 	/**
 	 * Tear down after class.
 	 *
@@ -363,5 +699,15 @@ public class BookStoreTest {
 			((BookStoreHTTPProxy) client).stop();
 			((StockManagerHTTPProxy) storeManager).stop();
 		}
+
+		if (columnarDirectory != null) {
+			((ColumnarCertainBookStore) storeManager).close();
+
+			for (File file : columnarDirectory.listFiles()) {
+				file.delete();
+			}
+
+			columnarDirectory.delete();
+		}
 	}
 }
@@ -2,11 +2,21 @@ package com.acertainbookstore.client.tests;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -16,13 +26,19 @@ import org.junit.Test;
 import com.acertainbookstore.business.Book;
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ColumnarCertainBookStore;
+import com.acertainbookstore.business.MultiVersionCertainBookStore;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.client.BookStoreClientConstants;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
 import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.server.BookStoreHTTPMessageHandler;
+import com.acertainbookstore.server.BookStoreHTTPServerUtility;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 
@@ -42,6 +58,15 @@ public class StockManagerTest {
 	/** The local test. */
 	private static boolean localTest = true;
 
+	/** Multi-version store test. */
+	private static boolean multiVersion = false;
+
+	/** Columnar store test. */
+	private static boolean columnar = false;
+
+	/** The data directory of the columnar store test. */
+	private static File columnarDirectory = null;
+
 	/** The store manager. */
 	private static StockManager storeManager;
 
@@ -56,8 +81,23 @@ public class StockManagerTest {
 		try {
 			String localTestProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_LOCAL_TEST);
 			localTest = (localTestProperty != null) ? Boolean.parseBoolean(localTestProperty) : localTest;
+
+			String multiVersionProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_MULTI_VERSION);
+			multiVersion = (multiVersionProperty != null) ? Boolean.parseBoolean(multiVersionProperty) : multiVersion;
+
+			String columnarProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR);
+			columnar = (columnarProperty != null) ? Boolean.parseBoolean(columnarProperty) : columnar;
 			
-			if (localTest) {
+			if (localTest && multiVersion) {
+				MultiVersionCertainBookStore store = new MultiVersionCertainBookStore();
+				storeManager = store;
+				client = store;
+			} else if (localTest && columnar) {
+				columnarDirectory = Files.createTempDirectory("bookstore").toFile();
+				ColumnarCertainBookStore store = new ColumnarCertainBookStore(columnarDirectory);
+				storeManager = store;
+				client = store;
+			} else if (localTest) {
 				CertainBookStore store = new CertainBookStore();
 				storeManager = store;
 				client = store;
@@ -384,6 +424,49 @@ public class StockManagerTest {
 		assertTrue(editorPick.equals(defaultBookAdded));
 	}
 
+	/**
+	 * Tests that editor picks are drawn without repetition and follow updates
+	 * and removals.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testEditorPicksSampling() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 3; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "The Art of Computer Programming", "Donald Knuth",
+					(float) 300, NUM_COPIES, 0, 0, 0, false));
+		}
+
+		storeManager.addBooks(booksToAdd);
+
+		for (int i = 0; i <= 3; i++) {
+			addEditorPick(TEST_ISBN + i, true);
+		}
+
+		addEditorPick(TEST_ISBN + 3, false);
+
+		Set<Integer> pickedIsbns = new HashSet<Integer>();
+
+		for (Book book : client.getEditorPicks(2)) {
+			pickedIsbns.add(book.getISBN());
+		}
+
+		assertTrue(pickedIsbns.size() == 2);
+		assertFalse(pickedIsbns.contains(TEST_ISBN + 3));
+
+		// Asking for more picks than there are returns all of them.
+		assertTrue(client.getEditorPicks(10).size() == 3);
+
+		Set<Integer> isbnsToRemove = new HashSet<Integer>();
+		isbnsToRemove.add(TEST_ISBN + 1);
+		storeManager.removeBooks(isbnsToRemove);
+
+		assertTrue(client.getEditorPicks(10).size() == 2);
+	}
+
 	/**
 	 * Checks that a book can be removed.
 	 *
@@ -451,6 +534,146 @@ public class StockManagerTest {
 		assertTrue(booksToAdd.containsAll(listBooks) && booksToAdd.size() == listBooks.size());
 	}
 
+	/**
+	 * Tests that paging through the books with getBooks(cursor, limit) lists
+	 * every book once, in ascending order of ISBN.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testGetBooksPages() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 6; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 7 * i, "Harry Potter and JUnit", "JK Unit", (float) 10,
+					NUM_COPIES, 0, 0, 0, false));
+		}
+
+		storeManager.addBooks(booksToAdd);
+
+		List<StockBook> pagedBooks = new ArrayList<StockBook>();
+		List<StockBook> page = storeManager.getBooks(0, 3);
+		int numPages = 0;
+
+		while (!page.isEmpty()) {
+			assertTrue(page.size() <= 3);
+			pagedBooks.addAll(page);
+			numPages++;
+			page = storeManager.getBooks(page.get(page.size() - 1).getISBN(), 3);
+		}
+
+		// The default book and the six books added, in three pages.
+		assertEquals(3, numPages);
+		assertEquals(7, pagedBooks.size());
+		assertTrue(pagedBooks.containsAll(storeManager.getBooks()));
+
+		for (int i = 1; i < pagedBooks.size(); i++) {
+			assertTrue(pagedBooks.get(i - 1).getISBN() < pagedBooks.get(i).getISBN());
+		}
+
+		assertTrue(storeManager.getBooks(0, 0).isEmpty());
+
+		try {
+			storeManager.getBooks(0, -1);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
+	/**
+	 * Tests that getBooksWithLeastCopies gets the books in ascending order of
+	 * the number of copies, then of ISBN, and rejects a limit which is not
+	 * positive.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testGetBooksWithLeastCopiesOrder() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "The Art of Computer Programming", "Donald Knuth",
+				(float) 300, NUM_COPIES + 2, 0, 0, 0, false));
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 2, "The C Programming Language",
+				"Dennis Ritchie and Brian Kerninghan", (float) 50, 1, 0, 0, 0, false));
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN - 1, "Harry Potter and JUnit", "JK Unit", (float) 10,
+				NUM_COPIES, 0, 0, 0, false));
+		storeManager.addBooks(booksToAdd);
+
+		List<StockBook> books = storeManager.getBooksWithLeastCopies(3);
+		assertEquals(3, books.size());
+		assertEquals(TEST_ISBN + 2, books.get(0).getISBN());
+		assertEquals(TEST_ISBN - 1, books.get(1).getISBN());
+		assertEquals((int) TEST_ISBN, books.get(2).getISBN());
+
+		// Buying copies of a book moves it ahead of the others.
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 1, NUM_COPIES + 2));
+		client.buyBooks(booksToBuy);
+		assertEquals(TEST_ISBN + 1, storeManager.getBooksWithLeastCopies(1).get(0).getISBN());
+
+		assertEquals(4, storeManager.getBooksWithLeastCopies(10).size());
+
+		try {
+			storeManager.getBooksWithLeastCopies(-1);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+	}
+
+	/**
+	 * Tests that getBooksWithLeastCopies follows the copies added, bought and
+	 * removed.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testGetBooksWithLeastCopies() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "The Art of Computer Programming", "Donald Knuth",
+				(float) 300, NUM_COPIES + 1, 0, 0, 0, false));
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 2, "The C Programming Language",
+				"Dennis Ritchie and Brian Kerninghan", (float) 50, NUM_COPIES + 2, 0, 0, 0, false));
+		storeManager.addBooks(booksToAdd);
+
+		List<StockBook> books = storeManager.getBooksWithLeastCopies(1);
+		assertEquals(1, books.size());
+		assertEquals((int) TEST_ISBN, books.get(0).getISBN());
+		assertEquals((int) NUM_COPIES, books.get(0).getNumCopies());
+
+		// Restocking the default book moves it behind the others.
+		Set<BookCopy> bookCopies = new HashSet<BookCopy>();
+		bookCopies.add(new BookCopy(TEST_ISBN, NUM_COPIES));
+		storeManager.addCopies(bookCopies);
+		books = storeManager.getBooksWithLeastCopies(3);
+		assertEquals(TEST_ISBN + 1, books.get(0).getISBN());
+		assertEquals(TEST_ISBN + 2, books.get(1).getISBN());
+		assertEquals((int) TEST_ISBN, books.get(2).getISBN());
+		assertEquals(2 * NUM_COPIES, books.get(2).getNumCopies());
+
+		// Buying copies of the last one moves it ahead of the others.
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 2, NUM_COPIES));
+		client.buyBooks(booksToBuy);
+		books = storeManager.getBooksWithLeastCopies(1);
+		assertEquals(TEST_ISBN + 2, books.get(0).getISBN());
+		assertEquals(2, books.get(0).getNumCopies());
+
+		// A removed book is no longer listed.
+		Set<Integer> isbnSet = new HashSet<Integer>();
+		isbnSet.add(TEST_ISBN + 2);
+		storeManager.removeBooks(isbnSet);
+		books = storeManager.getBooksWithLeastCopies(10);
+		assertEquals(2, books.size());
+		assertEquals(TEST_ISBN + 1, books.get(0).getISBN());
+
+		storeManager.removeAllBooks();
+		assertTrue(storeManager.getBooksWithLeastCopies(10).isEmpty());
+	}
+
 	/**
 	 * Tests basic removeAllBooks functionality.
 	 *
@@ -475,6 +698,369 @@ public class StockManagerTest {
 		assertTrue(booksInStoreList.size() == 0);
 	}
 
+	/**
+	 * Tests that books with sale misses are in demand until copies are added.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	@Test
+	public void testBooksInDemandUntilRestocked() throws BookStoreException {
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 1, "The Art of Computer Programming", "Donald Knuth",
+				(float) 300, NUM_COPIES, 0, 0, 0, false));
+		storeManager.addBooks(booksToAdd);
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+
+		// Try to buy more copies than there are in store.
+		HashSet<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 1, NUM_COPIES + 1));
+
+		try {
+			client.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		List<StockBook> booksInDemand = storeManager.getBooksInDemand();
+		assertTrue(booksInDemand.size() == 1);
+		assertTrue(booksInDemand.get(0).getISBN() == TEST_ISBN + 1);
+		assertTrue(booksInDemand.get(0).getNumSaleMisses() == 1);
+
+		// Restocking clears the sale misses.
+		HashSet<BookCopy> booksToAddCopies = new HashSet<BookCopy>();
+		booksToAddCopies.add(new BookCopy(TEST_ISBN + 1, 1));
+		storeManager.addCopies(booksToAddCopies);
+		assertTrue(storeManager.getBooksInDemand().isEmpty());
+	}
+
+	/**
+	 * Tests that a durable store recovers its books from the log, and ignores
+	 * a record torn at the end of it.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRecoveryFromLog() throws BookStoreException, IOException {
+		File dataDirectory = Files.createTempDirectory("bookstore").toFile();
+		CertainBookStore store = new CertainBookStore(dataDirectory);
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 3; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "The Art of Computer Programming", "Donald Knuth",
+					(float) 300, NUM_COPIES, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 1, 2));
+		store.buyBooks(booksToBuy);
+
+		booksToBuy.clear();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 2, NUM_COPIES + 1));
+
+		try {
+			store.buyBooks(booksToBuy);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		Set<BookRating> ratings = new HashSet<BookRating>();
+		ratings.add(new BookRating(TEST_ISBN + 1, 4));
+		store.rateBooks(ratings);
+
+		Set<BookEditorPick> editorPicks = new HashSet<BookEditorPick>();
+		editorPicks.add(new BookEditorPick(TEST_ISBN + 3, true));
+		store.updateEditorPicks(editorPicks);
+
+		Set<Integer> isbnsToRemove = new HashSet<Integer>();
+		isbnsToRemove.add(TEST_ISBN + 3);
+		store.removeBooks(isbnsToRemove);
+
+		List<StockBook> booksBefore = store.getBooks();
+		store.close();
+
+		// Simulate a crash in the middle of appending a record.
+		try (FileOutputStream out = new FileOutputStream(new File(dataDirectory, "log.0"), true)) {
+			out.write(new byte[] { 0, 0, 0, 42, 1, 2 });
+		}
+
+		CertainBookStore recoveredStore = new CertainBookStore(dataDirectory);
+		List<StockBook> booksAfter = recoveredStore.getBooks();
+
+		assertTrue(booksAfter.size() == booksBefore.size());
+
+		for (StockBook bookBefore : booksBefore) {
+			StockBook bookAfter = booksAfter.get(booksAfter.indexOf(bookBefore));
+			assertTrue(bookAfter.getNumCopies() == bookBefore.getNumCopies()
+					&& bookAfter.getNumSaleMisses() == bookBefore.getNumSaleMisses()
+					&& bookAfter.getAverageRating() == bookBefore.getAverageRating()
+					&& bookAfter.isEditorPick() == bookBefore.isEditorPick());
+		}
+
+		assertTrue(recoveredStore.getBooksInDemand().size() == 1);
+		assertTrue(recoveredStore.getTopRatedBooks(1).get(0).getISBN() == TEST_ISBN + 1);
+		assertTrue(recoveredStore.getEditorPicks(1).isEmpty());
+
+		// The recovered store keeps appending to the same log.
+		recoveredStore.removeAllBooks();
+		recoveredStore.close();
+
+		CertainBookStore emptyStore = new CertainBookStore(dataDirectory);
+		assertTrue(emptyStore.getBooks().isEmpty());
+		emptyStore.close();
+		deleteDirectory(dataDirectory);
+	}
+
+	/**
+	 * Tests that a durable store recovers from its last checkpoint followed by
+	 * the log written after it, and that the checkpoint truncates the log.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testRecoveryFromCheckpoint() throws BookStoreException, IOException {
+		File dataDirectory = Files.createTempDirectory("bookstore").toFile();
+		CertainBookStore store = new CertainBookStore(dataDirectory);
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 2; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "The Art of Computer Programming", "Donald Knuth",
+					(float) 300, NUM_COPIES, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 1, 1));
+		store.buyBooks(booksToBuy);
+		store.checkpoint();
+
+		// The log written before the checkpoint is gone.
+		assertFalse(new File(dataDirectory, "log.0").exists());
+
+		store.buyBooks(booksToBuy);
+
+		Set<Integer> isbnsToRemove = new HashSet<Integer>();
+		isbnsToRemove.add(TEST_ISBN + 2);
+		store.removeBooks(isbnsToRemove);
+		store.close();
+
+		CertainBookStore recoveredStore = new CertainBookStore(dataDirectory);
+		List<StockBook> books = recoveredStore.getBooks();
+
+		assertTrue(books.size() == 1);
+		assertTrue(books.get(0).getISBN() == TEST_ISBN + 1);
+		assertTrue(books.get(0).getNumCopies() == NUM_COPIES - 2);
+
+		// A second checkpoint covers the log replayed on recovery.
+		recoveredStore.checkpoint();
+		recoveredStore.close();
+
+		CertainBookStore checkpointedStore = new CertainBookStore(dataDirectory);
+		assertTrue(checkpointedStore.getBooks().get(0).getNumCopies() == NUM_COPIES - 2);
+		checkpointedStore.close();
+		deleteDirectory(dataDirectory);
+	}
+
+	/**
+	 * Tests that a columnar store finds its books again when its files are
+	 * mapped again, including the slots freed by removed books.
+	 *
+	 * @throws BookStoreException
+	 *             the book store exception
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	@Test
+	public void testColumnarStoreReopens() throws BookStoreException, IOException {
+		File dataDirectory = Files.createTempDirectory("bookstore").toFile();
+		ColumnarCertainBookStore store = new ColumnarCertainBookStore(dataDirectory);
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+
+		for (int i = 1; i <= 3; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "The Art of Computer Programming", "Donald Knuth",
+					(float) 300, NUM_COPIES, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+
+		Set<BookCopy> booksToBuy = new HashSet<BookCopy>();
+		booksToBuy.add(new BookCopy(TEST_ISBN + 1, 2));
+		store.buyBooks(booksToBuy);
+
+		Set<Integer> isbnsToRemove = new HashSet<Integer>();
+		isbnsToRemove.add(TEST_ISBN + 2);
+		store.removeBooks(isbnsToRemove);
+		store.close();
+
+		ColumnarCertainBookStore reopenedStore = new ColumnarCertainBookStore(dataDirectory);
+		assertTrue(reopenedStore.getBooks().size() == 2);
+
+		Set<Integer> isbns = new HashSet<Integer>();
+		isbns.add(TEST_ISBN + 1);
+		StockBook book = reopenedStore.getBooksByISBN(isbns).get(0);
+		assertTrue(book.getNumCopies() == NUM_COPIES - 2);
+		assertTrue(book.getTitle().equals("The Art of Computer Programming"));
+
+		// The slot of the removed book is reused.
+		booksToAdd.clear();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 4, "Structure and Interpretation of Computer Programs",
+				"Harold Abelson", (float) 50, NUM_COPIES, 0, 0, 0, true));
+		reopenedStore.addBooks(booksToAdd);
+		assertTrue(reopenedStore.getBooks().size() == 3);
+		assertTrue(reopenedStore.getEditorPicks(1).get(0).getISBN() == TEST_ISBN + 4);
+
+		// Two books with the same ISBN are rejected, and neither is added.
+		booksToAdd.clear();
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 5, "The Art of Computer Programming", "Donald Knuth",
+				(float) 300, NUM_COPIES, 0, 0, 0, false));
+		booksToAdd.add(new ImmutableStockBook(TEST_ISBN + 5, "The C Programming Language",
+				"Dennis Ritchie and Brian Kerninghan", (float) 50, NUM_COPIES, 0, 0, 0, false));
+
+		try {
+			reopenedStore.addBooks(booksToAdd);
+			fail();
+		} catch (BookStoreException ex) {
+			;
+		}
+
+		assertTrue(reopenedStore.getBooks().size() == 3);
+		reopenedStore.close();
+		deleteDirectory(dataDirectory);
+	}
+
+	/**
+	 * Tests that streaming the books hands the consumer every book, in chunks
+	 * of several books, like getting them as a list but in ISBN order.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testStreamBooks() throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		int numBooks = 2 * BookStoreConstants.STREAM_CHUNK_SIZE + 1;
+
+		for (int i = 1; i <= numBooks; i++) {
+			booksToAdd.add(new ImmutableStockBook(TEST_ISBN + i, "Harry Potter and JUnit", "JK Unit", (float) 10,
+					NUM_COPIES + i, 0, 0, 0, false));
+		}
+
+		store.addBooks(booksToAdd);
+		Server server = BookStoreHTTPServerUtility.startServer(0, new BookStoreHTTPMessageHandler(store, store),
+				new QueuedThreadPool(20, 4));
+		StockManagerHTTPProxy proxy = new StockManagerHTTPProxy(
+				"http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server) + "/stock");
+
+		try {
+			List<StockBook> streamedBooks = new ArrayList<StockBook>();
+			proxy.getBooks(streamedBooks::add);
+			List<StockBook> listedBooks = proxy.getBooks();
+			listedBooks.sort(Comparator.comparingInt(StockBook::getISBN));
+
+			assertEquals(numBooks, streamedBooks.size());
+			assertEquals(listedBooks.size(), streamedBooks.size());
+
+			for (int i = 0; i < listedBooks.size(); i++) {
+				assertTrue(listedBooks.get(i).equals(streamedBooks.get(i)));
+				assertEquals(listedBooks.get(i).getNumCopies(), streamedBooks.get(i).getNumCopies());
+			}
+
+			// An empty store streams no books.
+			store.removeAllBooks();
+			streamedBooks.clear();
+			proxy.getBooks(streamedBooks::add);
+			assertTrue(streamedBooks.isEmpty());
+		} finally {
+			proxy.stop();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Tests that a server calling the store on executors of its own replies
+	 * to the messages, and turns away those arriving when the queue of the
+	 * executor is full.
+	 *
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testAsyncServerTurnsAwayWhenQueueFull() throws Exception {
+		CertainBookStore store = new CertainBookStore();
+		Set<StockBook> booksToAdd = new HashSet<StockBook>();
+		booksToAdd.add(getDefaultBook());
+		store.addBooks(booksToAdd);
+		Server server = BookStoreHTTPServerUtility.startServer(0,
+				new BookStoreHTTPMessageHandler(store, store, 1, 1, 1), new QueuedThreadPool(20, 4));
+		StockManagerHTTPProxy proxy = new StockManagerHTTPProxy(
+				"http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server) + "/stock");
+
+		try {
+			Set<BookCopy> bookCopies = new HashSet<BookCopy>();
+			bookCopies.add(new BookCopy(TEST_ISBN, 1));
+			List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+
+			// While the store is locked, the write thread waits with the first
+			// message and the second one waits in the queue, so the third one
+			// is turned away without waiting for the store.
+			synchronized (store) {
+				for (int i = 0; i < 3; i++) {
+					futures.add(proxy.addCopiesAsync(bookCopies));
+				}
+
+				CompletableFuture.anyOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(ex -> null)
+						.get(10, TimeUnit.SECONDS);
+			}
+
+			int numTurnedAway = 0;
+
+			for (CompletableFuture<Void> future : futures) {
+				try {
+					future.get(10, TimeUnit.SECONDS);
+				} catch (ExecutionException ex) {
+					assertEquals(BookStoreClientConstants.STR_ERR_CLIENT_SERVER_BUSY, ex.getCause().getMessage());
+					numTurnedAway++;
+				}
+			}
+
+			assertEquals(1, numTurnedAway);
+			assertEquals(NUM_COPIES + 2, proxy.getBooks().get(0).getNumCopies());
+		} finally {
+			proxy.stop();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Deletes a data directory and the files in it.
+	 *
+	 * @param directory
+	 *            the directory
+	 */
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+
+		directory.delete();
+	}
+
 	/**
 	 * Tear down after class.
 	 *
@@ -489,5 +1075,10 @@ public class StockManagerTest {
 			((BookStoreHTTPProxy) client).stop();
 			((StockManagerHTTPProxy) storeManager).stop();
 		}
+
+		if (columnarDirectory != null) {
+			((ColumnarCertainBookStore) storeManager).close();
+			deleteDirectory(columnarDirectory);
+		}
 	}
 }
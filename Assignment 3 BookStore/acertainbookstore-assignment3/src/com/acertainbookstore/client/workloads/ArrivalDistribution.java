@@ -0,0 +1,40 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Random;
+
+/**
+ * 
+ * ArrivalDistribution represents how the requests of an open-loop worker are
+ * spread over time
+ * 
+ */
+public enum ArrivalDistribution {
+
+	/** Requests arrive at a fixed interval. */
+	CONSTANT {
+		@Override
+		public long nextInterArrivalTimeInNanoSecs(double meanInterArrivalTimeInNanoSecs, Random rand) {
+			return Math.round(meanInterArrivalTimeInNanoSecs);
+		}
+	},
+
+	/**
+	 * Requests arrive independently of each other, so the intervals are
+	 * exponentially distributed and requests sometimes come in bursts.
+	 */
+	POISSON {
+		@Override
+		public long nextInterArrivalTimeInNanoSecs(double meanInterArrivalTimeInNanoSecs, Random rand) {
+			return Math.round(-Math.log(1.0 - rand.nextDouble()) * meanInterArrivalTimeInNanoSecs);
+		}
+	};
+
+	/**
+	 * Draws the time between a request and the next one
+	 * 
+	 * @param meanInterArrivalTimeInNanoSecs
+	 * @param rand
+	 * @return the time in nanoseconds
+	 */
+	public abstract long nextInterArrivalTimeInNanoSecs(double meanInterArrivalTimeInNanoSecs, Random rand);
+}
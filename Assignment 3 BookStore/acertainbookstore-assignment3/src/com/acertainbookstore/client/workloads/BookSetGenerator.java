@@ -10,10 +10,23 @@ import com.acertainbookstore.business.StockBook;
 /**
  * Helper class to generate stockbooks and isbns modelled similar to Random
  * class
+ *
+ * By default ISBNs are drawn and sampled uniformly. Given an IsbnDistribution,
+ * the generator draws the ISBNs of new books from the catalogue of the
+ * distribution and samples ISBNs according to their popularity.
  */
 public class BookSetGenerator {
 
-	public BookSetGenerator() {}
+	private final IsbnDistribution isbnDistribution;
+	private final Random random = new Random();
+
+	public BookSetGenerator() {
+		this(null);
+	}
+
+	public BookSetGenerator(IsbnDistribution isbnDistribution) {
+		this.isbnDistribution = isbnDistribution;
+	}
 
 	/**
 	 * Returns num randomly selected isbns from the input set
@@ -22,6 +35,9 @@ public class BookSetGenerator {
 	 * input set at random using a uniform distribution. This function is used in the
 	 * customer interaction to select books to be bought.
 	 *
+	 * With an IsbnDistribution, each ISBN is selected with a probability
+	 * proportional to its popularity instead.
+	 *
 	 * @param num
 	 * @return
 	 */
@@ -30,6 +46,9 @@ public class BookSetGenerator {
 		if (num>isbns.size()) {
 			return isbns;
 		}
+		if (isbnDistribution != null) {
+			return sampleFromSetOfISBNsByPopularity(isbns, num);
+		}
 		Random rand = new Random();
 		Set<Integer> result = new HashSet<>();
 		Integer[] isbnsArray = isbns.toArray(new Integer[isbns.size()]);
@@ -39,6 +58,42 @@ public class BookSetGenerator {
 		return result;
 	}
 
+	/**
+	 * Selects num ISBNs without replacement, weighted by popularity, by
+	 * giving each ISBN an exponentially distributed key with its popularity
+	 * as rate and keeping the num smallest keys (Efraimidis and Spirakis)
+	 *
+	 * @param isbns
+	 * @param num
+	 * @return
+	 */
+	private Set<Integer> sampleFromSetOfISBNsByPopularity(Set<Integer> isbns, int num) {
+		Integer[] isbnsArray = isbns.toArray(new Integer[isbns.size()]);
+		double[] keys = new double[isbnsArray.length];
+		for (int i = 0; i < isbnsArray.length; i++) {
+			keys[i] = -Math.log(1.0 - random.nextDouble()) / isbnDistribution.weightOf(isbnsArray[i]);
+		}
+
+		// The candidate sets are small, so a partial selection sort will do
+		Set<Integer> result = new HashSet<>();
+		for (int i = 0; i < num; i++) {
+			int smallest = i;
+			for (int j = i + 1; j < isbnsArray.length; j++) {
+				if (keys[j] < keys[smallest]) {
+					smallest = j;
+				}
+			}
+			double key = keys[smallest];
+			keys[smallest] = keys[i];
+			keys[i] = key;
+			Integer isbn = isbnsArray[smallest];
+			isbnsArray[smallest] = isbnsArray[i];
+			isbnsArray[i] = isbn;
+			result.add(isbn);
+		}
+		return result;
+	}
+
 	/**
 	 * Return num stock books. For now return an ImmutableStockBook
 	 *
@@ -46,21 +101,35 @@ public class BookSetGenerator {
 	 * random values. This function is used in the new stock acquisition interaction to
 	 * generate candidate books for insertion.
 	 *
+	 * With an IsbnDistribution, the ISBNs are drawn uniformly from its
+	 * catalogue, so that every book has a popularity, and at most as many
+	 * books as the catalogue holds are returned.
+	 *
 	 * @param num
 	 * @return
 	 */
 	public Set<StockBook> nextSetOfStockBooks(int num) {
 
 		Set<StockBook> stockBooksSet = new HashSet<>();
+		if (isbnDistribution != null) {
+			Set<Integer> isbns = new HashSet<>();
+			while (isbns.size() < Math.min(num, isbnDistribution.getNumIsbns())) {
+				int isbn = random.nextInt(isbnDistribution.getNumIsbns()) + 1;
+				if (isbns.add(isbn)) {
+					stockBooksSet.add(generateImmutableStockBook(isbn));
+				}
+			}
+			return stockBooksSet;
+		}
 		while (stockBooksSet.size() < num) {
-			stockBooksSet.add(generateImmutableStockBook());
+			stockBooksSet.add(generateImmutableStockBook(new Random().nextInt(Integer.MAX_VALUE)+1));
 		}
 		return stockBooksSet;
 	}
 
-	private ImmutableStockBook generateImmutableStockBook() {
+	private ImmutableStockBook generateImmutableStockBook(int isbn) {
 		Random random = new Random();
-		return new ImmutableStockBook(random.nextInt(Integer.MAX_VALUE)+1,
+		return new ImmutableStockBook(isbn,
 				                      randomNameGenerator(random.nextInt(50)+1),
 				                      randomNameGenerator(random.nextInt(50)+1),
 				                 random.nextFloat()*random.nextInt(50),
@@ -4,16 +4,22 @@
 package com.acertainbookstore.client.workloads;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ColumnarCertainBookStore;
+import com.acertainbookstore.business.MultiVersionCertainBookStore;
 import com.acertainbookstore.client.BookStoreHTTPProxy;
 import com.acertainbookstore.client.StockManagerHTTPProxy;
 import com.acertainbookstore.interfaces.BookStore;
@@ -35,6 +41,11 @@ public class CertainWorkload {
 	 */
 
 	private static final int INITIAL_BOOKS = 1000;
+	// The catalogue of a skewed workload holds many more ISBNs than the
+	// initial stock, so that new stock acquisition keeps finding books to add
+	private static final int SKEWED_CATALOGUE_SIZE = 100 * INITIAL_BOOKS;
+
+	private static final String WORKLOAD_RESULTS_FILE = "WorkloadResults.csv";
 
 	public static void main(String[] args) throws Exception {
 
@@ -42,8 +53,6 @@ public class CertainWorkload {
 
 		String serverAddress = "http://localhost:8081";
 		boolean localTest = true;
-		List<WorkerRunResult> workerRunResults = new ArrayList<WorkerRunResult>();
-		List<Future<WorkerRunResult>> runResults = new ArrayList<Future<WorkerRunResult>>();
 
 		// Initialize the RPC interfaces if its not a localTest, the variable is
 		// overriden if the property is set
@@ -52,9 +61,34 @@ public class CertainWorkload {
 		localTest = (localTestProperty != null) ? Boolean
 				.parseBoolean(localTestProperty) : localTest;
 
+		String multiVersionProperty = System
+				.getProperty(BookStoreConstants.PROPERTY_KEY_MULTI_VERSION);
+		boolean multiVersion = (multiVersionProperty != null) && Boolean
+				.parseBoolean(multiVersionProperty);
+
+		String columnarProperty = System
+				.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR);
+		boolean columnar = (columnarProperty != null) && Boolean
+				.parseBoolean(columnarProperty);
+
+		double targetRequestsPerSecond = getTargetRequestsPerSecond();
+		ArrivalDistribution arrivalDistribution = getArrivalDistribution();
+		IsbnDistribution isbnDistribution = createIsbnDistribution();
+
 		BookStore bookStore = null;
 		StockManager stockManager = null;
-		if (localTest) {
+		File dataDirectory = null;
+		if (localTest && multiVersion) {
+			MultiVersionCertainBookStore store = new MultiVersionCertainBookStore();
+			bookStore = store;
+			stockManager = store;
+		} else if (localTest && columnar) {
+			dataDirectory = Files.createTempDirectory("bookstore").toFile();
+			ColumnarCertainBookStore store = new ColumnarCertainBookStore(
+					dataDirectory);
+			bookStore = store;
+			stockManager = store;
+		} else if (localTest) {
 			CertainBookStore store = new CertainBookStore();
 			bookStore = store;
 			stockManager = store;
@@ -64,85 +98,186 @@ public class CertainWorkload {
 		}
 
 		// Generate data in the bookstore before running the workload
-		initializeBookStoreData(bookStore, stockManager);
+		initializeBookStoreData(bookStore, stockManager, isbnDistribution);
 
-		ExecutorService exec = Executors
-				.newFixedThreadPool(numConcurrentWorkloadThreads);
+		List<WorkerRunResult> workerRunResults = runWorkers(bookStore, stockManager,
+				numConcurrentWorkloadThreads, targetRequestsPerSecond,
+				arrivalDistribution, isbnDistribution);
 
-		for (int i = 0; i < numConcurrentWorkloadThreads; i++) {
-			WorkloadConfiguration config = new WorkloadConfiguration(bookStore,
-					stockManager);
-			Worker workerTask = new Worker(config);
-			// Keep the futures to wait for the result from the thread
-			runResults.add(exec.submit(workerTask));
+		// Finished initialization, stop the clients if not localTest
+		if (!localTest) {
+			((BookStoreHTTPProxy) bookStore).stop();
+			((StockManagerHTTPProxy) stockManager).stop();
 		}
 
-		// Get the results from the threads using the futures returned
-		for (Future<WorkerRunResult> futureRunResult : runResults) {
-			WorkerRunResult runResult = futureRunResult.get(); // blocking call
-			workerRunResults.add(runResult);
+		// Close the columnar store and delete its temporary files
+		if (dataDirectory != null) {
+			((ColumnarCertainBookStore) stockManager).close();
+			for (File file : dataDirectory.listFiles()) {
+				file.delete();
+			}
+			dataDirectory.delete();
 		}
 
-		exec.shutdownNow(); // shutdown the executor
+		reportMetric(workerRunResults, targetRequestsPerSecond);
+	}
 
-		// Finished initialization, stop the clients if not localTest
-		if (!localTest) {
-			((BookStoreHTTPProxy) bookStore).stop();
-			((StockManagerHTTPProxy) stockManager).stop();
+	/**
+	 * Runs the workers concurrently against the store and waits for their
+	 * results
+	 * 
+	 * @param bookStore
+	 * @param stockManager
+	 * @param numWorkers
+	 * @param targetRequestsPerSecond
+	 *            the total rate at which the workers send their requests, or 0
+	 *            to run them in a closed loop
+	 * @param arrivalDistribution
+	 * @param isbnDistribution
+	 *            the popularity of the books, or null if they are equally
+	 *            popular
+	 * @return the results of the workers
+	 */
+	public static List<WorkerRunResult> runWorkers(BookStore bookStore,
+			StockManager stockManager, int numWorkers,
+			double targetRequestsPerSecond,
+			ArrivalDistribution arrivalDistribution,
+			IsbnDistribution isbnDistribution) throws Exception {
+		List<WorkerRunResult> workerRunResults = new ArrayList<WorkerRunResult>();
+		List<Future<WorkerRunResult>> runResults = new ArrayList<Future<WorkerRunResult>>();
+
+		ExecutorService exec = Executors.newFixedThreadPool(numWorkers);
+
+		try {
+			for (int i = 0; i < numWorkers; i++) {
+				WorkloadConfiguration config = new WorkloadConfiguration(bookStore,
+						stockManager, isbnDistribution);
+				config.setTargetRequestsPerSecond(targetRequestsPerSecond
+						/ numWorkers);
+				config.setArrivalDistribution(arrivalDistribution);
+				Worker workerTask = new Worker(config);
+				// Keep the futures to wait for the result from the thread
+				runResults.add(exec.submit(workerTask));
+			}
+
+			// Get the results from the threads using the futures returned
+			for (Future<WorkerRunResult> futureRunResult : runResults) {
+				WorkerRunResult runResult = futureRunResult.get(); // blocking call
+				workerRunResults.add(runResult);
+			}
+		} finally {
+			exec.shutdownNow(); // shutdown the executor
 		}
 
-		reportMetric(workerRunResults);
+		return workerRunResults;
 	}
 
 	/**
 	 * Computes the metrics and prints them
 	 * 
+	 * The latencies recorded by the workers are merged per interaction type and
+	 * printed as percentiles. The metrics are also appended as a row to
+	 * WORKLOAD_RESULTS_FILE, a CSV file whose header is written when the file
+	 * is created, so that several runs can be compared or plotted.
+	 * 
 	 * @param workerRunResults
 	 */
 	public static void reportMetric(List<WorkerRunResult> workerRunResults) {
-		double throughput = 0.0;
-		double latency = 0.0;
-		double totalNumOfInteractions = 0.0;
-		double totalCustomerInteractions = 0.0;
-		double totalSuccessInteratcions = 0.0;
-		for (WorkerRunResult workerRunResult: workerRunResults) {
-			double elapsedTimeInSecs = workerRunResult.getElapsedTimeInNanoSecs() / Math.pow(10.0,9);
-			throughput += workerRunResult.getSuccessfulFrequentBookStoreInteractionRuns() / elapsedTimeInSecs;
-			latency += elapsedTimeInSecs/workerRunResult.getSuccessfulFrequentBookStoreInteractionRuns();
-
-			totalCustomerInteractions += workerRunResult.getTotalFrequentBookStoreInteractionRuns();
-			totalNumOfInteractions += workerRunResult.getTotalRuns();
-			totalSuccessInteratcions += workerRunResult.getSuccessfulInteractions();
+		reportMetric(workerRunResults, 0.0);
+	}
 
-		}
-		double avgLatency = latency/workerRunResults.size();
-		double percentageCustomerInteractions = (totalCustomerInteractions/ totalNumOfInteractions) * 100.0;
-		double goodput = (totalSuccessInteratcions/ totalNumOfInteractions) * 100.0;
-		System.out.println("++++++++++++++++++++++++++++++++++");
-		System.out.println("Workers " +  workerRunResults.size());
-		System.out.println("Customer interaction: " + percentageCustomerInteractions);
-		System.out.println("GoodPut: " + goodput);
-		System.out.println("Throughput: " + throughput);
-		System.out.println("Latency: " + latency);
-		System.out.println("Avg Latency: " + avgLatency);
-		System.out.println("++++++++++++++++++++++++++++++++++");
-		try(FileWriter fw = new FileWriter("Throughput.txt", true);
+	/**
+	 * Computes the metrics of an open-loop run and prints them
+	 * 
+	 * @param workerRunResults
+	 * @param targetRequestsPerSecond
+	 *            the total rate at which the workers sent their requests, or 0
+	 *            if they ran in a closed loop
+	 */
+	public static void reportMetric(List<WorkerRunResult> workerRunResults, double targetRequestsPerSecond) {
+		WorkloadMetrics metrics = new WorkloadMetrics(workerRunResults, targetRequestsPerSecond);
+		metrics.print();
+
+		File resultsFile = new File(WORKLOAD_RESULTS_FILE);
+		boolean writeHeader = !resultsFile.exists() || resultsFile.length() == 0;
+		try(FileWriter fw = new FileWriter(resultsFile, true);
 			BufferedWriter bw = new BufferedWriter(fw);
 			PrintWriter out = new PrintWriter(bw))
 		{
-			out.print(throughput+",");
+			if (writeHeader) {
+				out.println(String.join(",", WorkloadMetrics.getNames()));
+			}
+			out.println(metrics.getValues().stream().map(String::valueOf).collect(Collectors.joining(",")));
 		} catch (IOException e) {
-			//exception handling left as an exercise for the reader
+			System.err.println("Cannot write the results to " + WORKLOAD_RESULTS_FILE + ": " + e.getMessage());
 		}
-		try(FileWriter fw = new FileWriter("Latency.txt", true);
-			BufferedWriter bw = new BufferedWriter(fw);
-			PrintWriter out = new PrintWriter(bw))
-		{
-			out.print(avgLatency+",");
-		} catch (IOException e) {
-			//exception handling left as an exercise for the reader
+
+	}
+
+	/**
+	 * Gets the total rate at which the workers send their requests from the
+	 * targetrate property; without it each worker sends its next request when
+	 * the previous one returns
+	 * 
+	 * @return the rate, or 0 for a closed loop
+	 */
+	public static double getTargetRequestsPerSecond() {
+		String targetRateProperty = System
+				.getProperty(BookStoreConstants.PROPERTY_KEY_TARGET_RATE);
+		return (targetRateProperty != null) ? Double
+				.parseDouble(targetRateProperty) : 0.0;
+	}
+
+	/**
+	 * Gets the arrival distribution of an open loop from the arrivals property
+	 * 
+	 * @return the distribution, constant by default
+	 */
+	public static ArrivalDistribution getArrivalDistribution() {
+		String arrivalsProperty = System
+				.getProperty(BookStoreConstants.PROPERTY_KEY_ARRIVAL_DISTRIBUTION);
+		return (arrivalsProperty != null) ? ArrivalDistribution
+				.valueOf(arrivalsProperty.toUpperCase()) : ArrivalDistribution.CONSTANT;
+	}
+
+	/**
+	 * Creates the popularity of the books from the skew property, over a
+	 * catalogue of SKEWED_CATALOGUE_SIZE ISBNs, of which INITIAL_BOOKS are
+	 * stocked by initializeBookStoreData
+	 * 
+	 * skew is zipfian, hotspot or shiftinghotspot. The Zipf exponent is read
+	 * from zipfexponent, the hotspot from hotspot as the percentages of the
+	 * requests and of the books which are hot, and the interval after which a
+	 * shifting hotspot moves from hotspotshift, in seconds.
+	 * 
+	 * @return the distribution, or null if the books are equally popular
+	 */
+	public static IsbnDistribution createIsbnDistribution() {
+		String skew = System.getProperty(BookStoreConstants.PROPERTY_KEY_SKEW);
+		if (skew == null || skew.equalsIgnoreCase("uniform")) {
+			return null;
 		}
 
+		double zipfExponent = Double.parseDouble(System.getProperty(
+				BookStoreConstants.PROPERTY_KEY_ZIPF_EXPONENT, "0.99"));
+		String[] hotspot = System.getProperty(
+				BookStoreConstants.PROPERTY_KEY_HOTSPOT, "80,20").split(",");
+		double hotTrafficFraction = Double.parseDouble(hotspot[0].trim()) / 100.0;
+		double hotBooksFraction = Double.parseDouble(hotspot[1].trim()) / 100.0;
+		long hotspotShiftInSecs = Long.parseLong(System.getProperty(
+				BookStoreConstants.PROPERTY_KEY_HOTSPOT_SHIFT, "10"));
+
+		switch (skew.toLowerCase()) {
+		case "zipfian":
+			return IsbnDistribution.zipfian(SKEWED_CATALOGUE_SIZE, zipfExponent);
+		case "hotspot":
+			return IsbnDistribution.hotspot(SKEWED_CATALOGUE_SIZE, hotTrafficFraction, hotBooksFraction);
+		case "shiftinghotspot":
+			return IsbnDistribution.shiftingHotspot(SKEWED_CATALOGUE_SIZE, hotTrafficFraction, hotBooksFraction,
+					TimeUnit.SECONDS.toNanos(hotspotShiftInSecs));
+		default:
+			throw new IllegalArgumentException("Unknown skew " + skew);
+		}
 	}
 
 	/**
@@ -153,7 +288,18 @@ public class CertainWorkload {
 	 */
 	public static void initializeBookStoreData(BookStore bookStore,
 			StockManager stockManager) throws BookStoreException {
-		BookSetGenerator generator = new BookSetGenerator();
+		initializeBookStoreData(bookStore, stockManager, null);
+	}
+
+	/**
+	 * Generate the data in bookstore before the workload interactions are run,
+	 * drawing the ISBNs from the catalogue of isbnDistribution if it is not
+	 * null
+	 * 
+	 */
+	public static void initializeBookStoreData(BookStore bookStore,
+			StockManager stockManager, IsbnDistribution isbnDistribution) throws BookStoreException {
+		BookSetGenerator generator = new BookSetGenerator(isbnDistribution);
 		stockManager.addBooks(generator.nextSetOfStockBooks(INITIAL_BOOKS));
 		System.out.println("Initial Books: " + stockManager.getBooks().size());
 	}
@@ -0,0 +1,207 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Random;
+
+/**
+ *
+ * IsbnDistribution represents how popular the books of a catalogue of ISBNs
+ * 1 to numIsbns are. Each ISBN has a popularity rank, and ranks are assigned
+ * to ISBNs by a fixed random permutation so that the popular books are spread
+ * over the catalogue rather than being its lowest ISBNs.
+ *
+ * The tables are computed once, when the distribution is created, and are
+ * never modified afterwards, so one distribution can be shared by all the
+ * workers; weighing an ISBN takes constant time.
+ *
+ */
+public abstract class IsbnDistribution {
+
+	private static final long PERMUTATION_SEED = 42;
+
+	protected final int numIsbns;
+	private final int[] rankOfIsbn;
+
+	protected IsbnDistribution(int numIsbns) {
+		if (numIsbns <= 0) {
+			throw new IllegalArgumentException("numIsbns must be positive");
+		}
+
+		this.numIsbns = numIsbns;
+		int[] isbnOfRank = new int[numIsbns];
+		rankOfIsbn = new int[numIsbns];
+
+		for (int rank = 0; rank < numIsbns; rank++) {
+			isbnOfRank[rank] = rank + 1;
+		}
+
+		Random random = new Random(PERMUTATION_SEED);
+
+		for (int rank = numIsbns - 1; rank > 0; rank--) {
+			int other = random.nextInt(rank + 1);
+			int isbn = isbnOfRank[rank];
+			isbnOfRank[rank] = isbnOfRank[other];
+			isbnOfRank[other] = isbn;
+		}
+
+		for (int rank = 0; rank < numIsbns; rank++) {
+			rankOfIsbn[isbnOfRank[rank] - 1] = rank;
+		}
+	}
+
+	public int getNumIsbns() {
+		return numIsbns;
+	}
+
+	/**
+	 * Gets the probability of an ISBN being requested. ISBNs outside of the
+	 * catalogue weigh as much as the book of the last rank.
+	 *
+	 * @param isbn
+	 * @return the probability
+	 */
+	public double weightOf(int isbn) {
+		int rank = (isbn >= 1 && isbn <= numIsbns) ? rankOfIsbn[isbn - 1] : numIsbns - 1;
+		return weightOfRank(rank);
+	}
+
+	/**
+	 * Gets the probability of a popularity rank, 0 being the most popular,
+	 * being requested
+	 *
+	 * @param rank
+	 * @return the probability
+	 */
+	protected abstract double weightOfRank(int rank);
+
+	/**
+	 * Creates a distribution where the book of rank r is requested with a
+	 * probability proportional to 1 / (r + 1)^exponent
+	 *
+	 * @param numIsbns
+	 * @param exponent
+	 *            the skew, 0 being uniform and about 1 being typical of book
+	 *            sales
+	 * @return the distribution
+	 */
+	public static IsbnDistribution zipfian(int numIsbns, double exponent) {
+		return new Zipfian(numIsbns, exponent);
+	}
+
+	/**
+	 * Creates a distribution where a fraction of the requests goes to a fixed
+	 * set of hot books and the rest to the other books, uniformly within each
+	 * set
+	 *
+	 * @param numIsbns
+	 * @param hotTrafficFraction
+	 *            the fraction of the requests going to the hot books
+	 * @param hotBooksFraction
+	 *            the fraction of the books which are hot
+	 * @return the distribution
+	 */
+	public static IsbnDistribution hotspot(int numIsbns, double hotTrafficFraction, double hotBooksFraction) {
+		return new Hotspot(numIsbns, hotTrafficFraction, hotBooksFraction, 0);
+	}
+
+	/**
+	 * Creates a hotspot distribution whose hot set moves on to the next books
+	 * in popularity order at a fixed interval, as the bestsellers of one week
+	 * give way to those of the next
+	 *
+	 * @param numIsbns
+	 * @param hotTrafficFraction
+	 *            the fraction of the requests going to the hot books
+	 * @param hotBooksFraction
+	 *            the fraction of the books which are hot
+	 * @param shiftIntervalInNanoSecs
+	 *            the time after which the hot set moves
+	 * @return the distribution
+	 */
+	public static IsbnDistribution shiftingHotspot(int numIsbns, double hotTrafficFraction,
+			double hotBooksFraction, long shiftIntervalInNanoSecs) {
+		if (shiftIntervalInNanoSecs <= 0) {
+			throw new IllegalArgumentException("shiftIntervalInNanoSecs must be positive");
+		}
+
+		return new Hotspot(numIsbns, hotTrafficFraction, hotBooksFraction, shiftIntervalInNanoSecs);
+	}
+
+	/**
+	 *
+	 * Zipfian keeps the normalized weights of the ranks in a table, so that
+	 * they are computed once rather than with a power on every lookup.
+	 *
+	 */
+	private static class Zipfian extends IsbnDistribution {
+		private final double[] weights;
+
+		Zipfian(int numIsbns, double exponent) {
+			super(numIsbns);
+			weights = new double[numIsbns];
+
+			double totalWeight = 0.0;
+			for (int rank = 0; rank < numIsbns; rank++) {
+				weights[rank] = 1.0 / Math.pow(rank + 1, exponent);
+				totalWeight += weights[rank];
+			}
+			for (int rank = 0; rank < numIsbns; rank++) {
+				weights[rank] /= totalWeight;
+			}
+		}
+
+		@Override
+		protected double weightOfRank(int rank) {
+			return weights[rank];
+		}
+	}
+
+	/**
+	 *
+	 * Hotspot keeps the ranks of the hot set in a window of numHotIsbns ranks.
+	 * The window starts at rank 0 and, if the hotspot shifts, moves forward by
+	 * its own length every shiftIntervalInNanoSecs, wrapping around.
+	 *
+	 */
+	private static class Hotspot extends IsbnDistribution {
+		private final double hotTrafficFraction;
+		private final int numHotIsbns;
+		private final long shiftIntervalInNanoSecs;
+		private final long startTimeInNanoSecs = System.nanoTime();
+
+		Hotspot(int numIsbns, double hotTrafficFraction, double hotBooksFraction, long shiftIntervalInNanoSecs) {
+			super(numIsbns);
+			if (hotTrafficFraction < 0.0 || hotTrafficFraction > 1.0 || hotBooksFraction <= 0.0
+					|| hotBooksFraction > 1.0) {
+				throw new IllegalArgumentException("fractions must be between 0 and 1");
+			}
+
+			this.hotTrafficFraction = hotTrafficFraction;
+			this.numHotIsbns = Math.max(1, Math.min(numIsbns, (int) Math.round(hotBooksFraction * numIsbns)));
+			this.shiftIntervalInNanoSecs = shiftIntervalInNanoSecs;
+		}
+
+		/**
+		 * Gets the first rank of the hot set
+		 *
+		 * @return the rank
+		 */
+		private int hotSetStart() {
+			if (shiftIntervalInNanoSecs == 0) {
+				return 0;
+			}
+
+			long shifts = (System.nanoTime() - startTimeInNanoSecs) / shiftIntervalInNanoSecs;
+			return (int) ((shifts * numHotIsbns) % numIsbns);
+		}
+
+		@Override
+		protected double weightOfRank(int rank) {
+			int numColdIsbns = numIsbns - numHotIsbns;
+			int offset = Math.floorMod(rank - hotSetStart(), numIsbns);
+			if (offset < numHotIsbns) {
+				return numColdIsbns == 0 ? 1.0 / numHotIsbns : hotTrafficFraction / numHotIsbns;
+			}
+			return (1.0 - hotTrafficFraction) / numColdIsbns;
+		}
+	}
+}
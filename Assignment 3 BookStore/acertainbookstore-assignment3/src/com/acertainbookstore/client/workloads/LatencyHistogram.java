@@ -0,0 +1,154 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.Arrays;
+
+/**
+ *
+ * LatencyHistogram records latencies in nanoseconds into log-bucketed counts,
+ * in the manner of HdrHistogram: each power of two is split into
+ * SUB_BUCKET_COUNT / 2 linear buckets, so every recorded value is kept with a
+ * relative error below 1% while the histogram stays a fixed array of counts.
+ * Recording is constant-time and allocates nothing, and histograms of several
+ * workers are combined with merge.
+ *
+ * A histogram is not thread-safe; each worker records into its own.
+ *
+ */
+public class LatencyHistogram {
+
+	/** The number of bits of a value kept exactly. */
+	private static final int SUB_BUCKET_BITS = 8;
+
+	/** The number of buckets of the first power of two. */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/** The number of buckets of each following power of two. */
+	private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+
+	/** The number of buckets needed for any non-negative long. */
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * HALF_SUB_BUCKET_COUNT
+			+ SUB_BUCKET_COUNT;
+
+	private final long[] counts = new long[BUCKET_COUNT];
+	private long totalCount = 0;
+	private long totalNanoSecs = 0;
+	private long minNanoSecs = Long.MAX_VALUE;
+	private long maxNanoSecs = 0;
+
+	/**
+	 * Records a latency
+	 *
+	 * @param nanoSecs
+	 *            the latency in nanoseconds, negative values count as zero
+	 */
+	public void record(long nanoSecs) {
+		long value = Math.max(nanoSecs, 0);
+		counts[bucketOf(value)]++;
+		totalCount++;
+		totalNanoSecs += value;
+		minNanoSecs = Math.min(minNanoSecs, value);
+		maxNanoSecs = Math.max(maxNanoSecs, value);
+	}
+
+	/**
+	 * Adds the latencies recorded in another histogram to this one
+	 *
+	 * @param other
+	 */
+	public void merge(LatencyHistogram other) {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] += other.counts[i];
+		}
+
+		totalCount += other.totalCount;
+		totalNanoSecs += other.totalNanoSecs;
+		minNanoSecs = Math.min(minNanoSecs, other.minNanoSecs);
+		maxNanoSecs = Math.max(maxNanoSecs, other.maxNanoSecs);
+	}
+
+	/**
+	 * Forgets all recorded latencies
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0);
+		totalCount = 0;
+		totalNanoSecs = 0;
+		minNanoSecs = Long.MAX_VALUE;
+		maxNanoSecs = 0;
+	}
+
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	public long getMinNanoSecs() {
+		return totalCount == 0 ? 0 : minNanoSecs;
+	}
+
+	public long getMaxNanoSecs() {
+		return maxNanoSecs;
+	}
+
+	public double getMeanNanoSecs() {
+		return totalCount == 0 ? 0.0 : (double) totalNanoSecs / totalCount;
+	}
+
+	/**
+	 * Gets the latency below which the given percentage of the recorded
+	 * latencies fall, rounded up to the top of its bucket and capped at the
+	 * largest latency recorded
+	 *
+	 * @param percentile
+	 *            the percentile, between 0 and 100
+	 * @return the latency in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (totalCount == 0) {
+			return 0;
+		}
+
+		double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+		long rank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+		long seen = 0;
+
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+
+			if (seen >= rank) {
+				return Math.min(highestValueOf(i), maxNanoSecs);
+			}
+		}
+
+		return maxNanoSecs;
+	}
+
+	/**
+	 * Gets the bucket of a value. Values below SUB_BUCKET_COUNT have a bucket
+	 * each; larger values are shifted right until they fit in SUB_BUCKET_BITS
+	 * bits, and the shift selects the group of buckets.
+	 *
+	 * @param value
+	 *            a non-negative value
+	 * @return the bucket
+	 */
+	private static int bucketOf(long value) {
+		int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+	}
+
+	/**
+	 * Gets the largest value falling into a bucket
+	 *
+	 * @param bucket
+	 * @return the value
+	 */
+	private static long highestValueOf(int bucket) {
+		if (bucket < SUB_BUCKET_COUNT) {
+			return bucket;
+		}
+
+		int shift = (bucket - HALF_SUB_BUCKET_COUNT) / HALF_SUB_BUCKET_COUNT;
+		long subBucket = bucket - shift * HALF_SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+}
@@ -5,6 +5,7 @@ package com.acertainbookstore.client.workloads;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
 import java.util.stream.Collectors;
 
 import com.acertainbookstore.business.Book;
@@ -19,9 +20,15 @@ import com.acertainbookstore.utils.BookStoreException;
  * 
  */
 public class Worker implements Callable<WorkerRunResult> {
+    /** The number of books of each page read by the new stock acquisition interaction. */
+    private static final int CATALOGUE_PAGE_SIZE = 1000;
+
     private WorkloadConfiguration configuration = null;
     private int numSuccessfulFrequentBookStoreInteraction = 0;
     private int numTotalFrequentBookStoreInteraction = 0;
+    private LatencyHistogram rareStockManagerInteractionLatencies = new LatencyHistogram();
+    private LatencyHistogram frequentStockManagerInteractionLatencies = new LatencyHistogram();
+    private LatencyHistogram frequentBookStoreInteractionLatencies = new LatencyHistogram();
 
     public Worker(WorkloadConfiguration config) {
 	configuration = config;
@@ -32,20 +39,29 @@ public class Worker implements Callable<WorkerRunResult> {
      * distributions
      * 
      * Updates the counts of total runs and successful runs for customer
-     * interaction
+     * interaction, and records the latency of the interaction, whether it
+     * succeeded or not, in the histogram of its type
+     * 
+     * The latency is measured from startTimeInNanoSecs, which in an open loop
+     * is the time at which the request was meant to be sent, so that the time
+     * spent waiting behind earlier requests is counted rather than omitted
      * 
      * @param chooseInteraction
+     * @param startTimeInNanoSecs
      * @return
      */
-    private boolean runInteraction(float chooseInteraction) {
-	try {
-	    float percentRareStockManagerInteraction = configuration.getPercentRareStockManagerInteraction();
-	    float percentFrequentStockManagerInteraction = configuration.getPercentFrequentStockManagerInteraction();
+    private boolean runInteraction(float chooseInteraction, long startTimeInNanoSecs) {
+	float percentRareStockManagerInteraction = configuration.getPercentRareStockManagerInteraction();
+	float percentFrequentStockManagerInteraction = configuration.getPercentFrequentStockManagerInteraction();
+	LatencyHistogram latencies = frequentBookStoreInteractionLatencies;
 
+	try {
 	    if (chooseInteraction < percentRareStockManagerInteraction) {
+		latencies = rareStockManagerInteractionLatencies;
 		runRareStockManagerInteraction();
 	    } else if (chooseInteraction < percentRareStockManagerInteraction
 		    + percentFrequentStockManagerInteraction) {
+		latencies = frequentStockManagerInteractionLatencies;
 		runFrequentStockManagerInteraction();
 	    } else {
 		numTotalFrequentBookStoreInteraction++;
@@ -54,10 +70,43 @@ public class Worker implements Callable<WorkerRunResult> {
 	    }
 	} catch (BookStoreException ex) {
 	    return false;
+	} finally {
+	    latencies.record(System.nanoTime() - startTimeInNanoSecs);
 	}
 	return true;
     }
 
+    /**
+     * Waits for the time at which the next request is to be sent
+     * 
+     * In a closed loop the next request is sent at once. In an open loop the
+     * requests follow a timeline at the target rate, laid out by the arrival
+     * distribution, which does not move when the store is slow: if a request
+     * returns after the next one was due, that one is sent immediately and is
+     * late by the difference.
+     * 
+     * @param previousStartTimeInNanoSecs
+     *            the time at which the previous request was to be sent
+     * @param rand
+     * @return the time at which the next request is to be sent
+     */
+    private long awaitNextRequest(long previousStartTimeInNanoSecs, Random rand) {
+	if (!configuration.isOpenLoop()) {
+	    return System.nanoTime();
+	}
+
+	double meanInterArrivalTimeInNanoSecs = 1e9 / configuration.getTargetRequestsPerSecond();
+	long startTimeInNanoSecs = previousStartTimeInNanoSecs + configuration.getArrivalDistribution()
+		.nextInterArrivalTimeInNanoSecs(meanInterArrivalTimeInNanoSecs, rand);
+	long waitTimeInNanoSecs;
+
+	while ((waitTimeInNanoSecs = startTimeInNanoSecs - System.nanoTime()) > 0) {
+	    LockSupport.parkNanos(waitTimeInNanoSecs);
+	}
+
+	return startTimeInNanoSecs;
+    }
+
     /**
      * Run the workloads trying to respect the distributions of the interactions
      * and return result in the end
@@ -71,46 +120,65 @@ public class Worker implements Callable<WorkerRunResult> {
 
 	Random rand = new Random();
 	float chooseInteraction;
+	long requestStartTimeInNanoSecs = System.nanoTime();
 
 	// Perform the warmup runs
 	while (count++ <= configuration.getWarmUpRuns()) {
 	    chooseInteraction = rand.nextFloat() * 100f;
-	    runInteraction(chooseInteraction);
+	    requestStartTimeInNanoSecs = awaitNextRequest(requestStartTimeInNanoSecs, rand);
+	    runInteraction(chooseInteraction, requestStartTimeInNanoSecs);
 	}
 
 	count = 1;
 	numTotalFrequentBookStoreInteraction = 0;
 	numSuccessfulFrequentBookStoreInteraction = 0;
+	rareStockManagerInteractionLatencies.reset();
+	frequentStockManagerInteractionLatencies.reset();
+	frequentBookStoreInteractionLatencies.reset();
 
-	// Perform the actual runs
+	// Perform the actual runs, starting a new timeline so that requests left
+	// late by the warmup are not carried over
 	startTimeInNanoSecs = System.nanoTime();
+	requestStartTimeInNanoSecs = startTimeInNanoSecs;
 	while (count++ <= configuration.getNumActualRuns()) {
 	    chooseInteraction = rand.nextFloat() * 100f;
-	    if (runInteraction(chooseInteraction)) {
+	    requestStartTimeInNanoSecs = awaitNextRequest(requestStartTimeInNanoSecs, rand);
+	    if (runInteraction(chooseInteraction, requestStartTimeInNanoSecs)) {
 		successfulInteractions++;
 	    }
 	}
 	endTimeInNanoSecs = System.nanoTime();
 	timeForRunsInNanoSecs += (endTimeInNanoSecs - startTimeInNanoSecs);
 	return new WorkerRunResult(successfulInteractions, timeForRunsInNanoSecs, configuration.getNumActualRuns(),
-		numSuccessfulFrequentBookStoreInteraction, numTotalFrequentBookStoreInteraction);
+		numSuccessfulFrequentBookStoreInteraction, numTotalFrequentBookStoreInteraction,
+		rareStockManagerInteractionLatencies, frequentStockManagerInteractionLatencies,
+		frequentBookStoreInteractionLatencies);
     }
 
     /**
      * Runs the new stock acquisition interaction
-	 * invokes getBooks and then gets a random set
+	 * pages through the books with getBooks, each page being read off the
+	 * store's ISBN index, and then gets a random set
 	 * of books from an instance of BookSetGenerator by calling nextSetOfStockBooks.
-	 * It then checks if the set of ISBNs is in the list of books fetched. Finally, it invokes
-	 * addBooks with the set of books not found in the list returned by getBooks.
+	 * It then checks if the set of ISBNs is in the ISBNs of the books fetched. Finally, it invokes
+	 * addBooks with the set of books not found among the books returned by getBooks.
      * @throws BookStoreException
      */
     private void runRareStockManagerInteraction() throws BookStoreException {
 
-		List<StockBook> stockBookList = configuration.getStockManager().getBooks();
+		// Only the ISBNs are kept, a page at a time, rather than the list of all the books.
+		Set<Integer> isbns = new HashSet<>();
+		List<StockBook> page = configuration.getStockManager().getBooks(0, CATALOGUE_PAGE_SIZE);
+		while (!page.isEmpty()) {
+			page.forEach(book -> isbns.add(book.getISBN()));
+			if (page.size() < CATALOGUE_PAGE_SIZE)
+				break;
+			page = configuration.getStockManager().getBooks(page.get(page.size() - 1).getISBN(), CATALOGUE_PAGE_SIZE);
+		}
 		Set<StockBook> books = configuration.getBookSetGenerator().nextSetOfStockBooks(configuration.getNumBooksToAdd());
 		Set<StockBook> newBooks = new HashSet<>();
 		for (StockBook stockBook: books) {
-			if (stockBookList.stream().noneMatch(book -> book.getISBN() == stockBook.getISBN()))
+			if (!isbns.contains(stockBook.getISBN()))
 				newBooks.add(stockBook);
 		}
 		configuration.getStockManager().addBooks(newBooks);
@@ -118,17 +186,17 @@ public class Worker implements Callable<WorkerRunResult> {
 
     /**
      * Runs the stock replenishment interaction
-	 * invokes getBooks, selects the k books
+	 * invokes getBooksWithLeastCopies to get the k books
 	 * with smallest quantities in stock, and then invokes addCopies on these books.
      * @throws BookStoreException
      */
     private void runFrequentStockManagerInteraction() throws BookStoreException {
 
-		List<StockBook> stockBookList = configuration.getStockManager().getBooks();
-		stockBookList.sort(Comparator.comparing(StockBook::getNumCopies));
+		List<StockBook> stockBookList = configuration.getStockManager()
+				.getBooksWithLeastCopies(configuration.getNumBooksWithLeastCopies());
 		Set<BookCopy> newBookCopies = new HashSet<>();
-		for (int i = 0; i < stockBookList.size() && i<configuration.getNumBooksWithLeastCopies(); i++) {
-			newBookCopies.add(new BookCopy(stockBookList.get(i).getISBN(), configuration.getNumAddCopies()));
+		for (StockBook stockBook: stockBookList) {
+			newBookCopies.add(new BookCopy(stockBook.getISBN(), configuration.getNumAddCopies()));
 		}
 		configuration.getStockManager().addCopies(newBookCopies);
     }
@@ -19,15 +19,33 @@ public class WorkerRunResult {
 	private int totalFrequentBookStoreInteractionRuns; // total number of
 														// bookstore interaction
 														// runs
+	private LatencyHistogram rareStockManagerInteractionLatencies; // latencies
+																	// of the
+																	// new stock
+																	// acquisitions
+	private LatencyHistogram frequentStockManagerInteractionLatencies; // latencies
+																		// of the
+																		// stock
+																		// replenishments
+	private LatencyHistogram frequentBookStoreInteractionLatencies; // latencies
+																	// of the
+																	// customer
+																	// interactions
 
 	public WorkerRunResult(int successfulInteractions, long elapsedTimeInNanoSecs,
 			int totalRuns, int successfulFrequentBookStoreInteractionRuns,
-			int totalFrequentBookStoreInteractionRuns) {
+			int totalFrequentBookStoreInteractionRuns,
+			LatencyHistogram rareStockManagerInteractionLatencies,
+			LatencyHistogram frequentStockManagerInteractionLatencies,
+			LatencyHistogram frequentBookStoreInteractionLatencies) {
 		this.setSuccessfulInteractions(successfulInteractions);
 		this.setElapsedTimeInNanoSecs(elapsedTimeInNanoSecs);
 		this.setTotalRuns(totalRuns);
 		this.setSuccessfulFrequentBookStoreInteractionRuns(successfulFrequentBookStoreInteractionRuns);
 		this.setTotalFrequentBookStoreInteractionRuns(totalFrequentBookStoreInteractionRuns);
+		this.setRareStockManagerInteractionLatencies(rareStockManagerInteractionLatencies);
+		this.setFrequentStockManagerInteractionLatencies(frequentStockManagerInteractionLatencies);
+		this.setFrequentBookStoreInteractionLatencies(frequentBookStoreInteractionLatencies);
 	}
 
 	public int getTotalRuns() {
@@ -72,4 +90,31 @@ public class WorkerRunResult {
 		this.totalFrequentBookStoreInteractionRuns = totalFrequentBookStoreInteractionRuns;
 	}
 
+	public LatencyHistogram getRareStockManagerInteractionLatencies() {
+		return rareStockManagerInteractionLatencies;
+	}
+
+	public void setRareStockManagerInteractionLatencies(
+			LatencyHistogram rareStockManagerInteractionLatencies) {
+		this.rareStockManagerInteractionLatencies = rareStockManagerInteractionLatencies;
+	}
+
+	public LatencyHistogram getFrequentStockManagerInteractionLatencies() {
+		return frequentStockManagerInteractionLatencies;
+	}
+
+	public void setFrequentStockManagerInteractionLatencies(
+			LatencyHistogram frequentStockManagerInteractionLatencies) {
+		this.frequentStockManagerInteractionLatencies = frequentStockManagerInteractionLatencies;
+	}
+
+	public LatencyHistogram getFrequentBookStoreInteractionLatencies() {
+		return frequentBookStoreInteractionLatencies;
+	}
+
+	public void setFrequentBookStoreInteractionLatencies(
+			LatencyHistogram frequentBookStoreInteractionLatencies) {
+		this.frequentBookStoreInteractionLatencies = frequentBookStoreInteractionLatencies;
+	}
+
 }
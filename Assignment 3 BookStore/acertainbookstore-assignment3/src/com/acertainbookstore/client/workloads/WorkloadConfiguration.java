@@ -20,13 +20,27 @@ public class WorkloadConfiguration {
 	private int numActualRuns = 500;
 	private float percentRareStockManagerInteraction = 10f;
 	private float percentFrequentStockManagerInteraction = 30f;
+	private double targetRequestsPerSecond = 0.0; // 0 for a closed loop
+	private ArrivalDistribution arrivalDistribution = ArrivalDistribution.CONSTANT;
+	private IsbnDistribution isbnDistribution = null; // null for uniform
 	private BookSetGenerator bookSetGenerator = null;
 	private StockManager stockManager = null;
 	private BookStore bookStore = null;
 
 	public WorkloadConfiguration(BookStore bookStore, StockManager stockManager) throws Exception {
-		// Create a new one so that it is not shared
-		bookSetGenerator = new BookSetGenerator();
+		this(bookStore, stockManager, null);
+	}
+
+	/**
+	 * Creates a configuration whose books are sampled according to the
+	 * popularity given by isbnDistribution, or uniformly if it is null
+	 */
+	public WorkloadConfiguration(BookStore bookStore, StockManager stockManager,
+			IsbnDistribution isbnDistribution) throws Exception {
+		// Create a new one so that it is not shared; the distribution is
+		// immutable and shared by all the workers
+		bookSetGenerator = new BookSetGenerator(isbnDistribution);
+		this.isbnDistribution = isbnDistribution;
 		this.bookStore = bookStore;
 		this.stockManager = stockManager;
 	}
@@ -113,6 +127,32 @@ public class WorkloadConfiguration {
 		this.numActualRuns = numActualRuns;
 	}
 
+	/**
+	 * Checks if the worker sends its requests at the target rate, whether or
+	 * not the previous ones have returned, rather than one after the other
+	 * 
+	 * @return true, if the workload is open loop
+	 */
+	public boolean isOpenLoop() {
+		return targetRequestsPerSecond > 0.0;
+	}
+
+	public double getTargetRequestsPerSecond() {
+		return targetRequestsPerSecond;
+	}
+
+	public void setTargetRequestsPerSecond(double targetRequestsPerSecond) {
+		this.targetRequestsPerSecond = targetRequestsPerSecond;
+	}
+
+	public ArrivalDistribution getArrivalDistribution() {
+		return arrivalDistribution;
+	}
+
+	public void setArrivalDistribution(ArrivalDistribution arrivalDistribution) {
+		this.arrivalDistribution = arrivalDistribution;
+	}
+
 	public int getNumEditorPicksToGet() {
 		return numEditorPicksToGet;
 	}
@@ -129,6 +169,10 @@ public class WorkloadConfiguration {
 		this.numAddCopies = numAddCopies;
 	}
 
+	public IsbnDistribution getIsbnDistribution() {
+		return isbnDistribution;
+	}
+
 	public BookSetGenerator getBookSetGenerator() {
 		return bookSetGenerator;
 	}
@@ -0,0 +1,150 @@
+package com.acertainbookstore.client.workloads;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * WorkloadMetrics represents the metrics of a workload run, computed from the
+ * results of its workers: the share of customer interactions, the goodput,
+ * the throughput of customer interactions and the latencies of each
+ * interaction type, merged over the workers
+ *
+ */
+public class WorkloadMetrics {
+	private int numWorkers;
+	private double targetRequestsPerSecond; // 0 for a closed loop
+	private double percentageCustomerInteractions;
+	private double goodput;
+	private double throughput;
+	private LatencyHistogram rareStockManagerLatencies = new LatencyHistogram();
+	private LatencyHistogram frequentStockManagerLatencies = new LatencyHistogram();
+	private LatencyHistogram frequentBookStoreLatencies = new LatencyHistogram();
+
+	public WorkloadMetrics(List<WorkerRunResult> workerRunResults, double targetRequestsPerSecond) {
+		double totalNumOfInteractions = 0.0;
+		double totalCustomerInteractions = 0.0;
+		double totalSuccessInteratcions = 0.0;
+		for (WorkerRunResult workerRunResult: workerRunResults) {
+			double elapsedTimeInSecs = workerRunResult.getElapsedTimeInNanoSecs() / Math.pow(10.0,9);
+			throughput += workerRunResult.getSuccessfulFrequentBookStoreInteractionRuns() / elapsedTimeInSecs;
+
+			totalCustomerInteractions += workerRunResult.getTotalFrequentBookStoreInteractionRuns();
+			totalNumOfInteractions += workerRunResult.getTotalRuns();
+			totalSuccessInteratcions += workerRunResult.getSuccessfulInteractions();
+
+			rareStockManagerLatencies.merge(workerRunResult.getRareStockManagerInteractionLatencies());
+			frequentStockManagerLatencies.merge(workerRunResult.getFrequentStockManagerInteractionLatencies());
+			frequentBookStoreLatencies.merge(workerRunResult.getFrequentBookStoreInteractionLatencies());
+		}
+		this.numWorkers = workerRunResults.size();
+		this.targetRequestsPerSecond = targetRequestsPerSecond;
+		this.percentageCustomerInteractions = (totalCustomerInteractions/ totalNumOfInteractions) * 100.0;
+		this.goodput = (totalSuccessInteratcions/ totalNumOfInteractions) * 100.0;
+	}
+
+	public int getNumWorkers() {
+		return numWorkers;
+	}
+
+	public double getTargetRequestsPerSecond() {
+		return targetRequestsPerSecond;
+	}
+
+	public double getPercentageCustomerInteractions() {
+		return percentageCustomerInteractions;
+	}
+
+	public double getGoodput() {
+		return goodput;
+	}
+
+	public double getThroughput() {
+		return throughput;
+	}
+
+	public LatencyHistogram getRareStockManagerLatencies() {
+		return rareStockManagerLatencies;
+	}
+
+	public LatencyHistogram getFrequentStockManagerLatencies() {
+		return frequentStockManagerLatencies;
+	}
+
+	public LatencyHistogram getFrequentBookStoreLatencies() {
+		return frequentBookStoreLatencies;
+	}
+
+	/**
+	 * Prints the metrics
+	 */
+	public void print() {
+		System.out.println("++++++++++++++++++++++++++++++++++");
+		System.out.println("Workers " +  numWorkers);
+		if (targetRequestsPerSecond > 0.0) {
+			System.out.println("Target rate: " + targetRequestsPerSecond);
+		}
+		System.out.println("Customer interaction: " + percentageCustomerInteractions);
+		System.out.println("GoodPut: " + goodput);
+		System.out.println("Throughput: " + throughput);
+		System.out.println(String.format("%-24s %10s %10s %10s %10s %10s %10s", "Latency (us)", "count", "mean",
+				"p50", "p99", "p99.9", "max"));
+		printLatencies("Rare stock manager", rareStockManagerLatencies);
+		printLatencies("Frequent stock manager", frequentStockManagerLatencies);
+		printLatencies("Frequent bookstore", frequentBookStoreLatencies);
+		System.out.println("++++++++++++++++++++++++++++++++++");
+	}
+
+	/**
+	 * Prints a row of the latency table
+	 *
+	 * @param interaction
+	 * @param latencies
+	 */
+	private static void printLatencies(String interaction, LatencyHistogram latencies) {
+		System.out.println(String.format("%-24s %10d %10.1f %10.1f %10.1f %10.1f %10.1f", interaction,
+				latencies.getTotalCount(), latencies.getMeanNanoSecs() / 1000.0,
+				latencies.getValueAtPercentile(50.0) / 1000.0, latencies.getValueAtPercentile(99.0) / 1000.0,
+				latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxNanoSecs() / 1000.0));
+	}
+
+	/**
+	 * Gets the names of the metrics, as used in CSV headers and JSON objects
+	 *
+	 * @return the names, in the order of getValues
+	 */
+	public static List<String> getNames() {
+		List<String> names = new ArrayList<>(Arrays.asList("workers", "target_rate_per_sec",
+				"customer_interaction_percent", "goodput_percent", "throughput_per_sec"));
+		addLatencyNames(names, "rare_stock_manager");
+		addLatencyNames(names, "frequent_stock_manager");
+		addLatencyNames(names, "frequent_bookstore");
+		return names;
+	}
+
+	/**
+	 * Gets the values of the metrics, with latencies in microseconds
+	 *
+	 * @return the values, in the order of getNames
+	 */
+	public List<Number> getValues() {
+		List<Number> values = new ArrayList<>(Arrays.<Number> asList(numWorkers, targetRequestsPerSecond,
+				percentageCustomerInteractions, goodput, throughput));
+		addLatencyValues(values, rareStockManagerLatencies);
+		addLatencyValues(values, frequentStockManagerLatencies);
+		addLatencyValues(values, frequentBookStoreLatencies);
+		return values;
+	}
+
+	private static void addLatencyNames(List<String> names, String prefix) {
+		names.addAll(Arrays.asList(prefix + "_count", prefix + "_mean_us", prefix + "_p50_us", prefix + "_p99_us",
+				prefix + "_p999_us", prefix + "_max_us"));
+	}
+
+	private static void addLatencyValues(List<Number> values, LatencyHistogram latencies) {
+		values.addAll(Arrays.<Number> asList(latencies.getTotalCount(), latencies.getMeanNanoSecs() / 1000.0,
+				latencies.getValueAtPercentile(50.0) / 1000.0, latencies.getValueAtPercentile(99.0) / 1000.0,
+				latencies.getValueAtPercentile(99.9) / 1000.0, latencies.getMaxNanoSecs() / 1000.0));
+	}
+}
@@ -0,0 +1,236 @@
+package com.acertainbookstore.client.workloads;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ColumnarCertainBookStore;
+import com.acertainbookstore.business.MultiVersionCertainBookStore;
+import com.acertainbookstore.client.BookStoreHTTPProxy;
+import com.acertainbookstore.client.StockManagerHTTPProxy;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.server.BookStoreHTTPMessageHandler;
+import com.acertainbookstore.server.BookStoreHTTPServerUtility;
+import com.acertainbookstore.utils.BookStoreConstants;
+import com.acertainbookstore.utils.BookStoreException;
+
+/**
+ *
+ * WorkloadSweep runs the workload of CertainWorkload for every combination of
+ * store, mode and number of workers, and records the metrics of each run, to
+ * show where each store stops scaling
+ *
+ * Every run starts from a new store, filled with the initial books, and its
+ * workers warm up before they are measured. In http mode the store is served
+ * by a server started in this JVM on a free port, and the workers reach it
+ * through the HTTP proxies. The results are rewritten after every run, as
+ * CSV to SWEEP_RESULTS_FILE.csv and as JSON to SWEEP_RESULTS_FILE.json.
+ *
+ * The sweep is configured by the sweepstores (certain, durable,
+ * multiversion, columnar), sweepmodes (local, http) and sweepworkers
+ * properties, each a comma-separated list, and by the properties of
+ * CertainWorkload for the rate and the skew.
+ *
+ */
+public class WorkloadSweep {
+
+	private static final String DEFAULT_STORES = "certain,durable,multiversion,columnar";
+	private static final String DEFAULT_MODES = "local,http";
+	private static final String DEFAULT_WORKERS = "1,2,4,8,16,32";
+	private static final String SWEEP_RESULTS_FILE = "WorkloadSweep";
+	private static final int MIN_THREADPOOL_SIZE = 10;
+	private static final int MAX_THREADPOOL_SIZE = 100;
+
+	public static void main(String[] args) throws Exception {
+		String[] stores = System.getProperty(BookStoreConstants.PROPERTY_KEY_SWEEP_STORES, DEFAULT_STORES)
+				.split(",");
+		String[] modes = System.getProperty(BookStoreConstants.PROPERTY_KEY_SWEEP_MODES, DEFAULT_MODES)
+				.split(",");
+		String[] workers = System.getProperty(BookStoreConstants.PROPERTY_KEY_SWEEP_WORKERS, DEFAULT_WORKERS)
+				.split(",");
+
+		double targetRequestsPerSecond = CertainWorkload.getTargetRequestsPerSecond();
+		ArrivalDistribution arrivalDistribution = CertainWorkload.getArrivalDistribution();
+		IsbnDistribution isbnDistribution = CertainWorkload.createIsbnDistribution();
+
+		List<String> labels = new ArrayList<>();
+		List<WorkloadMetrics> results = new ArrayList<>();
+
+		for (String store : stores) {
+			for (String mode : modes) {
+				for (String numWorkers : workers) {
+					System.out.println("Store " + store.trim() + ", mode " + mode.trim() + ", workers "
+							+ numWorkers.trim());
+					WorkloadMetrics metrics = runPoint(store.trim(), mode.trim(),
+							Integer.parseInt(numWorkers.trim()), targetRequestsPerSecond,
+							arrivalDistribution, isbnDistribution);
+					metrics.print();
+					labels.add(store.trim() + "," + mode.trim());
+					results.add(metrics);
+					writeResults(labels, results);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Runs the workload once against a new store
+	 *
+	 * @param store
+	 * @param mode
+	 * @param numWorkers
+	 * @param targetRequestsPerSecond
+	 * @param arrivalDistribution
+	 * @param isbnDistribution
+	 * @return the metrics of the run
+	 */
+	private static WorkloadMetrics runPoint(String store, String mode, int numWorkers,
+			double targetRequestsPerSecond, ArrivalDistribution arrivalDistribution,
+			IsbnDistribution isbnDistribution) throws Exception {
+		File dataDirectory = null;
+		BookStore bookStore;
+		StockManager stockManager;
+
+		switch (store) {
+		case "certain":
+			CertainBookStore certainStore = new CertainBookStore();
+			bookStore = certainStore;
+			stockManager = certainStore;
+			break;
+		case "durable":
+			dataDirectory = Files.createTempDirectory("bookstore").toFile();
+			CertainBookStore durableStore = new CertainBookStore(dataDirectory);
+			bookStore = durableStore;
+			stockManager = durableStore;
+			break;
+		case "multiversion":
+			MultiVersionCertainBookStore multiVersionStore = new MultiVersionCertainBookStore();
+			bookStore = multiVersionStore;
+			stockManager = multiVersionStore;
+			break;
+		case "columnar":
+			dataDirectory = Files.createTempDirectory("bookstore").toFile();
+			ColumnarCertainBookStore columnarStore = new ColumnarCertainBookStore(dataDirectory);
+			bookStore = columnarStore;
+			stockManager = columnarStore;
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown store " + store);
+		}
+
+		Server server = null;
+		BookStoreHTTPProxy bookStoreProxy = null;
+		StockManagerHTTPProxy stockManagerProxy = null;
+		BookStore clientBookStore = bookStore;
+		StockManager clientStockManager = stockManager;
+
+		try {
+			if (mode.equals("http")) {
+				server = BookStoreHTTPServerUtility.startServer(0,
+						new BookStoreHTTPMessageHandler(bookStore, stockManager),
+						new QueuedThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE));
+				String serverAddress = "http://localhost:" + BookStoreHTTPServerUtility.getLocalPort(server);
+				bookStoreProxy = new BookStoreHTTPProxy(serverAddress);
+				stockManagerProxy = new StockManagerHTTPProxy(serverAddress + "/stock");
+				clientBookStore = bookStoreProxy;
+				clientStockManager = stockManagerProxy;
+			} else if (!mode.equals("local")) {
+				throw new IllegalArgumentException("Unknown mode " + mode);
+			}
+
+			CertainWorkload.initializeBookStoreData(clientBookStore, clientStockManager, isbnDistribution);
+			List<WorkerRunResult> workerRunResults = CertainWorkload.runWorkers(clientBookStore,
+					clientStockManager, numWorkers, targetRequestsPerSecond, arrivalDistribution, isbnDistribution);
+			return new WorkloadMetrics(workerRunResults, targetRequestsPerSecond);
+		} finally {
+			if (bookStoreProxy != null) {
+				bookStoreProxy.stop();
+			}
+			if (stockManagerProxy != null) {
+				stockManagerProxy.stop();
+			}
+			if (server != null) {
+				server.stop();
+			}
+			close(stockManager, dataDirectory);
+		}
+	}
+
+	/**
+	 * Closes the store of a run and deletes its files
+	 *
+	 * @param stockManager
+	 *            the store
+	 * @param dataDirectory
+	 *            the directory of its files, or null if it has none
+	 */
+	private static void close(StockManager stockManager, File dataDirectory) throws BookStoreException {
+		if (stockManager instanceof CertainBookStore) {
+			((CertainBookStore) stockManager).close();
+		} else if (stockManager instanceof ColumnarCertainBookStore) {
+			((ColumnarCertainBookStore) stockManager).close();
+		}
+
+		if (dataDirectory != null) {
+			for (File file : dataDirectory.listFiles()) {
+				file.delete();
+			}
+			dataDirectory.delete();
+		}
+	}
+
+	/**
+	 * Writes the results of the runs so far
+	 *
+	 * @param labels
+	 *            the store and mode of each run, comma-separated
+	 * @param results
+	 */
+	private static void writeResults(List<String> labels, List<WorkloadMetrics> results) {
+		List<String> names = WorkloadMetrics.getNames();
+
+		try (PrintWriter out = new PrintWriter(new FileWriter(SWEEP_RESULTS_FILE + ".csv"))) {
+			out.println("store,mode," + String.join(",", names));
+			for (int i = 0; i < results.size(); i++) {
+				StringBuilder row = new StringBuilder(labels.get(i));
+				for (Number value : results.get(i).getValues()) {
+					row.append(',').append(value);
+				}
+				out.println(row);
+			}
+		} catch (IOException e) {
+			System.err.println("Cannot write the results to " + SWEEP_RESULTS_FILE + ".csv: " + e.getMessage());
+		}
+
+		try (PrintWriter out = new PrintWriter(new FileWriter(SWEEP_RESULTS_FILE + ".json"))) {
+			out.println("[");
+			for (int i = 0; i < results.size(); i++) {
+				String[] label = labels.get(i).split(",");
+				StringBuilder object = new StringBuilder("  {\"store\": \"" + label[0] + "\", \"mode\": \""
+						+ label[1] + "\"");
+				List<Number> values = results.get(i).getValues();
+				for (int j = 0; j < names.size(); j++) {
+					double value = values.get(j).doubleValue();
+					// JSON has no NaN or infinity
+					String json = Double.isNaN(value) || Double.isInfinite(value) ? "null"
+							: String.valueOf(values.get(j));
+					object.append(", \"").append(names.get(j)).append("\": ").append(json);
+				}
+				object.append(i < results.size() - 1 ? "}," : "}");
+				out.println(object);
+			}
+			out.println("]");
+		} catch (IOException e) {
+			System.err.println("Cannot write the results to " + SWEEP_RESULTS_FILE + ".json: " + e.getMessage());
+		}
+	}
+}
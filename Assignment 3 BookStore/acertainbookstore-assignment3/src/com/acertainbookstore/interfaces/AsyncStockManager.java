@@ -0,0 +1,109 @@
+package com.acertainbookstore.interfaces;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.StockBook;
+
+/**
+ * {@link AsyncStockManager} declares the methods of {@link StockManager} for
+ * clients which do not wait for the replies. Each method returns at once, and
+ * its future completes with the reply, or exceptionally with a
+ * {@link com.acertainbookstore.utils.BookStoreException} where the
+ * {@link StockManager} method would have thrown it.
+ * 
+ * @see StockManager
+ */
+public interface AsyncStockManager {
+
+	/**
+	 * Adds the books in bookSet to the stock.
+	 *
+	 * @param bookSet
+	 *            the book set
+	 * @return the future completed once the books are added
+	 */
+	public CompletableFuture<Void> addBooksAsync(Set<StockBook> bookSet);
+
+	/**
+	 * Adds the copies in bookCopiesSet to the stock.
+	 *
+	 * @param bookCopiesSet
+	 *            the book copies set
+	 * @return the future completed once the copies are added
+	 */
+	public CompletableFuture<Void> addCopiesAsync(Set<BookCopy> bookCopiesSet);
+
+	/**
+	 * Gets the list of books in the bookstore.
+	 *
+	 * @return the future books
+	 */
+	public CompletableFuture<List<StockBook>> getBooksAsync();
+
+	/**
+	 * Gets a page of the books in the bookstore.
+	 *
+	 * @param cursor
+	 *            the ISBN the page starts after
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the future books
+	 * @see StockManager#getBooks(int, int)
+	 */
+	public CompletableFuture<List<StockBook>> getBooksAsync(int cursor, int limit);
+
+	/**
+	 * Gets the books with the least copies.
+	 *
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the future books
+	 * @see StockManager#getBooksWithLeastCopies(int)
+	 */
+	public CompletableFuture<List<StockBook>> getBooksWithLeastCopiesAsync(int limit);
+
+	/**
+	 * Gets the books matching the set of ISBNs given.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 * @return the future books by ISBN
+	 */
+	public CompletableFuture<List<StockBook>> getBooksByISBNAsync(Set<Integer> isbns);
+
+	/**
+	 * Gets the list of books which has sale miss.
+	 *
+	 * @return the future books in demand
+	 */
+	public CompletableFuture<List<StockBook>> getBooksInDemandAsync();
+
+	/**
+	 * Updates the editor picks of the books.
+	 *
+	 * @param editorPicks
+	 *            the editor picks
+	 * @return the future completed once the editor picks are updated
+	 */
+	public CompletableFuture<Void> updateEditorPicksAsync(Set<BookEditorPick> editorPicks);
+
+	/**
+	 * Removes all the books from the stock.
+	 *
+	 * @return the future completed once the books are removed
+	 */
+	public CompletableFuture<Void> removeAllBooksAsync();
+
+	/**
+	 * Removes the books in isbnSet from the stock.
+	 *
+	 * @param isbnSet
+	 *            the ISBN set
+	 * @return the future completed once the books are removed
+	 */
+	public CompletableFuture<Void> removeBooksAsync(Set<Integer> isbnSet);
+}
@@ -1,6 +1,9 @@
 package com.acertainbookstore.interfaces;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  * {@link BookStoreSerializer} specifies the serialization and de-serialization
@@ -29,4 +32,40 @@ public interface BookStoreSerializer {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	Object deserialize(byte[] bytes) throws IOException;
+
+	/**
+	 * Serializes an object into a buffer owned by the serializer, which its
+	 * next call may overwrite, so that the caller can learn the length of the
+	 * bytes before writing them out without copying them.
+	 *
+	 * @param object
+	 *            the object
+	 * @return the buffer, whose remaining bytes are the serialized object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	default ByteBuffer serializeToBuffer(Object object) throws IOException {
+		return ByteBuffer.wrap(serialize(object));
+	}
+
+	/**
+	 * De-serializes the sequence of bytes read from a stream into an object.
+	 *
+	 * @param inStream
+	 *            the stream
+	 * @return the object
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	default Object deserialize(InputStream inStream) throws IOException {
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int length;
+
+		while ((length = inStream.read(chunk)) != -1) {
+			outStream.write(chunk, 0, length);
+		}
+
+		return deserialize(outStream.toByteArray());
+	}
 }
@@ -39,6 +39,34 @@ public interface StockManager {
 	 */
 	public List<StockBook> getBooks() throws BookStoreException;
 
+	/**
+	 * Gets a page of the books in the bookstore: at most limit books, in
+	 * ascending order of ISBN, whose ISBNs are greater than the cursor. The
+	 * catalogue is read from the first page, with a cursor of 0, each next
+	 * page starting after the ISBN of the last book of the previous one.
+	 *
+	 * @param cursor
+	 *            the ISBN the page starts after
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public List<StockBook> getBooks(int cursor, int limit) throws BookStoreException;
+
+	/**
+	 * Gets the limit books with the least copies, in ascending order of the
+	 * number of copies, then of ISBN, e.g. the books to restock.
+	 *
+	 * @param limit
+	 *            the maximum number of books
+	 * @return the books
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public List<StockBook> getBooksWithLeastCopies(int limit) throws BookStoreException;
+
 	/**
 	 * Gets the books matching the set of ISBNs given, is different to getBooks
 	 * in the BookStore interface because of the return type of the books.
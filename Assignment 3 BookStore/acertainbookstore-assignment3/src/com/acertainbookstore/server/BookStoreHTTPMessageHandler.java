@@ -1,10 +1,21 @@
 package com.acertainbookstore.server;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -14,23 +25,34 @@ import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import com.acertainbookstore.business.BookCopy;
 import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
 import com.acertainbookstore.business.CertainBookStore;
 import com.acertainbookstore.business.StockBook;
-import com.acertainbookstore.utils.BookStoreKryoSerializer;
+import com.acertainbookstore.interfaces.BookStore;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
-import com.acertainbookstore.utils.BookStoreXStreamSerializer;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookPage;
 import com.acertainbookstore.utils.BookStoreConstants;
 import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreMessageTag;
+import com.acertainbookstore.utils.BookStoreOperation;
 import com.acertainbookstore.utils.BookStoreResponse;
 import com.acertainbookstore.utils.BookStoreUtility;
-import com.esotericsoftware.kryo.io.Input;
 
 /**
  * {@link BookStoreHTTPMessageHandler} implements the message handler class
  * which is invoked to handle messages received by the
  * {@link BookStoreHTTPServerUtility}. It decodes the HTTP message and invokes
  * the {@link CertainBookStore} server API.
+ *
+ * By default the store is called on the thread of the server which received
+ * the message. In the asynchronous mode, that thread only reads the message,
+ * and the store is called by one of the threads of the read executor or of
+ * the write executor, depending on whether the message updates the store, so
+ * that readers need not wait behind writers contending for the store. Each
+ * executor has a bounded queue, and a message arriving when it is full is
+ * turned away at once with 503 Service Unavailable, rather than waiting for
+ * longer and longer.
  * 
  * @see AbstractHandler
  * @see BookStoreHTTPServerUtility
@@ -39,26 +61,126 @@ import com.esotericsoftware.kryo.io.Input;
 public class BookStoreHTTPMessageHandler extends AbstractHandler {
 
 	/** The book store. */
-	private CertainBookStore myBookStore = null;
+	private BookStore bookStore = null;
+
+	/** The stock manager. */
+	private StockManager stockManager = null;
 
 	/** The serializer. */
-	private static ThreadLocal<BookStoreSerializer> serializer;
+	private static final ThreadLocal<BookStoreSerializer> serializer = BookStoreUtility.SERIALIZERS;
+
+	/** The number of threads reading the store, or 0 in the synchronous mode. */
+	private final int numReadThreads;
+
+	/** The number of threads updating the store, or 0 in the synchronous mode. */
+	private final int numWriteThreads;
+
+	/** The maximum number of messages waiting in the queue of each executor. */
+	private final int maxQueuedMessages;
+
+	/** The executor of the messages which read the store. */
+	private ThreadPoolExecutor readExecutor = null;
+
+	/** The executor of the messages which update the store. */
+	private ThreadPoolExecutor writeExecutor = null;
 
 	/**
-	 * Instantiates a new {@link BookStoreHTTPMessageHandler}.
+	 * Instantiates a new {@link BookStoreHTTPMessageHandler}, which calls the
+	 * store on the threads of the server.
 	 *
 	 * @param bookStore
 	 *            the book store
+	 * @param stockManager
+	 *            the stock manager
 	 */
-	public BookStoreHTTPMessageHandler(CertainBookStore bookStore) {
-		myBookStore = bookStore;
+	public BookStoreHTTPMessageHandler(BookStore bookStore, StockManager stockManager) {
+		this(bookStore, stockManager, 0, 0, 0);
+	}
 
-		// Setup the type of serializer.
-		if (BookStoreConstants.BINARY_SERIALIZATION) {
-			serializer = ThreadLocal.withInitial(BookStoreKryoSerializer::new);
-		} else {
-			serializer = ThreadLocal.withInitial(BookStoreXStreamSerializer::new);
+	/**
+	 * Instantiates a new {@link BookStoreHTTPMessageHandler}, which calls the
+	 * store on executors of its own if the numbers of threads are positive.
+	 *
+	 * @param bookStore
+	 *            the book store
+	 * @param stockManager
+	 *            the stock manager
+	 * @param numReadThreads
+	 *            the number of threads reading the store
+	 * @param numWriteThreads
+	 *            the number of threads updating the store
+	 * @param maxQueuedMessages
+	 *            the maximum number of messages waiting in the queue of each
+	 *            executor
+	 */
+	public BookStoreHTTPMessageHandler(BookStore bookStore, StockManager stockManager, int numReadThreads,
+			int numWriteThreads, int maxQueuedMessages) {
+		if ((numReadThreads > 0 || numWriteThreads > 0)
+				&& (numReadThreads <= 0 || numWriteThreads <= 0 || maxQueuedMessages <= 0)) {
+			throw new IllegalArgumentException("The asynchronous mode needs threads and a queue of each kind");
+		}
+
+		this.bookStore = bookStore;
+		this.stockManager = stockManager;
+		this.numReadThreads = numReadThreads;
+		this.numWriteThreads = numWriteThreads;
+		this.maxQueuedMessages = maxQueuedMessages;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jetty.server.handler.AbstractHandler#doStart()
+	 */
+	@Override
+	protected void doStart() throws Exception {
+		if (numReadThreads > 0) {
+			readExecutor = newExecutor("bookstore-read", numReadThreads);
+			writeExecutor = newExecutor("bookstore-write", numWriteThreads);
 		}
+
+		super.doStart();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.jetty.server.handler.AbstractHandler#doStop()
+	 */
+	@Override
+	protected void doStop() throws Exception {
+		super.doStop();
+
+		if (readExecutor != null) {
+			readExecutor.shutdown();
+			writeExecutor.shutdown();
+			readExecutor.awaitTermination(BookStoreConstants.EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			writeExecutor.awaitTermination(BookStoreConstants.EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			readExecutor = null;
+			writeExecutor = null;
+		}
+	}
+
+	/**
+	 * Creates an executor with a fixed number of daemon threads and a bounded
+	 * queue, which rejects the messages arriving when the queue is full.
+	 *
+	 * @param name
+	 *            the prefix of the names of the threads
+	 * @param numThreads
+	 *            the number of threads
+	 * @return the executor
+	 */
+	private ThreadPoolExecutor newExecutor(String name, int numThreads) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		return new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(maxQueuedMessages), threadFactory, new ThreadPoolExecutor.AbortPolicy());
 	}
 
 	/*
@@ -88,52 +210,21 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 		// The RequestURI before the switch.
 		if (messageTag == null) {
 			System.err.println("No message tag.");
+		} else if (readExecutor != null) {
+			dispatch(messageTag, request, response);
+		} else if (messageTag == BookStoreMessageTag.STREAMBOOKS) {
+			streamBooks(response);
 		} else {
-			switch (messageTag) {
-			case REMOVEBOOKS:
-				removeBooks(request, response);
-				break;
-
-			case REMOVEALLBOOKS:
-				removeAllBooks(response);
-				break;
-
-			case ADDBOOKS:
-				addBooks(request, response);
-				break;
-
-			case ADDCOPIES:
-				addCopies(request, response);
-				break;
-
-			case LISTBOOKS:
-				listBooks(response);
-				break;
-
-			case UPDATEEDITORPICKS:
-				updateEditorPicks(request, response);
-				break;
-
-			case BUYBOOKS:
-				buyBooks(request, response);
-				break;
-
-			case GETBOOKS:
-				getBooks(request, response);
-				break;
-
-			case GETEDITORPICKS:
-				getEditorPicks(request, response);
-				break;
-
-			case GETSTOCKBOOKSBYISBN:
-				getStockBooksByISBN(request, response);
-				break;
-
-			default:
-				System.err.println("Unsupported message tag.");
-				break;
+			BookStoreResponse bookStoreResponse;
+
+			try {
+				bookStoreResponse = perform(messageTag, getInputValue(messageTag, request));
+			} catch (BookStoreException ex) {
+				bookStoreResponse = new BookStoreResponse();
+				bookStoreResponse.setException(ex);
 			}
+
+			writeResponse(response, bookStoreResponse);
 		}
 
 		// Mark the request as handled so that the HTTP response can be sent
@@ -141,8 +232,14 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	}
 
 	/**
-	 * Gets the stock books by ISBN.
+	 * Reads a message on the thread of the server, and hands it to the read
+	 * or the write executor, which calls the store, writes the response and
+	 * completes the request. The server is given its thread back meanwhile.
+	 * If the queue of the executor is full, the message is turned away with
+	 * 503 Service Unavailable.
 	 *
+	 * @param messageTag
+	 *            the message tag
 	 * @param request
 	 *            the request
 	 * @param response
@@ -150,259 +247,378 @@ public class BookStoreHTTPMessageHandler extends AbstractHandler {
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	@SuppressWarnings("unchecked")
-	private void getStockBooksByISBN(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+	private void dispatch(BookStoreMessageTag messageTag, HttpServletRequest request, HttpServletResponse response)
+			throws IOException {
+		Object inputValue;
 
 		try {
-			bookStoreResponse.setList(myBookStore.getBooksByISBN(isbnSet));
+			inputValue = getInputValue(messageTag, request);
 		} catch (BookStoreException ex) {
+			BookStoreResponse bookStoreResponse = new BookStoreResponse();
 			bookStoreResponse.setException(ex);
+			writeResponse(response, bookStoreResponse);
+			return;
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
-	}
-
-	/**
-	 * Gets the editor picks.
-	 *
-	 * @param request
-	 *            the request
-	 * @param response
-	 *            the response
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
-	 */
-	private void getEditorPicks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		String numBooksString = URLDecoder.decode(request.getParameter(BookStoreConstants.BOOK_NUM_PARAM), StandardCharsets.UTF_8);
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+		// The request is completed by the executor, whenever the store
+		// replies; a message is only kept waiting as long as the queue allows.
+		AsyncContext asyncContext = request.startAsync();
+		asyncContext.setTimeout(0);
 
 		try {
-			int numBooks = BookStoreUtility.convertStringToInt(numBooksString);
-			bookStoreResponse.setList(myBookStore.getEditorPicks(numBooks));
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
+			(isUpdate(messageTag) ? writeExecutor : readExecutor).execute(() -> {
+				try {
+					if (messageTag == BookStoreMessageTag.STREAMBOOKS) {
+						streamBooks(response);
+					} else {
+						BookStoreResponse bookStoreResponse;
+
+						try {
+							bookStoreResponse = perform(messageTag, inputValue);
+						} catch (BookStoreException ex) {
+							bookStoreResponse = new BookStoreResponse();
+							bookStoreResponse.setException(ex);
+						}
+
+						writeResponse(response, bookStoreResponse);
+					}
+				} catch (IOException | RuntimeException ex) {
+					// As on the thread of the server, the client gets an
+					// error rather than a reply it cannot decode.
+					if (!response.isCommitted()) {
+						response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					}
+				} finally {
+					asyncContext.complete();
+				}
+			});
+		} catch (RejectedExecutionException ex) {
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			asyncContext.complete();
 		}
-
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
 	}
 
 	/**
-	 * Gets the books.
+	 * Checks whether a message may update the store, so that it is handed to
+	 * the write executor in the asynchronous mode.
 	 *
-	 * @param request
-	 *            the request
-	 * @param response
-	 *            the response
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
+	 * @param messageTag
+	 *            the message tag
+	 * @return true, if the message may update the store
 	 */
-	@SuppressWarnings("unchecked")
-	private void getBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<Integer> isbnSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
-
-		try {
-			bookStoreResponse.setList(myBookStore.getBooks(isbnSet));
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
+	private static boolean isUpdate(BookStoreMessageTag messageTag) {
+		switch (messageTag) {
+		case ADDBOOKS:
+		case ADDCOPIES:
+		case BUYBOOKS:
+		case UPDATEEDITORPICKS:
+		case REMOVEALLBOOKS:
+		case REMOVEBOOKS:
+		case RATEBOOKS:
+		case BATCH:
+			return true;
+
+		default:
+			return false;
 		}
-
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
 	}
 
 	/**
-	 * Buys books.
+	 * Writes a book store response as the content of the HTTP response.
 	 *
-	 * @param request
-	 *            the request
 	 * @param response
 	 *            the response
+	 * @param bookStoreResponse
+	 *            the book store response
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	@SuppressWarnings("unchecked")
-	private void buyBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookCopy> bookCopiesToBuy = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
-
-		try {
-			myBookStore.buyBooks(bookCopiesToBuy);
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
-		}
-
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+	private static void writeResponse(HttpServletResponse response, BookStoreResponse bookStoreResponse)
+			throws IOException {
+		// Write the bytes straight from the buffer of the serializer, once
+		// their length is known, rather than from a copy.
+		ByteBuffer serializedResponseContent = serializer.get().serializeToBuffer(bookStoreResponse);
+		response.setContentLength(serializedResponseContent.remaining());
+		response.getOutputStream().write(serializedResponseContent.array(),
+				serializedResponseContent.arrayOffset() + serializedResponseContent.position(),
+				serializedResponseContent.remaining());
 	}
 
 	/**
-	 * Updates editor picks.
+	 * Writes the books of the stock manager to the response in chunks of
+	 * {@link BookStoreConstants#STREAM_CHUNK_SIZE} books. Each chunk is read
+	 * from the store as a page of {@link StockManager#getBooks(int, int)}
+	 * following the last ISBN of the previous one, and written to the response
+	 * stream as soon as it is filled, so that neither the list of all the books
+	 * nor their serialization is ever held at once. As the length of the
+	 * response is not known up front, it is sent with chunked transfer
+	 * encoding.
+	 *
+	 * Each chunk is a {@link BookStoreResponse} listing its books, preceded by
+	 * its length as an int. The last one carries no list, so that the client
+	 * can tell the end of the books from a broken connection, or carries the
+	 * exception if the books cannot be read.
 	 *
-	 * @param request
-	 *            the request
 	 * @param response
 	 *            the response
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	@SuppressWarnings("unchecked")
-	private void updateEditorPicks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<BookEditorPick> mapEditorPicksValues = (Set<BookEditorPick>) serializer.get()
-				.deserialize(serializedRequestContent);
+	private void streamBooks(HttpServletResponse response) throws IOException {
+		DataOutputStream outStream = new DataOutputStream(response.getOutputStream());
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+		List<StockBook> chunk;
+		int cursor = 0;
 
 		try {
-			myBookStore.updateEditorPicks(mapEditorPicksValues);
+			do {
+				chunk = stockManager.getBooks(cursor, BookStoreConstants.STREAM_CHUNK_SIZE);
+
+				if (chunk.isEmpty()) {
+					break;
+				}
+
+				bookStoreResponse.setList(chunk);
+				writeChunk(outStream, bookStoreResponse);
+				cursor = chunk.get(chunk.size() - 1).getISBN();
+			} while (chunk.size() == BookStoreConstants.STREAM_CHUNK_SIZE);
 		} catch (BookStoreException ex) {
 			bookStoreResponse.setException(ex);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		bookStoreResponse.setList(null);
+		writeChunk(outStream, bookStoreResponse);
 	}
 
 	/**
-	 * Lists the books.
+	 * Writes a chunk of a stream books reply: the length of the serialized
+	 * book store response, and its bytes.
 	 *
-	 * @param response
-	 *            the response
+	 * @param outStream
+	 *            the stream of the response
+	 * @param bookStoreResponse
+	 *            the book store response
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	private void listBooks(HttpServletResponse response) throws IOException {
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
-		bookStoreResponse.setList(myBookStore.getBooks());
-
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+	private static void writeChunk(DataOutputStream outStream, BookStoreResponse bookStoreResponse)
+			throws IOException {
+		ByteBuffer serializedChunk = serializer.get().serializeToBuffer(bookStoreResponse);
+		outStream.writeInt(serializedChunk.remaining());
+		outStream.write(serializedChunk.array(), serializedChunk.arrayOffset() + serializedChunk.position(),
+				serializedChunk.remaining());
 	}
 
 	/**
-	 * Adds the copies.
+	 * Gets the value carried by a message: the deserialized content of a POST
+	 * message, the number of books of a GETEDITORPICKS, GETTOPRATEDBOOKS or
+	 * GETBOOKSWITHLEASTCOPIES message, or the page of a LISTBOOKS message which
+	 * gives a number of books.
 	 *
+	 * @param messageTag
+	 *            the message tag
 	 * @param request
 	 *            the request
-	 * @param response
-	 *            the response
+	 * @return the input value, or null if the message carries none
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
+	 * @throws BookStoreException
+	 *             the book store exception
 	 */
-	@SuppressWarnings("unchecked")
-	private void addCopies(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
+	private Object getInputValue(BookStoreMessageTag messageTag, HttpServletRequest request)
+			throws IOException, BookStoreException {
+		switch (messageTag) {
+		case REMOVEBOOKS:
+		case ADDBOOKS:
+		case ADDCOPIES:
+		case UPDATEEDITORPICKS:
+		case BUYBOOKS:
+		case GETBOOKS:
+		case GETSTOCKBOOKSBYISBN:
+		case RATEBOOKS:
+		case BATCH:
+			return serializer.get().deserialize(request.getInputStream());
+
+		case GETEDITORPICKS:
+		case GETTOPRATEDBOOKS:
+		case GETBOOKSWITHLEASTCOPIES:
+			String numBooksString = URLDecoder.decode(request.getParameter(BookStoreConstants.BOOK_NUM_PARAM),
+					StandardCharsets.UTF_8);
+			return BookStoreUtility.convertStringToInt(numBooksString);
+
+		case LISTBOOKS:
+			String limitString = request.getParameter(BookStoreConstants.BOOK_NUM_PARAM);
+
+			if (limitString == null) {
+				// The whole catalogue.
+				return null;
+			}
 
-		Set<BookCopy> listBookCopies = (Set<BookCopy>) serializer.get().deserialize(serializedRequestContent);
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+			String cursorString = request.getParameter(BookStoreConstants.BOOK_CURSOR_PARAM);
+			int cursor = cursorString == null ? 0
+					: BookStoreUtility.convertStringToInt(URLDecoder.decode(cursorString, StandardCharsets.UTF_8));
+			return new BookPage(cursor,
+					BookStoreUtility.convertStringToInt(URLDecoder.decode(limitString, StandardCharsets.UTF_8)));
 
-		try {
-			myBookStore.addCopies(listBookCopies);
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
+		default:
+			return null;
 		}
-
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
 	}
 
 	/**
-	 * Adds the books.
+	 * Performs the operation of a message on the book store or the stock
+	 * manager.
 	 *
-	 * @param request
-	 *            the request
-	 * @param response
-	 *            the response
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
+	 * @param messageTag
+	 *            the message tag
+	 * @param inputValue
+	 *            the value carried by the message
+	 * @return the book store response, listing the books read if any
+	 * @throws BookStoreException
+	 *             the book store exception
 	 */
 	@SuppressWarnings("unchecked")
-	private void addBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
-
-		Set<StockBook> newBooks = (Set<StockBook>) serializer.get().deserialize(serializedRequestContent);
+	private BookStoreResponse perform(BookStoreMessageTag messageTag, Object inputValue) throws BookStoreException {
 		BookStoreResponse bookStoreResponse = new BookStoreResponse();
 
-		try {
-			myBookStore.addBooks(newBooks);
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
-		}
+		switch (messageTag) {
+		case REMOVEBOOKS:
+			stockManager.removeBooks((Set<Integer>) inputValue);
+			break;
+
+		case REMOVEALLBOOKS:
+			stockManager.removeAllBooks();
+			break;
+
+		case ADDBOOKS:
+			stockManager.addBooks((Set<StockBook>) inputValue);
+			break;
+
+		case ADDCOPIES:
+			stockManager.addCopies((Set<BookCopy>) inputValue);
+			break;
+
+		case LISTBOOKS:
+			if (inputValue == null) {
+				bookStoreResponse.setList(stockManager.getBooks());
+			} else if (inputValue instanceof BookPage) {
+				BookPage page = (BookPage) inputValue;
+				bookStoreResponse.setList(stockManager.getBooks(page.getCursor(), page.getLimit()));
+			} else {
+				// Only the operations of a batch can carry another value.
+				throw new BookStoreException(BookStoreConstants.INVALID_OPERATION);
+			}
+			break;
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
-	}
+		case STREAMBOOKS:
+			// Only a message of its own has its books streamed; in a batch,
+			// they are listed like those of a list books message.
+			bookStoreResponse.setList(stockManager.getBooks());
+			break;
 
-	/**
-	 * Removes all books.
-	 *
-	 * @param response
-	 *            the response
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
-	 */
-	private void removeAllBooks(HttpServletResponse response) throws IOException {
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+		case GETBOOKSWITHLEASTCOPIES:
+			bookStoreResponse.setList(stockManager.getBooksWithLeastCopies(getNumBooks(inputValue)));
+			break;
 
-		try {
-			myBookStore.removeAllBooks();
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
+		case UPDATEEDITORPICKS:
+			stockManager.updateEditorPicks((Set<BookEditorPick>) inputValue);
+			break;
+
+		case BUYBOOKS:
+			bookStore.buyBooks((Set<BookCopy>) inputValue);
+			break;
+
+		case GETBOOKS:
+			bookStoreResponse.setList(bookStore.getBooks((Set<Integer>) inputValue));
+			break;
+
+		case GETEDITORPICKS:
+			bookStoreResponse.setList(bookStore.getEditorPicks(getNumBooks(inputValue)));
+			break;
+
+		case GETSTOCKBOOKSBYISBN:
+			bookStoreResponse.setList(stockManager.getBooksByISBN((Set<Integer>) inputValue));
+			break;
+
+		case RATEBOOKS:
+			bookStore.rateBooks((Set<BookRating>) inputValue);
+			break;
+
+		case GETTOPRATEDBOOKS:
+			bookStoreResponse.setList(bookStore.getTopRatedBooks(getNumBooks(inputValue)));
+			break;
+
+		case GETBOOKSINDEMAND:
+			bookStoreResponse.setList(stockManager.getBooksInDemand());
+			break;
+
+		case BATCH:
+			bookStoreResponse.setList(performBatch((List<BookStoreOperation>) inputValue));
+			break;
+
+		default:
+			System.err.println("Unsupported message tag.");
+			break;
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		return bookStoreResponse;
 	}
 
 	/**
-	 * Removes the books.
+	 * Performs the operations of a batch in order. An operation which fails
+	 * does not stop the ones after it, and its response carries its exception.
 	 *
-	 * @param request
-	 *            the request
-	 * @param response
-	 *            the response
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
+	 * @param operations
+	 *            the operations
+	 * @return the book store responses of the operations, in order
+	 * @throws BookStoreException
+	 *             the book store exception
 	 */
-	@SuppressWarnings("unchecked")
-	private void removeBooks(HttpServletRequest request, HttpServletResponse response) throws IOException {
-		byte[] serializedRequestContent = getSerializedRequestContent(request);
+	private List<BookStoreResponse> performBatch(List<BookStoreOperation> operations) throws BookStoreException {
+		if (operations == null) {
+			throw new BookStoreException(BookStoreConstants.NULL_INPUT);
+		}
 
-		Set<Integer> bookSet = (Set<Integer>) serializer.get().deserialize(serializedRequestContent);
-		BookStoreResponse bookStoreResponse = new BookStoreResponse();
+		List<BookStoreResponse> bookStoreResponses = new ArrayList<>(operations.size());
 
-		try {
-			myBookStore.removeBooks(bookSet);
-		} catch (BookStoreException ex) {
-			bookStoreResponse.setException(ex);
+		for (BookStoreOperation operation : operations) {
+			BookStoreResponse bookStoreResponse;
+
+			try {
+				if (operation == null || operation.getMessageTag() == null
+						|| operation.getMessageTag() == BookStoreMessageTag.BATCH) {
+					throw new BookStoreException(BookStoreConstants.INVALID_OPERATION);
+				}
+
+				bookStoreResponse = perform(operation.getMessageTag(), operation.getInputValue());
+			} catch (BookStoreException | ClassCastException ex) {
+				bookStoreResponse = new BookStoreResponse();
+				bookStoreResponse.setException(ex instanceof BookStoreException ? (BookStoreException) ex
+						: new BookStoreException(BookStoreConstants.INVALID_OPERATION, ex));
+			}
+
+			bookStoreResponses.add(bookStoreResponse);
 		}
 
-		byte[] serializedResponseContent = serializer.get().serialize(bookStoreResponse);
-		response.getOutputStream().write(serializedResponseContent);
+		return bookStoreResponses;
 	}
 
 	/**
-	 * Gets the serialized request content.
+	 * Gets the number of books carried by a GETEDITORPICKS, GETTOPRATEDBOOKS or
+	 * GETBOOKSWITHLEASTCOPIES message.
 	 *
-	 * @param request the request
-	 * @return the serialized request content
-	 * @throws IOException Signals that an I/O exception has occurred.
+	 * @param inputValue
+	 *            the value carried by the message
+	 * @return the number of books
+	 * @throws BookStoreException
+	 *             the book store exception
 	 */
-	private byte[] getSerializedRequestContent(HttpServletRequest request) throws IOException {
-		Input in = new Input(request.getInputStream());
-		byte[] serializedRequestContent = in.readBytes(request.getContentLength());
-		in.close();
-		return serializedRequestContent;
+	private static int getNumBooks(Object inputValue) throws BookStoreException {
+		if (!(inputValue instanceof Integer)) {
+			// Only the operations of a batch can carry another value.
+			throw new BookStoreException(BookStoreConstants.INVALID_OPERATION);
+		}
+
+		return (Integer) inputValue;
 	}
 }
@@ -1,8 +1,18 @@
 package com.acertainbookstore.server;
 
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 import com.acertainbookstore.business.CertainBookStore;
+import com.acertainbookstore.business.ColumnarCertainBookStore;
+import com.acertainbookstore.business.MultiVersionCertainBookStore;
+import com.acertainbookstore.interfaces.BookStore;
+import com.acertainbookstore.interfaces.StockManager;
+import com.acertainbookstore.utils.BookStoreException;
 import com.acertainbookstore.utils.BookStoreConstants;
 
 /**
@@ -16,6 +26,25 @@ public class BookStoreHTTPServer {
 	private static final int MIN_THREADPOOL_SIZE = 10;
 	private static final int MAX_THREADPOOL_SIZE = 100;
 
+	/** The constant, defining whether the multi-version store is used
+	 *  instead of the single lock one */
+	private static final boolean MULTI_VERSION = false;
+
+	/** The constant, defining the seconds between two checkpoints of a
+	 *  durable store */
+	private static final int DEFAULT_CHECKPOINT_INTERVAL = 60;
+
+	/** The constant, defining whether the store is called on executors
+	 *  of its own instead of the threads of the server */
+	private static final boolean ASYNC = false;
+
+	/** The constants, defining the default sizes of the executors of the
+	 *  asynchronous mode: readers scale with the cores, while writers mostly
+	 *  wait for the lock of the store or for the log */
+	private static final int DEFAULT_READ_THREADS = 2 * Runtime.getRuntime().availableProcessors();
+	private static final int DEFAULT_WRITE_THREADS = 8;
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+
 	/**
 	 * Prevents the instantiation of a new {@link BookStoreHTTPServer}.
 	 */
@@ -30,10 +59,48 @@ public class BookStoreHTTPServer {
 	 *            the arguments
 	 */
 	public static void main(String[] args) {
-		CertainBookStore bookStore = new CertainBookStore();
 		int listenOnPort = DEFAULT_PORT;
 
-		BookStoreHTTPMessageHandler handler = new BookStoreHTTPMessageHandler(bookStore);
+		BookStoreHTTPMessageHandler handler = null;
+
+		String multiVersionString = System.getProperty(BookStoreConstants.PROPERTY_KEY_MULTI_VERSION);
+		boolean multiVersion = (multiVersionString != null) ? Boolean.parseBoolean(multiVersionString) : MULTI_VERSION;
+
+		String columnarString = System.getProperty(BookStoreConstants.PROPERTY_KEY_COLUMNAR);
+		boolean columnar = (columnarString != null) && Boolean.parseBoolean(columnarString);
+
+		String dataDirectoryString = System.getProperty(BookStoreConstants.PROPERTY_KEY_DATA_DIRECTORY);
+
+		if (multiVersion) {
+			MultiVersionCertainBookStore bookStore = new MultiVersionCertainBookStore();
+			handler = newMessageHandler(bookStore, bookStore);
+		} else if (columnar) {
+			if (dataDirectoryString == null) {
+				System.err.println("The columnar store needs a data directory");
+				return;
+			}
+
+			try {
+				ColumnarCertainBookStore bookStore = new ColumnarCertainBookStore(new File(dataDirectoryString));
+				handler = newMessageHandler(bookStore, bookStore);
+			} catch (BookStoreException ex) {
+				System.err.println("Cannot map the store: " + ex.getMessage());
+				return;
+			}
+		} else if (dataDirectoryString != null) {
+			try {
+				CertainBookStore bookStore = new CertainBookStore(new File(dataDirectoryString));
+				handler = newMessageHandler(bookStore, bookStore);
+				scheduleCheckpoints(bookStore);
+			} catch (BookStoreException ex) {
+				System.err.println("Cannot recover the store: " + ex.getMessage());
+				return;
+			}
+		} else {
+			CertainBookStore bookStore = new CertainBookStore();
+			handler = newMessageHandler(bookStore, bookStore);
+		}
+
 		String serverPortString = System.getProperty(BookStoreConstants.PROPERTY_KEY_SERVER_PORT);
 
 		if (serverPortString != null) {
@@ -47,4 +114,86 @@ public class BookStoreHTTPServer {
 		QueuedThreadPool threadpool = new QueuedThreadPool(MAX_THREADPOOL_SIZE, MIN_THREADPOOL_SIZE);
 		BookStoreHTTPServerUtility.createServer(listenOnPort, handler, threadpool);
 	}
+
+	/**
+	 * Creates the message handler of the store, in the asynchronous mode if
+	 * the async property is set.
+	 *
+	 * @param bookStore
+	 *            the book store
+	 * @param stockManager
+	 *            the stock manager
+	 * @return the message handler
+	 */
+	private static BookStoreHTTPMessageHandler newMessageHandler(BookStore bookStore, StockManager stockManager) {
+		String asyncString = System.getProperty(BookStoreConstants.PROPERTY_KEY_ASYNC);
+		boolean async = (asyncString != null) ? Boolean.parseBoolean(asyncString) : ASYNC;
+
+		if (!async) {
+			return new BookStoreHTTPMessageHandler(bookStore, stockManager);
+		}
+
+		int numReadThreads = getIntProperty(BookStoreConstants.PROPERTY_KEY_READ_THREADS, DEFAULT_READ_THREADS);
+		int numWriteThreads = getIntProperty(BookStoreConstants.PROPERTY_KEY_WRITE_THREADS, DEFAULT_WRITE_THREADS);
+		int queueSize = getIntProperty(BookStoreConstants.PROPERTY_KEY_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+		return new BookStoreHTTPMessageHandler(bookStore, stockManager, numReadThreads, numWriteThreads, queueSize);
+	}
+
+	/**
+	 * Gets a positive integer property, or its default value if it is not
+	 * set or not a positive integer.
+	 *
+	 * @param key
+	 *            the key of the property
+	 * @param defaultValue
+	 *            the default value
+	 * @return the value
+	 */
+	private static int getIntProperty(String key, int defaultValue) {
+		String valueString = System.getProperty(key);
+
+		if (valueString != null) {
+			try {
+				int value = Integer.parseInt(valueString);
+
+				if (value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException ex) {
+				// Fall back to the default value below.
+			}
+
+			System.err.println("Unsupported " + key + ", using " + defaultValue);
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * Checkpoints a durable store periodically, so that a restart only replays
+	 * the log written since the last checkpoint.
+	 *
+	 * @param bookStore
+	 *            the durable store
+	 */
+	private static void scheduleCheckpoints(CertainBookStore bookStore) {
+		// An interval which is not a positive number of seconds falls back to
+		// the default one, rather than failing to schedule.
+		int checkpointInterval = getIntProperty(BookStoreConstants.PROPERTY_KEY_CHECKPOINT_INTERVAL,
+				DEFAULT_CHECKPOINT_INTERVAL);
+
+		ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "checkpointer");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		checkpointer.scheduleWithFixedDelay(() -> {
+			try {
+				bookStore.checkpoint();
+			} catch (BookStoreException ex) {
+				System.err.println("Checkpoint failed: " + ex.getMessage());
+			}
+		}, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+	}
 }
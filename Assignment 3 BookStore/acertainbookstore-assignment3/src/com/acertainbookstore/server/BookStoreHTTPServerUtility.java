@@ -31,6 +31,31 @@ public class BookStoreHTTPServerUtility {
 	 * @return true, if successful
 	 */
 	public static void createServer(int port, AbstractHandler handler, QueuedThreadPool threadpool) {
+		try {
+			Server server = startServer(port, handler, threadpool);
+			server.join();
+		} catch (Exception ex) {
+			System.err.println(ex.getStackTrace());
+		}
+
+	}
+
+	/**
+	 * Creates and starts a server on the port without blocking the calling
+	 * thread, which stops it when done with it.
+	 *
+	 * @param port
+	 *            the port, or 0 to listen on any free port
+	 * @param handler
+	 *            the handler
+	 * @param threadpool
+	 *            the thread pool, or null for the default one
+	 * @return the started server
+	 * @throws Exception
+	 *             if the server cannot be started
+	 */
+	public static Server startServer(int port, AbstractHandler handler, QueuedThreadPool threadpool)
+			throws Exception {
 		Server server = null;
 		if (threadpool != null) {
 			server = new Server(threadpool);
@@ -45,13 +70,19 @@ public class BookStoreHTTPServerUtility {
 			server.setHandler(handler);
 		}
 
-		try {
-			server.start();
-			server.join();
-		} catch (Exception ex) {
-			System.err.println(ex.getStackTrace());
-		}
+		server.start();
+		return server;
+	}
 
+	/**
+	 * Gets the port on which a started server listens.
+	 *
+	 * @param server
+	 *            the server
+	 * @return the port
+	 */
+	public static int getLocalPort(Server server) {
+		return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
 	}
 
 	/**
@@ -0,0 +1,47 @@
+package com.acertainbookstore.utils;
+
+/**
+ * {@link BookPage} is the data structure that encapsulates the page of the
+ * catalogue carried by a {@link BookStoreMessageTag#LISTBOOKS} message: at
+ * most limit books, in ascending order of ISBN, whose ISBNs are greater than
+ * the cursor.
+ */
+public final class BookPage {
+
+	/** The cursor, i.e. the ISBN the page starts after. */
+	private final int cursor;
+
+	/** The limit, i.e. the maximum number of books of the page. */
+	private final int limit;
+
+	/**
+	 * Instantiates a new {@link BookPage}.
+	 *
+	 * @param cursor
+	 *            the ISBN the page starts after
+	 * @param limit
+	 *            the maximum number of books of the page
+	 */
+	public BookPage(int cursor, int limit) {
+		this.cursor = cursor;
+		this.limit = limit;
+	}
+
+	/**
+	 * Gets the cursor.
+	 *
+	 * @return the ISBN the page starts after
+	 */
+	public int getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Gets the limit.
+	 *
+	 * @return the maximum number of books of the page
+	 */
+	public int getLimit() {
+		return limit;
+	}
+}
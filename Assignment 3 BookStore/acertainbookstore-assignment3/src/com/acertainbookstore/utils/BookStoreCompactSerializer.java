@@ -0,0 +1,953 @@
+package com.acertainbookstore.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.acertainbookstore.business.Book;
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.ImmutableBook;
+import com.acertainbookstore.business.ImmutableStockBook;
+import com.acertainbookstore.business.StockBook;
+import com.acertainbookstore.interfaces.BookStoreSerializer;
+
+/**
+ * {@link BookStoreCompactSerializer} serializes the messages of the bookstore
+ * to arrays of bytes with an encoder written by hand for each type sent
+ * between the clients and the server, rather than by reflection.
+ *
+ * Every value starts with a byte giving its type. A set or a list then gives
+ * its size and the kind of its elements, so that the elements are written
+ * without a type each when they all have the same one: the ISBNs of a set as
+ * the differences between them in ascending order, copies, ratings and
+ * editor picks as pairs of an ISBN and a number, and books field by field,
+ * with their strings as UTF-8 prefixed by their length. Integers and lengths
+ * are written as variable-length integers, so that small numbers take a
+ * single byte. Any other collection is written value by value.
+ *
+ * A serializer is not thread-safe, and keeps its buffers for reuse, so each
+ * thread should have its own, e.g. from {@link BookStoreUtility#SERIALIZERS}.
+ *
+ * @see BookStoreSerializer
+ */
+public final class BookStoreCompactSerializer implements BookStoreSerializer {
+
+	/** The size of the reusable buffers. */
+	private static final int BUFFER_SIZE = 4096;
+
+	/** The size above which the reusable buffers are not kept. */
+	private static final int MAX_KEPT_BUFFER_SIZE = 1 << 20;
+
+	// The types of the values
+
+	/** The Constant TYPE_NULL. */
+	private static final int TYPE_NULL = 0;
+
+	/** The Constant TYPE_INTEGER. */
+	private static final int TYPE_INTEGER = 1;
+
+	/** The Constant TYPE_SET. */
+	private static final int TYPE_SET = 2;
+
+	/** The Constant TYPE_LIST. */
+	private static final int TYPE_LIST = 3;
+
+	/** The Constant TYPE_RESPONSE. */
+	private static final int TYPE_RESPONSE = 4;
+
+	/** The Constant TYPE_OPERATION. */
+	private static final int TYPE_OPERATION = 5;
+
+	/** The Constant TYPE_EXCEPTION. */
+	private static final int TYPE_EXCEPTION = 6;
+
+	/** The Constant TYPE_BOOK. */
+	private static final int TYPE_BOOK = 7;
+
+	/** The Constant TYPE_STOCK_BOOK. */
+	private static final int TYPE_STOCK_BOOK = 8;
+
+	/** The Constant TYPE_BOOK_COPY. */
+	private static final int TYPE_BOOK_COPY = 9;
+
+	/** The Constant TYPE_BOOK_RATING. */
+	private static final int TYPE_BOOK_RATING = 10;
+
+	/** The Constant TYPE_BOOK_EDITOR_PICK. */
+	private static final int TYPE_BOOK_EDITOR_PICK = 11;
+
+	/** The Constant TYPE_STRING. */
+	private static final int TYPE_STRING = 12;
+
+	/** The Constant TYPE_BOOK_PAGE. */
+	private static final int TYPE_BOOK_PAGE = 13;
+
+	// The kinds of the elements of a collection
+
+	/** The Constant ELEMENTS_VALUES, for elements written with their type. */
+	private static final int ELEMENTS_VALUES = 0;
+
+	/** The Constant ELEMENTS_ISBNS, for the ISBNs of a set. */
+	private static final int ELEMENTS_ISBNS = 1;
+
+	/** The Constant ELEMENTS_BOOKS. */
+	private static final int ELEMENTS_BOOKS = 2;
+
+	/** The Constant ELEMENTS_STOCK_BOOKS. */
+	private static final int ELEMENTS_STOCK_BOOKS = 3;
+
+	/** The Constant ELEMENTS_BOOK_COPIES. */
+	private static final int ELEMENTS_BOOK_COPIES = 4;
+
+	/** The Constant ELEMENTS_BOOK_RATINGS. */
+	private static final int ELEMENTS_BOOK_RATINGS = 5;
+
+	/** The Constant ELEMENTS_BOOK_EDITOR_PICKS. */
+	private static final int ELEMENTS_BOOK_EDITOR_PICKS = 6;
+
+	/** The message tags, by ordinal. */
+	private static final BookStoreMessageTag[] MESSAGE_TAGS = BookStoreMessageTag.values();
+
+	/** The reusable output buffer, which grows to fit what it serializes. */
+	private byte[] output = new byte[BUFFER_SIZE];
+
+	/** The position in the output buffer. */
+	private int outputPosition;
+
+	/** The reusable input buffer, which grows to fit what it reads. */
+	private byte[] inputBuffer = new byte[BUFFER_SIZE];
+
+	/** The buffer being deserialized. */
+	private byte[] input;
+
+	/** The position in the buffer being deserialized. */
+	private int inputPosition;
+
+	/** The end of the bytes of the buffer being deserialized. */
+	private int inputLimit;
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serialize(java.lang.
+	 * Object)
+	 */
+	@Override
+	public byte[] serialize(Object object) throws IOException {
+		ByteBuffer buffer = serializeToBuffer(object);
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(byte[])
+	 */
+	@Override
+	public Object deserialize(byte[] bytes) throws IOException {
+		return deserialize(bytes, bytes.length);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serializeToBuffer(
+	 * java.lang.Object)
+	 */
+	@Override
+	public ByteBuffer serializeToBuffer(Object object) throws IOException {
+		// Let go of a buffer grown by an unusually large object, e.g. the
+		// books of a large catalogue, once its bytes have been used.
+		if (output.length > MAX_KEPT_BUFFER_SIZE) {
+			output = new byte[BUFFER_SIZE];
+		}
+
+		outputPosition = 0;
+		writeValue(object);
+		return ByteBuffer.wrap(output, 0, outputPosition);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.io.
+	 * InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream inStream) throws IOException {
+		if (inputBuffer.length > MAX_KEPT_BUFFER_SIZE) {
+			inputBuffer = new byte[BUFFER_SIZE];
+		}
+
+		int length = 0;
+		int read;
+
+		while ((read = inStream.read(inputBuffer, length, inputBuffer.length - length)) != -1) {
+			length += read;
+
+			if (length == inputBuffer.length) {
+				inputBuffer = Arrays.copyOf(inputBuffer, inputBuffer.length * 2);
+			}
+		}
+
+		return deserialize(inputBuffer, length);
+	}
+
+	/**
+	 * De-serializes the first bytes of a buffer into an object.
+	 *
+	 * @param bytes
+	 *            the buffer
+	 * @param length
+	 *            the number of bytes
+	 * @return the object
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private Object deserialize(byte[] bytes, int length) throws IOException {
+		input = bytes;
+		inputPosition = 0;
+		inputLimit = length;
+
+		try {
+			Object object = readValue();
+
+			if (inputPosition != inputLimit) {
+				throw new IOException("Unexpected bytes after the message");
+			}
+
+			return object;
+		} finally {
+			input = null;
+		}
+	}
+
+	/**
+	 * Writes a value with its type.
+	 *
+	 * @param value
+	 *            the value
+	 * @throws IOException
+	 *             Signals that the value has no encoding.
+	 */
+	private void writeValue(Object value) throws IOException {
+		if (value == null) {
+			writeByte(TYPE_NULL);
+		} else if (value instanceof Integer) {
+			writeByte(TYPE_INTEGER);
+			writeSignedVarInt((Integer) value);
+		} else if (value instanceof String) {
+			writeByte(TYPE_STRING);
+			writeString((String) value);
+		} else if (value instanceof Set) {
+			writeByte(TYPE_SET);
+			writeCollection((Set<?>) value, true);
+		} else if (value instanceof List) {
+			writeByte(TYPE_LIST);
+			writeCollection((List<?>) value, false);
+		} else if (value instanceof BookStoreResponse) {
+			BookStoreResponse response = (BookStoreResponse) value;
+			writeByte(TYPE_RESPONSE);
+			writeValue(response.getException());
+			writeValue(response.getList());
+		} else if (value instanceof BookStoreOperation) {
+			BookStoreOperation operation = (BookStoreOperation) value;
+			writeByte(TYPE_OPERATION);
+			writeVarInt(operation.getMessageTag() == null ? 0 : operation.getMessageTag().ordinal() + 1);
+			writeValue(operation.getInputValue());
+		} else if (value instanceof BookStoreException) {
+			// The stack trace and the cause are those of the sender, which the
+			// receiver has no use for, as with Kryo.
+			writeByte(TYPE_EXCEPTION);
+			writeString(((BookStoreException) value).getMessage());
+		} else if (value instanceof StockBook) {
+			writeByte(TYPE_STOCK_BOOK);
+			writeStockBook((StockBook) value);
+		} else if (value instanceof Book) {
+			writeByte(TYPE_BOOK);
+			writeBook((Book) value);
+		} else if (value instanceof BookCopy) {
+			writeByte(TYPE_BOOK_COPY);
+			writeBookCopy((BookCopy) value);
+		} else if (value instanceof BookRating) {
+			writeByte(TYPE_BOOK_RATING);
+			writeBookRating((BookRating) value);
+		} else if (value instanceof BookEditorPick) {
+			writeByte(TYPE_BOOK_EDITOR_PICK);
+			writeBookEditorPick((BookEditorPick) value);
+		} else if (value instanceof BookPage) {
+			BookPage page = (BookPage) value;
+			writeByte(TYPE_BOOK_PAGE);
+			writeSignedVarInt(page.getCursor());
+			writeSignedVarInt(page.getLimit());
+		} else {
+			throw new IOException("Cannot serialize a " + value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Writes the size of a collection, the kind of its elements and its
+	 * elements.
+	 *
+	 * @param collection
+	 *            the collection
+	 * @param isSet
+	 *            whether the collection is a set, whose ISBNs can be reordered
+	 * @throws IOException
+	 *             Signals that an element has no encoding.
+	 */
+	private void writeCollection(Collection<?> collection, boolean isSet) throws IOException {
+		int elements = getElements(collection, isSet);
+		writeVarInt(collection.size());
+		writeByte(elements);
+
+		switch (elements) {
+		case ELEMENTS_ISBNS:
+			writeIsbns(collection);
+			break;
+
+		case ELEMENTS_BOOKS:
+			for (Object element : collection) {
+				writeBook((Book) element);
+			}
+			break;
+
+		case ELEMENTS_STOCK_BOOKS:
+			for (Object element : collection) {
+				writeStockBook((StockBook) element);
+			}
+			break;
+
+		case ELEMENTS_BOOK_COPIES:
+			for (Object element : collection) {
+				writeBookCopy((BookCopy) element);
+			}
+			break;
+
+		case ELEMENTS_BOOK_RATINGS:
+			for (Object element : collection) {
+				writeBookRating((BookRating) element);
+			}
+			break;
+
+		case ELEMENTS_BOOK_EDITOR_PICKS:
+			for (Object element : collection) {
+				writeBookEditorPick((BookEditorPick) element);
+			}
+			break;
+
+		default:
+			for (Object element : collection) {
+				writeValue(element);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Gets the kind of the elements of a collection, which all have the same
+	 * encoding, or {@link #ELEMENTS_VALUES} if they do not.
+	 *
+	 * @param collection
+	 *            the collection
+	 * @param isSet
+	 *            whether the collection is a set
+	 * @return the kind of the elements
+	 */
+	private static int getElements(Collection<?> collection, boolean isSet) {
+		if (collection.isEmpty()) {
+			return ELEMENTS_VALUES;
+		}
+
+		Object first = collection.iterator().next();
+		Class<?> type;
+		int elements;
+
+		if (first instanceof Integer && isSet) {
+			type = Integer.class;
+			elements = ELEMENTS_ISBNS;
+		} else if (first instanceof StockBook) {
+			type = StockBook.class;
+			elements = ELEMENTS_STOCK_BOOKS;
+		} else if (first instanceof Book) {
+			type = Book.class;
+			elements = ELEMENTS_BOOKS;
+		} else if (first instanceof BookCopy) {
+			type = BookCopy.class;
+			elements = ELEMENTS_BOOK_COPIES;
+		} else if (first instanceof BookRating) {
+			type = BookRating.class;
+			elements = ELEMENTS_BOOK_RATINGS;
+		} else if (first instanceof BookEditorPick) {
+			type = BookEditorPick.class;
+			elements = ELEMENTS_BOOK_EDITOR_PICKS;
+		} else {
+			return ELEMENTS_VALUES;
+		}
+
+		for (Object element : collection) {
+			if (!type.isInstance(element)) {
+				// A null or an element of another type, e.g. a book among
+				// stock books, is written with its own type.
+				return ELEMENTS_VALUES;
+			}
+		}
+
+		return elements;
+	}
+
+	/**
+	 * Writes the ISBNs of a set in ascending order, as the first ISBN and the
+	 * differences between each ISBN and the previous one.
+	 *
+	 * @param isbns
+	 *            the ISBNs
+	 */
+	private void writeIsbns(Collection<?> isbns) {
+		int[] sortedIsbns = new int[isbns.size()];
+		int i = 0;
+
+		for (Object isbn : isbns) {
+			sortedIsbns[i++] = (Integer) isbn;
+		}
+
+		Arrays.sort(sortedIsbns);
+		long previous = 0;
+
+		for (i = 0; i < sortedIsbns.length; i++) {
+			// The first ISBN may be negative, e.g. an invalid one, while the
+			// differences never are, but may not fit in an int.
+			if (i == 0) {
+				writeVarLong(zigZag(sortedIsbns[i]));
+			} else {
+				writeVarLong(sortedIsbns[i] - previous);
+			}
+
+			previous = sortedIsbns[i];
+		}
+	}
+
+	/**
+	 * Writes a book.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	private void writeBook(Book book) {
+		writeSignedVarInt(book.getISBN());
+		writeString(book.getTitle());
+		writeString(book.getAuthor());
+		writeFloat(book.getPrice());
+	}
+
+	/**
+	 * Writes a stock book.
+	 *
+	 * @param book
+	 *            the book
+	 */
+	private void writeStockBook(StockBook book) {
+		writeBook(book);
+		writeSignedVarInt(book.getNumCopies());
+		writeVarLong(zigZag(book.getNumSaleMisses()));
+		writeVarLong(zigZag(book.getNumTimesRated()));
+		writeVarLong(zigZag(book.getTotalRating()));
+		writeByte(book.isEditorPick() ? 1 : 0);
+	}
+
+	/**
+	 * Writes the copies of a book.
+	 *
+	 * @param bookCopy
+	 *            the copies
+	 */
+	private void writeBookCopy(BookCopy bookCopy) {
+		writeSignedVarInt(bookCopy.getISBN());
+		writeSignedVarInt(bookCopy.getNumCopies());
+	}
+
+	/**
+	 * Writes the rating of a book.
+	 *
+	 * @param bookRating
+	 *            the rating
+	 */
+	private void writeBookRating(BookRating bookRating) {
+		writeSignedVarInt(bookRating.getISBN());
+		writeSignedVarInt(bookRating.getRating());
+	}
+
+	/**
+	 * Writes the editor pick of a book.
+	 *
+	 * @param bookEditorPick
+	 *            the editor pick
+	 */
+	private void writeBookEditorPick(BookEditorPick bookEditorPick) {
+		writeSignedVarInt(bookEditorPick.getISBN());
+		writeByte(bookEditorPick.isEditorPick() ? 1 : 0);
+	}
+
+	/**
+	 * Writes a string as its length in bytes plus one, or zero if it is null,
+	 * and its bytes in UTF-8.
+	 *
+	 * @param string
+	 *            the string
+	 */
+	private void writeString(String string) {
+		if (string == null) {
+			writeVarInt(0);
+			return;
+		}
+
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length + 1);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, output, outputPosition, bytes.length);
+		outputPosition += bytes.length;
+	}
+
+	/**
+	 * Writes a float as its four bytes.
+	 *
+	 * @param value
+	 *            the float
+	 */
+	private void writeFloat(float value) {
+		int bits = Float.floatToIntBits(value);
+		ensureCapacity(4);
+		output[outputPosition++] = (byte) (bits >>> 24);
+		output[outputPosition++] = (byte) (bits >>> 16);
+		output[outputPosition++] = (byte) (bits >>> 8);
+		output[outputPosition++] = (byte) bits;
+	}
+
+	/**
+	 * Writes an int which may be negative.
+	 *
+	 * @param value
+	 *            the int
+	 */
+	private void writeSignedVarInt(int value) {
+		writeVarLong(zigZag(value));
+	}
+
+	/**
+	 * Writes an int which is not negative.
+	 *
+	 * @param value
+	 *            the int
+	 */
+	private void writeVarInt(int value) {
+		writeVarLong(value);
+	}
+
+	/**
+	 * Writes a long which is not negative, seven bits per byte, with the high
+	 * bit of each byte set if more bytes follow.
+	 *
+	 * @param value
+	 *            the long
+	 */
+	private void writeVarLong(long value) {
+		ensureCapacity(10);
+
+		while ((value & ~0x7FL) != 0) {
+			output[outputPosition++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		output[outputPosition++] = (byte) value;
+	}
+
+	/**
+	 * Writes a byte.
+	 *
+	 * @param value
+	 *            the byte
+	 */
+	private void writeByte(int value) {
+		ensureCapacity(1);
+		output[outputPosition++] = (byte) value;
+	}
+
+	/**
+	 * Grows the output buffer, if needed, to fit a number of bytes more.
+	 *
+	 * @param numBytes
+	 *            the number of bytes
+	 */
+	private void ensureCapacity(int numBytes) {
+		if (outputPosition + numBytes > output.length) {
+			output = Arrays.copyOf(output, Math.max(output.length * 2, outputPosition + numBytes));
+		}
+	}
+
+	/**
+	 * Maps a long which may be negative to one which is not, so that numbers
+	 * close to zero, whatever their sign, are written in few bytes.
+	 *
+	 * @param value
+	 *            the long
+	 * @return the mapped long
+	 */
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	/**
+	 * Reads a value with its type.
+	 *
+	 * @return the value
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private Object readValue() throws IOException {
+		int type = readByte();
+
+		switch (type) {
+		case TYPE_NULL:
+			return null;
+
+		case TYPE_INTEGER:
+			return readSignedVarInt();
+
+		case TYPE_STRING:
+			return readString();
+
+		case TYPE_SET:
+			return readCollection(new HashSet<>());
+
+		case TYPE_LIST:
+			return readCollection(new ArrayList<>());
+
+		case TYPE_RESPONSE:
+			Object exception = readValue();
+			Object list = readValue();
+
+			if ((exception != null && !(exception instanceof BookStoreException))
+					|| (list != null && !(list instanceof List))) {
+				throw new IOException("Malformed response");
+			}
+
+			BookStoreResponse response = new BookStoreResponse();
+			response.setException((BookStoreException) exception);
+			response.setList((List<?>) list);
+			return response;
+
+		case TYPE_OPERATION:
+			int messageTag = readVarInt();
+
+			if (messageTag > MESSAGE_TAGS.length) {
+				throw new IOException("Unknown message tag " + messageTag);
+			}
+
+			return new BookStoreOperation(messageTag == 0 ? null : MESSAGE_TAGS[messageTag - 1], readValue());
+
+		case TYPE_EXCEPTION:
+			return new BookStoreException(readString());
+
+		case TYPE_BOOK:
+			return readBook();
+
+		case TYPE_STOCK_BOOK:
+			return readStockBook();
+
+		case TYPE_BOOK_COPY:
+			return readBookCopy();
+
+		case TYPE_BOOK_RATING:
+			return readBookRating();
+
+		case TYPE_BOOK_EDITOR_PICK:
+			return readBookEditorPick();
+
+		case TYPE_BOOK_PAGE:
+			int cursor = readSignedVarInt();
+			return new BookPage(cursor, readSignedVarInt());
+
+		default:
+			throw new IOException("Unknown type " + type);
+		}
+	}
+
+	/**
+	 * Reads the elements of a collection into it.
+	 *
+	 * @param collection
+	 *            the empty collection
+	 * @return the collection
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private Collection<Object> readCollection(Collection<Object> collection) throws IOException {
+		int size = readVarInt();
+
+		// Every element takes at least a byte, so a larger size is not one
+		// of a message, and would only make us allocate for nothing.
+		if (size > inputLimit - inputPosition) {
+			throw new EOFException("Unexpected end of the message");
+		}
+
+		int elements = readByte();
+
+		if (collection instanceof ArrayList) {
+			((ArrayList<Object>) collection).ensureCapacity(size);
+		}
+
+		long isbn = 0;
+
+		for (int i = 0; i < size; i++) {
+			switch (elements) {
+			case ELEMENTS_VALUES:
+				collection.add(readValue());
+				break;
+
+			case ELEMENTS_ISBNS:
+				isbn = i == 0 ? unZigZag(readVarLong()) : isbn + readVarLong();
+
+				if (isbn != (int) isbn) {
+					throw new IOException("Malformed ISBN");
+				}
+
+				collection.add((int) isbn);
+				break;
+
+			case ELEMENTS_BOOKS:
+				collection.add(readBook());
+				break;
+
+			case ELEMENTS_STOCK_BOOKS:
+				collection.add(readStockBook());
+				break;
+
+			case ELEMENTS_BOOK_COPIES:
+				collection.add(readBookCopy());
+				break;
+
+			case ELEMENTS_BOOK_RATINGS:
+				collection.add(readBookRating());
+				break;
+
+			case ELEMENTS_BOOK_EDITOR_PICKS:
+				collection.add(readBookEditorPick());
+				break;
+
+			default:
+				throw new IOException("Unknown kind of elements " + elements);
+			}
+		}
+
+		return collection;
+	}
+
+	/**
+	 * Reads a book.
+	 *
+	 * @return the book
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private ImmutableBook readBook() throws IOException {
+		return new ImmutableBook(readSignedVarInt(), readString(), readString(), readFloat());
+	}
+
+	/**
+	 * Reads a stock book.
+	 *
+	 * @return the book
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private ImmutableStockBook readStockBook() throws IOException {
+		int isbn = readSignedVarInt();
+		String title = readString();
+		String author = readString();
+		float price = readFloat();
+		int numCopies = readSignedVarInt();
+		long numSaleMisses = unZigZag(readVarLong());
+		long numTimesRated = unZigZag(readVarLong());
+		long totalRating = unZigZag(readVarLong());
+		boolean editorPick = readByte() != 0;
+		return new ImmutableStockBook(isbn, title, author, price, numCopies, numSaleMisses, numTimesRated,
+				totalRating, editorPick);
+	}
+
+	/**
+	 * Reads the copies of a book.
+	 *
+	 * @return the copies
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private BookCopy readBookCopy() throws IOException {
+		return new BookCopy(readSignedVarInt(), readSignedVarInt());
+	}
+
+	/**
+	 * Reads the rating of a book.
+	 *
+	 * @return the rating
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private BookRating readBookRating() throws IOException {
+		return new BookRating(readSignedVarInt(), readSignedVarInt());
+	}
+
+	/**
+	 * Reads the editor pick of a book.
+	 *
+	 * @return the editor pick
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private BookEditorPick readBookEditorPick() throws IOException {
+		return new BookEditorPick(readSignedVarInt(), readByte() != 0);
+	}
+
+	/**
+	 * Reads a string written by {@link #writeString(String)}.
+	 *
+	 * @return the string
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private String readString() throws IOException {
+		int length = readVarInt();
+
+		if (length == 0) {
+			return null;
+		}
+
+		length--;
+		require(length);
+		String string = new String(input, inputPosition, length, StandardCharsets.UTF_8);
+		inputPosition += length;
+		return string;
+	}
+
+	/**
+	 * Reads a float.
+	 *
+	 * @return the float
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private float readFloat() throws IOException {
+		require(4);
+		int bits = (input[inputPosition] & 0xFF) << 24 | (input[inputPosition + 1] & 0xFF) << 16
+				| (input[inputPosition + 2] & 0xFF) << 8 | (input[inputPosition + 3] & 0xFF);
+		inputPosition += 4;
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Reads an int written by {@link #writeSignedVarInt(int)}.
+	 *
+	 * @return the int
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private int readSignedVarInt() throws IOException {
+		long value = unZigZag(readVarLong());
+
+		if (value != (int) value) {
+			throw new IOException("Malformed int");
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Reads an int written by {@link #writeVarInt(int)}.
+	 *
+	 * @return the int
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private int readVarInt() throws IOException {
+		long value = readVarLong();
+
+		if (value < 0 || value > Integer.MAX_VALUE) {
+			throw new IOException("Malformed int");
+		}
+
+		return (int) value;
+	}
+
+	/**
+	 * Reads a long written by {@link #writeVarLong(long)}.
+	 *
+	 * @return the long
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private long readVarLong() throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = readByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed long");
+	}
+
+	/**
+	 * Reads a byte.
+	 *
+	 * @return the byte, from 0 to 255
+	 * @throws IOException
+	 *             Signals that the bytes are not a message.
+	 */
+	private int readByte() throws IOException {
+		require(1);
+		return input[inputPosition++] & 0xFF;
+	}
+
+	/**
+	 * Checks that a number of bytes remain to be read.
+	 *
+	 * @param numBytes
+	 *            the number of bytes
+	 * @throws EOFException
+	 *             Signals that the message ends before them.
+	 */
+	private void require(int numBytes) throws EOFException {
+		if (numBytes > inputLimit - inputPosition) {
+			throw new EOFException("Unexpected end of the message");
+		}
+	}
+
+	/**
+	 * Maps back a long mapped by {@link #zigZag(long)}.
+	 *
+	 * @param value
+	 *            the mapped long
+	 * @return the long
+	 */
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -7,7 +7,8 @@ package com.acertainbookstore.utils;
 public final class BookStoreConstants {
 
 	/**
-	 * The Constant BINARY_SERIALIZATION decides whether we use Kryo or XStream.
+	 * The Constant BINARY_SERIALIZATION decides whether we use Kryo or XStream,
+	 * unless the serializer property chooses one.
 	 */
 	public static final boolean BINARY_SERIALIZATION = true;
 
@@ -19,6 +20,9 @@ public final class BookStoreConstants {
 	/** The Constant BOOK_NUM_PARAM. */
 	public static final String BOOK_NUM_PARAM = "number_of_books";
 
+	/** The Constant BOOK_CURSOR_PARAM. */
+	public static final String BOOK_CURSOR_PARAM = "cursor";
+
 	/** The Constant XMLSTRINGLEN_PARAM. */
 	public static final String XMLSTRINGLEN_PARAM = "len";
 
@@ -28,6 +32,12 @@ public final class BookStoreConstants {
 	 */
 	public static final int INVALID_PARAMS = -1;
 
+	/**
+	 * The Constant STREAM_CHUNK_SIZE is the number of books in each chunk of
+	 * the reply to a stream books message.
+	 */
+	public static final int STREAM_CHUNK_SIZE = 1000;
+
 	// Constants used when creating exception messages
 
 	/** The Constant INVALID when the book has an invalid ISBN. */
@@ -54,12 +64,75 @@ public final class BookStoreConstants {
 	/** The Constant NULL_INPUT. */
 	public static final String NULL_INPUT = "null input parameters";
 
+	/** The Constant INVALID_OPERATION. */
+	public static final String INVALID_OPERATION = "invalid batch operation";
+
 	/** The Constant PROPERTY_KEY_LOCAL_TEST. */
 	public static final String PROPERTY_KEY_LOCAL_TEST = "localtest";
 
 	/** The Constant PROPERTY_KEY_SERVER_PORT. */
 	public static final String PROPERTY_KEY_SERVER_PORT = "port";
 
+	/** The Constant PROPERTY_KEY_MULTI_VERSION. */
+	public static final String PROPERTY_KEY_MULTI_VERSION = "multiversion";
+
+	/** The Constant PROPERTY_KEY_COLUMNAR. */
+	public static final String PROPERTY_KEY_COLUMNAR = "columnar";
+
+	/** The Constant PROPERTY_KEY_DATA_DIRECTORY. */
+	public static final String PROPERTY_KEY_DATA_DIRECTORY = "datadir";
+
+	/** The Constant PROPERTY_KEY_CHECKPOINT_INTERVAL. */
+	public static final String PROPERTY_KEY_CHECKPOINT_INTERVAL = "checkpointinterval";
+
+	/** The Constant PROPERTY_KEY_TARGET_RATE. */
+	public static final String PROPERTY_KEY_TARGET_RATE = "targetrate";
+
+	/** The Constant PROPERTY_KEY_ARRIVAL_DISTRIBUTION. */
+	public static final String PROPERTY_KEY_ARRIVAL_DISTRIBUTION = "arrivals";
+
+	/** The Constant PROPERTY_KEY_SKEW. */
+	public static final String PROPERTY_KEY_SKEW = "skew";
+
+	/** The Constant PROPERTY_KEY_ZIPF_EXPONENT. */
+	public static final String PROPERTY_KEY_ZIPF_EXPONENT = "zipfexponent";
+
+	/** The Constant PROPERTY_KEY_HOTSPOT. */
+	public static final String PROPERTY_KEY_HOTSPOT = "hotspot";
+
+	/** The Constant PROPERTY_KEY_HOTSPOT_SHIFT. */
+	public static final String PROPERTY_KEY_HOTSPOT_SHIFT = "hotspotshift";
+
+	/** The Constant PROPERTY_KEY_SWEEP_STORES. */
+	public static final String PROPERTY_KEY_SWEEP_STORES = "sweepstores";
+
+	/** The Constant PROPERTY_KEY_SWEEP_MODES. */
+	public static final String PROPERTY_KEY_SWEEP_MODES = "sweepmodes";
+
+	/** The Constant PROPERTY_KEY_SWEEP_WORKERS. */
+	public static final String PROPERTY_KEY_SWEEP_WORKERS = "sweepworkers";
+
+	/** The Constant PROPERTY_KEY_SERIALIZER. */
+	public static final String PROPERTY_KEY_SERIALIZER = "serializer";
+
+	/** The Constant PROPERTY_KEY_ASYNC. */
+	public static final String PROPERTY_KEY_ASYNC = "async";
+
+	/** The Constant PROPERTY_KEY_READ_THREADS. */
+	public static final String PROPERTY_KEY_READ_THREADS = "readthreads";
+
+	/** The Constant PROPERTY_KEY_WRITE_THREADS. */
+	public static final String PROPERTY_KEY_WRITE_THREADS = "writethreads";
+
+	/** The Constant PROPERTY_KEY_QUEUE_SIZE. */
+	public static final String PROPERTY_KEY_QUEUE_SIZE = "queuesize";
+
+	/**
+	 * The Constant EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS, the time given to the
+	 * executors of a stopping server to finish the messages they have taken.
+	 */
+	public static final int EXECUTOR_SHUTDOWN_TIMEOUT_SECONDS = 10;
+
 	/** The Constant EPSILON used for floating point number comparison */
 	public static final float EPSILON = 0.000001F;
 
@@ -1,13 +1,19 @@
 package com.acertainbookstore.utils;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import com.acertainbookstore.business.BookCopy;
+import com.acertainbookstore.business.BookEditorPick;
+import com.acertainbookstore.business.BookRating;
+import com.acertainbookstore.business.ImmutableBook;
 import com.acertainbookstore.business.ImmutableStockBook;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import org.objenesis.strategy.StdInstantiatorStrategy;
@@ -16,13 +22,32 @@ import org.objenesis.strategy.StdInstantiatorStrategy;
  * {@link BookStoreKryoSerializer} serializes objects to arrays of bytes
  * representing strings using the Kryo library.
  * 
+ * The classes sent between the clients and the server are registered, so that
+ * they are written as small integers rather than by name; the clients and the
+ * server must therefore register the same classes in the same order. A
+ * serializer is not thread-safe, and keeps its Kryo instance and its buffers
+ * for reuse, so each thread should have its own, e.g. from
+ * {@link BookStoreUtility#SERIALIZERS}.
+ * 
  * @see BookStoreSerializer
  */
 public final class BookStoreKryoSerializer implements BookStoreSerializer {
 
+	/** The size of the reusable buffers. */
+	private static final int BUFFER_SIZE = 4096;
+
+	/** The size above which the reusable output buffer is not kept. */
+	private static final int MAX_KEPT_BUFFER_SIZE = 1 << 20;
+
 	/** The binary stream. */
 	private final Kryo binaryStream;
 
+	/** The reusable input, read from the stream being deserialized. */
+	private final Input input = new Input(BUFFER_SIZE);
+
+	/** The reusable output, whose buffer grows to fit what it serializes. */
+	private Output output = new Output(BUFFER_SIZE, -1);
+
 	/**
 	 * Instantiates a new {@link BookStoreKryoSerializer}.
 	 */
@@ -30,6 +55,17 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 		binaryStream = new Kryo();
 		binaryStream.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
 		binaryStream.register(ImmutableStockBook.class);
+		binaryStream.register(ImmutableBook.class);
+		binaryStream.register(BookCopy.class);
+		binaryStream.register(BookRating.class);
+		binaryStream.register(BookEditorPick.class);
+		binaryStream.register(BookStoreResponse.class);
+		binaryStream.register(BookStoreException.class, new BookStoreExceptionSerializer());
+		binaryStream.register(BookStoreOperation.class);
+		binaryStream.register(BookStoreMessageTag.class);
+		binaryStream.register(HashSet.class);
+		binaryStream.register(ArrayList.class);
+		binaryStream.register(BookPage.class);
 	}
 
 	/*
@@ -41,11 +77,10 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 	 */
 	@Override
 	public byte[] serialize(Object object) throws IOException {
-		try (ByteArrayOutputStream outStream = new ByteArrayOutputStream(); Output out = new Output(outStream)) {
-			binaryStream.writeClassAndObject(out, object);
-			out.flush();
-			return outStream.toByteArray();
-		}
+		ByteBuffer buffer = serializeToBuffer(object);
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
 	}
 
 	/*
@@ -55,8 +90,78 @@ public final class BookStoreKryoSerializer implements BookStoreSerializer {
 	 */
 	@Override
 	public Object deserialize(byte[] bytes) throws IOException {
-		try (InputStream inStream = new ByteArrayInputStream(bytes); Input in = new Input(inStream)) {
-			return binaryStream.readClassAndObject(in);
+		Input in = new Input(bytes);
+		return binaryStream.readClassAndObject(in);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#serializeToBuffer(
+	 * java.lang.Object)
+	 */
+	@Override
+	public ByteBuffer serializeToBuffer(Object object) throws IOException {
+		// Let go of a buffer grown by an unusually large object, e.g. the
+		// books of a large catalogue, once its bytes have been used.
+		if (output.getBuffer().length > MAX_KEPT_BUFFER_SIZE) {
+			output = new Output(BUFFER_SIZE, -1);
+		}
+
+		output.clear();
+		binaryStream.writeClassAndObject(output, object);
+		return ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.acertainbookstore.interfaces.BookStoreSerializer#deserialize(java.io.
+	 * InputStream)
+	 */
+	@Override
+	public Object deserialize(InputStream inStream) throws IOException {
+		input.setInputStream(inStream);
+
+		try {
+			return binaryStream.readClassAndObject(input);
+		} finally {
+			input.setInputStream(null);
+		}
+	}
+
+	/**
+	 * {@link BookStoreExceptionSerializer} writes a {@link BookStoreException}
+	 * as its message. The stack trace and the cause of an exception are those
+	 * of the server, which the client has no use for, and Kryo cannot read
+	 * the fields of {@link Throwable} on recent JDKs anyway.
+	 */
+	private static final class BookStoreExceptionSerializer extends Serializer<BookStoreException> {
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.esotericsoftware.kryo.Serializer#write(com.esotericsoftware.kryo.
+		 * Kryo, com.esotericsoftware.kryo.io.Output, java.lang.Object)
+		 */
+		@Override
+		public void write(Kryo kryo, Output output, BookStoreException exception) {
+			output.writeString(exception.getMessage());
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * com.esotericsoftware.kryo.Serializer#read(com.esotericsoftware.kryo.
+		 * Kryo, com.esotericsoftware.kryo.io.Input, java.lang.Class)
+		 */
+		@Override
+		public BookStoreException read(Kryo kryo, Input input, Class<BookStoreException> type) {
+			return new BookStoreException(input.readString());
 		}
 	}
 }
@@ -9,7 +9,10 @@ public enum BookStoreMessageTag {
 	/** The tag for the add book message. */
 	ADDBOOKS,
 
-	/** The tag for the list books message. */
+	/**
+	 * The tag for the list books message, which may carry a page of the
+	 * catalogue.
+	 */
 	LISTBOOKS,
 
 	/** The tag for the add copies message. */
@@ -34,5 +37,36 @@ public enum BookStoreMessageTag {
 	REMOVEBOOKS,
 
 	/** The tag for the get stock books by ISBN message. */
-	GETSTOCKBOOKSBYISBN;
+	GETSTOCKBOOKSBYISBN,
+
+	/**
+	 * The tag for the rate books message.
+	 */
+	RATEBOOKS,
+
+	/**
+	 * The tag for the get top rated books message.
+	 */
+	GETTOPRATEDBOOKS,
+
+	/**
+	 * The tag for the get books in demand message.
+	 */
+	GETBOOKSINDEMAND,
+
+	/**
+	 * The tag for the batch message, which carries a list of messages.
+	 */
+	BATCH,
+
+	/**
+	 * The tag for the stream books message, whose reply lists the books in
+	 * chunks.
+	 */
+	STREAMBOOKS,
+
+	/**
+	 * The tag for the get books with least copies message.
+	 */
+	GETBOOKSWITHLEASTCOPIES;
 }
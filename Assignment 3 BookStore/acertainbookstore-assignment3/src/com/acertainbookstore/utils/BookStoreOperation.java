@@ -0,0 +1,48 @@
+package com.acertainbookstore.utils;
+
+/**
+ * {@link BookStoreOperation} is the data structure that encapsulates one of
+ * the messages carried by a {@link BookStoreMessageTag#BATCH} message: its tag
+ * and the value it would carry on its own, i.e. the deserialized content of a
+ * POST message, the number of books of a GETEDITORPICKS, GETTOPRATEDBOOKS or
+ * GETBOOKSWITHLEASTCOPIES message, or the {@link BookPage} of a LISTBOOKS message.
+ */
+public final class BookStoreOperation {
+
+	/** The message tag. */
+	private final BookStoreMessageTag messageTag;
+
+	/** The input value. */
+	private final Object inputValue;
+
+	/**
+	 * Instantiates a new {@link BookStoreOperation}.
+	 *
+	 * @param messageTag
+	 *            the message tag
+	 * @param inputValue
+	 *            the input value, or null if the message carries none
+	 */
+	public BookStoreOperation(BookStoreMessageTag messageTag, Object inputValue) {
+		this.messageTag = messageTag;
+		this.inputValue = inputValue;
+	}
+
+	/**
+	 * Gets the message tag.
+	 *
+	 * @return the message tag
+	 */
+	public BookStoreMessageTag getMessageTag() {
+		return messageTag;
+	}
+
+	/**
+	 * Gets the input value.
+	 *
+	 * @return the input value
+	 */
+	public Object getInputValue() {
+		return inputValue;
+	}
+}
@@ -1,15 +1,26 @@
 package com.acertainbookstore.utils;
 
+import java.io.DataInputStream;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentProvider;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
 import org.eclipse.jetty.client.util.BytesContentProvider;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
 import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
 
 import com.acertainbookstore.client.BookStoreClientConstants;
 import com.acertainbookstore.interfaces.BookStoreSerializer;
@@ -32,6 +43,13 @@ public final class BookStoreUtility {
 		}
 	};
 
+	/** The Constant SERIALIZERS. */
+	// We pool the serializers, one per thread, because they keep their Kryo
+	// instance and their buffers for reuse. The server and the proxies share
+	// them.
+	public static final ThreadLocal<BookStoreSerializer> SERIALIZERS = ThreadLocal
+			.withInitial(BookStoreUtility::newSerializer);
+
 	/**
 	 * Prevents the instantiation of a new {@link BookStoreUtility}.
 	 */
@@ -39,6 +57,32 @@ public final class BookStoreUtility {
 		// Prevent instantiation.
 	}
 
+	/**
+	 * Creates a serializer of the type set by the serializer property (kryo,
+	 * xstream or compact), or else in {@link BookStoreConstants}. The clients
+	 * and the server must use the same type.
+	 *
+	 * @return the serializer
+	 */
+	public static BookStoreSerializer newSerializer() {
+		String serializerProperty = System.getProperty(BookStoreConstants.PROPERTY_KEY_SERIALIZER,
+				BookStoreConstants.BINARY_SERIALIZATION ? "kryo" : "xstream");
+
+		switch (serializerProperty.toLowerCase()) {
+		case "kryo":
+			return new BookStoreKryoSerializer();
+
+		case "xstream":
+			return new BookStoreXStreamSerializer();
+
+		case "compact":
+			return new BookStoreCompactSerializer();
+
+		default:
+			throw new IllegalArgumentException("Unknown serializer " + serializerProperty);
+		}
+	}
+
 	/**
 	 * Checks if is invalid ISBN.
 	 *
@@ -149,7 +193,8 @@ public final class BookStoreUtility {
 	}
 
 	/**
-	 * Perform HTTP exchange.
+	 * Creates the HTTP request of a book store request, serializing its input
+	 * value if it is a POST request.
 	 *
 	 * @param client
 	 *            the client
@@ -157,11 +202,11 @@ public final class BookStoreUtility {
 	 *            the book store request
 	 * @param serializer
 	 *            the serializer
-	 * @return the book store response
+	 * @return the HTTP request
 	 * @throws BookStoreException
 	 *             the book store exception
 	 */
-	public static BookStoreResponse performHttpExchange(HttpClient client, BookStoreRequest bookStoreRequest,
+	private static Request newHttpRequest(HttpClient client, BookStoreRequest bookStoreRequest,
 			BookStoreSerializer serializer) throws BookStoreException {
 		Request request;
 
@@ -185,6 +230,71 @@ public final class BookStoreUtility {
 			throw new IllegalArgumentException("HTTP Method not supported.");
 		}
 
+		return request;
+	}
+
+	/**
+	 * Throws if the server turned the request away because too many messages
+	 * were waiting, which it replies to without content.
+	 *
+	 * @param status
+	 *            the status of the HTTP response
+	 * @throws BookStoreException
+	 *             if the status is 503 Service Unavailable
+	 */
+	private static void checkServerNotBusy(int status) throws BookStoreException {
+		if (status == HttpStatus.SERVICE_UNAVAILABLE_503) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_SERVER_BUSY);
+		}
+	}
+
+	/**
+	 * Deserializes the content of an HTTP response, and throws the exception
+	 * it carries if any.
+	 *
+	 * @param content
+	 *            the content
+	 * @param serializer
+	 *            the serializer
+	 * @return the book store response
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	private static BookStoreResponse readHttpResponse(byte[] content, BookStoreSerializer serializer)
+			throws BookStoreException {
+		BookStoreResponse bookStoreResponse;
+
+		try {
+			bookStoreResponse = (BookStoreResponse) serializer.deserialize(content);
+		} catch (IOException ex) {
+			throw new BookStoreException("Deserialization error", ex);
+		}
+
+		BookStoreException exception = bookStoreResponse.getException();
+
+		if (exception != null) {
+			throw exception;
+		}
+
+		return bookStoreResponse;
+	}
+
+	/**
+	 * Perform HTTP exchange.
+	 *
+	 * @param client
+	 *            the client
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @param serializer
+	 *            the serializer
+	 * @return the book store response
+	 * @throws BookStoreException
+	 *             the book store exception
+	 */
+	public static BookStoreResponse performHttpExchange(HttpClient client, BookStoreRequest bookStoreRequest,
+			BookStoreSerializer serializer) throws BookStoreException {
+		Request request = newHttpRequest(client, bookStoreRequest, serializer);
 		ContentResponse response;
 
 		try {
@@ -197,20 +307,128 @@ public final class BookStoreUtility {
 			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
 		}
 
-		BookStoreResponse bookStoreResponse;
+		checkServerNotBusy(response.getStatus());
+		return readHttpResponse(response.getContent(), serializer);
+	}
+
+	/**
+	 * Perform HTTP exchange without blocking the calling thread. The request
+	 * is serialized by the calling thread, and the response is deserialized by
+	 * a thread of the client once it has arrived, so the serializer of that
+	 * thread is taken from serializers then. The future completes on that
+	 * thread too, so callers should not block in its dependent stages.
+	 *
+	 * @param client
+	 *            the client
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @param serializers
+	 *            the serializer of the current thread
+	 * @return the future book store response, completed exceptionally with a
+	 *         {@link BookStoreException} if the exchange fails
+	 */
+	public static CompletableFuture<BookStoreResponse> performHttpExchangeAsync(HttpClient client,
+			BookStoreRequest bookStoreRequest, Supplier<BookStoreSerializer> serializers) {
+		CompletableFuture<BookStoreResponse> future = new CompletableFuture<>();
+		Request request;
 
 		try {
-			bookStoreResponse = (BookStoreResponse) serializer.deserialize(response.getContent());
-		} catch (IOException ex) {
-			throw new BookStoreException("Deserialization error", ex);
+			request = newHttpRequest(client, bookStoreRequest, serializers.get());
+		} catch (BookStoreException ex) {
+			future.completeExceptionally(ex);
+			return future;
 		}
 
-		BookStoreException exception = bookStoreResponse.getException();
+		request.send(new BufferingResponseListener() {
+
+			@Override
+			public void onComplete(Result result) {
+				if (result.isFailed()) {
+					future.completeExceptionally(new BookStoreException(
+							BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, result.getFailure()));
+					return;
+				}
+
+				try {
+					checkServerNotBusy(result.getResponse().getStatus());
+					future.complete(readHttpResponse(getContent(), serializers.get()));
+				} catch (BookStoreException ex) {
+					future.completeExceptionally(ex);
+				} catch (RuntimeException ex) {
+					// The future must complete even if the reply, e.g. an
+					// error page, cannot be deserialized.
+					future.completeExceptionally(new BookStoreException("Deserialization error", ex));
+				}
+			}
+		});
 
-		if (exception != null) {
-			throw exception;
+		return future;
+	}
+
+	/**
+	 * Perform HTTP exchange whose response is streamed in chunks, as written
+	 * by the server for a stream books message, and hand the list of each
+	 * chunk to a consumer as soon as it has arrived, so that the whole
+	 * response is never held in memory. The consumer runs on the calling
+	 * thread.
+	 *
+	 * @param client
+	 *            the client
+	 * @param bookStoreRequest
+	 *            the book store request
+	 * @param serializer
+	 *            the serializer
+	 * @param chunkConsumer
+	 *            the consumer of the list of each chunk
+	 * @throws BookStoreException
+	 *             the book store exception, also if the response ends before
+	 *             its last chunk
+	 */
+	public static void performHttpStreamExchange(HttpClient client, BookStoreRequest bookStoreRequest,
+			BookStoreSerializer serializer, Consumer<List<?>> chunkConsumer) throws BookStoreException {
+		Request request = newHttpRequest(client, bookStoreRequest, serializer);
+		InputStreamResponseListener listener = new InputStreamResponseListener();
+		request.send(listener);
+		Response response;
+
+		try {
+			response = listener.get(BookStoreClientConstants.CLIENT_MAX_TIMEOUT_MILLISECS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_SENDING, ex);
+		} catch (TimeoutException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_TIMEOUT, ex);
+		} catch (ExecutionException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
 		}
 
-		return bookStoreResponse;
+		// Closing the stream before the end of the response, e.g. if the
+		// consumer throws, aborts the request.
+		try (DataInputStream inStream = new DataInputStream(listener.getInputStream())) {
+			checkServerNotBusy(response.getStatus());
+
+			if (response.getStatus() != HttpStatus.OK_200) {
+				throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_RESPONSE_DECODING);
+			}
+
+			while (true) {
+				int length = inStream.readInt();
+
+				if (length < 0) {
+					throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_RESPONSE_DECODING);
+				}
+
+				byte[] chunk = new byte[length];
+				inStream.readFully(chunk);
+				List<?> list = readHttpResponse(chunk, serializer).getList();
+
+				if (list == null) {
+					return;
+				}
+
+				chunkConsumer.accept(list);
+			}
+		} catch (IOException ex) {
+			throw new BookStoreException(BookStoreClientConstants.STR_ERR_CLIENT_REQUEST_EXCEPTION, ex);
+		}
 	}
 }
@@ -0,0 +1,323 @@
+package com.acertainbookstore.utils;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link IntObjectMap} is a map from <code>int</code> keys to values, using
+ * open addressing with linear probing over a key array and a value array.
+ * Unlike a <code>HashMap&lt;Integer, V&gt;</code>, lookups neither box the key
+ * nor follow node pointers, and no entry objects are allocated.
+ *
+ * Values cannot be null; a null value marks an empty bucket. Removals shift
+ * back the entries probed past the removed one, so no tombstones are left
+ * behind. The map is not thread-safe.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public class IntObjectMap<V> {
+
+	/** The initial number of buckets, a power of two. */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/** The buckets. */
+	private Table table = new Table(INITIAL_CAPACITY);
+
+	/** The number of entries. */
+	private int size = 0;
+
+	/**
+	 * Gets the number of entries in the map.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if the map has no entries.
+	 *
+	 * @return true, if empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the value mapped to <code>key</code>.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value, or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		Table buckets = table;
+		int mask = buckets.keys.length - 1;
+		int i = bucket(key, mask);
+
+		for (int probes = 0; probes <= mask; probes++) {
+			Object value = buckets.values[i];
+
+			if (value == null) {
+				return null;
+			}
+
+			if (buckets.keys[i] == key) {
+				return (V) value;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Checks if <code>key</code> is in the map.
+	 *
+	 * @param key
+	 *            the key
+	 * @return true, if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps <code>key</code> to <code>value</code>.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value, which must not be null
+	 * @return the previous value, or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("null values are not supported");
+		}
+
+		if (2 * (size + 1) > table.keys.length) {
+			resize(table.keys.length * 2);
+		}
+
+		int mask = table.keys.length - 1;
+		int i = bucket(key, mask);
+
+		while (table.values[i] != null) {
+			if (table.keys[i] == key) {
+				V previous = (V) table.values[i];
+				table.values[i] = value;
+				return previous;
+			}
+
+			i = (i + 1) & mask;
+		}
+
+		// Write the key before the value, which is what makes the bucket used.
+		table.keys[i] = key;
+		table.values[i] = value;
+		size++;
+		return null;
+	}
+
+	/**
+	 * Removes <code>key</code> from the map.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the removed value, or null if the key was not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(int key) {
+		int[] keys = table.keys;
+		Object[] values = table.values;
+		int mask = keys.length - 1;
+		int i = bucket(key, mask);
+
+		while (values[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+
+		if (values[i] == null) {
+			return null;
+		}
+
+		V removed = (V) values[i];
+
+		for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+			int home = bucket(keys[j], mask);
+
+			// The entry at j may move to the hole at i unless its home lies
+			// cyclically in (i, j].
+			boolean homeBetween = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+
+			if (!homeBetween) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				i = j;
+			}
+		}
+
+		values[i] = null;
+		size--;
+		return removed;
+	}
+
+	/**
+	 * Removes all entries, keeping the buckets allocated.
+	 */
+	public void clear() {
+		Arrays.fill(table.values, null);
+		size = 0;
+	}
+
+	/**
+	 * Gets a view of the values of the map, in no particular order. The view
+	 * does not support removal.
+	 *
+	 * @return the values
+	 */
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+
+			@Override
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Gets the home bucket of a key. The key is mixed first, so that
+	 * sequential keys do not fill runs of adjacent buckets.
+	 *
+	 * @param key
+	 *            the key
+	 * @param mask
+	 *            the bucket mask
+	 * @return the bucket
+	 */
+	private static int bucket(int key, int mask) {
+		int hash = key * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Rehashes the entries into <code>capacity</code> buckets.
+	 *
+	 * @param capacity
+	 *            the number of buckets, a power of two
+	 */
+	private void resize(int capacity) {
+		Table oldTable = table;
+		Table newTable = new Table(capacity);
+		int mask = capacity - 1;
+
+		for (int i = 0; i < oldTable.keys.length; i++) {
+			if (oldTable.values[i] != null) {
+				int j = bucket(oldTable.keys[i], mask);
+
+				while (newTable.values[j] != null) {
+					j = (j + 1) & mask;
+				}
+
+				newTable.keys[j] = oldTable.keys[i];
+				newTable.values[j] = oldTable.values[i];
+			}
+		}
+
+		table = newTable;
+	}
+
+	/**
+	 * {@link Table} holds the key and value arrays, so that both are replaced
+	 * together on resize.
+	 */
+	private static final class Table {
+
+		/** The keys of the buckets. */
+		final int[] keys;
+
+		/** The values of the buckets, null for empty buckets. */
+		final Object[] values;
+
+		/**
+		 * Instantiates a new {@link Table}.
+		 *
+		 * @param capacity
+		 *            the number of buckets
+		 */
+		Table(int capacity) {
+			keys = new int[capacity];
+			values = new Object[capacity];
+		}
+	}
+
+	/**
+	 * {@link ValueIterator} walks the buckets in order.
+	 */
+	private final class ValueIterator implements Iterator<V> {
+
+		/** The buckets being walked. */
+		private final Object[] values = table.values;
+
+		/** The next bucket to look at. */
+		private int index = 0;
+
+		/**
+		 * Instantiates a new {@link ValueIterator}.
+		 */
+		ValueIterator() {
+			skipEmpty();
+		}
+
+		/**
+		 * Moves to the next used bucket.
+		 */
+		private void skipEmpty() {
+			while (index < values.length && values[index] == null) {
+				index++;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return index < values.length;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+
+			V value = (V) values[index++];
+			skipEmpty();
+			return value;
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package com.acertainbookstore.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * {@link MappedFile} maps a file into memory in fixed-size chunks, so that it
+ * can grow beyond the 2 GB limit of a single {@link MappedByteBuffer}. Values
+ * are read and written at absolute positions; callers lay out their data so
+ * that no value crosses a chunk boundary, which holds for any value whose size
+ * is a power of two and which is aligned to it.
+ *
+ * The data lives in the page cache rather than on the heap, and reopening the
+ * file maps it again without reading it.
+ */
+public class MappedFile implements Closeable {
+
+	/** The file. */
+	private final FileChannel channel;
+
+	/** The number of bits of a position within a chunk. */
+	private final int chunkShift;
+
+	/** The mask selecting the position within a chunk. */
+	private final long chunkMask;
+
+	/** The mapped chunks. */
+	private MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+	/**
+	 * Opens the file, creating it if needed, and maps its existing chunks.
+	 *
+	 * @param file
+	 *            the file
+	 * @param chunkShift
+	 *            the base two logarithm of the chunk size
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public MappedFile(File file, int chunkShift) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		this.chunkShift = chunkShift;
+		this.chunkMask = (1L << chunkShift) - 1;
+
+		try {
+			ensureCapacity(channel.size());
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Gets the size of a chunk.
+	 *
+	 * @return the chunk size in bytes
+	 */
+	public long getChunkSize() {
+		return 1L << chunkShift;
+	}
+
+	/**
+	 * Maps enough chunks to hold <code>capacity</code> bytes, growing the file
+	 * if needed.
+	 *
+	 * @param capacity
+	 *            the capacity in bytes
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void ensureCapacity(long capacity) throws IOException {
+		int numChunks = (int) ((capacity + chunkMask) >>> chunkShift);
+
+		if (numChunks <= chunks.length) {
+			return;
+		}
+
+		int mappedChunks = chunks.length;
+		chunks = Arrays.copyOf(chunks, numChunks);
+
+		for (int i = mappedChunks; i < numChunks; i++) {
+			chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i << chunkShift, 1L << chunkShift);
+		}
+	}
+
+	/**
+	 * Gets the chunk holding a position.
+	 *
+	 * @param position
+	 *            the position
+	 * @return the chunk
+	 */
+	private ByteBuffer chunk(long position) {
+		return chunks[(int) (position >>> chunkShift)];
+	}
+
+	/**
+	 * Gets the position within its chunk.
+	 *
+	 * @param position
+	 *            the position
+	 * @return the position within the chunk
+	 */
+	private int offset(long position) {
+		return (int) (position & chunkMask);
+	}
+
+	/**
+	 * Reads an int.
+	 *
+	 * @param position
+	 *            the position
+	 * @return the value
+	 */
+	public int getInt(long position) {
+		return chunk(position).getInt(offset(position));
+	}
+
+	/**
+	 * Writes an int.
+	 *
+	 * @param position
+	 *            the position
+	 * @param value
+	 *            the value
+	 */
+	public void putInt(long position, int value) {
+		chunk(position).putInt(offset(position), value);
+	}
+
+	/**
+	 * Reads a long.
+	 *
+	 * @param position
+	 *            the position
+	 * @return the value
+	 */
+	public long getLong(long position) {
+		return chunk(position).getLong(offset(position));
+	}
+
+	/**
+	 * Writes a long.
+	 *
+	 * @param position
+	 *            the position
+	 * @param value
+	 *            the value
+	 */
+	public void putLong(long position, long value) {
+		chunk(position).putLong(offset(position), value);
+	}
+
+	/**
+	 * Reads a float.
+	 *
+	 * @param position
+	 *            the position
+	 * @return the value
+	 */
+	public float getFloat(long position) {
+		return chunk(position).getFloat(offset(position));
+	}
+
+	/**
+	 * Writes a float.
+	 *
+	 * @param position
+	 *            the position
+	 * @param value
+	 *            the value
+	 */
+	public void putFloat(long position, float value) {
+		chunk(position).putFloat(offset(position), value);
+	}
+
+	/**
+	 * Reads bytes, which must not cross a chunk boundary.
+	 *
+	 * @param position
+	 *            the position
+	 * @param bytes
+	 *            the bytes to fill
+	 */
+	public void getBytes(long position, byte[] bytes) {
+		ByteBuffer buffer = chunk(position).duplicate();
+		buffer.position(offset(position));
+		buffer.get(bytes);
+	}
+
+	/**
+	 * Writes bytes, which must not cross a chunk boundary.
+	 *
+	 * @param position
+	 *            the position
+	 * @param bytes
+	 *            the bytes
+	 */
+	public void putBytes(long position, byte[] bytes) {
+		ByteBuffer buffer = chunk(position).duplicate();
+		buffer.position(offset(position));
+		buffer.put(bytes);
+	}
+
+	/**
+	 * Writes the modified chunks back to the file.
+	 */
+	public void force() {
+		for (MappedByteBuffer chunk : chunks) {
+			chunk.force();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			force();
+		} finally {
+			// The mapping itself is released when the chunks are collected.
+			chunks = new MappedByteBuffer[0];
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,414 @@
+package com.acertainbookstore.utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link PersistentIntMap} is an immutable map from <code>int</code> keys to
+ * values, implemented as a hash array mapped trie. Updates never modify an
+ * existing map: {@link #put(int, Object)} and {@link #remove(int)} return a new
+ * map which shares every untouched node with the old one, so only the path from
+ * the root to the updated entry (at most seven nodes) is copied.
+ *
+ * Since instances never change, they can be handed to any number of threads
+ * without synchronization, and a map which is no longer referenced is simply
+ * reclaimed by the garbage collector.
+ *
+ * @param <V>
+ *            the type of the values
+ */
+public final class PersistentIntMap<V> implements Iterable<V> {
+
+	/** The number of hash bits consumed at each level of the trie. */
+	private static final int BITS_PER_LEVEL = 5;
+
+	/** The mask selecting the hash bits of one level. */
+	private static final int LEVEL_MASK = (1 << BITS_PER_LEVEL) - 1;
+
+	/** The empty map. */
+	@SuppressWarnings("rawtypes")
+	private static final PersistentIntMap EMPTY = new PersistentIntMap<>(new Node(0, new Object[0]), 0);
+
+	/** The root node. */
+	private final Node root;
+
+	/** The number of entries. */
+	private final int size;
+
+	/**
+	 * Instantiates a new {@link PersistentIntMap}.
+	 *
+	 * @param root
+	 *            the root node
+	 * @param size
+	 *            the number of entries
+	 */
+	private PersistentIntMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the empty map.
+	 *
+	 * @param <V>
+	 *            the type of the values
+	 * @return the empty map
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentIntMap<V> empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Gets the number of entries in the map.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Checks if the map has no entries.
+	 *
+	 * @return true, if empty
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the value mapped to <code>key</code>.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the value, or null if the key is not in the map
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		int hash = hash(key);
+		Node node = root;
+
+		for (int shift = 0;; shift += BITS_PER_LEVEL) {
+			int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+
+			if ((node.bitmap & bit) == 0) {
+				return null;
+			}
+
+			Object slot = node.slots[node.index(bit)];
+
+			if (slot instanceof Node) {
+				node = (Node) slot;
+			} else {
+				Entry entry = (Entry) slot;
+				return entry.key == key ? (V) entry.value : null;
+			}
+		}
+	}
+
+	/**
+	 * Checks if <code>key</code> is in the map.
+	 *
+	 * @param key
+	 *            the key
+	 * @return true, if the key is in the map
+	 */
+	public boolean containsKey(int key) {
+		return get(key) != null;
+	}
+
+	/**
+	 * Returns a map with <code>key</code> mapped to <code>value</code>. This
+	 * map is left unchanged.
+	 *
+	 * @param key
+	 *            the key
+	 * @param value
+	 *            the value, which must not be null
+	 * @return the updated map
+	 */
+	public PersistentIntMap<V> put(int key, V value) {
+		if (value == null) {
+			throw new IllegalArgumentException("null values are not supported");
+		}
+
+		int newSize = containsKey(key) ? size : size + 1;
+		return new PersistentIntMap<>(put(root, 0, hash(key), new Entry(key, value)), newSize);
+	}
+
+	/**
+	 * Returns a map without <code>key</code>. This map is left unchanged.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the updated map, or this map if the key is not in it
+	 */
+	public PersistentIntMap<V> remove(int key) {
+		if (!containsKey(key)) {
+			return this;
+		}
+
+		Node newRoot = remove(root, 0, hash(key), key);
+		return new PersistentIntMap<>(newRoot != null ? newRoot : EMPTY.root, size - 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<V> iterator() {
+		return new ValueIterator<>(root);
+	}
+
+	/**
+	 * Spreads the key over all 32 bits. The mixing is a bijection, so distinct
+	 * keys always have distinct hashes and the trie needs no collision nodes.
+	 *
+	 * @param key
+	 *            the key
+	 * @return the hash
+	 */
+	private static int hash(int key) {
+		int hash = key * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Inserts an entry below <code>node</code>, copying the path to it.
+	 *
+	 * @param node
+	 *            the node
+	 * @param shift
+	 *            the hash bits consumed above the node
+	 * @param hash
+	 *            the hash of the key
+	 * @param entry
+	 *            the entry
+	 * @return the new node
+	 */
+	private static Node put(Node node, int shift, int hash, Entry entry) {
+		int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+		int index = node.index(bit);
+
+		if ((node.bitmap & bit) == 0) {
+			Object[] slots = new Object[node.slots.length + 1];
+			System.arraycopy(node.slots, 0, slots, 0, index);
+			slots[index] = entry;
+			System.arraycopy(node.slots, index, slots, index + 1, node.slots.length - index);
+			return new Node(node.bitmap | bit, slots);
+		}
+
+		Object slot = node.slots[index];
+		Object newSlot;
+
+		if (slot instanceof Node) {
+			newSlot = put((Node) slot, shift + BITS_PER_LEVEL, hash, entry);
+		} else if (((Entry) slot).key == entry.key) {
+			newSlot = entry;
+		} else {
+			Entry existing = (Entry) slot;
+			Node child = new Node(0, new Object[0]);
+			child = put(child, shift + BITS_PER_LEVEL, hash(existing.key), existing);
+			newSlot = put(child, shift + BITS_PER_LEVEL, hash, entry);
+		}
+
+		Object[] slots = node.slots.clone();
+		slots[index] = newSlot;
+		return new Node(node.bitmap, slots);
+	}
+
+	/**
+	 * Removes the entry for <code>key</code> below <code>node</code>, copying
+	 * the path to it. The key must be present.
+	 *
+	 * @param node
+	 *            the node
+	 * @param shift
+	 *            the hash bits consumed above the node
+	 * @param hash
+	 *            the hash of the key
+	 * @param key
+	 *            the key
+	 * @return the new node, or null if it became empty
+	 */
+	private static Node remove(Node node, int shift, int hash, int key) {
+		int bit = 1 << ((hash >>> shift) & LEVEL_MASK);
+		int index = node.index(bit);
+		Object slot = node.slots[index];
+
+		if (slot instanceof Node) {
+			Node child = remove((Node) slot, shift + BITS_PER_LEVEL, hash, key);
+
+			if (child != null) {
+				Object[] slots = node.slots.clone();
+
+				// Pull a lone entry up, so that the trie does not keep chains
+				// of single-entry nodes around after removals.
+				slots[index] = (child.slots.length == 1 && child.slots[0] instanceof Entry) ? child.slots[0] : child;
+				return new Node(node.bitmap, slots);
+			}
+		}
+
+		if (node.slots.length == 1) {
+			return null;
+		}
+
+		Object[] slots = new Object[node.slots.length - 1];
+		System.arraycopy(node.slots, 0, slots, 0, index);
+		System.arraycopy(node.slots, index + 1, slots, index, slots.length - index);
+		return new Node(node.bitmap & ~bit, slots);
+	}
+
+	/**
+	 * {@link Node} is a trie node. Each set bit of the bitmap owns one slot,
+	 * which holds either an {@link Entry} or a child {@link Node}.
+	 */
+	private static final class Node {
+
+		/** The bitmap of the occupied positions. */
+		final int bitmap;
+
+		/** The slots of the occupied positions, in bitmap order. */
+		final Object[] slots;
+
+		/**
+		 * Instantiates a new {@link Node}.
+		 *
+		 * @param bitmap
+		 *            the bitmap
+		 * @param slots
+		 *            the slots
+		 */
+		Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		/**
+		 * Gets the slot index of the position <code>bit</code>.
+		 *
+		 * @param bit
+		 *            the position bit
+		 * @return the slot index
+		 */
+		int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+	}
+
+	/**
+	 * {@link Entry} is a key/value pair stored in a trie node.
+	 */
+	private static final class Entry {
+
+		/** The key. */
+		final int key;
+
+		/** The value. */
+		final Object value;
+
+		/**
+		 * Instantiates a new {@link Entry}.
+		 *
+		 * @param key
+		 *            the key
+		 * @param value
+		 *            the value
+		 */
+		Entry(int key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * {@link ValueIterator} walks the trie depth first.
+	 *
+	 * @param <V>
+	 *            the type of the values
+	 */
+	private static final class ValueIterator<V> implements Iterator<V> {
+
+		/** The nodes being walked. */
+		private final Deque<Node> nodes = new ArrayDeque<>();
+
+		/** The next slot index of each node being walked. */
+		private final Deque<Integer> indices = new ArrayDeque<>();
+
+		/** The next entry, or null at the end. */
+		private Entry next;
+
+		/**
+		 * Instantiates a new {@link ValueIterator}.
+		 *
+		 * @param root
+		 *            the root node
+		 */
+		ValueIterator(Node root) {
+			nodes.push(root);
+			indices.push(0);
+			advance();
+		}
+
+		/**
+		 * Moves to the next entry.
+		 */
+		private void advance() {
+			next = null;
+
+			while (!nodes.isEmpty()) {
+				Node node = nodes.peek();
+				int index = indices.pop();
+
+				if (index == node.slots.length) {
+					nodes.pop();
+					continue;
+				}
+
+				indices.push(index + 1);
+				Object slot = node.slots[index];
+
+				if (slot instanceof Node) {
+					nodes.push((Node) slot);
+					indices.push(0);
+				} else {
+					next = (Entry) slot;
+					return;
+				}
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#hasNext()
+		 */
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 *
+		 * @see java.util.Iterator#next()
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+
+			V value = (V) next.value;
+			advance();
+			return value;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package com.acertainbookstore.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * {@link SnapshotFile} reads and writes a file which is replaced as a whole. The
+ * content is followed by its CRC32 checksum, and a new version is written to a
+ * temporary file, forced and then renamed over the old one, so that a crash
+ * leaves either the old or the new version in place, never a mix of both.
+ */
+public final class SnapshotFile {
+
+	/** The magic number at the start of the file. */
+	private static final int MAGIC = 0x424B534E;
+
+	/** The suffix of the temporary file. */
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	/**
+	 * {@link ContentWriter} writes the content of the file.
+	 */
+	public interface ContentWriter {
+
+		/**
+		 * Writes the content.
+		 *
+		 * @param out
+		 *            the output
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * {@link ContentReader} reads the content of the file.
+	 */
+	public interface ContentReader {
+
+		/**
+		 * Reads the content.
+		 *
+		 * @param in
+		 *            the input
+		 * @throws IOException
+		 *             Signals that an I/O exception has occurred.
+		 */
+		void read(DataInputStream in) throws IOException;
+	}
+
+	/**
+	 * Prevents the instantiation of a new {@link SnapshotFile}.
+	 */
+	private SnapshotFile() {
+		// Prevent instances from being created.
+	}
+
+	/**
+	 * Writes a new version of the file and makes it durable.
+	 *
+	 * @param file
+	 *            the file
+	 * @param writer
+	 *            the writer of the content
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static void write(File file, ContentWriter writer) throws IOException {
+		File temporaryFile = new File(file.getPath() + TEMPORARY_SUFFIX);
+
+		try (FileOutputStream fileOut = new FileOutputStream(temporaryFile)) {
+			CheckedOutputStream checkedOut = new CheckedOutputStream(new BufferedOutputStream(fileOut), new CRC32());
+			DataOutputStream out = new DataOutputStream(checkedOut);
+
+			out.writeInt(MAGIC);
+			writer.write(out);
+			out.writeInt((int) checkedOut.getChecksum().getValue());
+			out.flush();
+			fileOut.getFD().sync();
+		}
+
+		Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(file.getAbsoluteFile().getParentFile());
+	}
+
+	/**
+	 * Reads the file, if it exists.
+	 *
+	 * @param file
+	 *            the file
+	 * @param reader
+	 *            the reader of the content
+	 * @return true, if the file exists
+	 * @throws IOException
+	 *             Signals that the file cannot be read or is corrupt.
+	 */
+	public static boolean read(File file, ContentReader reader) throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+
+		try (FileInputStream fileIn = new FileInputStream(file)) {
+			CheckedInputStream checkedIn = new CheckedInputStream(new BufferedInputStream(fileIn), new CRC32());
+			DataInputStream in = new DataInputStream(checkedIn);
+
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not a snapshot");
+			}
+
+			reader.read(in);
+			int checksum = (int) checkedIn.getChecksum().getValue();
+
+			if (in.readInt() != checksum) {
+				throw new IOException(file + " is corrupt");
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Forces the directory, so that a rename in it is durable. Some platforms
+	 * cannot open directories, in which case the rename is left to the file
+	 * system.
+	 *
+	 * @param directory
+	 *            the directory
+	 */
+	public static void syncDirectory(File directory) {
+		try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException ex) {
+			// Not supported on this platform.
+		}
+	}
+}
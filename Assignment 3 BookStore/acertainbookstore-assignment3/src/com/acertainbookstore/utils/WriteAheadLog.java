@@ -0,0 +1,278 @@
+package com.acertainbookstore.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * {@link WriteAheadLog} is an append-only file of records. Each record is
+ * framed by its length and a CRC32 checksum, so that a record torn by a crash
+ * is detected and cut off when the log is opened.
+ *
+ * Appending a record only buffers it in memory; {@link #sync()} makes it
+ * durable. Syncs are group committed: one caller writes and forces everything
+ * buffered so far, while the callers arriving during that force wait and are
+ * served together by the next one. Concurrent writers therefore share the cost
+ * of <code>force()</code> instead of paying for it one after another.
+ */
+public class WriteAheadLog implements Closeable {
+
+	/** The size of the record header: the length and the checksum. */
+	private static final int HEADER_SIZE = 8;
+
+	/**
+	 * {@link RecordHandler} receives the records of the log when it is opened.
+	 */
+	public interface RecordHandler {
+
+		/**
+		 * Handles one record.
+		 *
+		 * @param record
+		 *            the record
+		 * @throws IOException
+		 *             Signals that the record cannot be handled.
+		 */
+		void handle(DataInputStream record) throws IOException;
+	}
+
+	/** The log file. */
+	private final FileChannel channel;
+
+	/** The records appended but not yet written to the file. */
+	private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+	/** The header writer of the pending records. */
+	private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+	/** The log position after the last appended record. */
+	private long appendedPosition;
+
+	/** The log position up to which the records are durable. */
+	private long durablePosition;
+
+	/** Whether a caller is currently writing and forcing the log. */
+	private boolean flushing = false;
+
+	/** The error which made the log unusable, if any. */
+	private IOException failure = null;
+
+	/**
+	 * Opens the log, creating it if needed, and passes its records to
+	 * <code>handler</code> in order. A torn record at the end of the log is
+	 * removed. A new log is made durable in its directory before it is used,
+	 * so that the records forced to it cannot be lost with its entry.
+	 *
+	 * @param file
+	 *            the log file
+	 * @param handler
+	 *            the handler of the existing records
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public WriteAheadLog(File file, RecordHandler handler) throws IOException {
+		boolean created = !file.exists();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+
+		if (created) {
+			SnapshotFile.syncDirectory(file.getAbsoluteFile().getParentFile());
+		}
+
+		try {
+			long validPosition = replay(handler);
+			channel.truncate(validPosition);
+			channel.position(validPosition);
+			appendedPosition = validPosition;
+			durablePosition = validPosition;
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Reads the records of the log, stopping at the end of the file or at the
+	 * first incomplete or corrupt record.
+	 *
+	 * @param handler
+	 *            the handler of the records
+	 * @return the position after the last valid record
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private long replay(RecordHandler handler) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		CRC32 crc = new CRC32();
+		long position = 0;
+
+		channel.position(0);
+
+		while (true) {
+			byte[] record;
+			int checksum;
+
+			try {
+				int length = in.readInt();
+				checksum = in.readInt();
+
+				if (length < 0 || position + HEADER_SIZE + length > channel.size()) {
+					return position;
+				}
+
+				record = new byte[length];
+				in.readFully(record);
+			} catch (EOFException ex) {
+				return position;
+			}
+
+			crc.reset();
+			crc.update(record, 0, record.length);
+
+			if ((int) crc.getValue() != checksum) {
+				return position;
+			}
+
+			handler.handle(new DataInputStream(new ByteArrayInputStream(record)));
+			position += HEADER_SIZE + record.length;
+		}
+	}
+
+	/**
+	 * Appends a record to the log. The record is durable once a later
+	 * {@link #sync()} returns.
+	 *
+	 * @param record
+	 *            the record
+	 * @throws IOException
+	 *             Signals that the log is unusable.
+	 */
+	public synchronized void append(byte[] record) throws IOException {
+		checkUsable();
+
+		CRC32 crc = new CRC32();
+		crc.update(record, 0, record.length);
+
+		pendingOut.writeInt(record.length);
+		pendingOut.writeInt((int) crc.getValue());
+		pendingOut.write(record);
+		appendedPosition += HEADER_SIZE + record.length;
+	}
+
+	/**
+	 * Makes all records appended so far durable.
+	 *
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void sync() throws IOException {
+		long position;
+
+		synchronized (this) {
+			position = appendedPosition;
+		}
+
+		sync(position);
+	}
+
+	/**
+	 * Makes the records up to <code>position</code> durable, either by forcing
+	 * the log or by waiting for the caller which is already doing so.
+	 *
+	 * @param position
+	 *            the log position
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void sync(long position) throws IOException {
+		byte[] batch;
+		long batchPosition;
+
+		synchronized (this) {
+			while (flushing && durablePosition < position) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for the log");
+				}
+			}
+
+			checkUsable();
+
+			if (durablePosition >= position) {
+				return;
+			}
+
+			// Become the leader: take every record appended so far, including
+			// those of the callers that will wait for us.
+			flushing = true;
+			batch = pending.toByteArray();
+			batchPosition = appendedPosition;
+			pending.reset();
+		}
+
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(batch);
+
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+
+			channel.force(false);
+		} catch (IOException ex) {
+			synchronized (this) {
+				failure = ex;
+				flushing = false;
+				notifyAll();
+			}
+
+			throw ex;
+		}
+
+		synchronized (this) {
+			durablePosition = batchPosition;
+			flushing = false;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Throws the error which made the log unusable, if any. Once a batch is
+	 * lost, later records must not become durable without it.
+	 *
+	 * @throws IOException
+	 *             Signals that the log is unusable.
+	 */
+	private void checkUsable() throws IOException {
+		if (failure != null) {
+			throw new IOException("The log is unusable after an earlier error", failure);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			sync();
+		} finally {
+			channel.close();
+		}
+	}
+}